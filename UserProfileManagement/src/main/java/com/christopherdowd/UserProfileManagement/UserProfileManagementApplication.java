@@ -3,12 +3,15 @@ package com.christopherdowd.UserProfileManagement;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
+import com.christopherdowd.UserProfileManagement.config.NativeRuntimeHints;
 import com.google.cloud.spring.data.datastore.repository.config.EnableDatastoreRepositories;
 
 @SpringBootApplication
 @EnableDatastoreRepositories
 @EnableCaching
+@ImportRuntimeHints(NativeRuntimeHints.class)
 public class UserProfileManagementApplication {
 
 	public static void main(String[] args) {
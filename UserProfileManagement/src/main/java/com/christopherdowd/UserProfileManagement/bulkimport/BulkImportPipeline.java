@@ -0,0 +1,444 @@
+package com.christopherdowd.UserProfileManagement.bulkimport;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.existence.KnownUserIds;
+import com.christopherdowd.UserProfileManagement.dto.UserProfileRequestDto;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+import com.christopherdowd.UserProfileManagement.service.BlindIndexService;
+import com.christopherdowd.UserProfileManagement.service.EncryptionService;
+import com.christopherdowd.UserProfileManagement.stats.UserStatistics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+/*
+ * Streams a CSV or NDJSON file of user profiles into Datastore
+ * Stages are connected by bounded queues, so apart from the SSN blind indexes seen in the run
+ * (about 100 bytes per record) heap use stays constant regardless of file size:
+ *   1. read: parse records on the calling thread
+ *   2. encrypt: validate against the UserProfileRequestDto constraints, encrypt the SSN and
+ *      reject SSNs that are taken or repeat within the file, on one worker per core
+ *   3. write: save chunks of entities with a single saveAll each, count them in the user
+ *      statistics, then advance the checkpoint
+ * A failed run can be restarted with the same file and resumes after the last checkpoint.
+ * Records whose SSN could not be checked or encrypted are never checkpointed, so the watermark
+ * stops at the first of them; the run keeps its checkpoint and rerunning it retries them.
+ * Imports write straight to Datastore, bypassing Pub/Sub.
+ */
+@Component
+public class BulkImportPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkImportPipeline.class);
+
+    // Only the first rejections are logged individually, the rest are just counted
+    private static final int MAX_LOGGED_REJECTIONS = 100;
+
+    // Markers that tell the next stage its input is exhausted
+    private static final ImportRecord END_OF_INPUT = new ImportRecord(-1, null, null);
+    private static final Pending END_OF_WORK = new Pending(-1, null, false);
+
+    private static final long POLL_MILLIS = 100;
+
+    private final UserProfileRepository userRepository;
+    private final EncryptionService crypto;
+    private final BlindIndexService blindIndex;
+    private final KnownUserIds knownIds;
+    private final UserStatistics statistics;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final int workers;
+    private final int queueCapacity;
+    private final int chunkSize;
+    private final Duration progressInterval;
+    private final int saveAttempts;
+
+    /*
+     * Constructor for BulkImportPipeline
+     * @param userRepository for saving imported profiles
+     * @param crypto for encrypting SSNs
+     * @param blindIndex for computing SSN blind indexes
+     * @param knownIds for adding imported IDs to the existence filter
+     * @param statistics for counting imported profiles
+     * @param validator for checking records against the UserProfileRequestDto constraints
+     * @param objectMapper for parsing NDJSON
+     * @param workers number of validate/encrypt threads, 0 for one per available processor
+     * @param queueCapacity records buffered between two stages
+     * @param chunkSize entities per saveAll, at most 500 for Datastore
+     * @param progressInterval how often progress is logged
+     * @param saveAttempts how often a failing saveAll is tried before the import stops
+     */
+    public BulkImportPipeline(
+            UserProfileRepository userRepository,
+            EncryptionService crypto,
+            BlindIndexService blindIndex,
+            KnownUserIds knownIds,
+            UserStatistics statistics,
+            Validator validator,
+            ObjectMapper objectMapper,
+            @Value("${import.workers:0}") int workers,
+            @Value("${import.queue-capacity:1024}") int queueCapacity,
+            @Value("${import.chunk-size:500}") int chunkSize,
+            @Value("${import.progress-interval:10s}") Duration progressInterval,
+            @Value("${import.save-attempts:5}") int saveAttempts) {
+        this.userRepository = userRepository;
+        this.crypto = crypto;
+        this.blindIndex = blindIndex;
+        this.knownIds = knownIds;
+        this.statistics = statistics;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.workers = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.queueCapacity = queueCapacity;
+        this.chunkSize = chunkSize;
+        this.progressInterval = progressInterval;
+        this.saveAttempts = saveAttempts;
+    }
+
+    /*
+     * Imports the file, resuming from its checkpoint if a previous run was interrupted
+     * @param file the CSV or NDJSON file
+     * @return the report of this run, completed is false if the import stopped early
+     */
+    public ImportReport run(Path file) throws Exception {
+        ImportCheckpoint checkpoint = ImportCheckpoint.loadOrCreate(file);
+        if (checkpoint.getWatermark() > 0) {
+            logger.info("Resuming import {} of {} after record {}", checkpoint.getJobId(), file, checkpoint.getWatermark());
+        } else {
+            logger.info("Starting import {} of {} with {} workers", checkpoint.getJobId(), file, workers);
+        }
+
+        Run run = new Run(checkpoint);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService threads = Executors.newFixedThreadPool(workers + 1, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-import-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            for (int i = 0; i < workers; i++) {
+                threads.execute(run::encryptStage);
+            }
+            threads.execute(run::writeStage);
+            run.readStage(file);
+            run.writerDone.await();
+        } finally {
+            threads.shutdownNow();
+        }
+
+        ImportReport report = run.report(run.completed && run.failed.get() == 0);
+        if (run.failure.get() != null) {
+            logger.error("Import {} stopped at record {}: {}", checkpoint.getJobId(), checkpoint.getWatermark(), report);
+            throw new IllegalStateException("Import of " + file + " failed, rerun to resume", run.failure.get());
+        }
+        if (run.failed.get() > 0) {
+            logger.warn("Import {} left {} records unprocessed, rerun to retry from record {}: {}",
+                checkpoint.getJobId(), run.failed.get(), checkpoint.getWatermark(), report);
+            return report;
+        }
+        checkpoint.delete();
+        logger.info("Import {} finished: {}", checkpoint.getJobId(), report);
+        return report;
+    }
+
+    /*
+     * An encrypted entity waiting to be saved
+     * @param resaved whether a previous run of the import already saved it, so it isn't counted again
+     */
+    private record Pending(long sequence, UserProfile user, boolean resaved) {
+    }
+
+    /*
+     * State of a single import run, shared by its stages
+     */
+    private final class Run {
+
+        private final ImportCheckpoint checkpoint;
+        private final CompletionTracker tracker;
+        private final long resumeFrom;
+        private final BlockingQueue<ImportRecord> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        private final BlockingQueue<Pending> encrypted = new ArrayBlockingQueue<>(queueCapacity);
+        private final Set<String> seenSsnIndexes = ConcurrentHashMap.newKeySet();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final CountDownLatch writerDone = new CountDownLatch(1);
+
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong read = new AtomicLong();
+        private final AtomicLong persisted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile boolean completed;
+
+        Run(ImportCheckpoint checkpoint) {
+            this.checkpoint = checkpoint;
+            this.resumeFrom = checkpoint.getWatermark();
+            this.tracker = new CompletionTracker(resumeFrom);
+        }
+
+        // Stage 1: parse the file, skipping records before the checkpoint
+        void readStage(Path file) {
+            try (ImportRecordReader reader = ImportRecordReader.open(file, objectMapper)) {
+                ImportRecord record;
+                while ((record = reader.next()) != null) {
+                    if (record.sequence() < resumeFrom) {
+                        continue;
+                    }
+                    read.incrementAndGet();
+                    put(parsed, record);
+                }
+                for (int i = 0; i < workers; i++) {
+                    put(parsed, END_OF_INPUT);
+                }
+            } catch (CancellationException e) {
+                // another stage failed, its error is reported
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        // Stage 2: validate and encrypt, one instance per worker thread
+        void encryptStage() {
+            try {
+                while (true) {
+                    ImportRecord record = take(parsed);
+                    if (record == END_OF_INPUT) {
+                        put(encrypted, END_OF_WORK);
+                        return;
+                    }
+                    Pending pending = encrypt(record);
+                    if (pending != null) {
+                        put(encrypted, pending);
+                    }
+                }
+            } catch (CancellationException e) {
+                // another stage failed, its error is reported
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        private Pending encrypt(ImportRecord record) {
+            UserProfileRequestDto dto = record.dto();
+            if (dto == null) {
+                reject(record.sequence(), record.parseError());
+                return null;
+            }
+
+            Set<ConstraintViolation<UserProfileRequestDto>> violations = validator.validate(dto);
+            if (!violations.isEmpty()) {
+                reject(record.sequence(), violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+                return null;
+            }
+
+            try {
+                String id = checkpoint.userIdFor(record.sequence());
+                String ssnIndex = blindIndex.computeSsnIndex(dto.getSocialSecurityNumber());
+                if (!seenSsnIndexes.add(ssnIndex)) {
+                    reject(record.sequence(), "Social Security Number repeats an earlier record of the import");
+                    return null;
+                }
+                String encryptedSsn = crypto.encrypt(dto.getSocialSecurityNumber());
+
+                // Reserved only once encrypted, so a failed record doesn't block the SSN for API creates
+                boolean resaved = false;
+                if (!blindIndex.reserveSsnIndex(ssnIndex)) {
+                    // Records past the checkpoint may have been saved by the run that was interrupted, under the same ID
+                    resaved = resumeFrom > 0 && userRepository.existsById(id);
+                    if (!resaved) {
+                        reject(record.sequence(), "A user with this Social Security Number already exists");
+                        return null;
+                    }
+                }
+
+                UserProfile user = UserProfile.builder()
+                    .id(id)
+                    .username(dto.getUsername())
+                    .email(dto.getEmail())
+                    .encryptedSocialSecurityNumber(encryptedSsn)
+                    .ssnBlindIndex(ssnIndex)
+                    .createdAt(Instant.now())
+                    .build();
+                return new Pending(record.sequence(), user, resaved);
+            } catch (Exception e) {
+                // Not completed, so the checkpoint stays before the record and a rerun retries it
+                failed.incrementAndGet();
+                logger.error("Failed to check or encrypt SSN of import record {}: {}", record.sequence(), e.getMessage());
+                return null;
+            }
+        }
+
+        private void reject(long sequence, String reason) {
+            if (rejected.incrementAndGet() <= MAX_LOGGED_REJECTIONS) {
+                logger.warn("Rejected import record {}: {}", sequence, reason);
+            }
+            tracker.complete(sequence);
+        }
+
+        // Stage 3: save in chunks and checkpoint after every chunk
+        void writeStage() {
+            List<Pending> chunk = new ArrayList<>(chunkSize);
+            long nextProgressNanos = System.nanoTime() + progressInterval.toNanos();
+            int finishedWorkers = 0;
+
+            try {
+                while (finishedWorkers < workers) {
+                    Pending pending = encrypted.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (failure.get() != null) {
+                        return;
+                    }
+                    if (pending == END_OF_WORK) {
+                        finishedWorkers++;
+                    } else if (pending != null) {
+                        chunk.add(pending);
+                        if (chunk.size() >= chunkSize) {
+                            flush(chunk);
+                        }
+                    }
+
+                    if (System.nanoTime() >= nextProgressNanos) {
+                        logger.info("Import {} progress: {}", checkpoint.getJobId(), report(false));
+                        nextProgressNanos = System.nanoTime() + progressInterval.toNanos();
+                    }
+                }
+                flush(chunk);
+                checkpoint.save(tracker.watermark());
+                completed = true;
+            } catch (Exception e) {
+                fail(e);
+            } finally {
+                writerDone.countDown();
+            }
+        }
+
+        private void flush(List<Pending> chunk) throws Exception {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            List<UserProfile> users = new ArrayList<>(chunk.size());
+            for (Pending pending : chunk) {
+                users.add(pending.user());
+            }
+
+            saveWithRetry(users);
+            persisted.addAndGet(users.size());
+            for (Pending pending : chunk) {
+                if (!pending.resaved()) {
+                    statistics.recordCreated(pending.user().getEmail());
+                }
+                tracker.complete(pending.sequence());
+            }
+            chunk.clear();
+            checkpoint.save(tracker.watermark());
+        }
+
+        private void saveWithRetry(List<UserProfile> users) throws InterruptedException {
+            long backoffMillis = 200;
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    userRepository.saveAll(users);
+                    users.forEach(user -> knownIds.add(user.getId()));
+                    return;
+                } catch (RuntimeException e) {
+                    if (attempt >= saveAttempts) {
+                        throw e;
+                    }
+                    logger.warn("saveAll of {} imported profiles failed (attempt {} of {}), retrying in {} ms: {}",
+                        users.size(), attempt, saveAttempts, backoffMillis, e.getMessage());
+                    TimeUnit.MILLISECONDS.sleep(backoffMillis);
+                    backoffMillis *= 2;
+                }
+            }
+        }
+
+        ImportReport report(boolean done) {
+            return new ImportReport(read.get(), persisted.get(), rejected.get(), failed.get(),
+                Duration.ofNanos(System.nanoTime() - startNanos), done);
+        }
+
+        private void fail(Throwable error) {
+            if (failure.compareAndSet(null, error)) {
+                logger.error("Import {} failed: {}", checkpoint.getJobId(), error.getMessage(), error);
+            }
+        }
+
+        // Blocking put that gives up once another stage has failed
+        private <T> void put(BlockingQueue<T> queue, T item) throws InterruptedException {
+            while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (failure.get() != null) {
+                    throw new CancellationException();
+                }
+            }
+        }
+
+        // Blocking take that gives up once another stage has failed
+        private <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+            while (true) {
+                T item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (item != null) {
+                    return item;
+                }
+                if (failure.get() != null) {
+                    throw new CancellationException();
+                }
+            }
+        }
+    }
+
+    /*
+     * Tracks which records are done while they complete out of order
+     * The watermark is the length of the longest fully completed prefix of the file
+     */
+    static final class CompletionTracker {
+
+        private final TreeSet<Long> completedAhead = new TreeSet<>();
+        private long watermark;
+
+        CompletionTracker(long watermark) {
+            this.watermark = watermark;
+        }
+
+        synchronized void complete(long sequence) {
+            if (sequence != watermark) {
+                completedAhead.add(sequence);
+                return;
+            }
+            watermark++;
+            while (completedAhead.remove(watermark)) {
+                watermark++;
+            }
+        }
+
+        synchronized long watermark() {
+            return watermark;
+        }
+    }
+}
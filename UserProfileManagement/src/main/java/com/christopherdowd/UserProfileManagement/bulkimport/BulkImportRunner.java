@@ -0,0 +1,49 @@
+package com.christopherdowd.UserProfileManagement.bulkimport;
+
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/*
+ * Starts a bulk import when the application is launched with import.file set, e.g.
+ *   java -jar app.jar --import.file=/data/legacy-users.csv
+ * The import runs on a background thread so the API stays available while it loads
+ */
+@Component
+@ConditionalOnProperty(name = "import.file")
+public class BulkImportRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkImportRunner.class);
+
+    private final BulkImportPipeline pipeline;
+    private final Path file;
+
+    /*
+     * Constructor for BulkImportRunner
+     * @param pipeline the import pipeline
+     * @param file path of the CSV or NDJSON file to import
+     */
+    public BulkImportRunner(BulkImportPipeline pipeline, @Value("${import.file}") String file) {
+        this.pipeline = pipeline;
+        this.file = Path.of(file);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Thread worker = new Thread(() -> {
+            try {
+                pipeline.run(file);
+            } catch (Exception e) {
+                logger.error("Bulk import of {} did not complete: {}", file, e.getMessage());
+            }
+        }, "bulk-import");
+        worker.setDaemon(true);
+        worker.start();
+    }
+}
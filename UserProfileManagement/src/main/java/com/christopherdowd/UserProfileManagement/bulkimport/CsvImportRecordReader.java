@@ -0,0 +1,123 @@
+package com.christopherdowd.UserProfileManagement.bulkimport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.christopherdowd.UserProfileManagement.dto.UserProfileRequestDto;
+
+/*
+ * Reads RFC 4180 style CSV
+ * The first row is a header naming the columns username, email and socialSecurityNumber in any order,
+ * other columns are ignored. Quoted fields may contain commas, escaped quotes ("") and line breaks.
+ */
+public class CsvImportRecordReader implements ImportRecordReader {
+
+    private static final String USERNAME = "username";
+    private static final String EMAIL = "email";
+    private static final String SSN = "socialSecurityNumber";
+
+    private final BufferedReader reader;
+    private final StringBuilder field = new StringBuilder(64);
+    private final List<String> row = new ArrayList<>();
+
+    private int usernameColumn = -1;
+    private int emailColumn = -1;
+    private int ssnColumn = -1;
+    private long sequence;
+
+    public CsvImportRecordReader(BufferedReader reader) throws IOException {
+        this.reader = reader;
+        readHeader();
+    }
+
+    private void readHeader() throws IOException {
+        List<String> header = readRow();
+        if (header == null) {
+            throw new IOException("CSV import file is empty");
+        }
+        for (int i = 0; i < header.size(); i++) {
+            switch (header.get(i).trim()) {
+                case USERNAME -> usernameColumn = i;
+                case EMAIL -> emailColumn = i;
+                case SSN -> ssnColumn = i;
+                default -> { }
+            }
+        }
+        if (usernameColumn < 0 || emailColumn < 0 || ssnColumn < 0) {
+            throw new IOException("CSV header must contain the columns " + USERNAME + ", " + EMAIL + " and " + SSN);
+        }
+    }
+
+    @Override
+    public ImportRecord next() throws IOException {
+        List<String> values;
+        do {
+            values = readRow();
+            if (values == null) {
+                return null;
+            }
+        } while (values.size() == 1 && values.get(0).isEmpty());
+
+        long current = sequence++;
+        int required = Math.max(usernameColumn, Math.max(emailColumn, ssnColumn));
+        if (values.size() <= required) {
+            return ImportRecord.malformed(current, "Expected at least " + (required + 1) + " columns, found " + values.size());
+        }
+        return ImportRecord.parsed(current, UserProfileRequestDto.builder()
+            .username(values.get(usernameColumn))
+            .email(values.get(emailColumn))
+            .socialSecurityNumber(values.get(ssnColumn))
+            .build());
+    }
+
+    /*
+     * Reads one logical row, which may span several lines when a quoted field contains line breaks
+     * @return the fields of the row (reused between calls), or null at end of file
+     */
+    private List<String> readRow() throws IOException {
+        row.clear();
+        field.setLength(0);
+        boolean quoted = false;
+        boolean any = false;
+
+        int c;
+        while ((c = reader.read()) != -1) {
+            any = true;
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                row.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+
+        if (!any) {
+            return null;
+        }
+        row.add(field.toString());
+        return row;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,89 @@
+package com.christopherdowd.UserProfileManagement.bulkimport;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.UUID;
+
+/*
+ * Resumable progress of an import, stored next to the import file as "<file>.checkpoint"
+ * The watermark is the number of leading records that are fully processed (persisted or rejected),
+ * a resumed import skips them. The job ID seeds the generated user IDs, so records after the
+ * watermark that were already saved get the same IDs again and are overwritten rather than duplicated.
+ */
+public class ImportCheckpoint {
+
+    private static final String JOB_ID = "jobId";
+    private static final String WATERMARK = "watermark";
+
+    private final Path file;
+    private final String jobId;
+    private volatile long watermark;
+
+    private ImportCheckpoint(Path file, String jobId, long watermark) {
+        this.file = file;
+        this.jobId = jobId;
+        this.watermark = watermark;
+    }
+
+    /*
+     * Loads the checkpoint of a previous run, or starts a new job if there is none
+     * @param importFile the file being imported
+     */
+    public static ImportCheckpoint loadOrCreate(Path importFile) throws IOException {
+        Path file = importFile.resolveSibling(importFile.getFileName() + ".checkpoint");
+        if (!Files.exists(file)) {
+            return new ImportCheckpoint(file, UUID.randomUUID().toString(), 0);
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return new ImportCheckpoint(file, properties.getProperty(JOB_ID), Long.parseLong(properties.getProperty(WATERMARK, "0")));
+    }
+
+    /*
+     * Persists a new watermark, replacing the checkpoint file atomically
+     * @param newWatermark the number of leading records that are done
+     */
+    public void save(long newWatermark) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(JOB_ID, jobId);
+        properties.setProperty(WATERMARK, Long.toString(newWatermark));
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Bulk import checkpoint");
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        watermark = newWatermark;
+    }
+
+    /*
+     * Removes the checkpoint once the import has completed
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /*
+     * Deterministic user ID for a record of this job
+     * @param sequence the position of the record in the import file
+     */
+    public String userIdFor(long sequence) {
+        return UUID.nameUUIDFromBytes((jobId + ":" + sequence).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public long getWatermark() {
+        return watermark;
+    }
+}
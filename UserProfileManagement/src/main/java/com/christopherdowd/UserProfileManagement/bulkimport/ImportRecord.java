@@ -0,0 +1,20 @@
+package com.christopherdowd.UserProfileManagement.bulkimport;
+
+import com.christopherdowd.UserProfileManagement.dto.UserProfileRequestDto;
+
+/*
+ * One record read from an import file
+ * @param sequence zero based position of the record in the file
+ * @param dto the parsed record, null if it could not be parsed
+ * @param parseError why the record could not be parsed, null otherwise
+ */
+public record ImportRecord(long sequence, UserProfileRequestDto dto, String parseError) {
+
+    static ImportRecord parsed(long sequence, UserProfileRequestDto dto) {
+        return new ImportRecord(sequence, dto, null);
+    }
+
+    static ImportRecord malformed(long sequence, String parseError) {
+        return new ImportRecord(sequence, null, parseError);
+    }
+}
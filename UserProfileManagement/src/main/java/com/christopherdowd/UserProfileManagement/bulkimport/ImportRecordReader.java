@@ -0,0 +1,47 @@
+package com.christopherdowd.UserProfileManagement.bulkimport;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Streams records out of an import file one at a time
+ * Records that can't be parsed are returned as malformed instead of failing the import
+ */
+public interface ImportRecordReader extends Closeable {
+
+    // Large read buffer, import files are read strictly sequentially
+    int BUFFER_SIZE = 1 << 20;
+
+    /*
+     * @return the next record, or null once the file is exhausted
+     */
+    ImportRecord next() throws IOException;
+
+    /*
+     * Opens a reader for the file based on its extension: .csv, or .ndjson / .jsonl
+     * @param file the import file
+     * @param objectMapper for parsing NDJSON lines
+     */
+    static ImportRecordReader open(Path file, ObjectMapper objectMapper) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        if (name.endsWith(".csv")) {
+            return new CsvImportRecordReader(reader);
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+            return new NdjsonImportRecordReader(reader, objectMapper);
+        }
+        reader.close();
+        throw new IllegalArgumentException("Unsupported import file type, expected .csv, .ndjson or .jsonl: " + file);
+    }
+}
@@ -0,0 +1,26 @@
+package com.christopherdowd.UserProfileManagement.bulkimport;
+
+import java.time.Duration;
+
+/*
+ * Progress and outcome of an import
+ * @param read records read from the file in this run (excluding those skipped by the checkpoint)
+ * @param persisted records saved to Datastore
+ * @param rejected records that could not be parsed, failed validation or had a taken or repeated SSN
+ * @param failed records whose SSN could not be checked or encrypted, retried by rerunning the import
+ * @param elapsed time since the import started
+ * @param completed whether the whole file has been processed without failed records
+ */
+public record ImportReport(long read, long persisted, long rejected, long failed, Duration elapsed, boolean completed) {
+
+    public double recordsPerSecond() {
+        double seconds = elapsed.toNanos() / 1_000_000_000.0;
+        return seconds > 0 ? (persisted + rejected + failed) / seconds : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("read=%d persisted=%d rejected=%d failed=%d elapsed=%ds throughput=%.0f records/s%s",
+            read, persisted, rejected, failed, elapsed.toSeconds(), recordsPerSecond(), completed ? " (completed)" : "");
+    }
+}
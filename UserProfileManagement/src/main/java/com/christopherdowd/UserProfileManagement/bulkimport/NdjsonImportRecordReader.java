@@ -0,0 +1,48 @@
+package com.christopherdowd.UserProfileManagement.bulkimport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import com.christopherdowd.UserProfileManagement.dto.UserProfileRequestDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/*
+ * Reads newline delimited JSON, one UserProfileRequestDto object per line
+ * Blank lines are skipped, a line that isn't valid JSON becomes a malformed record
+ */
+public class NdjsonImportRecordReader implements ImportRecordReader {
+
+    private final BufferedReader reader;
+    private final ObjectReader dtoReader;
+    private long sequence;
+
+    public NdjsonImportRecordReader(BufferedReader reader, ObjectMapper objectMapper) {
+        this.reader = reader;
+        this.dtoReader = objectMapper.readerFor(UserProfileRequestDto.class);
+    }
+
+    @Override
+    public ImportRecord next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.isBlank());
+
+        long current = sequence++;
+        try {
+            return ImportRecord.parsed(current, dtoReader.readValue(line));
+        } catch (JsonProcessingException e) {
+            return ImportRecord.malformed(current, "Invalid JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,50 @@
+package com.christopherdowd.UserProfileManagement.cache;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+
+/*
+ * Expires entries a random amount earlier than the nominal TTL
+ * Entries loaded together (e.g. right after a deploy) would otherwise all expire in the same
+ * instant and hit Datastore at once. Every write, including a refresh, draws a new lifetime in
+ * [ttl * (1 - jitter), ttl]; reads don't change it.
+ */
+public class JitteredExpiry<K, V> implements Expiry<K, V> {
+
+    private final long ttlNanos;
+    private final double jitter;
+
+    /*
+     * Constructor for JitteredExpiry
+     * @param ttl the longest lifetime of an entry
+     * @param jitter the fraction of the TTL an entry may expire early by, between 0 and 1
+     */
+    public JitteredExpiry(Duration ttl, double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("TTL jitter must be between 0 and 1, was " + jitter);
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.jitter = jitter;
+    }
+
+    @Override
+    public long expireAfterCreate(K key, V value, long currentTime) {
+        return nextLifetime();
+    }
+
+    @Override
+    public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+        return nextLifetime();
+    }
+
+    @Override
+    public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+
+    long nextLifetime() {
+        return ttlNanos - (long) (ttlNanos * jitter * ThreadLocalRandom.current().nextDouble());
+    }
+}
@@ -0,0 +1,56 @@
+package com.christopherdowd.UserProfileManagement.cache;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherdowd.UserProfileManagement.service.impl.ProfileReader;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+
+/*
+ * Refreshes "profiles" cache entries through the same ProfileReader as UserProfileServiceImpl.getById
+ * Caffeine only refreshes ahead with a loader, but misses are left to the @Cacheable getById: Spring
+ * asks a loading cache on every lookup, so loading here too would read every missing profile twice.
+ * Refreshes of entries past the refresh threshold run on a bounded executor while the stale value
+ * keeps being served; a profile that is gone by then refreshes to null, which removes the entry.
+ * When that executor is saturated the refresh is skipped and tried again on a later read, until the
+ * entry's TTL forces a regular load.
+ */
+public class ProfileCacheLoader implements CacheLoader<Object, Object> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProfileCacheLoader.class);
+
+    private final ProfileReader profileReader;
+    private final Executor refreshExecutor;
+
+    /*
+     * Constructor for ProfileCacheLoader
+     * @param profileReader for reading profiles into the cached response DTO
+     * @param refreshExecutor bounded executor background refreshes run on
+     */
+    public ProfileCacheLoader(ProfileReader profileReader, Executor refreshExecutor) {
+        this.profileReader = profileReader;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    // A miss, getById loads and caches the profile itself
+    @Override
+    public Object load(Object key) {
+        return null;
+    }
+
+    @Override
+    public CompletableFuture<Object> asyncReload(Object key, Object oldValue, Executor executor) {
+        try {
+            return CompletableFuture.supplyAsync(() -> profileReader.read((String) key).orElse(null), refreshExecutor);
+        } catch (RejectedExecutionException e) {
+            // Caffeine drops a cancelled refresh quietly and keeps serving the current value
+            logger.debug("Refresh executor saturated, skipping refresh of profile {}", key);
+            return CompletableFuture.failedFuture(new CancellationException("Refresh executor saturated"));
+        }
+    }
+}
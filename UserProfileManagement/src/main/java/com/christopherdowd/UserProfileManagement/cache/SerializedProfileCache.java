@@ -0,0 +1,229 @@
+package com.christopherdowd.UserProfileManagement.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+
+import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/*
+ * Cache tier that sits in front of the "profiles" cache and stores the already
+ * encoded response body of a profile, one entry per negotiated content type.
+ * A hit is copied straight to the servlet output stream, so hot profiles are
+ * served without running Jackson or allocating a DTO on every request.
+ * Entries live in the "profileBytes" cache (sized in CacheConfig) and are evicted together with
+ * "profiles" by UserProfileServiceImpl on update and delete.
+ * Every request reads through the "profiles" cache first, which is a plain in-memory lookup: that
+ * read is what triggers its refresh-ahead for hot IDs answered from here, and the bytes are only
+ * served while they were encoded from the very DTO "profiles" currently holds. A refreshed DTO is
+ * encoded again, and a profile "profiles" no longer holds is loaded through getById, whose atomic
+ * cache load keeps an eviction that lands during the read from being undone.
+ * An entry keeps the DTO it was encoded from and gains an encoding per newly negotiated content type.
+ */
+@Component
+public class SerializedProfileCache {
+
+    public static final String CACHE_NAME = "profileBytes";
+
+    // The cache in front of getById, see CacheConfig
+    private static final String PROFILES_CACHE = "profiles";
+
+    private static final Logger logger = LoggerFactory.getLogger(SerializedProfileCache.class);
+
+    private final Cache cache;
+    private final Cache profiles;
+    private final List<HttpMessageConverter<?>> converters;
+
+    /*
+     * Constructor for SerializedProfileCache
+     * @param cacheManager used to resolve the "profileBytes" and "profiles" caches
+     * @param messageConverters the same converters Spring MVC uses to write response bodies
+     */
+    public SerializedProfileCache(CacheManager cacheManager, HttpMessageConverters messageConverters) {
+        this.cache = cacheManager.getCache(CACHE_NAME);
+        this.profiles = cacheManager.getCache(PROFILES_CACHE);
+        this.converters = messageConverters.getConverters();
+    }
+
+    /*
+     * Writes the encoded profile for the given ID to the response
+     * On a miss the profile is loaded through the supplier, encoded once for the
+     * negotiated content type and stored for subsequent requests
+     * @param id the ID of the user profile
+     * @param request used to read the Accept header
+     * @param response the response the encoded bytes are written to
+     * @param loader supplies the profile DTO when "profiles" has none and caches it there, i.e. the
+     *        @Cacheable getById (may throw ResponseStatusException)
+     */
+    public void write(String id, HttpServletRequest request, HttpServletResponse response,
+            Supplier<UserProfileResponseDto> loader) throws IOException, HttpMediaTypeNotAcceptableException {
+        List<MediaType> accepted = acceptedMediaTypes(request);
+
+        EncodedProfiles encodedProfiles = lookup(id, loader);
+        EncodedResponse encoded = encodedProfiles.find(accepted);
+
+        if (encoded == null) {
+            // Encoded from the entry's DTO; if the entry was evicted or replaced meanwhile the encoding goes with it
+            encoded = encode(encodedProfiles.profile(), accepted);
+            encodedProfiles.add(encoded);
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(encoded.contentType().toString());
+        response.setContentLength(encoded.body().length);
+        response.getOutputStream().write(encoded.body());
+    }
+
+    /*
+     * Evicts all encoded representations of the given profile
+     * @param id the ID of the user profile
+     */
+    public void evict(String id) {
+        cache.evict(id);
+    }
+
+    private EncodedProfiles lookup(String id, Supplier<UserProfileResponseDto> loader) {
+        Cache.ValueWrapper current = profiles.get(id);
+        UserProfileResponseDto profile;
+        if (current != null && current.get() instanceof UserProfileResponseDto cached) {
+            profile = cached;
+        } else {
+            // Nothing is cached for a failed load, e.g. the 404 of a missing profile
+            logger.debug("Profile cache miss for ID: {}", id);
+            profile = loader.get();
+        }
+
+        EncodedProfiles encoded = cache.get(id, EncodedProfiles.class);
+        if (encoded != null && encoded.profile() == profile) {
+            return encoded;
+        }
+        // Encoded from another DTO, or not at all; a put racing an eviction is caught by the next request's check
+        encoded = new EncodedProfiles(profile);
+        cache.put(id, encoded);
+        return encoded;
+    }
+
+    // Parses the Accept header, most specific media types first; a missing header accepts anything
+    private List<MediaType> acceptedMediaTypes(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (accept == null || accept.isBlank()) {
+            return List.of(MediaType.ALL);
+        }
+        List<MediaType> mediaTypes = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        MimeTypeUtils.sortBySpecificity(mediaTypes);
+        return mediaTypes;
+    }
+
+    /*
+     * Encodes the DTO with the first message converter able to produce one of the accepted media types
+     * The converter's own Content-Type (including charset) is kept alongside the bytes
+     */
+    @SuppressWarnings("unchecked")
+    private EncodedResponse encode(UserProfileResponseDto dto, List<MediaType> accepted)
+            throws IOException, HttpMediaTypeNotAcceptableException {
+        for (MediaType acceptedType : accepted) {
+            for (HttpMessageConverter<?> converter : converters) {
+                for (MediaType supported : converter.getSupportedMediaTypes(UserProfileResponseDto.class)) {
+                    if (!supported.isConcrete() || !acceptedType.isCompatibleWith(supported)) {
+                        continue;
+                    }
+                    BufferingOutputMessage output = new BufferingOutputMessage();
+                    ((HttpMessageConverter<Object>) converter).write(dto, supported, output);
+
+                    MediaType contentType = output.getHeaders().getContentType();
+                    return new EncodedResponse(
+                        supported,
+                        contentType != null ? contentType : supported,
+                        output.toByteArray()
+                    );
+                }
+            }
+        }
+        throw new HttpMediaTypeNotAcceptableException(accepted.toString());
+    }
+
+    /*
+     * A profile body encoded for one content type
+     * @param mediaType the media type the body was negotiated for (without parameters)
+     * @param contentType the Content-Type header to send, as produced by the converter
+     * @param body the encoded bytes
+     */
+    record EncodedResponse(MediaType mediaType, MediaType contentType, byte[] body) {
+    }
+
+    /*
+     * A profile and its encoded bodies, keyed by media type
+     * Encodings are added in place to a concurrent map, so the entry is never replaced with a put
+     * that could race an eviction
+     */
+    static final class EncodedProfiles {
+
+        private final UserProfileResponseDto profile;
+        private final Map<MediaType, EncodedResponse> byMediaType = new ConcurrentHashMap<>();
+
+        private EncodedProfiles(UserProfileResponseDto profile) {
+            this.profile = profile;
+        }
+
+        UserProfileResponseDto profile() {
+            return profile;
+        }
+
+        EncodedResponse find(List<MediaType> accepted) {
+            for (MediaType acceptedType : accepted) {
+                for (EncodedResponse encoded : byMediaType.values()) {
+                    if (acceptedType.isCompatibleWith(encoded.mediaType())) {
+                        return encoded;
+                    }
+                }
+            }
+            return null;
+        }
+
+        void add(EncodedResponse encoded) {
+            byMediaType.putIfAbsent(encoded.mediaType(), encoded);
+        }
+    }
+
+    // Collects the bytes a message converter writes, instead of sending them to the client
+    private static final class BufferingOutputMessage implements HttpOutputMessage {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        byte[] toByteArray() {
+            return body.toByteArray();
+        }
+    }
+}
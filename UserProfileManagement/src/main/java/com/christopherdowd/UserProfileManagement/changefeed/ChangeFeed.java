@@ -0,0 +1,123 @@
+package com.christopherdowd.UserProfileManagement.changefeed;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.changefeed.ProfileChange.ChangeType;
+import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
+
+/*
+ * Bounded in-memory log of the profile changes applied by this node
+ * Changes are kept in a ring buffer; once it wraps, the oldest changes are gone and a consumer
+ * resuming from before that point is told to resync instead of silently missing changes.
+ * Event IDs carry an epoch that changes on every restart, so IDs from a previous run or another
+ * node are recognized as unknown rather than mistaken for positions in this feed.
+ * Only changes made through this node are recorded, the feed is not shared between replicas.
+ */
+@Component
+public class ChangeFeed {
+
+    /*
+     * Changes read from the feed
+     * @param changes the changes after the requested position, oldest first
+     * @param overrun whether changes after the requested position were already overwritten
+     */
+    public record Batch(List<ProfileChange> changes, boolean overrun) {
+    }
+
+    // Returned by resumePoint for event IDs this feed never issued
+    public static final long UNKNOWN_POSITION = -1;
+
+    private final ProfileChange[] ring;
+    private final long epoch = System.currentTimeMillis();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    // Sequence of the next change, guarded by this
+    private long nextSequence = 1;
+
+    /*
+     * Constructor for ChangeFeed
+     * @param capacity number of most recent changes kept for resuming consumers
+     */
+    public ChangeFeed(@Value("${changefeed.capacity:10000}") int capacity) {
+        this.ring = new ProfileChange[capacity];
+    }
+
+    /*
+     * Appends a change and wakes up listeners
+     * @param type what happened
+     * @param userId the ID of the changed profile
+     * @param profile the profile after the change, null for deletions
+     */
+    public void publish(ChangeType type, String userId, UserProfileResponseDto profile) {
+        synchronized (this) {
+            long sequence = nextSequence++;
+            ring[slot(sequence)] = new ProfileChange(epoch + "-" + sequence, sequence, type, userId, profile, Instant.now());
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /*
+     * Reads the changes after a position
+     * @param afterSequence the last sequence the consumer has seen
+     * @param max the maximum number of changes returned
+     */
+    public synchronized Batch readAfter(long afterSequence, int max) {
+        long oldest = Math.max(1, nextSequence - ring.length);
+        if (afterSequence + 1 < oldest) {
+            return new Batch(List.of(), true);
+        }
+        List<ProfileChange> changes = new ArrayList<>();
+        for (long sequence = afterSequence + 1; sequence < nextSequence && changes.size() < max; sequence++) {
+            changes.add(ring[slot(sequence)]);
+        }
+        return new Batch(changes, false);
+    }
+
+    /*
+     * The sequence of the latest change, 0 if there is none
+     */
+    public synchronized long head() {
+        return nextSequence - 1;
+    }
+
+    /*
+     * Translates a Last-Event-ID into the sequence to continue after
+     * @param lastEventId the ID of the last event the consumer received, null for a new consumer
+     * @return the sequence, the current head for new consumers, or UNKNOWN_POSITION for IDs
+     *         issued by another node or before a restart
+     */
+    public long resumePoint(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return head();
+        }
+        int separator = lastEventId.indexOf('-');
+        try {
+            if (separator < 0 || Long.parseLong(lastEventId.substring(0, separator)) != epoch) {
+                return UNKNOWN_POSITION;
+            }
+            long sequence = Long.parseLong(lastEventId.substring(separator + 1));
+            return sequence >= 0 && sequence <= head() ? sequence : UNKNOWN_POSITION;
+        } catch (NumberFormatException e) {
+            return UNKNOWN_POSITION;
+        }
+    }
+
+    /*
+     * Registers a callback run on the publishing thread after every change; it must not block
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % ring.length);
+    }
+}
@@ -0,0 +1,221 @@
+package com.christopherdowd.UserProfileManagement.changefeed;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Streams the ChangeFeed to Server-Sent Events subscribers
+ * Each subscriber has its own position in the feed. A change wakes every subscriber and their
+ * pending changes are written on a small pool of sender threads, one subscriber at a time,
+ * so a slow client only holds up its own stream. A subscriber that falls further behind than
+ * the ring buffer holds gets a "reset" event and continues from the newest change.
+ */
+@Component
+public class ChangeFeedBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeedBroadcaster.class);
+
+    private static final int BATCH_SIZE = 100;
+    private static final long RECONNECT_MILLIS = 3000;
+
+    private final ChangeFeed feed;
+    private final long timeoutMillis;
+    private final int maxSubscribers;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService senders;
+    private final ScheduledExecutorService heartbeats;
+
+    /*
+     * A connected consumer and the last sequence written to it
+     */
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile long position;
+        volatile boolean resetPending;
+        volatile boolean closed;
+
+        Subscriber(SseEmitter emitter, long position) {
+            this.emitter = emitter;
+            this.position = position;
+        }
+    }
+
+    /*
+     * Constructor for ChangeFeedBroadcaster
+     * @param feed the change feed to stream
+     * @param timeout how long a stream stays open before the client has to reconnect
+     * @param heartbeat interval of keep-alive comments that stop proxies from closing idle streams
+     * @param maxSubscribers concurrent streams accepted by this node
+     * @param senderThreads threads writing events to subscribers
+     */
+    public ChangeFeedBroadcaster(
+            ChangeFeed feed,
+            @Value("${changefeed.timeout:30m}") Duration timeout,
+            @Value("${changefeed.heartbeat:15s}") Duration heartbeat,
+            @Value("${changefeed.max-subscribers:1000}") int maxSubscribers,
+            @Value("${changefeed.sender-threads:4}") int senderThreads) {
+        this.feed = feed;
+        this.timeoutMillis = timeout.toMillis();
+        this.maxSubscribers = maxSubscribers;
+        this.senders = Executors.newFixedThreadPool(senderThreads, daemonThreads("change-feed-sender-"));
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(daemonThreads("change-feed-heartbeat-"));
+        heartbeats.scheduleAtFixedRate(this::sendHeartbeats, heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+        feed.addListener(this::wakeAll);
+    }
+
+    /*
+     * Opens a stream for a new or resuming consumer
+     * @param lastEventId the Last-Event-ID sent by a reconnecting client, or null
+     * @return the emitter to return from the controller
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many change feed subscribers");
+        }
+
+        long position = feed.resumePoint(lastEventId);
+        Subscriber subscriber = new Subscriber(new SseEmitter(timeoutMillis), position);
+        if (position == ChangeFeed.UNKNOWN_POSITION) {
+            subscriber.position = feed.head();
+            subscriber.resetPending = true;
+        }
+
+        subscriber.emitter.onCompletion(() -> remove(subscriber));
+        subscriber.emitter.onTimeout(() -> remove(subscriber));
+        subscriber.emitter.onError(error -> remove(subscriber));
+        subscribers.add(subscriber);
+
+        try {
+            subscriber.emitter.send(SseEmitter.event().reconnectTime(RECONNECT_MILLIS).comment("connected"));
+        } catch (IOException e) {
+            remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+            return subscriber.emitter;
+        }
+        schedule(subscriber);
+        return subscriber.emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private void wakeAll() {
+        for (Subscriber subscriber : subscribers) {
+            schedule(subscriber);
+        }
+    }
+
+    // At most one send task per subscriber is queued or running, so its events stay in order
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.closed || !subscriber.scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            senders.execute(() -> drain(subscriber));
+        } catch (RejectedExecutionException e) {
+            subscriber.scheduled.set(false);
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            if (subscriber.resetPending) {
+                sendReset(subscriber);
+            }
+            while (!subscriber.closed) {
+                ChangeFeed.Batch batch = feed.readAfter(subscriber.position, BATCH_SIZE);
+                if (batch.overrun()) {
+                    subscriber.position = feed.head();
+                    sendReset(subscriber);
+                    continue;
+                }
+                if (batch.changes().isEmpty()) {
+                    break;
+                }
+                for (ProfileChange change : batch.changes()) {
+                    subscriber.emitter.send(SseEmitter.event()
+                        .id(change.id())
+                        .name(change.type().name().toLowerCase())
+                        .data(change, MediaType.APPLICATION_JSON));
+                    subscriber.position = change.sequence();
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // The client went away, the container completes the emitter
+            logger.debug("Dropping change feed subscriber: {}", e.getMessage());
+            remove(subscriber);
+        } finally {
+            subscriber.scheduled.set(false);
+        }
+        // A change published while the flag was still set would otherwise wait for the next one
+        if (!subscriber.closed && feed.head() > subscriber.position) {
+            schedule(subscriber);
+        }
+    }
+
+    // Tells the client it missed changes and has to reload the full list before applying further events
+    private void sendReset(Subscriber subscriber) throws IOException {
+        subscriber.resetPending = false;
+        subscriber.emitter.send(SseEmitter.event().name("reset").data(Map.of("reason", "position unavailable, reload /api/users")));
+    }
+
+    private void sendHeartbeats() {
+        for (Subscriber subscriber : subscribers) {
+            senders.execute(() -> {
+                try {
+                    subscriber.emitter.send(SseEmitter.event().comment("keep-alive"));
+                } catch (IOException | IllegalStateException e) {
+                    remove(subscriber);
+                }
+            });
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscriber.closed = true;
+        subscribers.remove(subscriber);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdownNow();
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        subscribers.clear();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger number = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
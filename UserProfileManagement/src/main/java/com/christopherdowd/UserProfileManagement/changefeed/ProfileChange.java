@@ -0,0 +1,28 @@
+package com.christopherdowd.UserProfileManagement.changefeed;
+
+import java.time.Instant;
+
+import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/*
+ * A change to a user profile, as delivered on the change feed
+ * @param id the SSE event ID, "<epoch>-<sequence>"; clients send it back as Last-Event-ID to resume
+ * @param sequence position of the change in this node's feed
+ * @param type what happened
+ * @param userId the ID of the changed profile
+ * @param profile the profile after the change, null for deletions
+ * @param occurredAt when the change was applied
+ */
+public record ProfileChange(
+        @JsonIgnore String id,
+        @JsonIgnore long sequence,
+        ChangeType type,
+        String userId,
+        UserProfileResponseDto profile,
+        Instant occurredAt) {
+
+    public enum ChangeType {
+        CREATED, UPDATED, DELETED
+    }
+}
@@ -0,0 +1,88 @@
+package com.christopherdowd.UserProfileManagement.config;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.christopherdowd.UserProfileManagement.cache.JitteredExpiry;
+import com.christopherdowd.UserProfileManagement.cache.ProfileCacheLoader;
+import com.christopherdowd.UserProfileManagement.cache.SerializedProfileCache;
+import com.christopherdowd.UserProfileManagement.hotkeys.HotKeyTracker;
+import com.christopherdowd.UserProfileManagement.service.impl.ProfileReader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+
+/*
+ * Replaces the spec-configured "profiles" cache with a refresh-ahead loading cache
+ * Entries are loaded by getById; those older than the refresh threshold are reloaded in the background
+ * on their next read while the cached value is returned, so hot profiles never pay a synchronous Datastore read. Expiry is
+ * jittered per entry so a batch of entries loaded together doesn't expire together.
+ * Keys pinned by the HotKeyTracker weigh nothing, so the size bound never evicts them.
+ * The "profileBytes" cache of SerializedProfileCache gets its own size and TTL. It reads through
+ * "profiles" on every hit and re-encodes when that holds another DTO, so its entries follow the
+ * refreshes and jittered expiry above and the TTL only drops bytes of profiles no longer requested.
+ * The other caches keep the spring.cache.caffeine.spec settings.
+ */
+@Configuration
+public class CacheConfig {
+
+    public static final String PROFILES_CACHE = "profiles";
+
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolExecutor profileRefreshExecutor(
+            @Value("${cache.profiles.refresh-threads:2}") int threads,
+            @Value("${cache.profiles.refresh-queue-capacity:1000}") int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        // Bounded queue and AbortPolicy: ProfileCacheLoader skips refreshes that don't fit
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "profile-cache-refresh-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> refreshAheadProfilesCache(
+            ProfileReader profileReader,
+            ThreadPoolExecutor profileRefreshExecutor,
+            HotKeyTracker hotKeys,
+            @Value("${cache.profiles.maximum-size:10000}") long maximumSize,
+            @Value("${cache.profiles.expire-after-write:10m}") Duration expireAfterWrite,
+            @Value("${cache.profiles.refresh-after-write:5m}") Duration refreshAfterWrite,
+            @Value("${cache.profiles.ttl-jitter:0.1}") double ttlJitter) {
+        return cacheManager -> {
+            LoadingCache<Object, Object> profiles = Caffeine.newBuilder()
+                .maximumWeight(maximumSize)
+                .weigher((key, value) -> hotKeys.isPinned(key) ? 0 : 1)
+                .expireAfter(new JitteredExpiry<>(expireAfterWrite, ttlJitter))
+                .refreshAfterWrite(refreshAfterWrite)
+                .recordStats()
+                .build(new ProfileCacheLoader(profileReader, profileRefreshExecutor));
+            // Weights are computed on write, so rewrite entries whose pin state changed
+            hotKeys.addPinListener(key -> profiles.asMap().computeIfPresent(key, (k, value) -> value));
+            cacheManager.registerCustomCache(PROFILES_CACHE, profiles);
+        };
+    }
+
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> serializedProfilesCache(
+            @Value("${cache.profile-bytes.maximum-size:10000}") long maximumSize,
+            @Value("${cache.profile-bytes.expire-after-write:10m}") Duration expireAfterWrite) {
+        return cacheManager -> cacheManager.registerCustomCache(SerializedProfileCache.CACHE_NAME, Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(expireAfterWrite)
+            .recordStats()
+            .build());
+    }
+}
@@ -0,0 +1,44 @@
+package com.christopherdowd.UserProfileManagement.config;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.convert.converter.Converter;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.spring.data.datastore.core.convert.DatastoreCustomConversions;
+
+/*
+ * Datastore mapping settings
+ * Instants are stored as native Datastore timestamps, so they can be filtered and sorted on.
+ */
+@Configuration
+@Profile("!embedded")
+public class DatastoreConfig {
+
+    @Bean
+    public DatastoreCustomConversions datastoreCustomConversions() {
+        return new DatastoreCustomConversions(List.of(InstantToTimestamp.INSTANCE, TimestampToInstant.INSTANCE));
+    }
+
+    enum InstantToTimestamp implements Converter<Instant, Timestamp> {
+        INSTANCE;
+
+        @Override
+        public Timestamp convert(Instant source) {
+            return Timestamp.ofTimeSecondsAndNanos(source.getEpochSecond(), source.getNano());
+        }
+    }
+
+    enum TimestampToInstant implements Converter<Timestamp, Instant> {
+        INSTANCE;
+
+        @Override
+        public Instant convert(Timestamp source) {
+            return Instant.ofEpochSecond(source.getSeconds(), source.getNanos());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.christopherdowd.UserProfileManagement.config;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import com.christopherdowd.UserProfileManagement.filter.AdaptiveConcurrencyLimiter;
+import com.christopherdowd.UserProfileManagement.filter.ConcurrencyLimitFilter;
+import com.christopherdowd.UserProfileManagement.filter.RateLimitFilter;
+import com.christopherdowd.UserProfileManagement.filter.RateLimitFilter.Endpoint;
+import com.christopherdowd.UserProfileManagement.filter.RateLimitFilter.Limit;
+
+/*
+ * Registers the servlet filters that protect the /api/users endpoints
+ * Limits are read from application.yml, falling back to the defaults below
+ */
+@Configuration
+public class FilterConfig {
+
+    private static final String USERS_URL_PATTERN = "/api/users/*";
+
+    /*
+     * Per-client rate limiting runs first, so abusive clients are turned away
+     * before they take a slot from the concurrency limiter
+     * An endpoint with a capacity of 0 is not rate limited
+     * Off unless rate.limit.enabled is set: without configured API keys and proxy hops every client
+     * behind a load balancer would share the proxy's bucket
+     */
+    @Bean
+    @ConditionalOnProperty(name = "rate.limit.enabled", havingValue = "true")
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(
+            @Value("${rate.limit.list.capacity:20}") long listCapacity,
+            @Value("${rate.limit.list.refill-per-second:5}") double listRefill,
+            @Value("${rate.limit.get-by-id.capacity:200}") long getByIdCapacity,
+            @Value("${rate.limit.get-by-id.refill-per-second:100}") double getByIdRefill,
+            @Value("${rate.limit.create.capacity:20}") long createCapacity,
+            @Value("${rate.limit.create.refill-per-second:5}") double createRefill,
+            @Value("${rate.limit.modify.capacity:50}") long modifyCapacity,
+            @Value("${rate.limit.modify.refill-per-second:20}") double modifyRefill,
+            @Value("${rate.limit.max-clients:100000}") long maxClients,
+            @Value("${rate.limit.idle-timeout:10m}") Duration idleTimeout,
+            @Value("${rate.limit.api-keys:}") Set<String> apiKeys,
+            @Value("${rate.limit.trusted-proxy-hops:0}") int trustedProxyHops) {
+        Map<Endpoint, Limit> limits = new EnumMap<>(Endpoint.class);
+        addLimit(limits, Endpoint.LIST, listCapacity, listRefill);
+        addLimit(limits, Endpoint.GET_BY_ID, getByIdCapacity, getByIdRefill);
+        addLimit(limits, Endpoint.CREATE, createCapacity, createRefill);
+        addLimit(limits, Endpoint.MODIFY, modifyCapacity, modifyRefill);
+
+        FilterRegistrationBean<RateLimitFilter> registration =
+            new FilterRegistrationBean<>(new RateLimitFilter(limits, maxClients, idleTimeout, apiKeys, trustedProxyHops));
+        registration.addUrlPatterns(USERS_URL_PATTERN);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "concurrency.limit.enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            @Value("${concurrency.limit.read.initial:20}") int readInitial,
+            @Value("${concurrency.limit.read.min:4}") int readMin,
+            @Value("${concurrency.limit.read.max:200}") int readMax,
+            @Value("${concurrency.limit.write.initial:10}") int writeInitial,
+            @Value("${concurrency.limit.write.min:2}") int writeMin,
+            @Value("${concurrency.limit.write.max:100}") int writeMax,
+            @Value("${concurrency.limit.retry-after-seconds:1}") int retryAfterSeconds) {
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(
+            new AdaptiveConcurrencyLimiter("read", readInitial, readMin, readMax),
+            new AdaptiveConcurrencyLimiter("write", writeInitial, writeMin, writeMax),
+            retryAfterSeconds);
+
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns(USERS_URL_PATTERN);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 20);
+        return registration;
+    }
+
+    private static void addLimit(Map<Endpoint, Limit> limits, Endpoint endpoint, long capacity, double refillPerSecond) {
+        if (capacity > 0) {
+            limits.put(endpoint, new Limit(capacity, refillPerSecond));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.christopherdowd.UserProfileManagement.config;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+import com.christopherdowd.UserProfileManagement.changefeed.ProfileChange;
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.dto.UserCreationMessageDto;
+import com.christopherdowd.UserProfileManagement.dto.UserProfileRequestDto;
+import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
+import com.christopherdowd.UserProfileManagement.dto.UserProfileUpdateRequestDto;
+import com.christopherdowd.UserProfileManagement.hotkeys.HotKeyTracker;
+import com.christopherdowd.UserProfileManagement.job.JobLease;
+import com.christopherdowd.UserProfileManagement.stats.CounterShard;
+
+/*
+ * Reflection hints for the native image build (mvn -Pnative native:compile)
+ * Controller signatures are covered by Spring AOT on its own, but the Pub/Sub message DTO is
+ * (de)serialized through the ObjectMapper directly, change feed events are written by SseEmitter,
+ * and the Datastore mapping reads and writes UserProfile fields reflectively.
+ */
+public class NativeRuntimeHints implements RuntimeHintsRegistrar {
+
+    private final BindingReflectionHintsRegistrar bindingHints = new BindingReflectionHintsRegistrar();
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        // Lombok generated accessors, constructors and builders of the JSON payloads
+        bindingHints.registerReflectionHints(hints.reflection(),
+            UserCreationMessageDto.class,
+            UserProfileRequestDto.class,
+            UserProfileUpdateRequestDto.class,
+            UserProfileResponseDto.class,
+            ProfileChange.class,
+            HotKeyTracker.HotKey.class);
+
+        // The Datastore entity mapping instantiates the entities and sets their fields directly
+        for (Class<?> entity : new Class<?>[] { UserProfile.class, CounterShard.class, JobLease.class }) {
+            hints.reflection().registerType(entity,
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                MemberCategory.INVOKE_DECLARED_METHODS,
+                MemberCategory.DECLARED_FIELDS);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.christopherdowd.UserProfileManagement.config;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aot.AotDetector;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.NativeDetector;
+import org.springframework.stereotype.Component;
+
+/*
+ * Logs how long startup took and the resident set size once the application is ready
+ * The startup mode is reported with the numbers, so runs of the plain jar, the CDS archive
+ * (mvn -Pcds) and the native image (mvn -Pnative native:compile) can be compared from their logs:
+ *   Started in JVM+CDS mode: ready 1870 ms after process start (context 1210 ms), RSS 212 MiB
+ */
+@Component
+public class StartupReporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupReporter.class);
+
+    private static final Path PROC_STATUS = Path.of("/proc/self/status");
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void report(ApplicationReadyEvent event) {
+        // Measured from process start, so JVM boot and class loading (what CDS saves) are included
+        long sinceProcessStart = ProcessHandle.current().info().startInstant()
+            .map(start -> Duration.between(start, Instant.now()).toMillis())
+            .orElse(-1L);
+        long contextMillis = event.getTimeTaken() != null ? event.getTimeTaken().toMillis() : -1;
+        long rss = residentSetBytes();
+
+        logger.info("Started in {} mode: ready {} ms after process start (context {} ms), RSS {}",
+            mode(), sinceProcessStart, contextMillis, rss >= 0 ? (rss >> 20) + " MiB" : "unknown");
+    }
+
+    static String mode() {
+        if (NativeDetector.inNativeImage()) {
+            return "native";
+        }
+        String mode = AotDetector.useGeneratedArtifacts() ? "JVM+AOT" : "JVM";
+        List<String> jvmArgs = ManagementFactory.getRuntimeMXBean().getInputArguments();
+        if (jvmArgs.stream().anyMatch(arg -> arg.startsWith("-XX:SharedArchiveFile"))) {
+            mode += "+CDS";
+        }
+        return mode;
+    }
+
+    // Read from procfs, -1 where that isn't available (e.g. macOS dev machines)
+    static long residentSetBytes() {
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS)) {
+                if (line.startsWith("VmRSS:")) {
+                    // "VmRSS:    217264 kB"
+                    String kilobytes = line.substring("VmRSS:".length()).trim().split("\\s+")[0];
+                    return Long.parseLong(kilobytes) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Could not read RSS from {}: {}", PROC_STATUS, e.getMessage());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,71 @@
+package com.christopherdowd.UserProfileManagement.config;
+
+import java.lang.reflect.Method;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.ReflectionUtils;
+
+import com.christopherdowd.UserProfileManagement.pubsub.MessageTracing;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.aop.ObservedAspect;
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+
+/*
+ * Tracing of the create path: HTTP request, service, Pub/Sub publish, subscriber and repository calls
+ * HTTP server spans come from Spring MVC, the service from @Observed, Pub/Sub from MessageTracing and
+ * repository calls from the advisor below. Spans are exported through OpenTelemetry:
+ *   management.otlp.tracing.endpoint=http://localhost:4318/v1/traces  to a local collector
+ *   tracing.export.log.enabled=true  to the application log
+ * Set management.tracing.sampling.probability=1.0 to trace every request, the default samples 10%.
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    public ObservedAspect observedAspect(ObservationRegistry observationRegistry) {
+        return new ObservedAspect(observationRegistry);
+    }
+
+    @Bean
+    public MessageTracing messageTracing(ObservationRegistry observationRegistry, MeterRegistry meterRegistry) {
+        return new MessageTracing(observationRegistry, meterRegistry);
+    }
+
+    /*
+     * Observes every UserProfileRepository call, for whichever backend is active
+     * The registry is looked up lazily, the advisor is created before most other beans
+     */
+    @Bean
+    public static Advisor userProfileRepositoryObservationAdvisor(ObjectProvider<ObservationRegistry> observationRegistry) {
+        StaticMethodMatcherPointcut pointcut = new StaticMethodMatcherPointcut() {
+            @Override
+            public boolean matches(Method method, Class<?> targetClass) {
+                return UserProfileRepository.class.isAssignableFrom(targetClass)
+                    && ReflectionUtils.findMethod(UserProfileRepository.class, method.getName(), method.getParameterTypes()) != null;
+            }
+        };
+        MethodInterceptor interceptor = invocation -> Observation
+            .createNotStarted("user.repository", observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP))
+            .contextualName("repository " + invocation.getMethod().getName())
+            .lowCardinalityKeyValue("method", invocation.getMethod().getName())
+            .observeChecked(invocation::proceed);
+        return new DefaultPointcutAdvisor(pointcut, interceptor);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "tracing.export.log.enabled", havingValue = "true")
+    public LoggingSpanExporter loggingSpanExporter() {
+        return LoggingSpanExporter.create();
+    }
+}
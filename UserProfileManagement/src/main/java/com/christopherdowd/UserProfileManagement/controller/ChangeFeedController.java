@@ -0,0 +1,46 @@
+package com.christopherdowd.UserProfileManagement.controller;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.christopherdowd.UserProfileManagement.changefeed.ChangeFeedBroadcaster;
+
+/*
+ * REST controller for the profile change feed
+ * Replaces polling GET /api/users: clients open a Server-Sent Events stream and receive
+ * "created", "updated" and "deleted" events as they happen. Browsers' EventSource reconnects
+ * on its own and sends the last event ID back, so no events are missed across reconnects.
+ */
+@RestController
+public class ChangeFeedController {
+
+    public static final String PATH = "/api/users/changes";
+
+    private final ChangeFeedBroadcaster broadcaster;
+
+    /*
+     * Constructor for ChangeFeedController
+     * @param broadcaster manages the open streams
+     */
+    public ChangeFeedController(ChangeFeedBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    /*
+     * Opens a stream of profile changes
+     * A "reset" event means changes were missed (the ID is too old or from another node);
+     * the client should reload GET /api/users and then apply the following events
+     * @param lastEventId the Last-Event-ID header sent by reconnecting clients
+     * @param lastEventIdParam the same as a query parameter, for clients that can't set headers
+     * @return the SSE stream
+     */
+    @GetMapping(PATH)
+    public SseEmitter changes(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        return broadcaster.subscribe(lastEventId != null ? lastEventId : lastEventIdParam);
+    }
+}
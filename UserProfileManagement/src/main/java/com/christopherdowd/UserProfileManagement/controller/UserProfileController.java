@@ -1,9 +1,15 @@
 package com.christopherdowd.UserProfileManagement.controller;
 
+import java.io.IOException;
 import java.net.URI;
+import java.time.Instant;
 import java.util.List;
 
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -11,14 +17,22 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.christopherdowd.UserProfileManagement.cache.SerializedProfileCache;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileRequestDto;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileUpdateRequestDto;
+import com.christopherdowd.UserProfileManagement.hotkeys.HotKeyTracker;
+import com.christopherdowd.UserProfileManagement.hotkeys.HotKeyTracker.Operation;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileQuery;
 import com.christopherdowd.UserProfileManagement.service.UserProfileService;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 
 /**
@@ -29,32 +43,68 @@ import jakarta.validation.Valid;
 public class UserProfileController {
     
     private final UserProfileService service;
+    private final SerializedProfileCache serializedProfiles;
+    private final HotKeyTracker hotKeys;
 
     /*
      * Constructor for UserProfile Controller
      * @param service for UserProfileService to be injected
+     * @param serializedProfiles cache of already encoded profile responses
+     * @param hotKeys counts requests per profile ID, including those answered from cache
      */
-    public UserProfileController(UserProfileService service) {
+    public UserProfileController(UserProfileService service, SerializedProfileCache serializedProfiles, HotKeyTracker hotKeys) {
         this.service = service;
+        this.serializedProfiles = serializedProfiles;
+        this.hotKeys = hotKeys;
     }
 
     /*!
-     * Retrieves a list of all user profiles
+     * Retrieves a list of user profiles, all of them unless filters, a sort or a limit are given
+     * Filtering, sorting and the limit are done by the database, see UserProfileQuery for the
+     * combinations it supports; unsupported ones are rejected with HTTP 400
+     * @param username only profiles with exactly this username
+     * @param email only profiles with exactly this email
+     * @param usernamePrefix only profiles whose username starts with this
+     * @param emailPrefix only profiles whose email starts with this
+     * @param createdAfter only profiles created after this ISO-8601 instant
+     * @param sort "property" or "property,desc" with property one of username, email, createdAt
+     * @param limit maximum number of profiles returned
      * @return a list of UserProfileResponseDto
      */
     @GetMapping
-    public List<UserProfileResponseDto> getAll() {
-        return service.getAll();
+    public List<UserProfileResponseDto> getAll(
+            @RequestParam(required = false) String username,
+            @RequestParam(required = false) String email,
+            @RequestParam(required = false) String usernamePrefix,
+            @RequestParam(required = false) String emailPrefix,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant createdAfter,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false, defaultValue = "0") int limit) {
+        if (username == null && email == null && usernamePrefix == null && emailPrefix == null
+                && createdAfter == null && sort == null && limit == 0) {
+            return service.getAll();
+        }
+
+        UserProfileQuery query;
+        try {
+            query = new UserProfileQuery(username, email, usernamePrefix, emailPrefix, createdAfter, parseSort(sort), limit);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return service.search(query);
     }
 
     /* 
      * Retrieves a single user profile by its ID
+     * The pre-serialized body is written directly to the response, so cache hits skip Jackson entirely
      * @param {id} the ID of the user profile to retrieve
-     * @return the UserProfileResponseDto if found, if not, throw exception
+     * writes the UserProfileResponseDto if found, if not, throw exception
     */
     @GetMapping("/{id}")
-    public UserProfileResponseDto getById(@PathVariable String id) {
-        return service.getById(id);
+    public void getById(@PathVariable String id, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, HttpMediaTypeNotAcceptableException {
+        hotKeys.record(Operation.GET, id);
+        serializedProfiles.write(id, request, response, () -> service.getById(id));
     }
 
     /* 
@@ -86,9 +136,23 @@ public class UserProfileController {
     */
     @PutMapping("/{id}")
     public UserProfileResponseDto update(@PathVariable String id, @RequestBody @Valid UserProfileUpdateRequestDto dto) {
+        hotKeys.record(Operation.UPDATE, id);
         return service.update(id, dto);
     }
 
+    // Parses "property" or "property,asc|desc"
+    private static Sort parseSort(String sort) {
+        if (sort == null || sort.isBlank()) {
+            return Sort.unsorted();
+        }
+        String[] parts = sort.split(",");
+        if (parts.length > 2) {
+            throw new IllegalArgumentException("sort must be property or property,asc|desc");
+        }
+        Sort.Direction direction = parts.length == 2 ? Sort.Direction.fromString(parts[1].trim()) : Sort.Direction.ASC;
+        return Sort.by(direction, parts[0].trim());
+    }
+
     /*
      * Deletes user by ID
      * @param {id} the ID of user profile to delete
@@ -99,4 +163,14 @@ public class UserProfileController {
         service.delete(id);
         return ResponseEntity.noContent().build();
     }
+
+    /*
+     * Restores a soft-deleted user within its grace period
+     * @param {id} the ID of the user profile to restore
+     * @return the restored UserProfileResponseDto
+     */
+    @PostMapping("/{id}/restore")
+    public UserProfileResponseDto restore(@PathVariable String id) {
+        return service.restore(id);
+    }
 }
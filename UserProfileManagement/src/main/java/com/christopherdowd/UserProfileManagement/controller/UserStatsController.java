@@ -0,0 +1,39 @@
+package com.christopherdowd.UserProfileManagement.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.christopherdowd.UserProfileManagement.dto.UserStatsResponseDto;
+import com.christopherdowd.UserProfileManagement.stats.UserStatistics;
+
+/*
+ * REST controller for user statistics
+ * Serves counters maintained as users are created, updated and deleted, so dashboards no longer
+ * need to page through GET /api/users. Figures lag writes by up to
+ * stats.flush-interval plus stats.refresh-interval.
+ */
+@RestController
+public class UserStatsController {
+
+    public static final String PATH = "/api/users/stats";
+
+    private final UserStatistics statistics;
+
+    /*
+     * Constructor for UserStatsController
+     * @param statistics holds the precomputed statistics
+     */
+    public UserStatsController(UserStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /*
+     * Total users, creates and deletes per minute and users per email domain
+     * @return the statistics as of the last refresh
+     */
+    @GetMapping(PATH)
+    public ResponseEntity<UserStatsResponseDto> getStats() {
+        return ResponseEntity.ok(statistics.current());
+    }
+}
@@ -1,5 +1,7 @@
 package com.christopherdowd.UserProfileManagement.domain;
 
+import java.time.Instant;
+
 import org.springframework.data.annotation.Id;
 
 import com.google.cloud.spring.data.datastore.core.mapping.Entity;
@@ -12,7 +14,7 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 @Entity(name="users")
 public class UserProfile { 
 
@@ -25,4 +27,13 @@ public class UserProfile {
 
     private String encryptedSocialSecurityNumber;
 
+    // Keyed HMAC of the SSN, indexed so duplicates can be found without decrypting
+    private String ssnBlindIndex;
+
+    // When the profile was persisted; absent on profiles stored before it was introduced
+    private Instant createdAt;
+
+    // Set when the profile was soft-deleted; tombstoned profiles read as absent until restored or purged
+    private Instant deletedAt;
+
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package com.christopherdowd.UserProfileManagement.domain;
+
+/*
+ * The fields of a UserProfile that responses expose
+ * Returned by the projection reads of UserProfileRepository. On Datastore these run as projection
+ * queries, so the encrypted SSN and the blind index are neither transferred nor decoded.
+ */
+public interface UserProfileSummary {
+
+    String getId();
+
+    String getUsername();
+
+    String getEmail();
+
+    static UserProfileSummary of(String id, String username, String email) {
+        return new Values(id, username, email);
+    }
+
+    static UserProfileSummary of(UserProfile user) {
+        return new Values(user.getId(), user.getUsername(), user.getEmail());
+    }
+
+    /*
+     * Plain implementation for backends that read the whole entity anyway, and for tests
+     */
+    record Values(String id, String username, String email) implements UserProfileSummary {
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getUsername() {
+            return username;
+        }
+
+        @Override
+        public String getEmail() {
+            return email;
+        }
+    }
+}
@@ -14,4 +14,5 @@ public class UserCreationMessageDto {
     private String username;
     private String email;
     private String encryptedSocialSecurityNumber;
+    private String ssnBlindIndex;
 }
@@ -0,0 +1,28 @@
+package com.christopherdowd.UserProfileManagement.dto;
+
+import java.time.Instant;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserStatsResponseDto {
+
+    private long totalUsers;
+
+    private double createsPerMinute;
+
+    private double deletesPerMinute;
+
+    // Largest domains first
+    private Map<String, Long> usersByEmailDomain;
+
+    // When the counters were last read from storage
+    private Instant asOf;
+}
@@ -0,0 +1,155 @@
+package com.christopherdowd.UserProfileManagement.existence;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.repository.UserIdScanner;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Per-node Bloom filter of the user IDs that exist, for answering lookups of unknown IDs without a read
+ * The filter is built from a keys-only scan when the application is ready and rebuilt every
+ * rebuild-interval, which also drops deleted IDs. Until the first build completes every ID is
+ * reported as possibly existing. IDs are added as this node issues them (create) and persists
+ * them (subscriber); IDs added while a rebuild runs go into both the old and the new filter.
+ * It is checked before any read by ProfileReader, which serves getById and the refreshes of the
+ * "profiles" cache, and by update and delete.
+ *
+ * The filter only knows the creates this node has seen: a user created through another instance
+ * and persisted by its subscriber is unknown here until the next rebuild. So enable it only where
+ * that is acceptable or impossible, e.g. a single instance or the embedded profile, or keep the
+ * rebuild interval short. Disabled by default (existence-filter.enabled).
+ */
+@Component
+public class KnownUserIds {
+
+    private static final Logger logger = LoggerFactory.getLogger(KnownUserIds.class);
+
+    private final UserIdScanner scanner;
+    private final boolean enabled;
+    private final long expectedIds;
+    private final double falsePositiveRate;
+    private final Duration rebuildInterval;
+    private final Counter shortCircuits;
+
+    private volatile BloomFilter current;
+    // The filter being built, receives IDs added during a rebuild
+    private volatile BloomFilter building;
+    private volatile long lastScanned;
+    private ScheduledExecutorService rebuilder;
+
+    /*
+     * Constructor for KnownUserIds
+     * @param scanner for streaming all user IDs
+     * @param meterRegistry for counting lookups answered by the filter
+     * @param enabled whether lookups consult the filter at all
+     * @param expectedIds minimum number of IDs the filter is sized for; rebuilds size for twice the IDs found
+     * @param falsePositiveRate share of unknown IDs still passed through to the repository
+     * @param rebuildInterval how often the filter is rebuilt from a scan
+     */
+    public KnownUserIds(
+            UserIdScanner scanner,
+            MeterRegistry meterRegistry,
+            @Value("${existence-filter.enabled:false}") boolean enabled,
+            @Value("${existence-filter.expected-ids:1000000}") long expectedIds,
+            @Value("${existence-filter.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${existence-filter.rebuild-interval:1h}") Duration rebuildInterval) {
+        this.scanner = scanner;
+        this.enabled = enabled;
+        this.expectedIds = expectedIds;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildInterval = rebuildInterval;
+        this.shortCircuits = Counter.builder("user.existence.filter.short_circuits")
+            .description("Lookups of user IDs answered as absent without reading the repository")
+            .register(meterRegistry);
+    }
+
+    /*
+     * Builds the filter in the background and schedules the periodic rebuild
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "existence-filter-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebuilder.scheduleWithFixedDelay(() -> {
+            try {
+                rebuild();
+            } catch (Exception e) {
+                // Keep answering from the previous filter
+                logger.error("Rebuilding the user ID existence filter failed: {}", e.getMessage(), e);
+            }
+        }, 0, rebuildInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /*
+     * Whether the user might exist
+     * False means the ID was definitely neither scanned nor added since, and is counted as short-circuited.
+     */
+    public boolean mightExist(String id) {
+        BloomFilter filter = current;
+        if (filter == null || filter.mightContain(id)) {
+            return true;
+        }
+        shortCircuits.increment();
+        return false;
+    }
+
+    /*
+     * Adds a user ID; call after the profile was saved, so a concurrently starting scan can't miss it
+     * The filter being built is read first: a rebuild that swaps it in afterwards has it received the
+     * ID, and one that swapped it in before leaves it as the current filter read next.
+     */
+    public void add(String id) {
+        BloomFilter next = building;
+        if (next != null) {
+            next.add(id);
+        }
+        BloomFilter filter = current;
+        if (filter != null) {
+            filter.add(id);
+        }
+    }
+
+    /*
+     * Replaces the filter with one built from a scan of all IDs
+     */
+    void rebuild() {
+        long startNanos = System.nanoTime();
+        // Leave room for growth until the next rebuild
+        BloomFilter next = new BloomFilter(Math.max(expectedIds, 2 * lastScanned), falsePositiveRate);
+        building = next;
+        try {
+            lastScanned = scanner.forEachId(next::add);
+            current = next;
+        } finally {
+            building = null;
+        }
+        logger.info("Built user ID existence filter from {} IDs ({} KiB, {} hashes) in {} ms", lastScanned,
+            next.bitSize() / 8 / 1024, next.hashCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+}
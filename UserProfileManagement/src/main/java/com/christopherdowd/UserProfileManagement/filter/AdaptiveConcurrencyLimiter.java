@@ -0,0 +1,150 @@
+package com.christopherdowd.UserProfileManagement.filter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Concurrency limiter that adapts its limit to observed latency (gradient style, with AIMD backoff).
+ * A fast moving average of request latency is compared with a slow moving baseline:
+ * while they agree the limit grows by roughly sqrt(limit), once latency rises above the
+ * baseline the limit shrinks proportionally, and failed requests cut it multiplicatively.
+ * Acquiring a permit is a single CAS on the in-flight counter, so the request path never blocks.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    // Weight of a new sample in the short and long latency averages
+    private static final double SHORT_RTT_ALPHA = 0.2;
+    private static final double LONG_RTT_ALPHA = 0.002;
+
+    // How much the short latency may exceed the baseline before the limit starts to shrink
+    private static final double RTT_TOLERANCE = 1.5;
+
+    // Never shrink by more than half in a single gradient step
+    private static final double MIN_GRADIENT = 0.5;
+
+    // Multiplicative decrease applied when a request fails
+    private static final double BACKOFF_RATIO = 0.9;
+
+    // Fraction of the computed limit that is applied per update, to damp oscillation
+    private static final double SMOOTHING = 0.2;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    // Only one thread adjusts the limit at a time; others skip their sample instead of waiting
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    private volatile double limit;
+    private double shortRttNanos;
+    private double longRttNanos;
+
+    /*
+     * Constructor for AdaptiveConcurrencyLimiter
+     * @param name used in logs and metrics to tell limiters apart
+     * @param initialLimit the number of concurrent requests allowed before any latency is observed
+     * @param minLimit the limit never drops below this value
+     * @param maxLimit the limit never grows above this value
+     */
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limits for " + name
+                + ": initial=" + initialLimit + ", min=" + minLimit + ", max=" + maxLimit);
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /*
+     * Tries to reserve a slot for a request
+     * @return true if the request may proceed, in which case release must be called once it completes
+     */
+    public boolean tryAcquire() {
+        int currentLimit = (int) limit;
+        while (true) {
+            int current = inFlight.get();
+            if (current >= currentLimit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /*
+     * Releases a slot and feeds the request's latency into the limit
+     * @param rttNanos how long the request took
+     * @param dropped true if the request failed in a way that indicates overload
+     */
+    public void release(long rttNanos, boolean dropped) {
+        int inFlightAtCompletion = inFlight.getAndDecrement();
+
+        if (!updateLock.tryLock()) {
+            return;
+        }
+        try {
+            limit = nextLimit(rttNanos, dropped, inFlightAtCompletion);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    // Called with updateLock held
+    private double nextLimit(long rttNanos, boolean dropped, int inFlightAtCompletion) {
+        double current = limit;
+
+        if (dropped) {
+            return Math.max(minLimit, current * BACKOFF_RATIO);
+        }
+
+        if (longRttNanos == 0) {
+            shortRttNanos = rttNanos;
+            longRttNanos = rttNanos;
+            return current;
+        }
+
+        shortRttNanos += SHORT_RTT_ALPHA * (rttNanos - shortRttNanos);
+        longRttNanos += LONG_RTT_ALPHA * (rttNanos - longRttNanos);
+
+        // After a latency improvement let the baseline catch up quickly instead of over-admitting
+        if (longRttNanos > 2 * shortRttNanos) {
+            longRttNanos *= 0.95;
+        }
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, RTT_TOLERANCE * longRttNanos / shortRttNanos));
+        double queueSize = Math.sqrt(current);
+        double target = current * gradient + queueSize;
+
+        // Don't grow the limit while the service isn't using at least half of it
+        if (target > current && inFlightAtCompletion < current / 2) {
+            return current;
+        }
+
+        double smoothed = current * (1 - SMOOTHING) + target * SMOOTHING;
+        return Math.max(minLimit, Math.min(maxLimit, smoothed));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
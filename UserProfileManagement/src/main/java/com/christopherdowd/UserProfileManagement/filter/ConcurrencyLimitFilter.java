@@ -0,0 +1,77 @@
+package com.christopherdowd.UserProfileManagement.filter;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.christopherdowd.UserProfileManagement.controller.ChangeFeedController;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/*
+ * Servlet filter that sheds load in front of UserProfileController
+ * Reads and writes are admitted by separate adaptive limiters, so slow Datastore writes
+ * cannot starve cached reads. Requests over the limit are rejected immediately with
+ * HTTP 503 and a Retry-After header instead of queueing on Tomcat threads.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimitFilter.class);
+
+    private final AdaptiveConcurrencyLimiter readLimiter;
+    private final AdaptiveConcurrencyLimiter writeLimiter;
+    private final int retryAfterSeconds;
+
+    /*
+     * Constructor for ConcurrencyLimitFilter
+     * @param readLimiter admits GET and HEAD requests
+     * @param writeLimiter admits POST, PUT and DELETE requests
+     * @param retryAfterSeconds value of the Retry-After header on rejected requests
+     */
+    public ConcurrencyLimitFilter(AdaptiveConcurrencyLimiter readLimiter, AdaptiveConcurrencyLimiter writeLimiter, int retryAfterSeconds) {
+        this.readLimiter = readLimiter;
+        this.writeLimiter = writeLimiter;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // CORS preflight requests never reach the service layer, change feed streams stay open for minutes
+        return HttpMethod.OPTIONS.matches(request.getMethod())
+            || request.getRequestURI().substring(request.getContextPath().length()).startsWith(ChangeFeedController.PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        AdaptiveConcurrencyLimiter limiter = isRead(request) ? readLimiter : writeLimiter;
+
+        if (!limiter.tryAcquire()) {
+            logger.debug("Rejected {} {}: {} limit of {} reached", request.getMethod(), request.getRequestURI(), limiter.getName(), limiter.getLimit());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            filterChain.doFilter(request, response);
+            dropped = response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+        } finally {
+            limiter.release(System.nanoTime() - start, dropped);
+        }
+    }
+
+    private boolean isRead(HttpServletRequest request) {
+        return HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod());
+    }
+}
@@ -0,0 +1,188 @@
+package com.christopherdowd.UserProfileManagement.filter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.christopherdowd.UserProfileManagement.controller.ChangeFeedController;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/*
+ * Servlet filter that rate limits each client per endpoint
+ * Clients are identified by their X-API-Key header if it is one of the configured API keys, and
+ * by their address otherwise, so sending made-up keys neither escapes the limit nor churns the map.
+ * The address is the remote address, or, behind trusted proxies, the X-Forwarded-For entry the
+ * outermost trusted proxy appended: with n trusted hops it's the n-th entry from the right, which
+ * a client can't spoof by sending its own X-Forwarded-For.
+ * Every (endpoint, client) pair gets its own lock-free TokenBucket, held in a bounded Caffeine
+ * map that evicts idle clients, so a misbehaving integrator only exhausts its own quota.
+ * Remaining quota is reported with X-RateLimit-* headers, rejected requests get HTTP 429.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    public static final String API_KEY_HEADER = "X-API-Key";
+    public static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+
+    static final String LIMIT_HEADER = "X-RateLimit-Limit";
+    static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    static final String RESET_HEADER = "X-RateLimit-Reset";
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitFilter.class);
+
+    private static final String USERS_PATH = "/api/users";
+
+    /*
+     * Endpoints that are rate limited independently of each other
+     */
+    public enum Endpoint {
+        LIST,
+        GET_BY_ID,
+        CREATE,
+        MODIFY
+    }
+
+    /*
+     * Token bucket settings for one endpoint
+     * @param capacity the burst size
+     * @param refillPerSecond the sustained requests per second
+     */
+    public record Limit(long capacity, double refillPerSecond) {
+    }
+
+    private final Map<Endpoint, Limit> limits;
+    private final Map<Endpoint, Cache<String, TokenBucket>> buckets = new EnumMap<>(Endpoint.class);
+    private final Set<String> apiKeys;
+    private final int trustedProxyHops;
+
+    /*
+     * Constructor for RateLimitFilter
+     * @param limits the limit per endpoint, endpoints without an entry are not limited
+     * @param maxClients the maximum number of clients tracked per endpoint
+     * @param idleTimeout how long a client's bucket is kept after its last request
+     * @param apiKeys the API keys that get a bucket of their own
+     * @param trustedProxyHops the number of proxies in front of the application that append to X-Forwarded-For, 0 to use the remote address
+     */
+    public RateLimitFilter(Map<Endpoint, Limit> limits, long maxClients, Duration idleTimeout,
+            Set<String> apiKeys, int trustedProxyHops) {
+        if (trustedProxyHops < 0) {
+            throw new IllegalArgumentException("Trusted proxy hops must not be negative");
+        }
+        this.apiKeys = Set.copyOf(apiKeys);
+        this.trustedProxyHops = trustedProxyHops;
+        this.limits = new EnumMap<>(limits);
+        for (Endpoint endpoint : this.limits.keySet()) {
+            buckets.put(endpoint, Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(idleTimeout)
+                .build());
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Endpoint endpoint = classify(request);
+        Cache<String, TokenBucket> clientBuckets = endpoint != null ? buckets.get(endpoint) : null;
+
+        if (clientBuckets == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        Limit limit = limits.get(endpoint);
+        String client = clientKey(request);
+        TokenBucket bucket = clientBuckets.get(client,
+            key -> new TokenBucket(limit.capacity(), limit.refillPerSecond(), System::nanoTime));
+        TokenBucket.Probe probe = bucket.tryConsume();
+
+        response.setHeader(LIMIT_HEADER, String.valueOf(bucket.getCapacity()));
+        response.setHeader(REMAINING_HEADER, String.valueOf(probe.remaining()));
+        response.setHeader(RESET_HEADER, String.valueOf(probe.secondsUntilFull()));
+
+        if (!probe.allowed()) {
+            logger.debug("Rate limit exceeded for client {} on {}", client, endpoint);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, probe.secondsToWait())));
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    /*
+     * Maps the request onto one of the rate limited endpoints
+     * @return the endpoint, or null for requests that are not rate limited
+     */
+    static Endpoint classify(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        boolean collection = path.equals(USERS_PATH);
+        if (!collection && !path.startsWith(USERS_PATH + "/")) {
+            return null;
+        }
+        String method = request.getMethod();
+
+        if (HttpMethod.GET.matches(method)) {
+            // Opening a change feed stream replaces a list poll and shares its budget
+            return collection || path.equals(ChangeFeedController.PATH) ? Endpoint.LIST : Endpoint.GET_BY_ID;
+        }
+        if (HttpMethod.POST.matches(method) && collection) {
+            return Endpoint.CREATE;
+        }
+        if (HttpMethod.PUT.matches(method) || HttpMethod.DELETE.matches(method)) {
+            return Endpoint.MODIFY;
+        }
+        return null;
+    }
+
+    /*
+     * The bucket key of the request's client, a configured API key or the client address
+     */
+    String clientKey(HttpServletRequest request) {
+        String apiKey = request.getHeader(API_KEY_HEADER);
+        if (apiKey != null && apiKeys.contains(apiKey)) {
+            return "key:" + apiKey;
+        }
+        return "ip:" + clientAddress(request);
+    }
+
+    private String clientAddress(HttpServletRequest request) {
+        if (trustedProxyHops == 0) {
+            return request.getRemoteAddr();
+        }
+        // Every proxy appends the address it received the request from, so only the last entries are trustworthy
+        List<String> forwarded = new ArrayList<>();
+        for (Enumeration<String> headers = request.getHeaders(FORWARDED_FOR_HEADER); headers != null && headers.hasMoreElements();) {
+            for (String address : headers.nextElement().split(",")) {
+                if (!address.isBlank()) {
+                    forwarded.add(address.trim());
+                }
+            }
+        }
+        if (forwarded.size() < trustedProxyHops) {
+            // Fewer hops than configured, the request didn't come through all proxies
+            return request.getRemoteAddr();
+        }
+        return forwarded.get(forwarded.size() - trustedProxyHops);
+    }
+}
@@ -0,0 +1,87 @@
+package com.christopherdowd.UserProfileManagement.filter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/*
+ * Lock-free token bucket, implemented as a generic cell rate algorithm (GCRA)
+ * The whole bucket state is a single "theoretical arrival time" that is advanced with CAS,
+ * so concurrent requests from the same client never contend on a lock.
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long capacity;
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final LongSupplier clock;
+
+    // Point in time at which the bucket would be full again if no further tokens were taken
+    private final AtomicLong theoreticalArrival;
+
+    /*
+     * Constructor for TokenBucket
+     * @param capacity the maximum number of tokens (burst size)
+     * @param refillPerSecond how many tokens are added back per second
+     * @param clock source of nanosecond timestamps, System::nanoTime outside of tests
+     */
+    public TokenBucket(long capacity, double refillPerSecond, LongSupplier clock) {
+        if (capacity < 1 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Token bucket needs a positive capacity and refill rate");
+        }
+        this.capacity = capacity;
+        this.nanosPerToken = Math.max(1, (long) (NANOS_PER_SECOND / refillPerSecond));
+        this.burstNanos = capacity * nanosPerToken;
+        this.clock = clock;
+        this.theoreticalArrival = new AtomicLong(clock.getAsLong());
+    }
+
+    /*
+     * Takes one token if available
+     * @return the outcome, including the tokens left and how long until the next one
+     */
+    public Probe tryConsume() {
+        while (true) {
+            long now = clock.getAsLong();
+            long tat = theoreticalArrival.get();
+            long newTat = Math.max(tat, now) + nanosPerToken;
+            long allowedAt = newTat - burstNanos;
+
+            if (allowedAt > now) {
+                return new Probe(false, 0, allowedAt - now, Math.max(tat, now) - now);
+            }
+            if (theoreticalArrival.compareAndSet(tat, newTat)) {
+                long remaining = (burstNanos - (newTat - now)) / nanosPerToken;
+                return new Probe(true, remaining, 0, newTat - now);
+            }
+        }
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /*
+     * Result of a consume attempt
+     * @param allowed whether a token was taken
+     * @param remaining tokens left after this attempt
+     * @param nanosToWait when rejected, how long until a token becomes available
+     * @param nanosUntilFull how long until the bucket is completely refilled
+     */
+    public record Probe(boolean allowed, long remaining, long nanosToWait, long nanosUntilFull) {
+
+        public long secondsToWait() {
+            return toSecondsRoundedUp(nanosToWait);
+        }
+
+        public long secondsUntilFull() {
+            return toSecondsRoundedUp(nanosUntilFull);
+        }
+
+        private static long toSecondsRoundedUp(long nanos) {
+            return (nanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND;
+        }
+    }
+}
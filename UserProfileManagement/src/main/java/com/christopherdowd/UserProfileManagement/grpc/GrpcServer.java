@@ -0,0 +1,110 @@
+package com.christopherdowd.UserProfileManagement.grpc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.micrometer.core.instrument.binder.grpc.ObservationGrpcServerInterceptor;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Netty based gRPC server running next to the servlet container
+ * Serves UserProfileGrpcService on its own port (grpc.server.port) over HTTP/2, so internal
+ * callers multiplex many lookups over one connection and skip JSON. Calls are observed like
+ * REST requests, so they show up in the same traces and metrics.
+ * The REST rate and concurrency limit filters don't apply here; the port is meant for internal
+ * networks only. Disabled unless grpc.server.enabled is set.
+ */
+@Component
+@ConditionalOnProperty(name = "grpc.server.enabled", havingValue = "true")
+public class GrpcServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(GrpcServer.class);
+
+    private final UserProfileGrpcService userProfiles;
+    private final ObservationRegistry observationRegistry;
+    private final String address;
+    private final int port;
+    private final int maxInboundMessageSize;
+    private final Duration shutdownGracePeriod;
+
+    private volatile Server server;
+
+    /*
+     * Constructor for GrpcServer
+     * @param userProfiles the service implementation
+     * @param observationRegistry for tracing and timing calls
+     * @param address interface to bind to, all interfaces if blank
+     * @param port port to listen on, 0 picks a free one
+     * @param maxInboundMessageSize largest request message accepted, in bytes
+     * @param shutdownGracePeriod how long in-flight calls may take to complete on shutdown
+     */
+    public GrpcServer(
+            UserProfileGrpcService userProfiles,
+            ObservationRegistry observationRegistry,
+            @Value("${grpc.server.address:}") String address,
+            @Value("${grpc.server.port:9090}") int port,
+            @Value("${grpc.server.max-inbound-message-size:65536}") int maxInboundMessageSize,
+            @Value("${grpc.server.shutdown-grace-period:10s}") Duration shutdownGracePeriod) {
+        this.userProfiles = userProfiles;
+        this.observationRegistry = observationRegistry;
+        this.address = address;
+        this.port = port;
+        this.maxInboundMessageSize = maxInboundMessageSize;
+        this.shutdownGracePeriod = shutdownGracePeriod;
+    }
+
+    /*
+     * Starts accepting calls once the application is ready, like the Pub/Sub subscriber
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        InetSocketAddress socketAddress = address.isBlank()
+            ? new InetSocketAddress(port)
+            : new InetSocketAddress(address, port);
+        try {
+            server = NettyServerBuilder.forAddress(socketAddress)
+                .addService(userProfiles)
+                .intercept(new ObservationGrpcServerInterceptor(observationRegistry))
+                .maxInboundMessageSize(maxInboundMessageSize)
+                .build()
+                .start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start gRPC server on " + socketAddress, e);
+        }
+        logger.info("gRPC server listening on {}", server.getListenSockets());
+    }
+
+    /*
+     * The port the server listens on, useful when grpc.server.port is 0
+     */
+    public int getPort() {
+        return server != null ? server.getPort() : -1;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        Server running = server;
+        if (running == null) {
+            return;
+        }
+        running.shutdown();
+        if (!running.awaitTermination(shutdownGracePeriod.toMillis(), TimeUnit.MILLISECONDS)) {
+            logger.warn("gRPC calls still running after {}, cancelling them", shutdownGracePeriod);
+            running.shutdownNow();
+        }
+    }
+}
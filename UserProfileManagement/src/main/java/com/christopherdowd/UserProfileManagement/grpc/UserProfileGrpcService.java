@@ -0,0 +1,169 @@
+package com.christopherdowd.UserProfileManagement.grpc;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.christopherdowd.UserProfileManagement.dto.UserProfileRequestDto;
+import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
+import com.christopherdowd.UserProfileManagement.grpc.v1.BatchGetUsersResponse;
+import com.christopherdowd.UserProfileManagement.grpc.v1.CreateUserRequest;
+import com.christopherdowd.UserProfileManagement.grpc.v1.GetUserRequest;
+import com.christopherdowd.UserProfileManagement.grpc.v1.LookupError;
+import com.christopherdowd.UserProfileManagement.grpc.v1.User;
+import com.christopherdowd.UserProfileManagement.grpc.v1.UserProfilesGrpc;
+import com.christopherdowd.UserProfileManagement.hotkeys.HotKeyTracker;
+import com.christopherdowd.UserProfileManagement.hotkeys.HotKeyTracker.Operation;
+import com.christopherdowd.UserProfileManagement.service.UserProfileService;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+/*
+ * gRPC counterpart of UserProfileController for internal callers
+ * Lookups go through UserProfileService.getById and so through the "profiles" cache, just like
+ * REST lookups, and are counted by the HotKeyTracker. Errors the service reports as
+ * ResponseStatusException are translated to the matching gRPC status.
+ */
+@Component
+@ConditionalOnProperty(name = "grpc.server.enabled", havingValue = "true")
+public class UserProfileGrpcService extends UserProfilesGrpc.UserProfilesImplBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserProfileGrpcService.class);
+
+    private final UserProfileService service;
+    private final HotKeyTracker hotKeys;
+    private final Validator validator;
+
+    /*
+     * Constructor for UserProfileGrpcService
+     * @param service for UserProfileService to be injected
+     * @param hotKeys counts lookups per profile ID
+     * @param validator checks create requests against the same constraints as the REST API
+     */
+    public UserProfileGrpcService(UserProfileService service, HotKeyTracker hotKeys, Validator validator) {
+        this.service = service;
+        this.hotKeys = hotKeys;
+        this.validator = validator;
+    }
+
+    @Override
+    public void getUser(GetUserRequest request, StreamObserver<User> responseObserver) {
+        try {
+            responseObserver.onNext(lookup(request.getId()));
+            responseObserver.onCompleted();
+        } catch (RuntimeException e) {
+            responseObserver.onError(toStatus(e).asRuntimeException());
+        }
+    }
+
+    @Override
+    public void createUser(CreateUserRequest request, StreamObserver<User> responseObserver) {
+        UserProfileRequestDto dto = UserProfileRequestDto.builder()
+            .username(request.getUsername())
+            .email(request.getEmail())
+            .socialSecurityNumber(request.getSocialSecurityNumber())
+            .build();
+
+        Set<ConstraintViolation<UserProfileRequestDto>> violations = validator.validate(dto);
+        if (!violations.isEmpty()) {
+            String description = violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(description).asRuntimeException());
+            return;
+        }
+
+        try {
+            responseObserver.onNext(toUser(service.create(dto)));
+            responseObserver.onCompleted();
+        } catch (RuntimeException e) {
+            responseObserver.onError(toStatus(e).asRuntimeException());
+        }
+    }
+
+    /*
+     * Answers each requested ID on the same stream
+     * gRPC delivers the requests of a call one at a time, so responses are sent in request order.
+     * A failed lookup is reported in its response and doesn't end the stream.
+     */
+    @Override
+    public StreamObserver<GetUserRequest> batchGetUsers(StreamObserver<BatchGetUsersResponse> responseObserver) {
+        return new StreamObserver<>() {
+
+            @Override
+            public void onNext(GetUserRequest request) {
+                BatchGetUsersResponse.Builder response = BatchGetUsersResponse.newBuilder().setId(request.getId());
+                try {
+                    response.setUser(lookup(request.getId()));
+                } catch (RuntimeException e) {
+                    Status status = toStatus(e);
+                    response.setError(LookupError.newBuilder()
+                        .setCode(status.getCode().value())
+                        .setMessage(status.getDescription() != null ? status.getDescription() : ""));
+                }
+                responseObserver.onNext(response.build());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.debug("Batch lookup stream cancelled by client: {}", t.getMessage());
+            }
+
+            @Override
+            public void onCompleted() {
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    private User lookup(String id) {
+        if (id.isBlank()) {
+            throw Status.INVALID_ARGUMENT.withDescription("id is required").asRuntimeException();
+        }
+        hotKeys.record(Operation.GET, id);
+        return toUser(service.getById(id));
+    }
+
+    private static User toUser(UserProfileResponseDto dto) {
+        User.Builder user = User.newBuilder().setId(dto.getId());
+        if (dto.getUsername() != null) {
+            user.setUsername(dto.getUsername());
+        }
+        if (dto.getEmail() != null) {
+            user.setEmail(dto.getEmail());
+        }
+        return user.build();
+    }
+
+    /*
+     * Maps an exception thrown by the service to a gRPC status
+     */
+    static Status toStatus(RuntimeException e) {
+        if (e instanceof StatusRuntimeException statusException) {
+            return statusException.getStatus();
+        }
+        if (e instanceof ResponseStatusException responseStatus) {
+            Status status = switch (responseStatus.getStatusCode().value()) {
+                case 400 -> Status.INVALID_ARGUMENT;
+                case 404 -> Status.NOT_FOUND;
+                case 409 -> Status.ALREADY_EXISTS;
+                case 429 -> Status.RESOURCE_EXHAUSTED;
+                case 503 -> Status.UNAVAILABLE;
+                default -> Status.INTERNAL;
+            };
+            return status.withDescription(responseStatus.getReason());
+        }
+        logger.error("gRPC call failed: {}", e.getMessage(), e);
+        return Status.INTERNAL.withDescription("Internal error");
+    }
+}
@@ -0,0 +1,268 @@
+package com.christopherdowd.UserProfileManagement.hedging;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Hedged repository reads, for cutting the tail latency caused by occasional slow Datastore RPCs
+ * A read that hasn't completed within the configured percentile of recent read latency is issued a
+ * second time, and whichever attempt succeeds first is returned; the other is cancelled with
+ * cancel(false), which only keeps it from starting, a running RPC is left to finish.
+ * Latencies of completed attempts are kept in a ring buffer of the last window-size reads and the
+ * hedge delay is recomputed from it every window-size / 8 reads. Nothing is hedged until
+ * min-samples reads completed.
+ * Hedges are limited by a budget: every read earns budget-ratio hedges, up to budget-burst saved,
+ * so a slow backend gets at most budget-ratio more load instead of double.
+ * Used for the profile read of ProfileReader, which serves getById and the refreshes of the
+ * "profiles" cache, and for the read of update.
+ * Attempts run in a context snapshot of the caller, so the repository calls stay part of its
+ * observation and trace like unhedged reads on the caller's thread.
+ * Only use it for idempotent reads. Disabled by default (hedging.enabled), reads then run on the
+ * caller's thread.
+ */
+@Component
+public class HedgedReads {
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgedReads.class);
+
+    static final String OUTCOME_METRIC = "user.repository.hedged_reads";
+
+    // Budget is kept in thousandths of a hedge so fractional ratios add up exactly
+    private static final long HEDGE_COST = 1000;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final int minSamples;
+    private final int recomputeEvery;
+    private final long creditPerRead;
+    private final long maxCredit;
+
+    private final long[] latencies;
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong credit;
+    // Long.MAX_VALUE until enough latencies were recorded
+    private volatile long hedgeDelayNanos = Long.MAX_VALUE;
+
+    private final ThreadPoolExecutor executor;
+    // Submits to executor with the submitting thread's context captured
+    private final ExecutorService contextPropagatingExecutor;
+    private final Counter hedged;
+    private final Counter hedgeWins;
+    private final Counter budgetExhausted;
+    private final Counter rejected;
+
+    /*
+     * Constructor for HedgedReads
+     * @param meterRegistry for counting hedges and exposing the current hedge delay
+     * @param enabled whether reads are hedged at all
+     * @param percentile of recent read latency after which a read is hedged, e.g. 0.95
+     * @param minDelay lower bound of the hedge delay, so fast backends aren't hedged on noise
+     * @param windowSize number of recent read latencies the percentile is computed over
+     * @param minSamples number of reads to observe before hedging
+     * @param budgetRatio hedges allowed per read on average
+     * @param budgetBurst hedges that can be saved up for a burst of slow reads
+     * @param threads maximum number of reads in flight; when all are busy, reads run unhedged on the caller's thread
+     */
+    public HedgedReads(
+            MeterRegistry meterRegistry,
+            @Value("${hedging.enabled:false}") boolean enabled,
+            @Value("${hedging.percentile:0.95}") double percentile,
+            @Value("${hedging.min-delay:2ms}") Duration minDelay,
+            @Value("${hedging.window-size:1024}") int windowSize,
+            @Value("${hedging.min-samples:100}") int minSamples,
+            @Value("${hedging.budget-ratio:0.05}") double budgetRatio,
+            @Value("${hedging.budget-burst:10}") int budgetBurst,
+            @Value("${hedging.threads:64}") int threads) {
+        if (percentile <= 0 || percentile >= 1 || windowSize < 8 || budgetRatio < 0 || budgetBurst < 0) {
+            throw new IllegalArgumentException("Hedging needs a percentile in (0, 1), a window of 8 or more and a non-negative budget");
+        }
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.minSamples = Math.min(Math.max(1, minSamples), windowSize);
+        this.recomputeEvery = windowSize / 8;
+        this.creditPerRead = Math.round(budgetRatio * HEDGE_COST);
+        this.maxCredit = budgetBurst * HEDGE_COST;
+        this.latencies = new long[windowSize];
+        this.credit = new AtomicLong(maxCredit);
+
+        // No queue: a read either gets a thread right away or isn't hedged
+        this.executor = enabled
+            ? new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "hedged-read");
+                thread.setDaemon(true);
+                return thread;
+            })
+            : null;
+        ContextSnapshotFactory snapshots = ContextSnapshotFactory.builder().build();
+        this.contextPropagatingExecutor = enabled ? ContextExecutorService.wrap(executor, snapshots::captureAll) : null;
+
+        this.hedged = outcomeCounter(meterRegistry, "hedged");
+        this.hedgeWins = outcomeCounter(meterRegistry, "hedge_won");
+        this.budgetExhausted = outcomeCounter(meterRegistry, "budget_exhausted");
+        this.rejected = outcomeCounter(meterRegistry, "rejected");
+        TimeGauge.builder("user.repository.hedge.delay", this, TimeUnit.NANOSECONDS,
+                reads -> reads.hedgeDelayNanos == Long.MAX_VALUE ? Double.NaN : reads.hedgeDelayNanos)
+            .description("Read latency after which repository reads are hedged")
+            .register(meterRegistry);
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder(OUTCOME_METRIC)
+            .description("Hedged repository reads by outcome")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * Runs the read, hedging it if it's slower than the current hedge delay
+     * Exceptions of the read are rethrown unchanged; a read fails only if every attempt failed.
+     * @param read the idempotent repository read
+     * @return the result of the first attempt that succeeded
+     */
+    public <T> T read(Supplier<T> read) {
+        if (!enabled) {
+            return read.get();
+        }
+        credit.accumulateAndGet(creditPerRead, (current, earned) -> Math.min(maxCredit, current + earned));
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger attempts = new AtomicInteger(1);
+        Future<?> primary;
+        try {
+            primary = contextPropagatingExecutor.submit(() -> attempt(read, result, attempts, false));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return read.get();
+        }
+
+        Future<?> hedge = null;
+        try {
+            long delay = hedgeDelayNanos;
+            if (delay == Long.MAX_VALUE) {
+                return result.get();
+            }
+            try {
+                return result.get(delay, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                hedge = startHedge(read, result, attempts);
+                return result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a repository read", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            primary.cancel(false);
+            if (hedge != null) {
+                hedge.cancel(false);
+            }
+        }
+    }
+
+    /*
+     * Issues the second attempt if the budget and the thread pool allow it
+     * @return the hedge, or null if none was issued
+     */
+    private <T> Future<?> startHedge(Supplier<T> read, CompletableFuture<T> result, AtomicInteger attempts) {
+        if (result.isDone()) {
+            return null;
+        }
+        if (credit.getAndUpdate(current -> current >= HEDGE_COST ? current - HEDGE_COST : current) < HEDGE_COST) {
+            budgetExhausted.increment();
+            return null;
+        }
+        attempts.incrementAndGet();
+        try {
+            Future<?> hedge = contextPropagatingExecutor.submit(() -> attempt(read, result, attempts, true));
+            hedged.increment();
+            return hedge;
+        } catch (RejectedExecutionException e) {
+            attempts.decrementAndGet();
+            // Return the unused hedge to the budget
+            credit.accumulateAndGet(HEDGE_COST, (current, refund) -> Math.min(maxCredit, current + refund));
+            rejected.increment();
+            return null;
+        }
+    }
+
+    private <T> void attempt(Supplier<T> read, CompletableFuture<T> result, AtomicInteger attempts, boolean isHedge) {
+        long startNanos = System.nanoTime();
+        try {
+            T value = read.get();
+            recordLatency(System.nanoTime() - startNanos);
+            if (result.complete(value) && isHedge) {
+                hedgeWins.increment();
+            }
+        } catch (Throwable e) {
+            // Only the last attempt to fail reports its failure
+            if (attempts.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /*
+     * Adds a read latency to the window and recomputes the hedge delay every recomputeEvery reads
+     */
+    void recordLatency(long nanos) {
+        long count = recorded.incrementAndGet();
+        latencies[(int) ((count - 1) % latencies.length)] = nanos;
+        if (count >= minSamples && (count == minSamples || count % recomputeEvery == 0)) {
+            // A racy copy only mixes in a few neighbouring samples, good enough for a percentile
+            long[] window = Arrays.copyOf(latencies, (int) Math.min(count, latencies.length));
+            Arrays.sort(window);
+            long delay = Math.max(minDelayNanos, window[(int) Math.min(window.length - 1, Math.floor(percentile * window.length))]);
+            if (hedgeDelayNanos == Long.MAX_VALUE) {
+                logger.info("Hedging repository reads slower than {} ms", TimeUnit.NANOSECONDS.toMillis(delay));
+            }
+            hedgeDelayNanos = delay;
+        }
+    }
+
+    /*
+     * The current hedge delay in nanoseconds, Long.MAX_VALUE while reads aren't hedged yet
+     */
+    long hedgeDelayNanos() {
+        return hedgeDelayNanos;
+    }
+}
@@ -0,0 +1,138 @@
+package com.christopherdowd.UserProfileManagement.hotkeys;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Lock-free count-min sketch estimating how often each key was seen
+ * depth rows of width counters each; a key increments one counter per row and its estimate is the
+ * smallest of those counters. Estimates never undercount, they overcount by at most
+ * ~2/width of the total count with probability 1 - (1/2)^depth.
+ * Memory is fixed at depth * width longs however many distinct keys there are.
+ * Each row hashes the key's UTF-8 bytes with 64 bit MurmurHash3 under its own seed, so keys that
+ * collide in one row are unlikely to collide in the others.
+ */
+public class CountMinSketch {
+
+    // Per-row MurmurHash3 seeds
+    private static final long[] SEEDS = {
+        0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+        0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x94D049BB133111EBL, 0xBF58476D1CE4E5B9L
+    };
+
+    // MurmurHash3_x64_128 block mixing constants
+    private static final long C1 = 0x87C37B91114253D5L;
+    private static final long C2 = 0x4CF5AD432745937FL;
+
+    private final int depth;
+    private final int widthBits;
+    private final AtomicLongArray counters;
+
+    /*
+     * Constructor for CountMinSketch
+     * @param depth number of rows, at most 8
+     * @param width counters per row, rounded up to a power of two
+     */
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || depth > SEEDS.length) {
+            throw new IllegalArgumentException("Sketch depth must be between 1 and " + SEEDS.length);
+        }
+        this.depth = depth;
+        this.widthBits = 32 - Integer.numberOfLeadingZeros(Math.max(2, width) - 1);
+        this.counters = new AtomicLongArray(depth << widthBits);
+    }
+
+    /*
+     * Counts one occurrence of the key
+     * @return the estimated count of the key including this occurrence
+     */
+    public long increment(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(row, bytes)));
+        }
+        return estimate;
+    }
+
+    public long estimate(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(row, bytes)));
+        }
+        return estimate;
+    }
+
+    /*
+     * Halves every counter, so old traffic fades out and the sketch follows the current hot set
+     * Increments racing with it may be halved or not, which is within the sketch's error anyway.
+     */
+    public void halve() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, count -> count >>> 1);
+        }
+    }
+
+    private int index(int row, byte[] key) {
+        int column = (int) (murmur3(key, SEEDS[row]) >>> (64 - widthBits));
+        return (row << widthBits) | column;
+    }
+
+    // First half of MurmurHash3_x64_128, seeded with a 64 bit seed
+    static long murmur3(byte[] data, long seed) {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        long h1 = seed;
+        long h2 = seed;
+        int blocks = data.length / 16;
+        for (int i = 0; i < blocks; i++) {
+            h1 ^= mixK1(buffer.getLong(i * 16));
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52DCE729;
+            h2 ^= mixK2(buffer.getLong(i * 16 + 8));
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495AB5;
+        }
+
+        int tail = blocks * 16;
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = data.length - tail - 1; i >= 0; i--) {
+            long b = data[tail + i] & 0xFFL;
+            if (i >= 8) {
+                k2 ^= b << ((i - 8) * 8);
+            } else {
+                k1 ^= b << (i * 8);
+            }
+        }
+        h2 ^= mixK2(k2);
+        h1 ^= mixK1(k1);
+
+        h1 ^= data.length;
+        h2 ^= data.length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        return h1 + h2;
+    }
+
+    private static long mixK1(long k1) {
+        return Long.rotateLeft(k1 * C1, 31) * C2;
+    }
+
+    private static long mixK2(long k2) {
+        return Long.rotateLeft(k2 * C2, 33) * C1;
+    }
+
+    private static long fmix64(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,178 @@
+package com.christopherdowd.UserProfileManagement.hotkeys;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Tracks which profile IDs receive the most reads and updates
+ * Every request is counted in a per-operation CountMinSketch and the heaviest keys are kept in a
+ * TopKeys list; both are halved every decay interval, so counts reflect recent traffic.
+ * With hotkeys.pin.enabled the hottest read keys (estimate at or above hotkeys.pin.min-count at the
+ * end of an interval) are pinned, and the "profiles" cache never evicts pinned keys for size.
+ * Results are exposed by the hotkeys Actuator endpoint.
+ */
+@Component
+public class HotKeyTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotKeyTracker.class);
+
+    /*
+     * Request paths that are tracked separately
+     */
+    public enum Operation {
+        GET,
+        UPDATE
+    }
+
+    /*
+     * A tracked key
+     * @param key the profile ID
+     * @param estimate its estimated (decayed) request count, never below the true count
+     * @param pinned whether the key is currently pinned in the profiles cache
+     */
+    public record HotKey(String key, long estimate, boolean pinned) {
+    }
+
+    private final Map<Operation, CountMinSketch> sketches = new EnumMap<>(Operation.class);
+    private final Map<Operation, TopKeys> topKeys = new EnumMap<>(Operation.class);
+    private final boolean pinningEnabled;
+    private final long pinMinCount;
+    private final int pinMax;
+
+    private volatile Set<String> pinned = Set.of();
+    private final List<Consumer<String>> pinListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService decay;
+
+    /*
+     * Constructor for HotKeyTracker
+     * @param depth rows of each sketch
+     * @param width counters per sketch row
+     * @param topK number of hottest keys kept per operation
+     * @param decayInterval how often counts are halved (and pins re-evaluated)
+     * @param pinningEnabled whether hot read keys are pinned in the profiles cache
+     * @param pinMinCount estimate a key needs at the end of an interval to be pinned
+     * @param pinMax maximum number of pinned keys
+     */
+    public HotKeyTracker(
+            @Value("${hotkeys.sketch.depth:4}") int depth,
+            @Value("${hotkeys.sketch.width:2048}") int width,
+            @Value("${hotkeys.top-k:20}") int topK,
+            @Value("${hotkeys.decay-interval:1m}") Duration decayInterval,
+            @Value("${hotkeys.pin.enabled:false}") boolean pinningEnabled,
+            @Value("${hotkeys.pin.min-count:500}") long pinMinCount,
+            @Value("${hotkeys.pin.max:100}") int pinMax) {
+        for (Operation operation : Operation.values()) {
+            sketches.put(operation, new CountMinSketch(depth, width));
+            topKeys.put(operation, new TopKeys(Math.max(topK, pinningEnabled && operation == Operation.GET ? pinMax : 0)));
+        }
+        this.pinningEnabled = pinningEnabled;
+        this.pinMinCount = pinMinCount;
+        this.pinMax = pinMax;
+
+        this.decay = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hot-key-decay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        decay.scheduleAtFixedRate(this::endInterval, decayInterval.toMillis(), decayInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        decay.shutdownNow();
+    }
+
+    /*
+     * Counts a request for a profile
+     * @param operation the request path
+     * @param id the requested profile ID
+     */
+    public void record(Operation operation, String id) {
+        long estimate = sketches.get(operation).increment(id);
+        topKeys.get(operation).offer(id, estimate);
+    }
+
+    public boolean isPinned(Object key) {
+        return pinned.contains(key);
+    }
+
+    /*
+     * Registers a callback for keys that were pinned or unpinned
+     * @param listener called with the key whose pin state changed
+     */
+    public void addPinListener(Consumer<String> listener) {
+        pinListeners.add(listener);
+    }
+
+    /*
+     * The hottest keys of an operation, highest estimate first
+     * @param operation the request path
+     */
+    public List<HotKey> top(Operation operation) {
+        Set<String> pinnedNow = pinned;
+        return topKeys.get(operation).top().stream()
+            .map(entry -> new HotKey(entry.getKey(), entry.getValue(), pinnedNow.contains(entry.getKey())))
+            .toList();
+    }
+
+    public Set<String> pinnedKeys() {
+        return pinned;
+    }
+
+    public boolean isPinningEnabled() {
+        return pinningEnabled;
+    }
+
+    // Re-evaluates pins from the interval that just ended, then decays all counts
+    void endInterval() {
+        try {
+            if (pinningEnabled) {
+                updatePins();
+            }
+            for (Operation operation : Operation.values()) {
+                sketches.get(operation).halve();
+                topKeys.get(operation).halve();
+            }
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the periodic task
+            logger.error("Failed to decay hot key counts: {}", e.getMessage(), e);
+        }
+    }
+
+    private void updatePins() {
+        Set<String> next = new HashSet<>();
+        for (Map.Entry<String, Long> entry : topKeys.get(Operation.GET).top()) {
+            if (entry.getValue() < pinMinCount || next.size() >= pinMax) {
+                break;
+            }
+            next.add(entry.getKey());
+        }
+
+        Set<String> previous = pinned;
+        pinned = Set.copyOf(next);
+
+        Set<String> changed = new HashSet<>(previous);
+        changed.addAll(next);
+        changed.removeIf(key -> previous.contains(key) && next.contains(key));
+        if (!changed.isEmpty()) {
+            logger.info("Pinned hot profile keys changed, now pinning {} keys", next.size());
+            changed.forEach(key -> pinListeners.forEach(listener -> listener.accept(key)));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.christopherdowd.UserProfileManagement.hotkeys;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.hotkeys.HotKeyTracker.Operation;
+
+/*
+ * Actuator endpoint listing the hottest profile IDs per operation and the keys pinned in the cache
+ * Exposed over HTTP at /actuator/hotkeys once listed in management.endpoints.web.exposure.include
+ */
+@Component
+@Endpoint(id = "hotkeys")
+public class HotKeysEndpoint {
+
+    private final HotKeyTracker tracker;
+
+    public HotKeysEndpoint(HotKeyTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @ReadOperation
+    public Map<String, Object> hotKeys() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            body.put(operation.name().toLowerCase(), tracker.top(operation));
+        }
+        body.put("pinningEnabled", tracker.isPinningEnabled());
+        body.put("pinned", tracker.pinnedKeys());
+        return body;
+    }
+}
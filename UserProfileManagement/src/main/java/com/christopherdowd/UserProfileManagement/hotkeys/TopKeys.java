@@ -0,0 +1,91 @@
+package com.christopherdowd.UserProfileManagement.hotkeys;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * The k keys with the highest sketch estimates, maintained without locks
+ * Keys whose estimate beats the smallest retained estimate are admitted as candidates. Once there
+ * are twice as many candidates as needed, whichever thread gets there first trims them back to the
+ * top k with a min-heap and raises the admission threshold; everyone else carries on.
+ */
+public class TopKeys {
+
+    private static final Comparator<Map.Entry<String, Long>> BY_COUNT = Map.Entry.comparingByValue();
+
+    private final int k;
+    private final ConcurrentHashMap<String, Long> candidates = new ConcurrentHashMap<>();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+    private volatile long admissionThreshold;
+
+    public TopKeys(int k) {
+        this.k = k;
+    }
+
+    /*
+     * Offers a key with its current estimate
+     * @param key the key that was just counted
+     * @param estimate its estimated count
+     */
+    public void offer(String key, long estimate) {
+        if (estimate <= admissionThreshold && !candidates.containsKey(key)) {
+            return;
+        }
+        candidates.put(key, estimate);
+        if (candidates.size() > 2 * k && trimming.compareAndSet(false, true)) {
+            try {
+                trim();
+            } finally {
+                trimming.set(false);
+            }
+        }
+    }
+
+    /*
+     * The top keys, highest estimate first
+     */
+    public List<Map.Entry<String, Long>> top() {
+        List<Map.Entry<String, Long>> top = new ArrayList<>(smallestOfTop());
+        top.sort(BY_COUNT.reversed());
+        return top;
+    }
+
+    /*
+     * Halves the retained estimates along with the sketch
+     */
+    public void halve() {
+        candidates.replaceAll((key, count) -> count >>> 1);
+        candidates.values().removeIf(count -> count == 0);
+        admissionThreshold >>>= 1;
+    }
+
+    private void trim() {
+        PriorityQueue<Map.Entry<String, Long>> top = smallestOfTop();
+        if (top.size() < k) {
+            return;
+        }
+        Set<String> keep = new HashSet<>();
+        top.forEach(entry -> keep.add(entry.getKey()));
+        candidates.keySet().retainAll(keep);
+        admissionThreshold = top.peek().getValue();
+    }
+
+    // Min-heap of the k largest candidates, its head is the smallest estimate still in the top k
+    private PriorityQueue<Map.Entry<String, Long>> smallestOfTop() {
+        PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<>(k + 1, BY_COUNT);
+        for (Map.Entry<String, Long> entry : candidates.entrySet()) {
+            heap.add(Map.entry(entry.getKey(), entry.getValue()));
+            if (heap.size() > k) {
+                heap.poll();
+            }
+        }
+        return heap;
+    }
+}
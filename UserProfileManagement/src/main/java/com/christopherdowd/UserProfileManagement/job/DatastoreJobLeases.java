@@ -0,0 +1,62 @@
+package com.christopherdowd.UserProfileManagement.job;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import com.google.cloud.spring.data.datastore.core.DatastoreOperations;
+
+/*
+ * Keeps job leases in Datastore entities, shared by every instance
+ * Each acquire or release reads and writes the lease in one transaction, so two instances racing
+ * for an expired lease can't both get it: the second commit fails.
+ */
+@Repository
+@Profile("!embedded")
+public class DatastoreJobLeases implements JobLeases {
+
+    private final DatastoreOperations datastore;
+    private final Clock clock;
+
+    /*
+     * Constructor for DatastoreJobLeases
+     * @param datastore for reading and writing leases
+     */
+    @Autowired
+    public DatastoreJobLeases(DatastoreOperations datastore) {
+        this(datastore, Clock.systemUTC());
+    }
+
+    DatastoreJobLeases(DatastoreOperations datastore, Clock clock) {
+        this.datastore = datastore;
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean tryAcquire(String job, String holder, Duration duration) {
+        return datastore.performTransaction(transaction -> {
+            Instant now = clock.instant();
+            JobLease lease = transaction.findById(job, JobLease.class);
+            if (lease != null && !holder.equals(lease.getHolder()) && lease.getExpiresAt().isAfter(now)) {
+                return false;
+            }
+            transaction.save(new JobLease(job, holder, now.plus(duration)));
+            return true;
+        });
+    }
+
+    @Override
+    public void release(String job, String holder) {
+        datastore.performTransaction(transaction -> {
+            JobLease lease = transaction.findById(job, JobLease.class);
+            if (lease != null && holder.equals(lease.getHolder())) {
+                transaction.deleteById(job, JobLease.class);
+            }
+            return null;
+        });
+    }
+}
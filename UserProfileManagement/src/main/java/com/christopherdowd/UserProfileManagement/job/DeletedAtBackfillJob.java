@@ -0,0 +1,122 @@
+package com.christopherdowd.UserProfileManagement.job;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+
+/*
+ * One-off job that saves every profile stored before soft deletes existed once with the current entity
+ * Those profiles lack the deletedAt property, which Datastore leaves out of the index the deletedAt = null
+ * filter of listings is served from, so they are missing from getAll and search until they are written
+ * with an explicit null. The candidates come from UserTombstoneScanner.forEachIdNotListedAsLive; each
+ * batch of them that isn't tombstoned is written back unchanged with one replaceAllIfUnchanged, so an
+ * update or delete landing meanwhile wins. A profile written twice, e.g. by two instances running it,
+ * ends up the same, so no lease is taken.
+ * Runs on startup when soft-delete.backfill.enabled is set; run it once before enabling soft deletes.
+ */
+@Component
+public class DeletedAtBackfillJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeletedAtBackfillJob.class);
+
+    private final UserProfileRepository userRepository;
+    private final boolean runOnStartup;
+    private final int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /*
+     * Constructor for DeletedAtBackfillJob
+     * @param userRepository for finding the profiles and writing them back
+     * @param runOnStartup whether the job starts in the background once the application is ready
+     * @param batchSize the number of profiles read and written per batch, at most 500 as a batch is written in one transaction
+     */
+    public DeletedAtBackfillJob(
+            UserProfileRepository userRepository,
+            @Value("${soft-delete.backfill.enabled:false}") boolean runOnStartup,
+            @Value("${soft-delete.backfill.batch-size:500}") int batchSize) {
+        this.userRepository = userRepository;
+        this.runOnStartup = runOnStartup;
+        this.batchSize = batchSize;
+    }
+
+    /*
+     * Starts the job on a background thread when soft-delete.backfill.enabled is set
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnApplicationReady() {
+        if (!runOnStartup) {
+            return;
+        }
+        Thread worker = new Thread(() -> {
+            try {
+                run();
+            } catch (Exception e) {
+                // Profiles already written keep their deletedAt, a rerun picks up the rest
+                logger.error("Backfilling deletedAt failed: {}", e.getMessage(), e);
+            }
+        }, "deleted-at-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /*
+     * Writes back every live profile missing from listings, on the calling thread
+     * @return the number of profiles written
+     */
+    public long run() {
+        if (!running.compareAndSet(false, true)) {
+            logger.warn("deletedAt backfill is already running, ignoring request to start it again");
+            return 0;
+        }
+
+        try {
+            long startNanos = System.nanoTime();
+            AtomicLong written = new AtomicLong();
+            List<String> batch = new ArrayList<>(batchSize);
+            long candidates = userRepository.forEachIdNotListedAsLive(id -> {
+                batch.add(id);
+                if (batch.size() == batchSize) {
+                    written.addAndGet(backfill(batch));
+                    batch.clear();
+                }
+            });
+            if (!batch.isEmpty()) {
+                written.addAndGet(backfill(batch));
+            }
+
+            logger.info("Backfilled deletedAt of {} of {} profiles missing from listings in {} ms", written.get(), candidates,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            return written.get();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Writes the live profiles of the batch back as they are, which stores their missing deletedAt as null
+    private int backfill(List<String> ids) {
+        List<UserProfile> expected = new ArrayList<>(ids.size());
+        for (UserProfile user : userRepository.findAllById(ids)) {
+            if (user.getDeletedAt() == null) {
+                expected.add(user);
+            }
+        }
+        if (expected.isEmpty()) {
+            return 0;
+        }
+        List<UserProfile> replacements = expected.stream().map(user -> user.toBuilder().build()).toList();
+        return userRepository.replaceAllIfUnchanged(expected, replacements);
+    }
+}
@@ -0,0 +1,37 @@
+package com.christopherdowd.UserProfileManagement.job;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+/*
+ * Job leases for the embedded backend, held in memory
+ * The embedded store belongs to a single instance, so the leases only have to exclude runs within it.
+ */
+@Repository
+@Profile("embedded")
+public class InMemoryJobLeases implements JobLeases {
+
+    private final Map<String, JobLease> leases = new ConcurrentHashMap<>();
+    private final Clock clock = Clock.systemUTC();
+
+    @Override
+    public boolean tryAcquire(String job, String holder, Duration duration) {
+        Instant now = clock.instant();
+        JobLease lease = leases.compute(job, (name, current) ->
+            current != null && !holder.equals(current.getHolder()) && current.getExpiresAt().isAfter(now)
+                ? current
+                : new JobLease(name, holder, now.plus(duration)));
+        return holder.equals(lease.getHolder());
+    }
+
+    @Override
+    public void release(String job, String holder) {
+        leases.computeIfPresent(job, (name, current) -> holder.equals(current.getHolder()) ? null : current);
+    }
+}
@@ -0,0 +1,29 @@
+package com.christopherdowd.UserProfileManagement.job;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+
+import com.google.cloud.spring.data.datastore.core.mapping.Entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * The lease on a background job, one entity per job
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity(name = "job_leases")
+public class JobLease {
+
+    // The job name
+    @Id
+    private String id;
+
+    private String holder;
+
+    private Instant expiresAt;
+}
@@ -0,0 +1,26 @@
+package com.christopherdowd.UserProfileManagement.job;
+
+import java.time.Duration;
+
+/*
+ * Time-limited leases that keep a background job to one instance at a time
+ * A lease expires on its own, so a holder that dies without releasing it blocks the job only until then.
+ */
+public interface JobLeases {
+
+    /*
+     * Takes or renews the lease on a job
+     * @param job name of the job
+     * @param holder identifies the instance asking for the lease
+     * @param duration how long the lease is held without another renewal
+     * @return whether the holder now has the lease; false while another instance holds an unexpired one
+     */
+    boolean tryAcquire(String job, String holder, Duration duration);
+
+    /*
+     * Gives up the lease on a job, if the holder still has it
+     * @param job name of the job
+     * @param holder identifies the instance giving the lease up
+     */
+    void release(String job, String holder);
+}
@@ -0,0 +1,123 @@
+package com.christopherdowd.UserProfileManagement.job;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileScanner;
+import com.christopherdowd.UserProfileManagement.snapshot.SnapshotWriter;
+
+/*
+ * Exports the whole "users" kind to a compressed snapshot file for backups and analytics
+ * Pages through Datastore with cursors via UserProfileScanner and streams every batch into a
+ * SnapshotWriter, so the export holds one page and one block in memory at a time.
+ * SSNs are exported as stored, i.e. encrypted. Read snapshots back with SnapshotReader.
+ */
+@Component
+public class SnapshotExportJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotExportJob.class);
+
+    private final UserProfileScanner scanner;
+    private final String exportPath;
+    private final int batchSize;
+    private final int blockSize;
+    private final int compressionLevel;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /*
+     * Constructor for SnapshotExportJob
+     * @param scanner for streaming the users kind
+     * @param exportPath if set, a snapshot is written to this file once the application is ready
+     * @param batchSize the number of entities read per page
+     * @param blockSize uncompressed bytes per snapshot block
+     * @param compressionLevel Deflater level from 1 (fastest) to 9 (smallest)
+     */
+    public SnapshotExportJob(
+            UserProfileScanner scanner,
+            @Value("${snapshot.export.path:}") String exportPath,
+            @Value("${snapshot.export.batch-size:500}") int batchSize,
+            @Value("${snapshot.export.block-size:1048576}") int blockSize,
+            @Value("${snapshot.export.compression-level:6}") int compressionLevel) {
+        this.scanner = scanner;
+        this.exportPath = exportPath;
+        this.batchSize = batchSize;
+        this.blockSize = blockSize;
+        this.compressionLevel = compressionLevel;
+    }
+
+    /*
+     * Starts an export on a background thread when snapshot.export.path is set
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnApplicationReady() {
+        if (exportPath.isBlank()) {
+            return;
+        }
+        Thread worker = new Thread(() -> {
+            try {
+                export(Path.of(exportPath));
+            } catch (Exception e) {
+                logger.error("Snapshot export to {} failed: {}", exportPath, e.getMessage(), e);
+            }
+        }, "snapshot-export");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /*
+     * Writes a snapshot of all user profiles on the calling thread
+     * @param file the snapshot file, replaced atomically once the export completes
+     * @return the number of profiles exported
+     */
+    public long export(Path file) throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A snapshot export is already running");
+        }
+
+        long startNanos = System.nanoTime();
+        logger.info("Starting snapshot export to {}", file);
+        SnapshotWriter writer = new SnapshotWriter(file, blockSize, compressionLevel);
+        try {
+            scanner.forEachBatch(batchSize, batch -> {
+                try {
+                    for (UserProfile user : batch) {
+                        writer.write(user);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (Thread.currentThread().isInterrupted()) {
+                // The scan stopped early, don't publish an incomplete snapshot
+                throw new InterruptedIOException("Snapshot export to " + file + " was interrupted");
+            }
+            writer.close();
+        } catch (UncheckedIOException e) {
+            writer.abort();
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        } finally {
+            running.set(false);
+        }
+
+        logger.info("Exported {} profiles to {} ({} bytes) in {} ms", writer.getRecordCount(), file,
+            Files.size(file), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        return writer.getRecordCount();
+    }
+}
@@ -0,0 +1,249 @@
+package com.christopherdowd.UserProfileManagement.job;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileScanner;
+import com.christopherdowd.UserProfileManagement.service.BlindIndexService;
+import com.christopherdowd.UserProfileManagement.service.EncryptionService;
+
+/*
+ * Background job that rotates stored SSNs onto the active encryption key
+ * Streams the "users" kind in batches, re-encrypts every encryptedSocialSecurityNumber written
+ * with an older key version and writes the changed entities of each batch back with one
+ * replaceAllIfUnchanged, so an update, soft delete or delete landing between the read and the
+ * write wins; the skipped entity is picked up by the next run.
+ * Entities created before SSN blind indexes existed get their ssnBlindIndex backfilled in the same pass.
+ * Throughput is capped at a configured number of entities per second so the job
+ * doesn't compete with live traffic for Datastore capacity.
+ * Only one instance runs it at a time: a run takes a lease first and renews it every batch,
+ * and stops if it lost the lease.
+ */
+@Component
+public class SsnReEncryptionJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(SsnReEncryptionJob.class);
+
+    static final String LEASE_NAME = "ssn-reencryption";
+
+    private final UserProfileScanner scanner;
+    private final UserProfileRepository userRepository;
+    private final EncryptionService crypto;
+    private final BlindIndexService blindIndex;
+    private final JobLeases leases;
+    private final boolean runOnStartup;
+    private final int batchSize;
+    private final double maxEntitiesPerSecond;
+    private final Duration leaseDuration;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /*
+     * Constructor for SsnReEncryptionJob
+     * @param scanner for streaming the users kind
+     * @param userRepository for writing re-encrypted entities back
+     * @param crypto for decrypting with the old key and encrypting with the active one
+     * @param blindIndex for backfilling missing SSN blind indexes
+     * @param leases for keeping the job to one instance at a time
+     * @param runOnStartup whether the job starts in the background once the application is ready
+     * @param batchSize the number of entities read and written per batch, at most 500 as a batch is written in one transaction
+     * @param maxEntitiesPerSecond the scan rate the job is throttled to
+     * @param leaseDuration how long the lease outlives its last renewal, longer than a batch takes
+     */
+    @Autowired
+    public SsnReEncryptionJob(
+            UserProfileScanner scanner,
+            UserProfileRepository userRepository,
+            EncryptionService crypto,
+            BlindIndexService blindIndex,
+            JobLeases leases,
+            @Value("${encryption.reencrypt.enabled:false}") boolean runOnStartup,
+            @Value("${encryption.reencrypt.batch-size:200}") int batchSize,
+            @Value("${encryption.reencrypt.max-per-second:100}") double maxEntitiesPerSecond,
+            @Value("${encryption.reencrypt.lease-duration:5m}") Duration leaseDuration) {
+        this.scanner = scanner;
+        this.userRepository = userRepository;
+        this.crypto = crypto;
+        this.blindIndex = blindIndex;
+        this.leases = leases;
+        this.runOnStartup = runOnStartup;
+        this.batchSize = batchSize;
+        this.maxEntitiesPerSecond = maxEntitiesPerSecond;
+        this.leaseDuration = leaseDuration;
+    }
+
+    /*
+     * Starts the job on a background thread when encryption.reencrypt.enabled is set
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnApplicationReady() {
+        if (!runOnStartup) {
+            return;
+        }
+        Thread worker = new Thread(this::run, "ssn-reencryption");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /*
+     * Runs a full pass over the users kind on the calling thread
+     * Does nothing if another instance holds the lease.
+     * @return counts of scanned, re-encrypted, skipped and failed entities
+     */
+    public Result run() {
+        if (!running.compareAndSet(false, true)) {
+            logger.warn("SSN re-encryption is already running, ignoring request to start it again");
+            return new Result(0, 0, 0, 0);
+        }
+
+        try {
+            if (!holdLease()) {
+                logger.info("SSN re-encryption is running on another instance, not starting it here");
+                return new Result(0, 0, 0, 0);
+            }
+            return reEncryptAll();
+        } finally {
+            releaseLease();
+            running.set(false);
+        }
+    }
+
+    private Result reEncryptAll() {
+        AtomicLong reEncrypted = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long startNanos = System.nanoTime();
+        logger.info("Starting SSN re-encryption in batches of {} at up to {} entities/s", batchSize, maxEntitiesPerSecond);
+
+        AtomicLong scannedSoFar = new AtomicLong();
+        long scanned;
+        try {
+            scanned = scanner.forEachBatch(batchSize, batch -> {
+                if (!holdLease()) {
+                    throw new LeaseLostException();
+                }
+                reEncrypt(batch, reEncrypted, skipped, failed);
+                throttle(startNanos, scannedSoFar.addAndGet(batch.size()));
+            });
+        } catch (LeaseLostException e) {
+            logger.warn("Lost the SSN re-encryption lease after {} entities, stopping", scannedSoFar.get());
+            scanned = scannedSoFar.get();
+        }
+
+        Result result = new Result(scanned, reEncrypted.get(), skipped.get(), failed.get());
+        logger.info("SSN re-encryption finished in {} ms: {}", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), result);
+        return result;
+    }
+
+    // Re-encrypts every entity of the batch that isn't on the active key yet or lacks a blind index
+    private void reEncrypt(List<UserProfile> batch, AtomicLong reEncrypted, AtomicLong skipped, AtomicLong failed) {
+        List<UserProfile> expected = new ArrayList<>(batch.size());
+        List<UserProfile> replacements = new ArrayList<>(batch.size());
+        for (UserProfile user : batch) {
+            String encryptedSsn = user.getEncryptedSocialSecurityNumber();
+            if (encryptedSsn == null) {
+                continue;
+            }
+            boolean rotate = crypto.needsReEncryption(encryptedSsn);
+            boolean backfillIndex = user.getSsnBlindIndex() == null;
+            if (!rotate && !backfillIndex) {
+                continue;
+            }
+            try {
+                String ssn = crypto.decrypt(encryptedSsn);
+                UserProfile.UserProfileBuilder replacement = user.toBuilder();
+                if (rotate) {
+                    replacement.encryptedSocialSecurityNumber(crypto.encrypt(ssn));
+                }
+                if (backfillIndex) {
+                    replacement.ssnBlindIndex(blindIndex.computeSsnIndex(ssn));
+                }
+                expected.add(user);
+                replacements.add(replacement.build());
+            } catch (Exception e) {
+                // Leave the entity untouched so it's retried by the next run
+                failed.incrementAndGet();
+                logger.error("Failed to re-encrypt SSN for user ID {}: {}", user.getId(), e.getMessage());
+            }
+        }
+        if (expected.isEmpty()) {
+            return;
+        }
+
+        // Only entities whose ciphertext changed are written back, and only if nothing else wrote them since the scan
+        try {
+            int written = userRepository.replaceAllIfUnchanged(expected, replacements);
+            reEncrypted.addAndGet(written);
+            skipped.addAndGet(expected.size() - written);
+        } catch (Exception e) {
+            failed.addAndGet(expected.size());
+            logger.error("Failed to write {} re-encrypted SSNs: {}", expected.size(), e.getMessage());
+        }
+    }
+
+    // Takes or renews the lease; an error reaching the lease store counts as not holding it
+    private boolean holdLease() {
+        try {
+            return leases.tryAcquire(LEASE_NAME, instanceId, leaseDuration);
+        } catch (RuntimeException e) {
+            logger.error("Failed to take the SSN re-encryption lease: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void releaseLease() {
+        try {
+            leases.release(LEASE_NAME, instanceId);
+        } catch (RuntimeException e) {
+            // It expires on its own
+            logger.warn("Failed to release the SSN re-encryption lease: {}", e.getMessage());
+        }
+    }
+
+    // Sleeps until the processed count is back under the configured rate
+    private void throttle(long startNanos, long processed) {
+        long targetNanos = (long) (processed / maxEntitiesPerSecond * TimeUnit.SECONDS.toNanos(1));
+        long aheadNanos = targetNanos - (System.nanoTime() - startNanos);
+        if (aheadNanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Outcome of a re-encryption pass
+     * @param scanned entities read
+     * @param reEncrypted entities written back with the active key
+     * @param skipped entities left alone because they were written since the scan read them
+     * @param failed entities that could not be re-encrypted
+     */
+    public record Result(long scanned, long reEncrypted, long skipped, long failed) {
+    }
+
+    // Unwinds the scan once another instance has taken over the lease
+    private static final class LeaseLostException extends RuntimeException {
+        LeaseLostException() {
+            super(null, null, false, false);
+        }
+    }
+}
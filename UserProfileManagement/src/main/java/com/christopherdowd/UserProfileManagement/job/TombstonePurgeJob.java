@@ -0,0 +1,171 @@
+package com.christopherdowd.UserProfileManagement.job;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Background job that permanently removes soft-deleted profiles once their grace period is over
+ * Every check interval it looks at the time of day, and inside the off-peak window it finds expired
+ * tombstones with keys-only queries and removes them with one deleteAllById per batch, until none
+ * are left or the window closes. A window whose start is after its end spans midnight.
+ * Only runs with soft deletes enabled (soft-delete.enabled). Every instance runs it; concurrent
+ * purges only delete the same keys twice, which is harmless.
+ */
+@Component
+public class TombstonePurgeJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(TombstonePurgeJob.class);
+
+    private final UserProfileRepository userRepository;
+    private final boolean enabled;
+    private final Duration gracePeriod;
+    private final int batchSize;
+    private final LocalTime windowStart;
+    private final LocalTime windowEnd;
+    private final Duration checkInterval;
+    private final Clock clock;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private ScheduledExecutorService scheduler;
+
+    /*
+     * Constructor for TombstonePurgeJob
+     * @param userRepository for finding and deleting expired tombstones
+     * @param enabled whether soft deletes, and so the purge, are enabled
+     * @param gracePeriod how long tombstones are kept so deletes can be undone
+     * @param batchSize the number of profiles removed per deleteAllById
+     * @param windowStart start of the off-peak window the purge runs in, as HH:mm
+     * @param windowEnd end of the off-peak window, as HH:mm
+     * @param zone the time zone of the window
+     * @param checkInterval how often the job checks whether it is inside the window
+     */
+    @Autowired
+    public TombstonePurgeJob(
+            UserProfileRepository userRepository,
+            @Value("${soft-delete.enabled:false}") boolean enabled,
+            @Value("${soft-delete.grace-period:7d}") Duration gracePeriod,
+            @Value("${soft-delete.purge.batch-size:500}") int batchSize,
+            @Value("${soft-delete.purge.window-start:02:00}") String windowStart,
+            @Value("${soft-delete.purge.window-end:05:00}") String windowEnd,
+            @Value("${soft-delete.purge.zone:UTC}") ZoneId zone,
+            @Value("${soft-delete.purge.check-interval:15m}") Duration checkInterval) {
+        this(userRepository, enabled, gracePeriod, batchSize, LocalTime.parse(windowStart), LocalTime.parse(windowEnd),
+            checkInterval, Clock.system(zone));
+    }
+
+    TombstonePurgeJob(UserProfileRepository userRepository, boolean enabled, Duration gracePeriod, int batchSize,
+            LocalTime windowStart, LocalTime windowEnd, Duration checkInterval, Clock clock) {
+        this.userRepository = userRepository;
+        this.enabled = enabled;
+        this.gracePeriod = gracePeriod;
+        this.batchSize = batchSize;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.checkInterval = checkInterval;
+        this.clock = clock;
+    }
+
+    /*
+     * Starts checking for the off-peak window when soft deletes are enabled
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tombstone-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                if (inWindow()) {
+                    purge();
+                }
+            } catch (Exception e) {
+                // Whatever is left is purged at the next check
+                logger.error("Purging soft-deleted user profiles failed: {}", e.getMessage(), e);
+            }
+        }, checkInterval.toMillis(), checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /*
+     * Removes tombstones past the grace period in batches, on the calling thread
+     * Stops early when the off-peak window closes.
+     * @return the number of profiles removed
+     */
+    public long purge() {
+        if (!running.compareAndSet(false, true)) {
+            logger.warn("Tombstone purge is already running, ignoring request to start it again");
+            return 0;
+        }
+
+        long purged = 0;
+        long startNanos = System.nanoTime();
+        try {
+            while (true) {
+                Instant expiredBefore = clock.instant().minus(gracePeriod);
+                List<String> ids = userRepository.findTombstonedIds(expiredBefore, batchSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                userRepository.deleteAllById(ids);
+                purged += ids.size();
+                if (ids.size() < batchSize) {
+                    break;
+                }
+                if (!inWindow()) {
+                    logger.info("Off-peak window closed, continuing the tombstone purge in the next one");
+                    break;
+                }
+            }
+        } finally {
+            running.set(false);
+        }
+
+        if (purged > 0) {
+            logger.info("Purged {} soft-deleted user profiles in {} ms", purged,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+        return purged;
+    }
+
+    /*
+     * Whether the current time of day is inside the off-peak window
+     */
+    boolean inWindow() {
+        LocalTime now = LocalTime.now(clock);
+        if (windowStart.isBefore(windowEnd)) {
+            return !now.isBefore(windowStart) && now.isBefore(windowEnd);
+        }
+        return !now.isBefore(windowStart) || now.isBefore(windowEnd);
+    }
+}
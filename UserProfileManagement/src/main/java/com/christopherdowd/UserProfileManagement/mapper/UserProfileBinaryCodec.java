@@ -0,0 +1,175 @@
+package com.christopherdowd.UserProfileManagement.mapper;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+
+/*
+ * Compact binary encoding of a UserProfile entity, used by snapshots and the embedded store
+ * A profile is its fields in declaration order: the strings as UTF-8 prefixed by their byte
+ * length as a big-endian int, with -1 for null, then createdAt and deletedAt as
+ * big-endian epoch millis, with Long.MIN_VALUE for null.
+ * Fields may only ever be appended, so data written by older versions stays readable: stand-alone
+ * values are decoded by what they contain, streams of records must be read with the field count
+ * they were written with (V1_FIELDS before createdAt, V2_FIELDS before deletedAt was added).
+ */
+public final class UserProfileBinaryCodec {
+
+    public static final int V1_FIELDS = 5;
+    public static final int V2_FIELDS = 6;
+    public static final int FIELDS = 7;
+
+    private static final int NULL_LENGTH = -1;
+    private static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+
+    private UserProfileBinaryCodec() {
+    }
+
+    /*
+     * Encodes a profile into a new array
+     */
+    public static byte[] encode(UserProfile user) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(user));
+        write(buffer, user);
+        return buffer.array();
+    }
+
+    /*
+     * The number of bytes write needs for the profile
+     */
+    public static int encodedSize(UserProfile user) {
+        return 5 * Integer.BYTES + 2 * Long.BYTES
+            + utf8Length(user.getId())
+            + utf8Length(user.getUsername())
+            + utf8Length(user.getEmail())
+            + utf8Length(user.getEncryptedSocialSecurityNumber())
+            + utf8Length(user.getSsnBlindIndex());
+    }
+
+    /*
+     * Appends a profile to the buffer
+     * @return false, leaving the position unchanged, if the buffer doesn't have room for it
+     */
+    public static boolean write(ByteBuffer buffer, UserProfile user) {
+        byte[] id = bytes(user.getId());
+        byte[] username = bytes(user.getUsername());
+        byte[] email = bytes(user.getEmail());
+        byte[] ssn = bytes(user.getEncryptedSocialSecurityNumber());
+        byte[] ssnIndex = bytes(user.getSsnBlindIndex());
+
+        int size = 5 * Integer.BYTES + 2 * Long.BYTES + length(id) + length(username) + length(email) + length(ssn) + length(ssnIndex);
+        if (buffer.remaining() < size) {
+            return false;
+        }
+        putString(buffer, id);
+        putString(buffer, username);
+        putString(buffer, email);
+        putString(buffer, ssn);
+        putString(buffer, ssnIndex);
+        putTimestamp(buffer, user.getCreatedAt());
+        putTimestamp(buffer, user.getDeletedAt());
+        return true;
+    }
+
+    /*
+     * Decodes a profile stored on its own, written by any version
+     */
+    public static UserProfile decode(byte[] value) {
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        UserProfile user = read(buffer, V1_FIELDS);
+        if (buffer.remaining() >= Long.BYTES) {
+            user.setCreatedAt(getTimestamp(buffer));
+        }
+        if (buffer.remaining() >= Long.BYTES) {
+            user.setDeletedAt(getTimestamp(buffer));
+        }
+        return user;
+    }
+
+    /*
+     * Reads the profile at the buffer's position, written in the current format
+     */
+    public static UserProfile read(ByteBuffer buffer) {
+        return read(buffer, FIELDS);
+    }
+
+    /*
+     * Reads the profile at the buffer's position
+     * @param fields the number of fields the record was written with
+     */
+    public static UserProfile read(ByteBuffer buffer, int fields) {
+        UserProfile user = UserProfile.builder()
+            .id(getString(buffer))
+            .username(getString(buffer))
+            .email(getString(buffer))
+            .encryptedSocialSecurityNumber(getString(buffer))
+            .ssnBlindIndex(getString(buffer))
+            .build();
+        if (fields > V1_FIELDS) {
+            user.setCreatedAt(getTimestamp(buffer));
+        }
+        if (fields > V2_FIELDS) {
+            user.setDeletedAt(getTimestamp(buffer));
+        }
+        return user;
+    }
+
+    private static int utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static byte[] bytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int length(byte[] value) {
+        return value != null ? value.length : 0;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(NULL_LENGTH);
+            return;
+        }
+        buffer.putInt(value.length);
+        buffer.put(value);
+    }
+
+    private static void putTimestamp(ByteBuffer buffer, Instant value) {
+        buffer.putLong(value != null ? value.toEpochMilli() : NULL_TIMESTAMP);
+    }
+
+    private static Instant getTimestamp(ByteBuffer buffer) {
+        long millis = buffer.getLong();
+        return millis != NULL_TIMESTAMP ? Instant.ofEpochMilli(millis) : null;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -3,6 +3,7 @@ package com.christopherdowd.UserProfileManagement.mapper;
 import org.springframework.stereotype.Component;
 
 import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.domain.UserProfileSummary;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileRequestDto;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileUpdateRequestDto;
@@ -26,6 +27,28 @@ public class UserProfileMapper {
         return dto;
     }
 
+    public UserProfileResponseDto toUserResponseDto(UserProfileSummary user) {
+        if (user == null) {
+            return null;
+        }
+        UserProfileResponseDto dto = new UserProfileResponseDto();
+
+        dto.setId(user.getId());
+        dto.setUsername(user.getUsername());
+        dto.setEmail(user.getEmail());
+
+        return dto;
+    }
+
+    public List<UserProfileResponseDto> summariesToUserResponseDtoList(List<UserProfileSummary> users) {
+        if (users == null) {
+            return null;
+        }
+        return users.stream()
+                .map(this::toUserResponseDto)
+                .collect(Collectors.toList());
+    }
+
     public List<UserProfileResponseDto> toUserResponseDtoList(List<UserProfile> users) {
         if (users == null) {
             return null;
@@ -0,0 +1,96 @@
+package com.christopherdowd.UserProfileManagement.pubsub;
+
+import java.io.IOException;
+
+import com.christopherdowd.UserProfileManagement.dto.UserCreationMessageDto;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
+
+/*
+ * Compact binary format of user creation messages
+ * Layout: a magic byte and the schema version, followed by the fields in protobuf wire format
+ * (field number + length-prefixed UTF-8). Absent (null) fields are omitted.
+ *   1 id, 2 username, 3 email, 4 encryptedSocialSecurityNumber, 5 ssnBlindIndex
+ * Unknown field numbers are skipped, so fields can be added within a schema version; a new
+ * version is only needed for incompatible changes, which older readers then reject.
+ */
+public class BinaryUserCreationMessageCodec implements UserCreationMessageCodec {
+
+    public static final String CONTENT_TYPE = "application/x-user-creation";
+
+    // Can never start a UTF-8 encoded JSON document, so payloads without a content-type can be told apart
+    static final byte MAGIC = (byte) 0xB5;
+    static final byte SCHEMA_VERSION = 1;
+    private static final int HEADER_SIZE = 2;
+
+    private static final int ID = 1;
+    private static final int USERNAME = 2;
+    private static final int EMAIL = 3;
+    private static final int ENCRYPTED_SSN = 4;
+    private static final int SSN_BLIND_INDEX = 5;
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE + ";v=" + SCHEMA_VERSION;
+    }
+
+    @Override
+    public ByteString encode(UserCreationMessageDto message) throws IOException {
+        byte[] buffer = new byte[HEADER_SIZE
+            + fieldSize(ID, message.getId())
+            + fieldSize(USERNAME, message.getUsername())
+            + fieldSize(EMAIL, message.getEmail())
+            + fieldSize(ENCRYPTED_SSN, message.getEncryptedSocialSecurityNumber())
+            + fieldSize(SSN_BLIND_INDEX, message.getSsnBlindIndex())];
+        buffer[0] = MAGIC;
+        buffer[1] = SCHEMA_VERSION;
+
+        CodedOutputStream out = CodedOutputStream.newInstance(buffer, HEADER_SIZE, buffer.length - HEADER_SIZE);
+        writeField(out, ID, message.getId());
+        writeField(out, USERNAME, message.getUsername());
+        writeField(out, EMAIL, message.getEmail());
+        writeField(out, ENCRYPTED_SSN, message.getEncryptedSocialSecurityNumber());
+        writeField(out, SSN_BLIND_INDEX, message.getSsnBlindIndex());
+        out.checkNoSpaceLeft();
+
+        return UnsafeByteOperations.unsafeWrap(buffer);
+    }
+
+    @Override
+    public UserCreationMessageDto decode(ByteString payload) throws IOException {
+        if (payload.size() < HEADER_SIZE || payload.byteAt(0) != MAGIC) {
+            throw new InvalidProtocolBufferException("Not a binary user creation message");
+        }
+        if (payload.byteAt(1) != SCHEMA_VERSION) {
+            throw new InvalidProtocolBufferException("Unsupported user creation message schema version " + payload.byteAt(1));
+        }
+
+        CodedInputStream in = payload.substring(HEADER_SIZE).newCodedInput();
+        UserCreationMessageDto message = new UserCreationMessageDto();
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case ID -> message.setId(in.readStringRequireUtf8());
+                case USERNAME -> message.setUsername(in.readStringRequireUtf8());
+                case EMAIL -> message.setEmail(in.readStringRequireUtf8());
+                case ENCRYPTED_SSN -> message.setEncryptedSocialSecurityNumber(in.readStringRequireUtf8());
+                case SSN_BLIND_INDEX -> message.setSsnBlindIndex(in.readStringRequireUtf8());
+                default -> in.skipField(tag);
+            }
+        }
+        return message;
+    }
+
+    private static int fieldSize(int fieldNumber, String value) {
+        return value != null ? CodedOutputStream.computeStringSize(fieldNumber, value) : 0;
+    }
+
+    private static void writeField(CodedOutputStream out, int fieldNumber, String value) throws IOException {
+        if (value != null) {
+            out.writeString(fieldNumber, value);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.christopherdowd.UserProfileManagement.pubsub;
+
+import java.io.IOException;
+
+import com.christopherdowd.UserProfileManagement.dto.UserCreationMessageDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+/*
+ * The original JSON format of user creation messages
+ * Kept so messages published before the binary codec was introduced, or by publishers still
+ * configured for JSON, can be read.
+ */
+public class JsonUserCreationMessageCodec implements UserCreationMessageCodec {
+
+    public static final String CONTENT_TYPE = "application/json";
+
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+
+    public JsonUserCreationMessageCodec(ObjectMapper objectMapper) {
+        this.writer = objectMapper.writerFor(UserCreationMessageDto.class);
+        this.reader = objectMapper.readerFor(UserCreationMessageDto.class);
+    }
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public ByteString encode(UserCreationMessageDto message) throws IOException {
+        // The array is not shared with anyone else, so it can back the ByteString without a copy
+        return UnsafeByteOperations.unsafeWrap(writer.writeValueAsBytes(message));
+    }
+
+    @Override
+    public UserCreationMessageDto decode(ByteString payload) throws IOException {
+        return reader.readValue(payload.newInput());
+    }
+}
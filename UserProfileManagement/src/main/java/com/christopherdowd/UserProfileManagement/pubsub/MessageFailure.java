@@ -0,0 +1,57 @@
+package com.christopherdowd.UserProfileManagement.pubsub;
+
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.cloud.BaseServiceException;
+
+/*
+ * Whether a failed message is worth redelivering
+ * PERMANENT failures fail the same way on every delivery (malformed payloads, requests Datastore
+ * rejects as invalid) and go to the dead-letter topic right away.
+ * Everything else is TRANSIENT (timeouts, unavailable or contended Datastore) and is retried with backoff.
+ */
+public enum MessageFailure {
+
+    TRANSIENT,
+    PERMANENT;
+
+    /*
+     * Classifies a processing error by walking its cause chain
+     * @param error the exception thrown while handling the message
+     */
+    public static MessageFailure classify(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            // Spring counts an unreachable data store as non-transient, but it usually comes back
+            if (cause instanceof JsonProcessingException
+                    || cause instanceof InvalidMessageException
+                    || (cause instanceof NonTransientDataAccessException
+                        && !(cause instanceof NonTransientDataAccessResourceException))) {
+                return PERMANENT;
+            }
+            if (cause instanceof BaseServiceException serviceException) {
+                // Google Cloud client errors know whether the RPC may succeed when retried
+                return serviceException.isRetryable() ? TRANSIENT : PERMANENT;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return TRANSIENT;
+    }
+
+    /*
+     * Thrown for messages that parse but can never be processed, e.g. missing required fields
+     */
+    public static class InvalidMessageException extends RuntimeException {
+
+        public InvalidMessageException(String message) {
+            super(message);
+        }
+
+        public InvalidMessageException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.christopherdowd.UserProfileManagement.pubsub;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+import com.google.pubsub.v1.PubsubMessage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.transport.ReceiverContext;
+import io.micrometer.observation.transport.SenderContext;
+
+/*
+ * Carries the trace of a create request across Pub/Sub
+ * The publishing side injects the trace context into the message attributes, the subscriber
+ * continues the same trace from them, so one trace spans POST /api/users to the Datastore write.
+ * The publisher also stamps the time the request was accepted, from which the subscriber records
+ * the create-to-persist lag in user.creation.persist.lag.
+ */
+public class MessageTracing {
+
+    static final String REQUESTED_AT_ATTRIBUTE = "requested-at";
+
+    private final ObservationRegistry observationRegistry;
+    private final Timer persistLag;
+
+    /*
+     * Constructor for MessageTracing
+     * @param observationRegistry for the publish and process observations, bridged to the tracer
+     * @param meterRegistry for the create-to-persist lag histogram
+     */
+    public MessageTracing(ObservationRegistry observationRegistry, MeterRegistry meterRegistry) {
+        this.observationRegistry = observationRegistry;
+        this.persistLag = Timer.builder("user.creation.persist.lag")
+            .description("Time from accepting a create request until the subscriber persisted the user")
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(1))
+            .maximumExpectedValue(Duration.ofMinutes(10))
+            .register(meterRegistry);
+    }
+
+    /*
+     * Publishes the message with the current trace context and acceptance time attached
+     * The publish observation lasts until the returned future completes, so it covers the publish
+     * RPC and records its failure.
+     * @param pubSubTemplate for publishing
+     * @param topic the topic to publish to
+     * @param message the encoded message
+     * @return the future of the publish call
+     */
+    public CompletableFuture<String> publish(PubSubTemplate pubSubTemplate, String topic, PubsubMessage message) {
+        PubsubMessage.Builder carrier = message.toBuilder()
+            .putAttributes(REQUESTED_AT_ATTRIBUTE, Long.toString(System.currentTimeMillis()));
+
+        SenderContext<PubsubMessage.Builder> context = new SenderContext<>(PubsubMessage.Builder::putAttributes);
+        context.setCarrier(carrier);
+        context.setRemoteServiceName("pubsub");
+
+        // The trace context is written into the carrier when the observation starts
+        Observation observation = Observation.createNotStarted("pubsub.publish", () -> context, observationRegistry)
+            .contextualName(topic + " send")
+            .lowCardinalityKeyValue("topic", topic)
+            .start();
+        CompletableFuture<String> result;
+        try (Observation.Scope scope = observation.openScope()) {
+            result = pubSubTemplate.publish(topic, carrier.build());
+        } catch (RuntimeException e) {
+            observation.error(e);
+            observation.stop();
+            throw e;
+        }
+        return result.whenComplete((messageId, error) -> {
+            if (error != null) {
+                observation.error(error);
+            }
+            observation.stop();
+        });
+    }
+
+    /*
+     * Starts the observation of processing a received message, continuing the publisher's trace
+     * The caller opens a scope for it and stops it once the message is settled.
+     * @param message the received message
+     * @param subscription the subscription it was received from
+     */
+    public Observation startProcessing(PubsubMessage message, String subscription) {
+        ReceiverContext<PubsubMessage> context = new ReceiverContext<>(
+            (carrier, key) -> carrier.getAttributesOrDefault(key, null));
+        context.setCarrier(message);
+        context.setRemoteServiceName("pubsub");
+
+        return Observation.createNotStarted("pubsub.process", () -> context, observationRegistry)
+            .contextualName(subscription + " process")
+            .lowCardinalityKeyValue("subscription", subscription)
+            .start();
+    }
+
+    /*
+     * Records the create-to-persist lag of a message whose user was just saved
+     * Messages published before the acceptance time was attached are skipped.
+     * @param message the processed message
+     */
+    public void recordPersisted(PubsubMessage message) {
+        String requestedAt = message.getAttributesOrDefault(REQUESTED_AT_ATTRIBUTE, null);
+        if (requestedAt == null) {
+            return;
+        }
+        try {
+            long lagMillis = System.currentTimeMillis() - Long.parseLong(requestedAt);
+            persistLag.record(Duration.ofMillis(Math.max(0, lagMillis)));
+        } catch (NumberFormatException e) {
+            // Not ours to fail the message over
+        }
+    }
+}
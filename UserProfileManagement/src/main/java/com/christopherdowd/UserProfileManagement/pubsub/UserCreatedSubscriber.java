@@ -1,97 +1,297 @@
 package com.christopherdowd.UserProfileManagement.pubsub;
 
-import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import com.christopherdowd.UserProfileManagement.changefeed.ChangeFeed;
+import com.christopherdowd.UserProfileManagement.changefeed.ProfileChange.ChangeType;
 import com.christopherdowd.UserProfileManagement.domain.UserProfile;
 import com.christopherdowd.UserProfileManagement.dto.UserCreationMessageDto;
+import com.christopherdowd.UserProfileManagement.existence.KnownUserIds;
+import com.christopherdowd.UserProfileManagement.mapper.UserProfileMapper;
+import com.christopherdowd.UserProfileManagement.pubsub.MessageFailure.InvalidMessageException;
 import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.christopherdowd.UserProfileManagement.stats.UserStatistics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+import com.google.cloud.pubsub.v1.Subscriber;
 import com.google.cloud.spring.pubsub.support.BasicAcknowledgeablePubsubMessage;
+import com.google.pubsub.v1.PubsubMessage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import jakarta.annotation.PreDestroy;
 
 /*
  * Component responsible for subscribing to Google Cloud Pub/Sub topic
  * for user creation events and processing these messages.
  * It listens for messages indicating a new user has been requested for creation
  * then persists the user profile to the Datastore 
+ * The subscription is opened once the application is ready rather than during bean creation,
+ * so the streaming pull doesn't hold up startup and no message arrives before the web tier is up.
+ *
+ * Failures are classified (see MessageFailure):
+ *   transient: the message is redelivered after an exponential backoff with full jitter. Streaming
+ *     subscriptions only offer ack/nack, so the lease is held (and extended by the client library)
+ *     for the backoff and the message is nacked afterwards, instead of nacking straight into a hot loop
+ *   permanent, or transient past the attempt limit: the message is published to the dead-letter
+ *     topic with the failure details as attributes and acked
+ * The outcome of every message is counted in pubsub.user.creation.messages{outcome=...}
+ * The profile is inserted in a transaction, so a redelivery of a message whose profile is already
+ * stored is acked without overwriting the profile or counting the user again.
  */
 @Component
 public class UserCreatedSubscriber {
 
     private static final Logger logger = LoggerFactory.getLogger(UserCreatedSubscriber.class);
 
+    private static final String OUTCOME_METRIC = "pubsub.user.creation.messages";
+    private static final long DEAD_LETTER_PUBLISH_TIMEOUT_SECONDS = 10;
+
     private final PubSubTemplate pubSubTemplate;
     private final String subscriptionName;
     private final UserProfileRepository userRepository;
-    private final ObjectMapper objectMapper; // used to deserialize the message
+    private final UserCreationMessageCodecs messageCodecs; // used to deserialize the message
+    private final UserProfileMapper mapper;
+    private final ChangeFeed changeFeed;
+    private final MessageTracing messageTracing;
+    private final UserStatistics statistics;
+    private final KnownUserIds knownIds;
+
+    private final String deadLetterTopic;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    // Delivery attempts seen by this node, keyed by Pub/Sub message ID
+    private final Cache<String, AtomicInteger> attempts;
+    private final ScheduledExecutorService delayedNacks;
+    private volatile Subscriber subscriber;
+
+    private final Counter processed;
+    private final Counter retried;
+    private final Counter deadLettered;
+    private final Counter dropped;
 
     /* 
      * Constructor for UserCreatedSubscriber
      * @param pubSubTemplate for interacting with Google Cloud Pub/Sub
      * @param subscriptionName of the Pub/Sub subscription, injection from application properties
      * @param userRepository for saving user profiles to Datastore
-     * @param objectMapper for JSON processing
+     * @param messageCodecs for decoding the message in whichever format it was published
+     * @param mapper for converting saved entities into change feed events
+     * @param changeFeed for notifying change feed subscribers of new users
+     * @param messageTracing for continuing the trace of the create request and recording its lag
+     * @param statistics for counting persisted users
+     * @param knownIds for adding persisted IDs to the existence filter
+     * @param meterRegistry for the per-outcome counters
+     * @param deadLetterTopic topic failed messages are moved to; if blank, poison messages are logged and dropped
+     * @param maxAttempts deliveries of a transiently failing message before it is dead-lettered
+     * @param initialBackoff upper bound of the delay before the first redelivery
+     * @param maxBackoff cap of the exponentially growing delay
     */
     public UserCreatedSubscriber(
             PubSubTemplate pubSubTemplate,
             @Value("${pubsub.subscription}") String subscriptionName, 
             UserProfileRepository userRepository, 
-            ObjectMapper objectMapper) {
+            UserCreationMessageCodecs messageCodecs,
+            UserProfileMapper mapper,
+            ChangeFeed changeFeed,
+            MessageTracing messageTracing,
+            UserStatistics statistics,
+            KnownUserIds knownIds,
+            MeterRegistry meterRegistry,
+            @Value("${pubsub.topic.users-creation-dead-letter:}") String deadLetterTopic,
+            @Value("${pubsub.retry.max-attempts:5}") int maxAttempts,
+            @Value("${pubsub.retry.initial-backoff:1s}") Duration initialBackoff,
+            @Value("${pubsub.retry.max-backoff:60s}") Duration maxBackoff) {
         this.pubSubTemplate   = pubSubTemplate;
         this.subscriptionName = subscriptionName;
         this.userRepository = userRepository;
-        this.objectMapper = objectMapper;
+        this.messageCodecs = messageCodecs;
+        this.mapper = mapper;
+        this.changeFeed = changeFeed;
+        this.messageTracing = messageTracing;
+        this.statistics = statistics;
+        this.knownIds = knownIds;
+        this.deadLetterTopic = deadLetterTopic;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+
+        this.attempts = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofHours(1))
+            .maximumSize(100_000)
+            .build();
+        this.delayedNacks = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pubsub-retry-backoff");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.processed = outcomeCounter(meterRegistry, "processed");
+        this.retried = outcomeCounter(meterRegistry, "retried");
+        this.deadLettered = outcomeCounter(meterRegistry, "dead_lettered");
+        this.dropped = outcomeCounter(meterRegistry, "dropped");
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder(OUTCOME_METRIC)
+            .description("User creation messages by processing outcome")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
     }
 
     /* 
-     * Defines the logic for handling the incoming creation message
+     * Opens the streaming pull once the application has started
     */
-    @PostConstruct
+    @EventListener(ApplicationReadyEvent.class)
     public void start() {
         logger.info("Subscribing to Pub/Sub subscription: {}", subscriptionName);
 
         // Subscribe to the specified subscription
-        pubSubTemplate.subscribe(subscriptionName, (BasicAcknowledgeablePubsubMessage msg) -> {
-
-            // Extracts message as UTF-8 string
-            String message = msg.getPubsubMessage().getData().toStringUtf8();
-
-            logger.info("Received message from Pub/Sub subscription '{}'. Payload: {}", subscriptionName, message);
-
-            try {
-                // Deserializes JSON into a UserCreationMessageDto
-                UserCreationMessageDto userDto = objectMapper.readValue(message, UserCreationMessageDto.class);
-
-                logger.info("Processing new-user event for ID: {}. Username: {}", userDto.getId(), userDto.getUsername());
-
-                // Creates a UserProfile entity from the deserialized DTO
-                UserProfile userProfile = new UserProfile();
-                userProfile.setId(userDto.getId());
-                userProfile.setUsername(userDto.getUsername());
-                userProfile.setEmail(userDto.getEmail());
-                // SSN is encrypted by publisher in the service layer
-                userProfile.setEncryptedSocialSecurityNumber(userDto.getEncryptedSocialSecurityNumber());
-
-                // Save new user to the Datastore
-                UserProfile savedUser = userRepository.save(userProfile);
-                logger.info("User profile with ID {} successfully saved to Datastore by subscriber.", savedUser.getId());
-
-                // Acknowledges the message to remove it from subscription
-                msg.ack();
-                logger.debug("Message acknowledged for ID: {}", userDto.getId());
-            } catch(Exception e) {
-                // Logs error if message fails to process
-                logger.error("Error processing user creation message from Pub/Sub. Payload: {}. Error: {}", message, e.getMessage(), e);
-                
-                // Negatively acknowledges the message, so Pub/Sub can try to redeliver
-                msg.nack();
-                logger.warn("Message NACKed due to processing error. It may be redelivered");
+        subscriber = pubSubTemplate.subscribe(subscriptionName, this::handleMessage);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscriber != null) {
+            subscriber.stopAsync();
+        }
+        // Messages waiting for their backoff are redelivered once their lease expires
+        delayedNacks.shutdownNow();
+    }
+
+    /*
+     * Processes one user creation message and settles it with ack, delayed nack or dead-lettering
+     * @param msg the received message
+     */
+    void handleMessage(BasicAcknowledgeablePubsubMessage msg) {
+        logger.debug("Received message {} ({} bytes) from Pub/Sub subscription '{}'",
+            messageId(msg), msg.getPubsubMessage().getData().size(), subscriptionName);
+
+        // Continues the trace started by the create request, repository calls below become part of it
+        Observation processing = messageTracing.startProcessing(msg.getPubsubMessage(), subscriptionName);
+        try (Observation.Scope scope = processing.openScope()) {
+            // Decodes the payload straight from its bytes into a UserCreationMessageDto
+            UserCreationMessageDto userDto = messageCodecs.decode(msg.getPubsubMessage());
+            if (userDto.getId() == null || userDto.getId().isBlank()) {
+                throw new InvalidMessageException("User creation message has no user ID");
             }
-        });
+
+            logger.info("Processing new-user event for ID: {}. Username: {}", userDto.getId(), userDto.getUsername());
+
+            // Creates a UserProfile entity from the deserialized DTO
+            UserProfile userProfile = new UserProfile();
+            userProfile.setId(userDto.getId());
+            userProfile.setUsername(userDto.getUsername());
+            userProfile.setEmail(userDto.getEmail());
+            // SSN is encrypted by publisher in the service layer
+            userProfile.setEncryptedSocialSecurityNumber(userDto.getEncryptedSocialSecurityNumber());
+            userProfile.setSsnBlindIndex(userDto.getSsnBlindIndex());
+            userProfile.setCreatedAt(Instant.now());
+
+            // Save new user to the Datastore, unless an earlier delivery of the message already did
+            if (userRepository.insertIfAbsent(userProfile)) {
+                logger.info("User profile with ID {} successfully saved to Datastore by subscriber.", userProfile.getId());
+                messageTracing.recordPersisted(msg.getPubsubMessage());
+                statistics.recordCreated(userProfile.getEmail());
+                changeFeed.publish(ChangeType.CREATED, userProfile.getId(), mapper.toUserResponseDto(userProfile));
+            } else {
+                logger.info("User profile with ID {} was already saved by an earlier delivery, not saving it again.", userProfile.getId());
+            }
+            knownIds.add(userProfile.getId());
+
+            // Acknowledges the message to remove it from subscription
+            msg.ack();
+            attempts.invalidate(messageId(msg));
+            processed.increment();
+            logger.debug("Message acknowledged for ID: {}", userDto.getId());
+        } catch(Exception e) {
+            processing.error(e);
+            handleFailure(msg, e);
+        } finally {
+            processing.stop();
+        }
+    }
+
+    private void handleFailure(BasicAcknowledgeablePubsubMessage msg, Exception error) {
+        MessageFailure failure = MessageFailure.classify(error);
+        int attempt = attempts.get(messageId(msg), id -> new AtomicInteger()).incrementAndGet();
+
+        if (failure == MessageFailure.TRANSIENT && attempt < maxAttempts) {
+            long delayMillis = backoffMillis(attempt);
+            logger.warn("Transient error processing user creation message {} (attempt {} of {}), redelivering in {} ms: {}",
+                messageId(msg), attempt, maxAttempts, delayMillis, error.getMessage());
+            retried.increment();
+            delayedNacks.schedule(msg::nack, delayMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        logger.error("Giving up on user creation message {} after {} attempt(s) ({} failure): {}",
+            messageId(msg), attempt, failure, error.getMessage(), error);
+        deadLetter(msg, failure, attempt, error);
+    }
+
+    /*
+     * Full jitter: a uniformly random delay up to the exponential bound, so messages that failed
+     * together (e.g. during a Datastore outage) don't all come back at the same moment
+     */
+    long backoffMillis(int attempt) {
+        long bound = initialBackoff.toMillis() << Math.min(attempt - 1, 30);
+        bound = Math.min(bound, maxBackoff.toMillis());
+        return bound > 0 ? ThreadLocalRandom.current().nextLong(bound + 1) : 0;
+    }
+
+    // Moves the message to the dead-letter topic and removes it from the subscription
+    private void deadLetter(BasicAcknowledgeablePubsubMessage msg, MessageFailure failure, int attempt, Exception error) {
+        if (deadLetterTopic.isBlank()) {
+            logger.error("No dead-letter topic configured, dropping user creation message {}", messageId(msg));
+            msg.ack();
+            attempts.invalidate(messageId(msg));
+            dropped.increment();
+            return;
+        }
+
+        PubsubMessage original = msg.getPubsubMessage();
+        PubsubMessage deadLetter = PubsubMessage.newBuilder()
+            .setData(original.getData())
+            .putAllAttributes(original.getAttributesMap())
+            .putAttributes("dlq-original-message-id", original.getMessageId())
+            .putAttributes("dlq-subscription", subscriptionName)
+            .putAttributes("dlq-failure", failure.name())
+            .putAttributes("dlq-attempts", Integer.toString(attempt))
+            .putAttributes("dlq-error", String.valueOf(error.getMessage()))
+            .build();
+        try {
+            pubSubTemplate.publish(deadLetterTopic, deadLetter).get(DEAD_LETTER_PUBLISH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            // Keep the message on the subscription and try again later rather than lose it
+            logger.error("Failed to dead-letter user creation message {}: {}", messageId(msg), e.getMessage(), e);
+            delayedNacks.schedule(msg::nack, maxBackoff.toMillis(), TimeUnit.MILLISECONDS);
+            return;
+        }
+        msg.ack();
+        attempts.invalidate(messageId(msg));
+        deadLettered.increment();
+        logger.warn("User creation message {} moved to dead-letter topic '{}'", messageId(msg), deadLetterTopic);
+    }
+
+    private static String messageId(BasicAcknowledgeablePubsubMessage msg) {
+        return msg.getPubsubMessage().getMessageId();
     }
 }
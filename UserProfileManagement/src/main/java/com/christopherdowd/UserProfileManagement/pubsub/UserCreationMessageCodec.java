@@ -0,0 +1,23 @@
+package com.christopherdowd.UserProfileManagement.pubsub;
+
+import java.io.IOException;
+
+import com.christopherdowd.UserProfileManagement.dto.UserCreationMessageDto;
+import com.google.protobuf.ByteString;
+
+/*
+ * Wire format of the user creation messages exchanged between UserProfileServiceImpl and UserCreatedSubscriber
+ * Implementations encode straight into the message payload and decode from it, without going
+ * through an intermediate String. See UserCreationMessageCodecs for how a codec is selected.
+ */
+public interface UserCreationMessageCodec {
+
+    /*
+     * Value of the content-type attribute of messages written by this codec
+     */
+    String contentType();
+
+    ByteString encode(UserCreationMessageDto message) throws IOException;
+
+    UserCreationMessageDto decode(ByteString payload) throws IOException;
+}
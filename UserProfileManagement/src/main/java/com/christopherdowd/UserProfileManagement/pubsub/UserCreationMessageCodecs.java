@@ -0,0 +1,80 @@
+package com.christopherdowd.UserProfileManagement.pubsub;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.dto.UserCreationMessageDto;
+import com.christopherdowd.UserProfileManagement.pubsub.MessageFailure.InvalidMessageException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+
+/*
+ * Chooses the codec of user creation messages
+ * Messages are published with the codec configured in pubsub.codec ("json" or "binary") and tagged
+ * with a content-type attribute. Any supported format is accepted when reading: by the attribute,
+ * or for untagged messages from before the attribute existed, by the first byte of the payload.
+ * Keep publishing JSON until every subscriber runs a version that reads the binary format.
+ */
+@Component
+public class UserCreationMessageCodecs {
+
+    public static final String CONTENT_TYPE_ATTRIBUTE = "content-type";
+
+    private final JsonUserCreationMessageCodec json;
+    private final BinaryUserCreationMessageCodec binary = new BinaryUserCreationMessageCodec();
+    private final UserCreationMessageCodec publishCodec;
+
+    /*
+     * Constructor for UserCreationMessageCodecs
+     * @param objectMapper for the JSON format
+     * @param publishCodec name of the codec new messages are written with
+     */
+    public UserCreationMessageCodecs(ObjectMapper objectMapper, @Value("${pubsub.codec:json}") String publishCodec) {
+        this.json = new JsonUserCreationMessageCodec(objectMapper);
+        this.publishCodec = switch (publishCodec) {
+            case "json" -> json;
+            case "binary" -> binary;
+            default -> throw new IllegalArgumentException("Unknown pubsub.codec '" + publishCodec + "', expected json or binary");
+        };
+    }
+
+    /*
+     * Builds the Pub/Sub message for a user creation event
+     * @param message the event
+     */
+    public PubsubMessage encode(UserCreationMessageDto message) throws IOException {
+        return PubsubMessage.newBuilder()
+            .setData(publishCodec.encode(message))
+            .putAttributes(CONTENT_TYPE_ATTRIBUTE, publishCodec.contentType())
+            .build();
+    }
+
+    /*
+     * Reads a user creation event in any supported format
+     * Payloads that can't be decoded are rejected with an InvalidMessageException, as redelivery won't fix them.
+     * @param message the received message
+     */
+    public UserCreationMessageDto decode(PubsubMessage message) {
+        UserCreationMessageCodec codec = codecFor(message);
+        try {
+            return codec.decode(message.getData());
+        } catch (IOException e) {
+            throw new InvalidMessageException("Malformed " + codec.contentType() + " user creation message: " + e.getMessage(), e);
+        }
+    }
+
+    private UserCreationMessageCodec codecFor(PubsubMessage message) {
+        String contentType = message.getAttributesOrDefault(CONTENT_TYPE_ATTRIBUTE, "");
+        if (contentType.startsWith(BinaryUserCreationMessageCodec.CONTENT_TYPE)) {
+            return binary;
+        }
+        if (contentType.startsWith(JsonUserCreationMessageCodec.CONTENT_TYPE)) {
+            return json;
+        }
+        ByteString data = message.getData();
+        return !data.isEmpty() && data.byteAt(0) == BinaryUserCreationMessageCodec.MAGIC ? binary : json;
+    }
+}
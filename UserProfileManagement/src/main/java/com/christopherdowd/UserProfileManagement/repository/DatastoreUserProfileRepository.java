@@ -0,0 +1,30 @@
+package com.christopherdowd.UserProfileManagement.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.domain.UserProfileSummary;
+import com.google.cloud.spring.data.datastore.repository.DatastoreRepository;
+
+/*
+ * Default UserProfileRepository backend, implemented by Spring Data on Google Cloud Datastore
+ */
+@Repository
+@Profile("!embedded")
+public interface DatastoreUserProfileRepository
+    extends DatastoreRepository<UserProfile, String>, UserProfileRepository {
+
+    @Override
+    boolean existsBySsnBlindIndex(String ssnBlindIndex);
+
+    // Interface projections are run as Datastore projection queries on username and email
+    @Override
+    Optional<UserProfileSummary> findSummaryById(String id);
+
+    @Override
+    List<UserProfileSummary> findAllSummariesBy();
+}
@@ -0,0 +1,18 @@
+package com.christopherdowd.UserProfileManagement.repository;
+
+import java.util.function.Consumer;
+
+/*
+ * Streams the IDs of all stored user profiles without loading the entities
+ * Part of UserProfileRepository; the Datastore backend gets it from the UserIdScannerImpl
+ * repository fragment, the embedded backend implements it itself.
+ */
+public interface UserIdScanner {
+
+    /*
+     * Hands every stored user ID to the action
+     * @param action called once per ID, in no particular order
+     * @return the number of IDs scanned
+     */
+    long forEachId(Consumer<String> action);
+}
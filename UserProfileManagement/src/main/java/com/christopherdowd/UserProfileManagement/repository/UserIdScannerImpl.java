@@ -0,0 +1,41 @@
+package com.christopherdowd.UserProfileManagement.repository;
+
+import java.util.function.Consumer;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.spring.data.datastore.core.DatastoreOperations;
+import com.google.cloud.spring.data.datastore.core.mapping.DatastoreMappingContext;
+
+/*
+ * Spring Data fragment implementing UserIdScanner for DatastoreUserProfileRepository
+ * Runs a keys-only query, which is billed as a small operation per key and transfers no entity
+ * data; the client library follows the query cursor from batch to batch as the keys are iterated.
+ */
+public class UserIdScannerImpl implements UserIdScanner {
+
+    private final DatastoreOperations datastore;
+    private final String kind;
+
+    /*
+     * Constructor for UserIdScannerImpl
+     * @param datastore for running the keys-only query
+     * @param mappingContext for the kind name of UserProfile
+     */
+    public UserIdScannerImpl(DatastoreOperations datastore, DatastoreMappingContext mappingContext) {
+        this.datastore = datastore;
+        this.kind = mappingContext.getDatastorePersistentEntity(UserProfile.class).kindName();
+    }
+
+    @Override
+    public long forEachId(Consumer<String> action) {
+        Query<Key> query = Query.newKeyQueryBuilder().setKind(kind).build();
+        long scanned = 0;
+        for (Key key : datastore.queryKeys(query)) {
+            action.accept(key.getName());
+            scanned++;
+        }
+        return scanned;
+    }
+}
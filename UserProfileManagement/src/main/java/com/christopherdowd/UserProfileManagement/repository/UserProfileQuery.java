@@ -0,0 +1,116 @@
+package com.christopherdowd.UserProfileManagement.repository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.data.domain.Sort;
+
+/*
+ * Filters and ordering of a user profile search, evaluated by the repository
+ * All filters are optional and combined with AND. Datastore constraints apply to every backend,
+ * so queries behave the same everywhere:
+ *   at most one range filter (a prefix or createdAfter), and if the results are sorted, the sort
+ *     must be on the property of that range filter
+ *   at most one sort property
+ *   an equality and a prefix filter can't be on the same property
+ * Combinations of equality filters and a range filter or sort on another property need the
+ * composite indexes in index.yaml.
+ * Profiles without createdAt are left out when filtering or sorting on it.
+ * liveOnly is an equality filter on deletedAt = null, so it needs the index.yaml indexes that include
+ * deletedAt; profiles last written before deletedAt existed don't have the property and are left out.
+ *
+ * @param username exact username
+ * @param email exact email
+ * @param usernamePrefix usernames starting with this
+ * @param emailPrefix emails starting with this
+ * @param createdAfter profiles persisted strictly after this instant
+ * @param sort result order, unsorted means key order
+ * @param limit maximum number of results, 0 for no limit
+ * @param liveOnly whether soft-deleted profiles are left out
+ */
+public record UserProfileQuery(
+        String username,
+        String email,
+        String usernamePrefix,
+        String emailPrefix,
+        Instant createdAfter,
+        Sort sort,
+        int limit,
+        boolean liveOnly) {
+
+    public static final String USERNAME = "username";
+    public static final String EMAIL = "email";
+    public static final String CREATED_AT = "createdAt";
+    public static final String DELETED_AT = "deletedAt";
+
+    private static final List<String> SORTABLE = List.of(USERNAME, EMAIL, CREATED_AT);
+
+    public UserProfileQuery {
+        sort = sort != null ? sort : Sort.unsorted();
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+        if (username != null && usernamePrefix != null) {
+            throw new IllegalArgumentException("username and usernamePrefix can't be combined");
+        }
+        if (email != null && emailPrefix != null) {
+            throw new IllegalArgumentException("email and emailPrefix can't be combined");
+        }
+
+        List<Sort.Order> orders = sort.toList();
+        if (orders.size() > 1) {
+            throw new IllegalArgumentException("Results can only be sorted by one property");
+        }
+        for (Sort.Order order : orders) {
+            if (!SORTABLE.contains(order.getProperty())) {
+                throw new IllegalArgumentException("Can't sort by " + order.getProperty() + ", sortable are " + SORTABLE);
+            }
+        }
+
+        List<String> ranges = new ArrayList<>();
+        if (usernamePrefix != null) {
+            ranges.add(USERNAME);
+        }
+        if (emailPrefix != null) {
+            ranges.add(EMAIL);
+        }
+        if (createdAfter != null) {
+            ranges.add(CREATED_AT);
+        }
+        if (ranges.size() > 1) {
+            throw new IllegalArgumentException("Only one of usernamePrefix, emailPrefix and createdAfter can be used at a time");
+        }
+        if (!ranges.isEmpty() && !orders.isEmpty() && !orders.get(0).getProperty().equals(ranges.get(0))) {
+            throw new IllegalArgumentException("With a filter on " + ranges.get(0) + " results can only be sorted by " + ranges.get(0));
+        }
+    }
+
+    /*
+     * A query that includes soft-deleted profiles
+     */
+    public UserProfileQuery(String username, String email, String usernamePrefix, String emailPrefix,
+            Instant createdAfter, Sort sort, int limit) {
+        this(username, email, usernamePrefix, emailPrefix, createdAfter, sort, limit, false);
+    }
+
+    /*
+     * The same query without soft-deleted profiles
+     */
+    public UserProfileQuery withLiveOnly() {
+        return new UserProfileQuery(username, email, usernamePrefix, emailPrefix, createdAfter, sort, limit, true);
+    }
+
+    /*
+     * The property the range filter applies to, or null without range filter
+     */
+    public String rangeProperty() {
+        if (usernamePrefix != null) {
+            return USERNAME;
+        }
+        if (emailPrefix != null) {
+            return EMAIL;
+        }
+        return createdAfter != null ? CREATED_AT : null;
+    }
+}
@@ -0,0 +1,39 @@
+package com.christopherdowd.UserProfileManagement.repository;
+
+import java.util.List;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+
+/*
+ * Conditional writes of a user profile, for background jobs that rewrite entities read earlier and
+ * for writers that may see the same profile more than once
+ * Part of UserProfileRepository; the Datastore backend gets it from the UserProfileReplacerImpl
+ * repository fragment, the embedded backend implements it itself.
+ */
+public interface UserProfileReplacer {
+
+    /*
+     * Saves the replacement only if the stored profile still equals the expected one
+     * A profile updated, tombstoned or deleted since it was read is left alone.
+     * @param expected the profile as it was read
+     * @param replacement the profile to write, with the same ID
+     * @return whether the replacement was written
+     */
+    boolean replaceIfUnchanged(UserProfile expected, UserProfile replacement);
+
+    /*
+     * Saves each replacement whose stored profile still equals its expected profile, in one write
+     * The profiles are checked and written together, at most 500 per call on Datastore.
+     * @param expected the profiles as they were read
+     * @param replacements the profiles to write, in the same order and with the same IDs
+     * @return the number of replacements written
+     */
+    int replaceAllIfUnchanged(List<UserProfile> expected, List<UserProfile> replacements);
+
+    /*
+     * Saves the profile only if no profile with its ID is stored yet
+     * @param profile the profile to write
+     * @return whether the profile was written
+     */
+    boolean insertIfAbsent(UserProfile profile);
+}
@@ -0,0 +1,74 @@
+package com.christopherdowd.UserProfileManagement.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.google.cloud.spring.data.datastore.core.DatastoreOperations;
+
+/*
+ * Spring Data fragment implementing UserProfileReplacer for DatastoreUserProfileRepository
+ * Re-reads the entity and writes the replacement in one transaction, so a concurrent write to the
+ * entity either happened before the read and is seen, or makes the commit fail.
+ */
+public class UserProfileReplacerImpl implements UserProfileReplacer {
+
+    private final DatastoreOperations datastore;
+
+    /*
+     * Constructor for UserProfileReplacerImpl
+     * @param datastore for running the transaction
+     */
+    public UserProfileReplacerImpl(DatastoreOperations datastore) {
+        this.datastore = datastore;
+    }
+
+    @Override
+    public boolean replaceIfUnchanged(UserProfile expected, UserProfile replacement) {
+        return datastore.performTransaction(transaction -> {
+            UserProfile current = transaction.findById(expected.getId(), UserProfile.class);
+            if (!expected.equals(current)) {
+                return false;
+            }
+            transaction.save(replacement);
+            return true;
+        });
+    }
+
+    @Override
+    public int replaceAllIfUnchanged(List<UserProfile> expected, List<UserProfile> replacements) {
+        if (expected.isEmpty()) {
+            return 0;
+        }
+        List<String> ids = expected.stream().map(UserProfile::getId).toList();
+        return datastore.performTransaction(transaction -> {
+            Map<String, UserProfile> current = new HashMap<>();
+            for (UserProfile user : transaction.findAllById(ids, UserProfile.class)) {
+                current.put(user.getId(), user);
+            }
+            List<UserProfile> unchanged = new ArrayList<>(replacements.size());
+            for (int i = 0; i < expected.size(); i++) {
+                if (expected.get(i).equals(current.get(expected.get(i).getId()))) {
+                    unchanged.add(replacements.get(i));
+                }
+            }
+            if (!unchanged.isEmpty()) {
+                transaction.saveAll(unchanged);
+            }
+            return unchanged.size();
+        });
+    }
+
+    @Override
+    public boolean insertIfAbsent(UserProfile profile) {
+        return datastore.performTransaction(transaction -> {
+            if (transaction.findById(profile.getId(), UserProfile.class) != null) {
+                return false;
+            }
+            transaction.save(profile);
+            return true;
+        });
+    }
+}
@@ -1,11 +1,58 @@
 package com.christopherdowd.UserProfileManagement.repository;
 
-import org.springframework.stereotype.Repository;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 
 import com.christopherdowd.UserProfileManagement.domain.UserProfile;
-import com.google.cloud.spring.data.datastore.repository.DatastoreRepository;
+import com.christopherdowd.UserProfileManagement.domain.UserProfileSummary;
+
+/*
+ * Storage operations the application needs for user profiles
+ * The signatures mirror Spring Data's CrudRepository and PagingAndSortingRepository, so the
+ * Datastore backend (DatastoreUserProfileRepository) gets them implemented by Spring Data, while
+ * the embedded backend (embedded.EmbeddedUserProfileRepository) implements them itself.
+ * The backend is chosen by profile: "embedded" selects the local store, anything else Datastore.
+ */
+public interface UserProfileRepository extends UserIdScanner, UserProfileSearch, UserTombstoneScanner, UserProfileReplacer {
+
+    <S extends UserProfile> S save(S user);
+
+    <S extends UserProfile> Iterable<S> saveAll(Iterable<S> users);
+
+    Optional<UserProfile> findById(String id);
+
+    boolean existsById(String id);
+
+    Iterable<UserProfile> findAll();
+
+    Iterable<UserProfile> findAllById(Iterable<String> ids);
+
+    /*
+     * Reads one page of profiles; follow-up pages must be requested with Page.nextPageable()
+     * so backends can continue from a cursor instead of skipping over earlier pages
+     */
+    Page<UserProfile> findAll(Pageable pageable);
+
+    /*
+     * Reads only the fields responses expose, for paths that don't write the entity back
+     * On Datastore a projection query; it needs the composite index in index.yaml and skips
+     * entities without a username or email property
+     */
+    Optional<UserProfileSummary> findSummaryById(String id);
+
+    /*
+     * Projection of all profiles, see findSummaryById
+     */
+    List<UserProfileSummary> findAllSummariesBy();
+
+    long count();
+
+    void deleteById(String id);
+
+    void deleteAllById(Iterable<? extends String> ids);
 
-@Repository
-public interface UserProfileRepository 
-    extends DatastoreRepository<UserProfile, String> {
+    boolean existsBySsnBlindIndex(String ssnBlindIndex);
 }
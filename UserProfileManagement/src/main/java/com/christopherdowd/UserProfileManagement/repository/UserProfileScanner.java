@@ -0,0 +1,54 @@
+package com.christopherdowd.UserProfileManagement.repository;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+
+/*
+ * Streams the whole "users" kind in fixed size batches
+ * Follow-up pages are requested with the Pageable returned by the previous page, which for
+ * Datastore carries the query cursor, so each batch costs the same no matter how deep the scan is
+ * and only one batch is held in memory at a time
+ */
+@Component
+public class UserProfileScanner {
+
+    private final UserProfileRepository userRepository;
+
+    /*
+     * Constructor for UserProfileScanner
+     * @param userRepository for reading user profile pages
+     */
+    public UserProfileScanner(UserProfileRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    /*
+     * Hands every user profile to the action, one batch at a time
+     * @param batchSize the number of entities fetched per page
+     * @param action called once per non-empty batch
+     * @return the total number of entities scanned
+     */
+    public long forEachBatch(int batchSize, Consumer<List<UserProfile>> action) {
+        Pageable pageable = PageRequest.of(0, batchSize);
+        long scanned = 0;
+
+        while (true) {
+            Page<UserProfile> page = userRepository.findAll(pageable);
+            if (page.hasContent()) {
+                scanned += page.getNumberOfElements();
+                action.accept(page.getContent());
+            }
+            if (!page.hasNext() || Thread.currentThread().isInterrupted()) {
+                return scanned;
+            }
+            pageable = page.nextPageable();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.christopherdowd.UserProfileManagement.repository;
+
+import java.util.List;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfileSummary;
+
+/*
+ * Filtered and sorted reads of user profiles
+ * Part of UserProfileRepository; the Datastore backend gets it from the UserProfileSearchImpl
+ * repository fragment, the embedded backend implements it itself.
+ */
+public interface UserProfileSearch {
+
+    /*
+     * Runs the query
+     * @param query filters, order and limit
+     * @return the matching profiles in the requested order
+     */
+    List<UserProfileSummary> search(UserProfileQuery query);
+}
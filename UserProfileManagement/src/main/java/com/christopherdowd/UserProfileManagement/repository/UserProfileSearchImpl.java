@@ -0,0 +1,130 @@
+package com.christopherdowd.UserProfileManagement.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.data.domain.Sort;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.domain.UserProfileSummary;
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.BaseEntity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.ProjectionEntity;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.StructuredQuery;
+import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.Filter;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.google.cloud.spring.data.datastore.core.DatastoreOperations;
+import com.google.cloud.spring.data.datastore.core.mapping.DatastoreMappingContext;
+
+/*
+ * Spring Data fragment implementing UserProfileSearch for DatastoreUserProfileRepository
+ * Translates the query into one Datastore query, so filtering, ordering and the limit are
+ * applied by Datastore and only matching entities are transferred. A prefix becomes a range
+ * from the prefix up to the prefix followed by the highest code point.
+ * Like findAllSummariesBy it is a projection query on username and email, so the encrypted SSN is
+ * never read. Datastore can't project a property with an equality filter, so those are left out
+ * of the projection and filled in from the filter; with equality filters on both it is keys-only.
+ * Every combination needs its composite index in index.yaml.
+ */
+public class UserProfileSearchImpl implements UserProfileSearch {
+
+    // U+10FFFF, sorts after every other character in Datastore's UTF-8 byte order
+    private static final String MAX_CHARACTER = "\uDBFF\uDFFF";
+
+    private final DatastoreOperations datastore;
+    private final String kind;
+
+    /*
+     * Constructor for UserProfileSearchImpl
+     * @param datastore for running the query
+     * @param mappingContext for the kind name of UserProfile
+     */
+    public UserProfileSearchImpl(DatastoreOperations datastore, DatastoreMappingContext mappingContext) {
+        this.datastore = datastore;
+        this.kind = mappingContext.getDatastorePersistentEntity(UserProfile.class).kindName();
+    }
+
+    @Override
+    public List<UserProfileSummary> search(UserProfileQuery query) {
+        List<Filter> filters = new ArrayList<>();
+        if (query.username() != null) {
+            filters.add(PropertyFilter.eq(UserProfileQuery.USERNAME, query.username()));
+        }
+        if (query.email() != null) {
+            filters.add(PropertyFilter.eq(UserProfileQuery.EMAIL, query.email()));
+        }
+        if (query.usernamePrefix() != null) {
+            addPrefix(filters, UserProfileQuery.USERNAME, query.usernamePrefix());
+        }
+        if (query.emailPrefix() != null) {
+            addPrefix(filters, UserProfileQuery.EMAIL, query.emailPrefix());
+        }
+        if (query.createdAfter() != null) {
+            filters.add(PropertyFilter.gt(UserProfileQuery.CREATED_AT,
+                Timestamp.ofTimeSecondsAndNanos(query.createdAfter().getEpochSecond(), query.createdAfter().getNano())));
+        }
+        if (query.liveOnly()) {
+            filters.add(PropertyFilter.isNull(UserProfileQuery.DELETED_AT));
+        }
+
+        List<String> projection = new ArrayList<>();
+        if (query.username() == null) {
+            projection.add(UserProfileQuery.USERNAME);
+        }
+        if (query.email() == null) {
+            projection.add(UserProfileQuery.EMAIL);
+        }
+
+        List<UserProfileSummary> results = new ArrayList<>();
+        if (projection.isEmpty()) {
+            StructuredQuery.Builder<Key> builder = Query.newKeyQueryBuilder().setKind(kind);
+            for (Key key : datastore.queryKeys(build(builder, filters, query))) {
+                results.add(UserProfileSummary.of(key.getName(), query.username(), query.email()));
+            }
+            return results;
+        }
+
+        StructuredQuery.Builder<ProjectionEntity> builder = Query.newProjectionEntityQueryBuilder()
+            .setKind(kind)
+            .setProjection(projection.get(0), projection.subList(1, projection.size()).toArray(String[]::new));
+        for (ProjectionEntity entity : datastore.query(build(builder, filters, query), entity -> entity)) {
+            results.add(UserProfileSummary.of(entity.getKey().getName(),
+                query.username() != null ? query.username() : stringOrNull(entity, UserProfileQuery.USERNAME),
+                query.email() != null ? query.email() : stringOrNull(entity, UserProfileQuery.EMAIL)));
+        }
+        return results;
+    }
+
+    private static <T> StructuredQuery<T> build(StructuredQuery.Builder<T> builder, List<Filter> filters, UserProfileQuery query) {
+        if (filters.size() == 1) {
+            builder.setFilter(filters.get(0));
+        } else if (filters.size() > 1) {
+            builder.setFilter(CompositeFilter.and(filters.get(0), filters.subList(1, filters.size()).toArray(Filter[]::new)));
+        }
+        for (Sort.Order order : query.sort()) {
+            // Every result has the same value there, and the property isn't in the projection's index
+            if (order.getProperty().equals(UserProfileQuery.USERNAME) && query.username() != null
+                    || order.getProperty().equals(UserProfileQuery.EMAIL) && query.email() != null) {
+                continue;
+            }
+            builder.addOrderBy(order.isAscending() ? OrderBy.asc(order.getProperty()) : OrderBy.desc(order.getProperty()));
+        }
+        if (query.limit() > 0) {
+            builder.setLimit(query.limit());
+        }
+        return builder.build();
+    }
+
+    private static String stringOrNull(BaseEntity<?> entity, String property) {
+        return entity.contains(property) && !entity.isNull(property) ? entity.getString(property) : null;
+    }
+
+    private static void addPrefix(List<Filter> filters, String property, String prefix) {
+        filters.add(PropertyFilter.ge(property, prefix));
+        filters.add(PropertyFilter.lt(property, prefix + MAX_CHARACTER));
+    }
+}
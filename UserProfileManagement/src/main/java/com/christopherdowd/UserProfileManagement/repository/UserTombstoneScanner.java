@@ -0,0 +1,30 @@
+package com.christopherdowd.UserProfileManagement.repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * Finds soft-deleted user profiles by the time of their deletion, and the profiles listings of live
+ * profiles don't find
+ * Part of UserProfileRepository; the Datastore backend gets it from the UserTombstoneScannerImpl
+ * repository fragment, the embedded backend implements it itself.
+ */
+public interface UserTombstoneScanner {
+
+    /*
+     * IDs of profiles with a deletedAt before the given instant
+     * @param deletedBefore upper bound of deletedAt, exclusive; null for every tombstone
+     * @param limit maximum number of IDs returned, 0 for no limit
+     * @return the IDs, in no particular order
+     */
+    List<String> findTombstonedIds(Instant deletedBefore, int limit);
+
+    /*
+     * Hands the ID of every profile a query for deletedAt = null doesn't return to the action: the
+     * tombstones, and on Datastore the profiles last written before the deletedAt property existed
+     * @param action called once per ID, in no particular order
+     * @return the number of IDs handed to the action
+     */
+    long forEachIdNotListedAsLive(Consumer<String> action);
+}
@@ -0,0 +1,89 @@
+package com.christopherdowd.UserProfileManagement.repository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyQuery;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.google.cloud.spring.data.datastore.core.DatastoreOperations;
+import com.google.cloud.spring.data.datastore.core.mapping.DatastoreMappingContext;
+
+/*
+ * Spring Data fragment implementing UserTombstoneScanner for DatastoreUserProfileRepository
+ * A keys-only range query on deletedAt, served by its built-in single-property index. The lower
+ * bound keeps out the null deletedAt every live profile is saved with, as null sorts before timestamps;
+ * profiles stored before the property existed aren't in the index at all.
+ * Those are found by walking a keys-only scan of the kind alongside the keys-only deletedAt = null
+ * query, both in key order; a key missing from the latter is not listed as live.
+ */
+public class UserTombstoneScannerImpl implements UserTombstoneScanner {
+
+    private static final String DELETED_AT = "deletedAt";
+    private static final String KEY = "__key__";
+
+    private final DatastoreOperations datastore;
+    private final String kind;
+
+    /*
+     * Constructor for UserTombstoneScannerImpl
+     * @param datastore for running the keys-only query
+     * @param mappingContext for the kind name of UserProfile
+     */
+    public UserTombstoneScannerImpl(DatastoreOperations datastore, DatastoreMappingContext mappingContext) {
+        this.datastore = datastore;
+        this.kind = mappingContext.getDatastorePersistentEntity(UserProfile.class).kindName();
+    }
+
+    @Override
+    public List<String> findTombstonedIds(Instant deletedBefore, int limit) {
+        PropertyFilter tombstoned = PropertyFilter.gt(DELETED_AT, Timestamp.MIN_VALUE);
+        KeyQuery.Builder builder = Query.newKeyQueryBuilder().setKind(kind);
+        if (deletedBefore != null) {
+            builder.setFilter(CompositeFilter.and(tombstoned, PropertyFilter.lt(DELETED_AT,
+                Timestamp.ofTimeSecondsAndNanos(deletedBefore.getEpochSecond(), deletedBefore.getNano()))));
+        } else {
+            builder.setFilter(tombstoned);
+        }
+        if (limit > 0) {
+            builder.setLimit(limit);
+        }
+
+        List<String> ids = new ArrayList<>();
+        for (Key key : datastore.queryKeys(builder.build())) {
+            ids.add(key.getName());
+        }
+        return ids;
+    }
+
+    @Override
+    public long forEachIdNotListedAsLive(Consumer<String> action) {
+        Iterator<Key> live = datastore.queryKeys(Query.newKeyQueryBuilder().setKind(kind)
+            .setFilter(PropertyFilter.isNull(DELETED_AT))
+            .setOrderBy(OrderBy.asc(KEY))
+            .build()).iterator();
+        String nextLive = live.hasNext() ? live.next().getName() : null;
+
+        // IDs are compared as strings; where that disagrees with the key order an ID is handed over needlessly, never missed
+        long found = 0;
+        for (Key key : datastore.queryKeys(Query.newKeyQueryBuilder().setKind(kind).setOrderBy(OrderBy.asc(KEY)).build())) {
+            String id = key.getName();
+            while (nextLive != null && nextLive.compareTo(id) < 0) {
+                nextLive = live.hasNext() ? live.next().getName() : null;
+            }
+            if (!id.equals(nextLive)) {
+                action.accept(id);
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,413 @@
+package com.christopherdowd.UserProfileManagement.repository.embedded;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Repository;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.domain.UserProfileSummary;
+import com.christopherdowd.UserProfileManagement.mapper.UserProfileBinaryCodec;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileQuery;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * UserProfileRepository backed by the embedded LogStructuredStore instead of Datastore
+ * Selected with the "embedded" profile; reads are served from local disk (usually the page cache)
+ * in microseconds and no network access is needed for storage, e.g. for edge deployments and benchmarks.
+ * Data lives on the local disk of a single instance, so it must not be used behind a load balancer
+ * with several replicas.
+ * The SSN blind index is kept in memory and rebuilt from the store on startup.
+ */
+@Repository
+@Profile("embedded")
+public class EmbeddedUserProfileRepository implements UserProfileRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedUserProfileRepository.class);
+
+    private final LogStructuredStore store;
+    private final double compactionMinGarbage;
+    private final ScheduledExecutorService compactor;
+
+    // ssnBlindIndex -> number of profiles with it, and each profile's current index to keep the counts right
+    private final Map<String, Integer> blindIndexCounts = new ConcurrentHashMap<>();
+    private final Map<String, String> blindIndexById = new ConcurrentHashMap<>();
+
+    /*
+     * Constructor for EmbeddedUserProfileRepository
+     * @param directory where the store keeps its segment files
+     * @param segmentSize size at which a new segment is started
+     * @param syncWrites fsync every write instead of relying on the OS to flush
+     * @param compactionInterval how often compaction is considered
+     * @param compactionMinGarbage share of garbage in closed segments that triggers compaction
+     */
+    public EmbeddedUserProfileRepository(
+            @Value("${embedded.store.directory:data/users}") String directory,
+            @Value("${embedded.store.segment-size:67108864}") long segmentSize,
+            @Value("${embedded.store.sync-writes:false}") boolean syncWrites,
+            @Value("${embedded.store.compaction-interval:1m}") Duration compactionInterval,
+            @Value("${embedded.store.compaction-min-garbage:0.5}") double compactionMinGarbage) throws IOException {
+        this.store = LogStructuredStore.open(Path.of(directory), segmentSize, syncWrites);
+        this.compactionMinGarbage = compactionMinGarbage;
+        rebuildBlindIndex();
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "embedded-store-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compact,
+            compactionInterval.toMillis(), compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public <S extends UserProfile> S save(S user) {
+        saveAll(List.of(user));
+        return user;
+    }
+
+    @Override
+    public <S extends UserProfile> Iterable<S> saveAll(Iterable<S> users) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        List<S> saved = new ArrayList<>();
+        for (S user : users) {
+            Objects.requireNonNull(user.getId(), "User profile ID must be set before saving");
+            entries.put(user.getId(), UserProfileBinaryCodec.encode(user));
+            saved.add(user);
+        }
+
+        synchronized (this) {
+            try {
+                store.putAll(entries);
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("Failed to write user profiles to the embedded store", e);
+            }
+            for (S user : saved) {
+                updateBlindIndex(user.getId(), user.getSsnBlindIndex());
+            }
+        }
+        return saved;
+    }
+
+    // Writes take the same lock, so nothing can change the profile between the read and the save
+    @Override
+    public synchronized boolean replaceIfUnchanged(UserProfile expected, UserProfile replacement) {
+        if (!expected.equals(read(expected.getId()))) {
+            return false;
+        }
+        save(replacement);
+        return true;
+    }
+
+    @Override
+    public synchronized int replaceAllIfUnchanged(List<UserProfile> expected, List<UserProfile> replacements) {
+        int written = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            if (replaceIfUnchanged(expected.get(i), replacements.get(i))) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public synchronized boolean insertIfAbsent(UserProfile profile) {
+        if (store.contains(profile.getId())) {
+            return false;
+        }
+        save(profile);
+        return true;
+    }
+
+    @Override
+    public Optional<UserProfile> findById(String id) {
+        return Optional.ofNullable(read(id));
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return store.contains(id);
+    }
+
+    @Override
+    public Iterable<UserProfile> findAll() {
+        return readAll(store.keysAfter(null));
+    }
+
+    @Override
+    public Iterable<UserProfile> findAllById(Iterable<String> ids) {
+        return readAll(ids);
+    }
+
+    /*
+     * Pages through profiles in ID order
+     * nextPageable() of the returned page carries the last ID as a cursor, so following pages
+     * start with a seek instead of skipping over earlier ones
+     */
+    @Override
+    public Page<UserProfile> findAll(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            List<UserProfile> all = new ArrayList<>();
+            findAll().forEach(all::add);
+            return new PageImpl<>(all);
+        }
+        if (pageable.getSort().isSorted()) {
+            throw new UnsupportedOperationException("The embedded store only pages in ID order");
+        }
+
+        Iterator<String> ids;
+        if (pageable instanceof KeyCursorPageRequest cursor) {
+            ids = store.keysAfter(cursor.startAfter).iterator();
+        } else {
+            ids = store.keysAfter(null).iterator();
+            for (long skipped = 0; skipped < pageable.getOffset() && ids.hasNext(); skipped++) {
+                ids.next();
+            }
+        }
+
+        List<UserProfile> content = new ArrayList<>(pageable.getPageSize());
+        String lastId = null;
+        while (content.size() < pageable.getPageSize() && ids.hasNext()) {
+            lastId = ids.next();
+            UserProfile user = read(lastId);
+            // Deleted since the key was listed
+            if (user != null) {
+                content.add(user);
+            }
+        }
+
+        boolean more = ids.hasNext();
+        long total = pageable.getOffset() + content.size() + (more ? 1 : 0);
+        String startAfter = pageable instanceof KeyCursorPageRequest cursor ? cursor.startAfter : null;
+        return new PageImpl<>(content, new KeyCursorPageRequest(pageable.getPageNumber(), pageable.getPageSize(), startAfter, lastId), total);
+    }
+
+    // Records are decoded whole anyway, so projecting only saves the callers' copies
+
+    @Override
+    public Optional<UserProfileSummary> findSummaryById(String id) {
+        return findById(id).map(UserProfileSummary::of);
+    }
+
+    @Override
+    public List<UserProfileSummary> findAllSummariesBy() {
+        List<UserProfileSummary> summaries = new ArrayList<>();
+        findAll().forEach(user -> summaries.add(UserProfileSummary.of(user)));
+        return summaries;
+    }
+
+    /*
+     * Evaluates the query over all profiles in memory
+     * Profiles without a value for the sort property are left out, like on Datastore
+     */
+    @Override
+    public List<UserProfileSummary> search(UserProfileQuery query) {
+        String rangeProperty = query.rangeProperty();
+        Sort.Order order = query.sort().stream().findFirst().orElse(null);
+
+        Stream<UserProfile> matches = StreamSupport.stream(findAll().spliterator(), false)
+            .filter(user -> query.username() == null || query.username().equals(user.getUsername()))
+            .filter(user -> query.email() == null || query.email().equals(user.getEmail()))
+            .filter(user -> query.usernamePrefix() == null
+                || (user.getUsername() != null && user.getUsername().startsWith(query.usernamePrefix())))
+            .filter(user -> query.emailPrefix() == null
+                || (user.getEmail() != null && user.getEmail().startsWith(query.emailPrefix())))
+            .filter(user -> query.createdAfter() == null
+                || (user.getCreatedAt() != null && user.getCreatedAt().isAfter(query.createdAfter())))
+            .filter(user -> !query.liveOnly() || user.getDeletedAt() == null);
+        if (order != null) {
+            Comparator<UserProfile> comparator = switch (order.getProperty()) {
+                case UserProfileQuery.USERNAME -> Comparator.comparing(UserProfile::getUsername);
+                case UserProfileQuery.EMAIL -> Comparator.comparing(UserProfile::getEmail);
+                default -> Comparator.comparing(UserProfile::getCreatedAt);
+            };
+            matches = matches
+                .filter(user -> hasValue(user, order.getProperty()))
+                .sorted(order.isAscending() ? comparator : comparator.reversed());
+        }
+        if (query.limit() > 0) {
+            matches = matches.limit(query.limit());
+        }
+        return matches.map(UserProfileSummary::of).toList();
+    }
+
+    private static boolean hasValue(UserProfile user, String property) {
+        return switch (property) {
+            case UserProfileQuery.USERNAME -> user.getUsername() != null;
+            case UserProfileQuery.EMAIL -> user.getEmail() != null;
+            default -> user.getCreatedAt() != null;
+        };
+    }
+
+    @Override
+    public List<String> findTombstonedIds(Instant deletedBefore, int limit) {
+        Stream<String> ids = StreamSupport.stream(findAll().spliterator(), false)
+            .filter(user -> user.getDeletedAt() != null
+                && (deletedBefore == null || user.getDeletedAt().isBefore(deletedBefore)))
+            .map(UserProfile::getId);
+        return (limit > 0 ? ids.limit(limit) : ids).toList();
+    }
+
+    // Every profile here is read with its deletedAt, missing or not, so only tombstones aren't listed
+    @Override
+    public long forEachIdNotListedAsLive(Consumer<String> action) {
+        long found = 0;
+        for (UserProfile user : findAll()) {
+            if (user.getDeletedAt() != null) {
+                action.accept(user.getId());
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public long forEachId(Consumer<String> action) {
+        long scanned = 0;
+        for (String id : store.keysAfter(null)) {
+            action.accept(id);
+            scanned++;
+        }
+        return scanned;
+    }
+
+    @Override
+    public long count() {
+        return store.size();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        synchronized (this) {
+            try {
+                store.delete(id);
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("Failed to delete user profile " + id + " from the embedded store", e);
+            }
+            updateBlindIndex(id, null);
+        }
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        for (String id : ids) {
+            deleteById(id);
+        }
+    }
+
+    @Override
+    public boolean existsBySsnBlindIndex(String ssnBlindIndex) {
+        return blindIndexCounts.containsKey(ssnBlindIndex);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        compactor.shutdownNow();
+        store.close();
+    }
+
+    private void compact() {
+        try {
+            store.compact(compactionMinGarbage);
+        } catch (Exception e) {
+            logger.error("Embedded store compaction failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private UserProfile read(String id) {
+        try {
+            byte[] value = store.get(id);
+            return value != null ? UserProfileBinaryCodec.decode(value) : null;
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Failed to read user profile " + id + " from the embedded store", e);
+        }
+    }
+
+    private List<UserProfile> readAll(Iterable<String> ids) {
+        List<UserProfile> users = new ArrayList<>();
+        for (String id : ids) {
+            UserProfile user = read(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    private void rebuildBlindIndex() {
+        for (UserProfile user : readAll(store.keysAfter(null))) {
+            updateBlindIndex(user.getId(), user.getSsnBlindIndex());
+        }
+    }
+
+    // Called with the lock held, null removes the profile's index
+    private void updateBlindIndex(String id, String ssnBlindIndex) {
+        String previous = ssnBlindIndex != null ? blindIndexById.put(id, ssnBlindIndex) : blindIndexById.remove(id);
+        if (previous != null) {
+            blindIndexCounts.computeIfPresent(previous, (index, count) -> count > 1 ? count - 1 : null);
+        }
+        if (ssnBlindIndex != null) {
+            blindIndexCounts.merge(ssnBlindIndex, 1, Integer::sum);
+        }
+    }
+
+    /*
+     * Page request that remembers where its page ended, so the next page continues from there
+     */
+    static final class KeyCursorPageRequest extends PageRequest {
+
+        private final String startAfter;
+        private final String endedAt;
+
+        KeyCursorPageRequest(int page, int size, String startAfter, String endedAt) {
+            super(page, size, Sort.unsorted());
+            this.startAfter = startAfter;
+            this.endedAt = endedAt;
+        }
+
+        @Override
+        public PageRequest next() {
+            return new KeyCursorPageRequest(getPageNumber() + 1, getPageSize(), endedAt, null);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof KeyCursorPageRequest cursor && super.equals(other)
+                && Objects.equals(startAfter, cursor.startAfter);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * super.hashCode() + Objects.hashCode(startAfter);
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package com.christopherdowd.UserProfileManagement.repository.embedded;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Embedded key-value store built as a log of append-only segment files (a Bitcask-style design)
+ *
+ *   writes: a record is appended to the active segment and the in-memory hash index is pointed at it;
+ *           deletes append a tombstone. Once the active segment reaches the segment size a new one is started.
+ *   reads:  one index lookup and one positional read, no locks
+ *   compaction: copies the records the index still points to out of all closed segments into one new
+ *           segment and drops everything else, reclaiming space taken by overwritten and deleted keys
+ *   recovery: on open all segments are replayed in order to rebuild the index; a torn record at the
+ *           end of a segment (crash mid-write) fails its CRC and is truncated away
+ *
+ * Record: CRC32C (int) | key length (int) | value length (int, -1 for a tombstone) | key (UTF-8) | value
+ * The CRC covers everything after it.
+ *
+ * Reads use FileChannel positional I/O, which closes the channel if the reading thread is interrupted;
+ * callers must not interrupt threads blocked in get.
+ */
+public class LogStructuredStore implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogStructuredStore.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACTING_SUFFIX = ".compacting";
+
+    private static final int RECORD_HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int TOMBSTONE = -1;
+    private static final int MAX_READ_ATTEMPTS = 3;
+
+    /*
+     * Where the current value of a key is stored
+     * @param segment the segment holding the record
+     * @param offset position of the record in the segment
+     * @param recordLength length of the whole record including its header
+     * @param keyLength length of the encoded key
+     * @param valueLength length of the value
+     */
+    private record Location(Segment segment, long offset, int recordLength, int keyLength, int valueLength) {
+
+        long valueOffset() {
+            return offset + RECORD_HEADER_SIZE + keyLength;
+        }
+    }
+
+    // A record as read back from a segment, value is null for a tombstone
+    private record StoredRecord(String key, byte[] value, long offset, int length, int keyLength) {
+    }
+
+    // A live record copied by compaction
+    private record Move(String key, Location from, Location to) {
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(StoredRecord record) throws IOException;
+    }
+
+    private final Path directory;
+    private final long segmentSize;
+    private final boolean syncWrites;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    // Sorted copy of the keys, so scans can resume after a given key
+    private final NavigableSet<String> keys = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    private final Object writeLock = new Object();
+    private final Object compactionLock = new Object();
+    private final CRC32C writeCrc = new CRC32C();
+
+    private Segment active;
+    private long nextSegmentId;
+    private volatile boolean closed;
+
+    private LogStructuredStore(Path directory, long segmentSize, boolean syncWrites) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncWrites = syncWrites;
+    }
+
+    /*
+     * Opens the store in the directory, recovering the index from existing segments
+     * @param directory where segment files are kept, created if missing
+     * @param segmentSize size after which the active segment is closed and a new one started
+     * @param syncWrites fsync after every write; otherwise a crash of the machine (not just the process)
+     *        can lose writes still in the OS page cache
+     */
+    public static LogStructuredStore open(Path directory, long segmentSize, boolean syncWrites) throws IOException {
+        LogStructuredStore store = new LogStructuredStore(directory, segmentSize, syncWrites);
+        store.recover();
+        return store;
+    }
+
+    /*
+     * Reads the current value of a key
+     * @return the value, or null if the key doesn't exist
+     */
+    public byte[] get(String key) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            try {
+                return location.segment().read(location.valueOffset(), location.valueLength()).array();
+            } catch (ClosedChannelException e) {
+                // Compaction moved the record and closed the old segment, look it up again
+                if (closed || attempt >= MAX_READ_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /*
+     * Keys in ascending order
+     * @param startAfter only keys after this one are returned, null for all keys
+     */
+    public NavigableSet<String> keysAfter(String startAfter) {
+        NavigableSet<String> view = startAfter == null ? keys : keys.tailSet(startAfter, false);
+        return Collections.unmodifiableNavigableSet(view);
+    }
+
+    /*
+     * Stores a value, replacing any previous value of the key
+     */
+    public void put(String key, byte[] value) throws IOException {
+        putAll(Map.of(key, value));
+    }
+
+    /*
+     * Stores several values with a single append and at most one fsync
+     */
+    public void putAll(Map<String, byte[]> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            ensureOpen();
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                ByteBuffer record = encode(key, entry.getValue());
+                int length = record.remaining();
+                rollIfFull(length);
+
+                long offset = active.append(record);
+                Location location = new Location(active, offset, length, key.length, entry.getValue().length);
+                active.liveBytes().addAndGet(length);
+                release(index.put(entry.getKey(), location));
+                keys.add(entry.getKey());
+            }
+            if (syncWrites) {
+                active.force();
+            }
+        }
+    }
+
+    /*
+     * Deletes a key by appending a tombstone
+     * @return false if the key didn't exist
+     */
+    public boolean delete(String key) throws IOException {
+        synchronized (writeLock) {
+            ensureOpen();
+            if (!index.containsKey(key)) {
+                return false;
+            }
+            ByteBuffer tombstone = encode(key.getBytes(StandardCharsets.UTF_8), null);
+            rollIfFull(tombstone.remaining());
+            active.append(tombstone);
+            if (syncWrites) {
+                active.force();
+            }
+            release(index.remove(key));
+            keys.remove(key);
+            return true;
+        }
+    }
+
+    /*
+     * Share of the closed segments' bytes that is no longer referenced by the index
+     */
+    public double garbageRatio() {
+        long total = 0;
+        long live = 0;
+        for (Segment segment : closedSegments()) {
+            total += segment.size() - Segment.HEADER_SIZE;
+            live += segment.liveBytes().get();
+        }
+        return total == 0 ? 0 : (double) (total - live) / total;
+    }
+
+    /*
+     * Rewrites all closed segments into one, keeping only the records the index points to
+     * Writers are only blocked while the index is switched over to the new segment.
+     * @param minGarbageRatio compaction is skipped unless at least this share of the closed segments is garbage
+     * @return whether a compaction ran
+     */
+    public boolean compact(double minGarbageRatio) throws IOException {
+        synchronized (compactionLock) {
+            List<Segment> inputs = closedSegments();
+            if (closed || inputs.isEmpty() || garbageRatio() < minGarbageRatio) {
+                return false;
+            }
+            Segment first = inputs.get(0);
+            Segment last = inputs.get(inputs.size() - 1);
+            long bytesBefore = 0;
+            for (Segment input : inputs) {
+                bytesBefore += input.size();
+            }
+
+            // The output takes the ID of the newest input, its base ID marks which segments it replaces
+            Path target = segmentPath(last.getId());
+            Segment output = Segment.create(target.resolveSibling(target.getFileName() + COMPACTING_SUFFIX), last.getId(), first.getBaseId());
+            List<Move> moves = new ArrayList<>();
+            CRC32C crc = new CRC32C();
+            try {
+                for (Segment input : inputs) {
+                    scan(input, record -> {
+                        // Tombstones are dropped: no older segment survives the compaction
+                        if (record.value() == null) {
+                            return;
+                        }
+                        Location current = index.get(record.key());
+                        if (current == null || current.segment() != input || current.offset() != record.offset()) {
+                            return;
+                        }
+                        long offset = output.append(encode(record.key().getBytes(StandardCharsets.UTF_8), record.value(), crc));
+                        moves.add(new Move(record.key(), current,
+                            new Location(output, offset, current.recordLength(), current.keyLength(), current.valueLength())));
+                    });
+                }
+                output.force();
+                output.moveTo(target);
+            } catch (IOException | RuntimeException e) {
+                output.close();
+                Files.deleteIfExists(output.getPath());
+                throw e;
+            }
+
+            synchronized (writeLock) {
+                for (Move move : moves) {
+                    // Keys written or deleted since the copy keep their newer location
+                    if (index.replace(move.key(), move.from(), move.to())) {
+                        output.liveBytes().addAndGet(move.to().recordLength());
+                    }
+                }
+                for (Segment input : inputs) {
+                    segments.remove(input.getId());
+                }
+                segments.put(output.getId(), output);
+            }
+
+            for (Segment input : inputs) {
+                input.close();
+                if (input != last) {
+                    Files.deleteIfExists(input.getPath());
+                }
+            }
+            logger.info("Compacted {} segments from {} to {} bytes", inputs.size(), bytesBefore, output.size());
+            return true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (compactionLock) {
+            synchronized (writeLock) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                active.force();
+                for (Segment segment : segments.values()) {
+                    segment.close();
+                }
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(COMPACTING_SUFFIX)) {
+                    // A compaction that never completed, its inputs are still intact
+                    Files.delete(file);
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    files.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, Path> file : files.entrySet()) {
+            segments.put(file.getKey(), Segment.open(file.getValue(), file.getKey()));
+        }
+        // Inputs of a compaction that crashed after publishing its output but before deleting them
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment.getBaseId() < segment.getId() && segments.containsKey(segment.getId())) {
+                for (Segment superseded : new ArrayList<>(segments.subMap(segment.getBaseId(), true, segment.getId(), false).values())) {
+                    segments.remove(superseded.getId());
+                    superseded.close();
+                    Files.deleteIfExists(superseded.getPath());
+                }
+            }
+        }
+
+        for (Segment segment : segments.values()) {
+            long validEnd = scan(segment, record -> {
+                Location previous;
+                if (record.value() == null) {
+                    previous = index.remove(record.key());
+                    keys.remove(record.key());
+                } else {
+                    previous = index.put(record.key(), new Location(segment, record.offset(), record.length(), record.keyLength(), record.value().length));
+                    keys.add(record.key());
+                    segment.liveBytes().addAndGet(record.length());
+                }
+                release(previous);
+            });
+            if (validEnd < segment.size()) {
+                logger.warn("Truncating {} from {} to {} bytes after an incomplete or corrupt record", segment.getPath(), segment.size(), validEnd);
+                segment.truncate(validEnd);
+            }
+        }
+
+        if (segments.isEmpty()) {
+            nextSegmentId = 1;
+            startSegment();
+        } else {
+            active = segments.lastEntry().getValue();
+            nextSegmentId = active.getId() + 1;
+        }
+        logger.info("Opened embedded store in {} with {} keys in {} segments", directory, index.size(), segments.size());
+    }
+
+    /*
+     * Reads the records of a segment in order, stopping at the first incomplete or corrupt one
+     * @return the offset after the last valid record
+     */
+    private long scan(Segment segment, RecordVisitor visitor) throws IOException {
+        CRC32C crc = new CRC32C();
+        long offset = Segment.HEADER_SIZE;
+        try (InputStream file = Files.newInputStream(segment.getPath());
+                DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+            in.skipNBytes(Segment.HEADER_SIZE);
+            while (offset < segment.size()) {
+                int storedCrc;
+                int keyLength;
+                int valueLength;
+                byte[] key;
+                byte[] value;
+                try {
+                    storedCrc = in.readInt();
+                    keyLength = in.readInt();
+                    valueLength = in.readInt();
+                    if (keyLength < 0 || valueLength < TOMBSTONE
+                            || (long) RECORD_HEADER_SIZE + keyLength + Math.max(valueLength, 0) > segment.size() - offset) {
+                        return offset;
+                    }
+                    key = new byte[keyLength];
+                    in.readFully(key);
+                    value = valueLength == TOMBSTONE ? null : new byte[valueLength];
+                    if (value != null) {
+                        in.readFully(value);
+                    }
+                } catch (EOFException e) {
+                    return offset;
+                }
+
+                crc.reset();
+                ByteBuffer lengths = ByteBuffer.allocate(2 * Integer.BYTES).putInt(keyLength).putInt(valueLength).flip();
+                crc.update(lengths);
+                crc.update(key);
+                if (value != null) {
+                    crc.update(value);
+                }
+                if ((int) crc.getValue() != storedCrc) {
+                    return offset;
+                }
+
+                int length = RECORD_HEADER_SIZE + keyLength + (value != null ? value.length : 0);
+                visitor.visit(new StoredRecord(new String(key, StandardCharsets.UTF_8), value, offset, length, keyLength));
+                offset += length;
+            }
+        }
+        return offset;
+    }
+
+    private ByteBuffer encode(byte[] key, byte[] value) {
+        return encode(key, value, writeCrc);
+    }
+
+    private static ByteBuffer encode(byte[] key, byte[] value, CRC32C crc) {
+        int valueLength = value != null ? value.length : TOMBSTONE;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + key.length + (value != null ? value.length : 0));
+        record.putInt(0).putInt(key.length).putInt(valueLength).put(key);
+        if (value != null) {
+            record.put(value);
+        }
+
+        crc.reset();
+        crc.update(record.array(), Integer.BYTES, record.position() - Integer.BYTES);
+        record.putInt(0, (int) crc.getValue());
+        return record.flip();
+    }
+
+    // The record at the location is no longer current
+    private static void release(Location previous) {
+        if (previous != null) {
+            previous.segment().liveBytes().addAndGet(-previous.recordLength());
+        }
+    }
+
+    private void rollIfFull(int recordLength) throws IOException {
+        if (active.size() + recordLength > segmentSize && active.size() > Segment.HEADER_SIZE) {
+            active.force();
+            startSegment();
+        }
+    }
+
+    private void startSegment() throws IOException {
+        long id = nextSegmentId++;
+        active = Segment.create(segmentPath(id), id, id);
+        segments.put(id, active);
+    }
+
+    private List<Segment> closedSegments() {
+        synchronized (writeLock) {
+            return new ArrayList<>(segments.headMap(active.getId(), false).values());
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+}
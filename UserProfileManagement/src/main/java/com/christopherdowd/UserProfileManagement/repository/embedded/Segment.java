@@ -0,0 +1,161 @@
+package com.christopherdowd.UserProfileManagement.repository.embedded;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * One append-only file of the log-structured store
+ * Header: magic "UPLOG" (5 bytes) | version (short) | base ID (long)
+ * A segment written by compaction replaces all segments from its base ID up to its own ID;
+ * every other segment has a base ID equal to its own ID.
+ * Appends are serialized by the store, reads use positional I/O and are safe from any thread.
+ */
+final class Segment implements Closeable {
+
+    private static final byte[] MAGIC = { 'U', 'P', 'L', 'O', 'G' };
+    private static final short VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + Short.BYTES + Long.BYTES;
+
+    private final long id;
+    private final long baseId;
+    private volatile Path path;
+    private final FileChannel channel;
+    private final AtomicLong size;
+
+    // Bytes of records the index still points to, the rest is garbage for compaction
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    private Segment(long id, long baseId, Path path, FileChannel channel, long size) {
+        this.id = id;
+        this.baseId = baseId;
+        this.path = path;
+        this.channel = channel;
+        this.size = new AtomicLong(size);
+    }
+
+    /*
+     * Creates a new empty segment
+     */
+    static Segment create(Path path, long id, long baseId) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).putShort(VERSION).putLong(baseId).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, HEADER_SIZE - header.remaining());
+        }
+        return new Segment(id, baseId, path, channel, HEADER_SIZE);
+    }
+
+    /*
+     * Opens an existing segment and validates its header
+     */
+    static Segment open(Path path, long id) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || header.getShort() != VERSION) {
+                throw new IOException(path + " is not a user profile store segment");
+            }
+            return new Segment(id, header.getLong(), path, channel, channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /*
+     * Appends the buffers at the end of the segment
+     * @return the offset the first byte was written at
+     */
+    long append(ByteBuffer... buffers) throws IOException {
+        long offset = size.get();
+        long position = offset;
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+        size.set(position);
+        return offset;
+    }
+
+    /*
+     * Reads length bytes starting at offset
+     */
+    ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer, offset);
+        return buffer.flip();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of segment at offset " + position);
+            }
+            position += read;
+        }
+    }
+
+    /*
+     * Cuts off a torn write found during recovery
+     */
+    void truncate(long newSize) throws IOException {
+        channel.truncate(newSize);
+        size.set(newSize);
+    }
+
+    /*
+     * Atomically moves the file into place, replacing any file at the target
+     * The open channel keeps working, so readers aren't affected
+     */
+    void moveTo(Path target) throws IOException {
+        Files.move(path, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        path = target;
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    long getId() {
+        return id;
+    }
+
+    long getBaseId() {
+        return baseId;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long size() {
+        return size.get();
+    }
+
+    AtomicLong liveBytes() {
+        return liveBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
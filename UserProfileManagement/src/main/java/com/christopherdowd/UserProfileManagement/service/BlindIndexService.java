@@ -0,0 +1,9 @@
+package com.christopherdowd.UserProfileManagement.service;
+
+public interface BlindIndexService {
+    String computeSsnIndex(String socialSecurityNumber);
+    boolean isSsnIndexTaken(String ssnIndex);
+    void recordSsnIndex(String ssnIndex);
+    boolean reserveSsnIndex(String ssnIndex);
+    void releaseSsnIndex(String ssnIndex);
+}
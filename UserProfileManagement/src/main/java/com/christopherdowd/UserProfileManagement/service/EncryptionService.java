@@ -3,4 +3,12 @@ package com.christopherdowd.UserProfileManagement.service;
 public interface EncryptionService {
     String encrypt(String data) throws Exception;
     String decrypt(String encryptedData) throws Exception;
+
+    /*
+     * Whether the payload was encrypted with a key other than the one currently used for encryption
+     * Implementations without key rotation never require re-encryption
+     */
+    default boolean needsReEncryption(String encryptedData) {
+        return false;
+    }
 }
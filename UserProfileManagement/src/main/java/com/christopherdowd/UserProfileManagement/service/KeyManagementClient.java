@@ -0,0 +1,11 @@
+package com.christopherdowd.UserProfileManagement.service;
+
+/*
+ * Key encryption key (KEK) held by a key management service
+ * Used for envelope encryption: data keys are generated locally and only
+ * wrapped / unwrapped by the KMS, the data itself never leaves the application
+ */
+public interface KeyManagementClient {
+    byte[] wrapKey(byte[] plaintextKey);
+    byte[] unwrapKey(byte[] wrappedKey);
+}
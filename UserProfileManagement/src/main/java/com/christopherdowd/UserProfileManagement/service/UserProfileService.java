@@ -5,11 +5,14 @@ import java.util.List;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileRequestDto;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileUpdateRequestDto;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileQuery;
 
 public interface UserProfileService {
     UserProfileResponseDto getById(String id);
     List<UserProfileResponseDto> getAll();
+    List<UserProfileResponseDto> search(UserProfileQuery query);
     UserProfileResponseDto create(UserProfileRequestDto dto);
     UserProfileResponseDto update(String id, UserProfileUpdateRequestDto dto);
     void delete(String id);
+    UserProfileResponseDto restore(String id);
 }
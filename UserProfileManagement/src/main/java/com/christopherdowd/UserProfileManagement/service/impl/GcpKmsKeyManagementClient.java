@@ -0,0 +1,41 @@
+package com.christopherdowd.UserProfileManagement.service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.service.KeyManagementClient;
+import com.google.cloud.spring.kms.KmsOperations;
+
+/*
+ * KeyManagementClient backed by Google Cloud KMS, via spring-cloud-gcp-starter-kms
+ * The crypto key is configured in application.yml as encryption.kms.key-id, either as a full
+ * resource name (projects/.../locations/.../keyRings/.../cryptoKeys/...) or as location/keyRing/cryptoKey
+ */
+@Component
+@ConditionalOnProperty(name = "encryption.provider", havingValue = "kms")
+public class GcpKmsKeyManagementClient implements KeyManagementClient {
+
+    private final KmsOperations kms;
+    private final String cryptoKeyId;
+
+    /*
+     * Constructor for GcpKmsKeyManagementClient
+     * @param kms the KmsTemplate configured by the KMS starter
+     * @param cryptoKeyId the KMS key that wraps data keys
+     */
+    public GcpKmsKeyManagementClient(KmsOperations kms, @Value("${encryption.kms.key-id}") String cryptoKeyId) {
+        this.kms = kms;
+        this.cryptoKeyId = cryptoKeyId;
+    }
+
+    @Override
+    public byte[] wrapKey(byte[] plaintextKey) {
+        return kms.encryptBytes(cryptoKeyId, plaintextKey);
+    }
+
+    @Override
+    public byte[] unwrapKey(byte[] wrappedKey) {
+        return kms.decryptBytes(cryptoKeyId, wrappedKey);
+    }
+}
@@ -0,0 +1,149 @@
+package com.christopherdowd.UserProfileManagement.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+import com.christopherdowd.UserProfileManagement.service.BlindIndexService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/*
+ * Blind index for Social Security Numbers
+ * GCM encryption uses a random IV, so equal SSNs never produce equal ciphertext. Instead a keyed
+ * HMAC-SHA256 of the normalized SSN is stored next to it in the indexed ssnBlindIndex property,
+ * turning a duplicate check into one indexed Datastore query. Indexes known to be taken are
+ * kept in a local cache, which also covers creates accepted here that the subscriber hasn't persisted yet.
+ * Creates reserve their index in that cache atomically before the Datastore check, so of two
+ * concurrent creates with the same SSN on one node only one gets past it.
+ * The HMAC key (encryption.blind-index.key) must be different from the encryption keys and never rotated
+ * without recomputing the stored indexes.
+ */
+@Service
+public class HmacBlindIndexServiceImpl implements BlindIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HmacBlindIndexServiceImpl.class);
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final UserProfileRepository userRepository;
+    private final SecretKeySpec hmacKey;
+
+    // Mac instances are not thread safe, so each thread keeps its own
+    private final ThreadLocal<Mac> macs;
+
+    // Blind indexes known to belong to an existing or accepted user
+    private final Cache<String, Boolean> takenIndexes;
+
+    /*
+     * Constructor for HmacBlindIndexServiceImpl
+     * @param userRepository for looking up blind indexes in Datastore
+     * @param base64EncodedKey the Base64 encoded HMAC key
+     * @param cacheSize how many taken indexes are remembered locally
+     * @param cacheTtl how long a taken index is remembered, bounds how long a deleted user's SSN stays blocked
+     */
+    public HmacBlindIndexServiceImpl(
+            UserProfileRepository userRepository,
+            @Value("${encryption.blind-index.key}") String base64EncodedKey,
+            @Value("${encryption.blind-index.cache-size:100000}") long cacheSize,
+            @Value("${encryption.blind-index.cache-ttl:10m}") Duration cacheTtl) {
+        this.userRepository = userRepository;
+        this.hmacKey = new SecretKeySpec(Base64.getDecoder().decode(base64EncodedKey), HMAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        this.takenIndexes = Caffeine.newBuilder()
+            .maximumSize(cacheSize)
+            .expireAfterWrite(cacheTtl)
+            .build();
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(hmacKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to initialize " + HMAC_ALGORITHM, e);
+        }
+    }
+
+    /*
+     * Computes the blind index of an SSN
+     * Dashes are ignored, so "123-45-6789" and "123456789" produce the same index
+     * @param socialSecurityNumber the plaintext SSN
+     * @return the URL safe Base64 encoded HMAC
+     */
+    @Override
+    public String computeSsnIndex(String socialSecurityNumber) {
+        String normalized = socialSecurityNumber.replace("-", "");
+        byte[] hmac = macs.get().doFinal(normalized.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hmac);
+    }
+
+    /*
+     * Checks whether a user with the same SSN exists or was just accepted
+     * @param ssnIndex the blind index to look up
+     * @return true if the index is taken
+     */
+    @Override
+    public boolean isSsnIndexTaken(String ssnIndex) {
+        if (takenIndexes.getIfPresent(ssnIndex) != null) {
+            return true;
+        }
+        boolean taken = userRepository.existsBySsnBlindIndex(ssnIndex);
+        if (taken) {
+            logger.debug("SSN blind index found in Datastore, caching it");
+            takenIndexes.put(ssnIndex, Boolean.TRUE);
+        }
+        return taken;
+    }
+
+    /*
+     * Remembers an index for a user that was accepted but may not be persisted yet
+     * @param ssnIndex the blind index of the new user
+     */
+    @Override
+    public void recordSsnIndex(String ssnIndex) {
+        takenIndexes.put(ssnIndex, Boolean.TRUE);
+    }
+
+    /*
+     * Claims an index for a create, unless it is already taken, reserved or found in Datastore
+     * A successful reservation blocks the index like recordSsnIndex; release it if the create fails.
+     * @param ssnIndex the blind index of the new user
+     * @return true if the index was free and is now reserved by the caller
+     */
+    @Override
+    public boolean reserveSsnIndex(String ssnIndex) {
+        if (takenIndexes.asMap().putIfAbsent(ssnIndex, Boolean.TRUE) != null) {
+            return false;
+        }
+        boolean taken;
+        try {
+            taken = userRepository.existsBySsnBlindIndex(ssnIndex);
+        } catch (RuntimeException e) {
+            takenIndexes.invalidate(ssnIndex);
+            throw e;
+        }
+        // A taken index keeps its entry, which then caches that it's in Datastore
+        return !taken;
+    }
+
+    /*
+     * Gives up a reservation of a create that failed before it was published
+     * @param ssnIndex the reserved blind index
+     */
+    @Override
+    public void releaseSsnIndex(String ssnIndex) {
+        takenIndexes.invalidate(ssnIndex);
+    }
+}
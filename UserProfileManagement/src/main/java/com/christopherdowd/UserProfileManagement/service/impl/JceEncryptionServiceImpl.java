@@ -1,6 +1,8 @@
 package com.christopherdowd.UserProfileManagement.service.impl;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import com.christopherdowd.UserProfileManagement.service.EncryptionService;
@@ -12,13 +14,23 @@ import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
 
 /* 
  * Implementation of EncryptionService using Java Cryptography Extension (JCE)
  * Provides methods to encrypt and decrypt data using AES/GCM/NoPadding
- * Encryption key is stored in application.yml
+ * Encryption keys are stored in application.yml as a versioned keyring:
+ *   encryption.jce.keys: "1:<base64 key>,2:<base64 key>"
+ *   encryption.jce.active-version: 2 (defaults to the highest version)
+ * The original single key (encryption.jce.key) is still accepted as key version 0
+ * Payloads are written as "v<version>:<base64 IV + ciphertext>", so any key in the keyring can
+ * decrypt the data it produced. Untagged payloads predate versioning and use key version 0
+ * This is the default provider, see encryption.provider
 */
 @Service("jceEncryptionService")
+@ConditionalOnProperty(name = "encryption.provider", havingValue = "jce", matchIfMissing = true)
 public class JceEncryptionServiceImpl implements EncryptionService {
 
     // Encryption algorithm (Advanced Encryption Standard)
@@ -33,25 +45,80 @@ public class JceEncryptionServiceImpl implements EncryptionService {
     // Length of GCM authentication tag in bits
     private static final int GCM_TAG_LENGTH = 128;
 
-    private final SecretKey secretKey; // Holds the secret key for encryption and decryption
+    // Versioned payloads start with "v<version>:". Base64 never contains ':' so untagged payloads are unambiguous
+    private static final char VERSION_PREFIX = 'v';
+    private static final char VERSION_SEPARATOR = ':';
+
+    // Key version of encryption.jce.key and of every payload written before key versioning
+    static final int LEGACY_KEY_VERSION = 0;
+
+    // Shared cryptographically strong random number generator, SecureRandom is thread safe
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Map<Integer, SecretKey> keyring; // Every key that may still be needed for decryption, by version
+    private final int activeVersion; // Version of the key used for new encryptions
 
     /*
-     * Constructor for JceEncryptionServiceImpl
-     * Initializes the secret key from a Base64 encoded string provided in application.yml
+     * Constructor for a service with a single key, treated as key version 0
      * @param base64EncodedKey is the Base64 encoded encryption key 
      */
-    public JceEncryptionServiceImpl(@Value("${encryption.jce.key}") String base64EncodedKey) {
-        // Decode the key string into a byte array
+    public JceEncryptionServiceImpl(String base64EncodedKey) {
+        this(base64EncodedKey, "", -1);
+    }
+
+    /*
+     * Constructor for JceEncryptionServiceImpl
+     * Initializes the keyring from Base64 encoded keys provided in application.yml
+     * @param base64EncodedKey the original unversioned key (key version 0), may be empty once all data is rotated
+     * @param versionedKeys comma separated "version:base64key" pairs
+     * @param activeVersion the key version used for encryption, or -1 for the highest configured version
+     */
+    @Autowired
+    public JceEncryptionServiceImpl(
+            @Value("${encryption.jce.key:}") String base64EncodedKey,
+            @Value("${encryption.jce.keys:}") String versionedKeys,
+            @Value("${encryption.jce.active-version:-1}") int activeVersion) {
+        TreeMap<Integer, SecretKey> keys = new TreeMap<>();
+
+        if (base64EncodedKey != null && !base64EncodedKey.isBlank()) {
+            keys.put(LEGACY_KEY_VERSION, toSecretKey(base64EncodedKey.trim()));
+        }
+
+        if (versionedKeys != null && !versionedKeys.isBlank()) {
+            for (String entry : versionedKeys.split(",")) {
+                int separator = entry.indexOf(VERSION_SEPARATOR);
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Encryption keys must be configured as version:base64key");
+                }
+                int version = Integer.parseInt(entry.substring(0, separator).trim());
+                if (version < 0 || keys.put(version, toSecretKey(entry.substring(separator + 1).trim())) != null) {
+                    throw new IllegalArgumentException("Invalid or duplicate encryption key version: " + version);
+                }
+            }
+        }
+
+        if (keys.isEmpty()) {
+            throw new IllegalStateException("No encryption key configured, set encryption.jce.key or encryption.jce.keys");
+        }
+
+        this.activeVersion = activeVersion >= 0 ? activeVersion : keys.lastKey();
+        if (!keys.containsKey(this.activeVersion)) {
+            throw new IllegalStateException("Active encryption key version " + this.activeVersion + " is not in the keyring");
+        }
+        this.keyring = Collections.unmodifiableMap(keys);
+    }
+
+    // Creates SecretKeySpec from the decoded bytes, specifying the AES algorithm
+    private static SecretKey toSecretKey(String base64EncodedKey) {
         byte[] decodedKey = Base64.getDecoder().decode(base64EncodedKey);
-        // Creates SecretKeySpec from decoded byes, specifying the AES algorithm
-        this.secretKey = new SecretKeySpec(decodedKey, 0, decodedKey.length, ALGORITHM);
+        return new SecretKeySpec(decodedKey, 0, decodedKey.length, ALGORITHM);
     }
 
     /*
-     * Encryptes the given text data
+     * Encryptes the given text data with the active key
      * Initialization Vector (iv) is generated randomly for each encryption operation and prepended to ciphertext
      * @param data is the plaintext string to encrypt
-     * @return a Base64 encoded string representing the IV prepended to the cipher text
+     * @return "v<version>:" followed by the Base64 encoded IV and cipher text
      * @throws an exception if any error occurs during encryption
      */
     @Override
@@ -61,13 +128,12 @@ public class JceEncryptionServiceImpl implements EncryptionService {
 
         // Generate a random Initialization Vector (IV). GCM requires a unique IV for each encryption with same key
         byte[] iv = new byte[GCM_IV_LENGTH];
-        SecureRandom random = new SecureRandom(); // Uses cryptographically strong random number generator
-        random.nextBytes(iv);
+        RANDOM.nextBytes(iv);
 
         // Creates GCMParameterSpec with the IV and tag length.
         GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-        // Initialize the cipher for encryption mode with the secret key and GCM parameters
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey, gcmParameterSpec);
+        // Initialize the cipher for encryption mode with the active key and GCM parameters
+        cipher.init(Cipher.ENCRYPT_MODE, keyring.get(activeVersion), gcmParameterSpec);
 
         // Performs encryption on the UTF-8 bytes of plaintext data
         byte[] encryptedBytes = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
@@ -77,42 +143,66 @@ public class JceEncryptionServiceImpl implements EncryptionService {
         System.arraycopy(iv, 0, encryptedPayload, 0, iv.length); // Copies the beginning of the payload
         System.arraycopy(encryptedBytes, 0, encryptedPayload, iv.length, encryptedBytes.length); // Copy ciphertext after IV
 
-        // Returns the IV + ciphertext as a Base64 encoded string
-        return Base64.getEncoder().encodeToString(encryptedPayload);
+        // Returns the key version tag followed by IV + ciphertext as a Base64 encoded string
+        return VERSION_PREFIX + Integer.toString(activeVersion) + VERSION_SEPARATOR
+            + Base64.getEncoder().encodeToString(encryptedPayload);
     }
 
 
     /* 
-     * Decrypts Base64 encoded encrypted data
+     * Decrypts encrypted data with the key version it was tagged with
      * Encrypted data expected to have the IV prepended to the ciphertext
-     * @param encryptedData a base64 encoded string containing the IV and ciphertext
+     * @param encryptedData a versioned or legacy base64 encoded string containing the IV and ciphertext
      * @return the original plaintext string
-     * @throws exception if any error occurs during decryption
+     * @throws exception if any error occurs during decryption, or the key version is unknown
     */
     @Override
     public String decrypt(String encryptedData) throws Exception {
-        // Decodes the Base64 encrypted data
-        byte[] encryptedPayload = Base64.getDecoder().decode(encryptedData);
+        int version = keyVersionOf(encryptedData);
+        SecretKey secretKey = keyring.get(version);
+        if (secretKey == null) {
+            throw new IllegalArgumentException("No encryption key with version " + version + " in the keyring");
+        }
 
-        // Extracts IV from the beginning of the encrypted payload
-        byte[] iv = new byte[GCM_IV_LENGTH];
-        System.arraycopy(encryptedPayload, 0, iv, 0, iv.length);
-
-        // Extracts ciphertext
-        byte[] actualEncryptedBytes = new byte[encryptedPayload.length - iv.length];
-        System.arraycopy(encryptedPayload, iv.length, actualEncryptedBytes, 0, actualEncryptedBytes.length);
+        // Decodes the Base64 encrypted data, skipping the version tag if present
+        String base64Payload = encryptedData.substring(encryptedData.indexOf(VERSION_SEPARATOR) + 1);
+        byte[] encryptedPayload = Base64.getDecoder().decode(base64Payload);
 
         // Gets Cipher instance for the specified transformation
         Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
-        // Creates GCMParameterSpec with the extracted IV and tag length
-        GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
+        // Creates GCMParameterSpec with the IV at the beginning of the payload and tag length
+        GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, encryptedPayload, 0, GCM_IV_LENGTH);
         // Initialize the cipher for decryption mode with secret key and GCM parameters
         cipher.init(Cipher.DECRYPT_MODE, secretKey, gcmParameterSpec);
 
-        // Performs decryption
+        // Performs decryption of the ciphertext following the IV
         // Throws eception if auth tag doesn't match or key/iv is incorrect
-        byte[] decryptedBytes = cipher.doFinal(actualEncryptedBytes);
+        byte[] decryptedBytes = cipher.doFinal(encryptedPayload, GCM_IV_LENGTH, encryptedPayload.length - GCM_IV_LENGTH);
         // Converts decrypted bytes back to string using UTF-8 encoding
         return new String(decryptedBytes, StandardCharsets.UTF_8);
     }
-}
\ No newline at end of file
+
+    /*
+     * Payloads written with an older key version should be re-encrypted with the active key
+     */
+    @Override
+    public boolean needsReEncryption(String encryptedData) {
+        return keyVersionOf(encryptedData) != activeVersion;
+    }
+
+    public int getActiveVersion() {
+        return activeVersion;
+    }
+
+    // Reads the "v<version>:" tag, untagged payloads were written with the legacy key
+    static int keyVersionOf(String encryptedData) {
+        int separator = encryptedData.indexOf(VERSION_SEPARATOR);
+        if (separator < 0) {
+            return LEGACY_KEY_VERSION;
+        }
+        if (separator < 2 || encryptedData.charAt(0) != VERSION_PREFIX) {
+            throw new IllegalArgumentException("Malformed encryption key version tag");
+        }
+        return Integer.parseInt(encryptedData, 1, separator, 10);
+    }
+}
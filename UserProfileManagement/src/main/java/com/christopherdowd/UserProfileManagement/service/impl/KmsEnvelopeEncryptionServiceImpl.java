@@ -0,0 +1,279 @@
+package com.christopherdowd.UserProfileManagement.service.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.christopherdowd.UserProfileManagement.service.EncryptionService;
+import com.christopherdowd.UserProfileManagement.service.KeyManagementClient;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * EncryptionService using envelope encryption with keys managed by a KMS
+ * Data is encrypted locally with AES/GCM under a data key, the data key itself is wrapped by the KMS
+ * and stored next to the ciphertext. The active data key is reused until it reaches its TTL or
+ * usage limit and is replaced in the background shortly before, and unwrapped data keys are cached,
+ * so encrypt and decrypt on the request path don't call the KMS.
+ * Enabled with encryption.provider=kms
+ * Payloads written by the JCE provider before switching ("v<version>:" or untagged) are still
+ * decrypted with the encryption.jce keys if those stay configured, and are reported by
+ * needsReEncryption so the re-encryption job moves them into envelopes.
+ *
+ * Payload format: "k1:" + Base64(wrapped key length (2 bytes) | wrapped key | IV | ciphertext + tag)
+ */
+@Service("kmsEncryptionService")
+@ConditionalOnProperty(name = "encryption.provider", havingValue = "kms")
+public class KmsEnvelopeEncryptionServiceImpl implements EncryptionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(KmsEnvelopeEncryptionServiceImpl.class);
+
+    private static final String ALGORITHM = "AES";
+    private static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int DATA_KEY_BITS = 256;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_LENGTH = 128;
+
+    // Identifies the envelope payload format, Base64 never contains ':'
+    private static final String PAYLOAD_PREFIX = "k1:";
+
+    // A replacement data key is prepared once this fraction of the TTL or usage limit is used up
+    private static final double ROTATE_AHEAD_RATIO = 0.8;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final KeyManagementClient kms;
+    // Decrypts payloads of the JCE provider, null if no JCE keys are configured
+    private final EncryptionService legacyCrypto;
+    private final long dataKeyTtlNanos;
+    private final long dataKeyMaxUses;
+
+    // Unwrapped data keys by wrapped key bytes, used for decryption
+    private final Cache<ByteBuffer, SecretKey> unwrappedKeys;
+
+    private final ExecutorService rotationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kms-data-key-rotation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean rotationPending = new AtomicBoolean();
+
+    private volatile DataKey activeKey;
+
+    /*
+     * Constructor for KmsEnvelopeEncryptionServiceImpl
+     * @param kms wraps and unwraps data keys
+     * @param dataKeyTtl how long a data key is used for encryption
+     * @param dataKeyMaxUses how many values a data key encrypts before it is replaced
+     * @param unwrappedKeyCacheSize how many unwrapped data keys are kept for decryption
+     * @param unwrappedKeyTtl how long an unwrapped data key is kept for decryption
+     * @param legacyKey the JCE provider's unversioned key, for decrypting its payloads; may be empty
+     * @param legacyVersionedKeys the JCE provider's versioned keys, for decrypting its payloads; may be empty
+     */
+    @Autowired
+    public KmsEnvelopeEncryptionServiceImpl(
+            KeyManagementClient kms,
+            @Value("${encryption.kms.data-key-ttl:1h}") Duration dataKeyTtl,
+            @Value("${encryption.kms.data-key-max-uses:100000}") long dataKeyMaxUses,
+            @Value("${encryption.kms.unwrapped-key-cache-size:1000}") long unwrappedKeyCacheSize,
+            @Value("${encryption.kms.unwrapped-key-ttl:1h}") Duration unwrappedKeyTtl,
+            @Value("${encryption.jce.key:}") String legacyKey,
+            @Value("${encryption.jce.keys:}") String legacyVersionedKeys) {
+        this(kms, dataKeyTtl, dataKeyMaxUses, unwrappedKeyCacheSize, unwrappedKeyTtl,
+            legacyKey.isBlank() && legacyVersionedKeys.isBlank()
+                ? null
+                : new JceEncryptionServiceImpl(legacyKey, legacyVersionedKeys, -1));
+    }
+
+    KmsEnvelopeEncryptionServiceImpl(KeyManagementClient kms, Duration dataKeyTtl, long dataKeyMaxUses,
+            long unwrappedKeyCacheSize, Duration unwrappedKeyTtl, EncryptionService legacyCrypto) {
+        this.kms = kms;
+        this.legacyCrypto = legacyCrypto;
+        this.dataKeyTtlNanos = dataKeyTtl.toNanos();
+        this.dataKeyMaxUses = dataKeyMaxUses;
+        this.unwrappedKeys = Caffeine.newBuilder()
+            .maximumSize(unwrappedKeyCacheSize)
+            .expireAfterWrite(unwrappedKeyTtl)
+            .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rotationExecutor.shutdownNow();
+    }
+
+    /*
+     * Encrypts the given text with the active data key
+     * @param data is the plaintext string to encrypt
+     * @return the envelope payload, including the wrapped data key
+     */
+    @Override
+    public String encrypt(String data) throws Exception {
+        DataKey dataKey = acquireDataKey();
+
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        RANDOM.nextBytes(iv);
+
+        Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, dataKey.key(), new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+        byte[] plaintext = data.getBytes(StandardCharsets.UTF_8);
+
+        byte[] wrappedKey = dataKey.wrappedKey();
+        ByteBuffer payload = ByteBuffer.allocate(
+            Short.BYTES + wrappedKey.length + GCM_IV_LENGTH + cipher.getOutputSize(plaintext.length));
+        payload.putShort((short) wrappedKey.length);
+        payload.put(wrappedKey);
+        payload.put(iv);
+        cipher.doFinal(ByteBuffer.wrap(plaintext), payload);
+
+        return PAYLOAD_PREFIX + Base64.getEncoder().encodeToString(payload.array());
+    }
+
+    /*
+     * Decrypts an envelope payload, unwrapping its data key through the KMS only on a cache miss
+     * Payloads of the JCE provider are handed to the legacy JCE keys.
+     * @param encryptedData the payload produced by encrypt, or by the JCE provider
+     * @return the original plaintext string
+     */
+    @Override
+    public String decrypt(String encryptedData) throws Exception {
+        if (!encryptedData.startsWith(PAYLOAD_PREFIX)) {
+            if (legacyCrypto == null) {
+                throw new IllegalArgumentException("Not a KMS envelope encrypted payload, and no encryption.jce keys are configured to decrypt it");
+            }
+            return legacyCrypto.decrypt(encryptedData);
+        }
+        ByteBuffer payload = ByteBuffer.wrap(Base64.getDecoder().decode(encryptedData.substring(PAYLOAD_PREFIX.length())));
+
+        int wrappedKeyLength = Short.toUnsignedInt(payload.getShort());
+        byte[] wrappedKey = new byte[wrappedKeyLength];
+        payload.get(wrappedKey);
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        payload.get(iv);
+
+        SecretKey key = unwrappedKeys.get(ByteBuffer.wrap(wrappedKey), this::unwrap);
+
+        Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+        ByteBuffer plaintext = ByteBuffer.allocate(cipher.getOutputSize(payload.remaining()));
+        cipher.doFinal(payload, plaintext);
+
+        return new String(plaintext.array(), 0, plaintext.position(), StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Payloads not in the envelope format were written by the JCE provider and should be moved into envelopes
+     */
+    @Override
+    public boolean needsReEncryption(String encryptedData) {
+        return !encryptedData.startsWith(PAYLOAD_PREFIX);
+    }
+
+    private SecretKey unwrap(ByteBuffer wrappedKey) {
+        logger.debug("Unwrapping data key through KMS");
+        byte[] raw = kms.unwrapKey(wrappedKey.array());
+        return new SecretKeySpec(raw, ALGORITHM);
+    }
+
+    /*
+     * Returns a data key that may encrypt one more value
+     * The fast path is a volatile read and an atomic increment; a replacement is prepared in the
+     * background once the key nears its limits, so callers only block on the KMS if it isn't ready in time
+     */
+    private DataKey acquireDataKey() throws Exception {
+        long now = System.nanoTime();
+        DataKey key = activeKey;
+        if (key != null && key.tryUse(now, dataKeyMaxUses)) {
+            if (key.nearlyExhausted(now, dataKeyMaxUses, dataKeyTtlNanos)) {
+                rotateInBackground(key);
+            }
+            return key;
+        }
+
+        synchronized (this) {
+            key = activeKey;
+            if (key == null || !key.tryUse(now, dataKeyMaxUses)) {
+                key = newDataKey();
+                key.tryUse(now, dataKeyMaxUses);
+                activeKey = key;
+            }
+            return key;
+        }
+    }
+
+    private void rotateInBackground(DataKey exhausting) {
+        if (!rotationPending.compareAndSet(false, true)) {
+            return;
+        }
+        rotationExecutor.execute(() -> {
+            try {
+                DataKey replacement = newDataKey();
+                synchronized (this) {
+                    if (activeKey == exhausting) {
+                        activeKey = replacement;
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Failed to prepare a new data key, the next key will be created on the request path: {}", e.getMessage(), e);
+            } finally {
+                rotationPending.set(false);
+            }
+        });
+    }
+
+    // Generates a data key locally and has the KMS wrap it
+    private DataKey newDataKey() throws Exception {
+        KeyGenerator generator = KeyGenerator.getInstance(ALGORITHM);
+        generator.init(DATA_KEY_BITS, RANDOM);
+        SecretKey key = generator.generateKey();
+
+        byte[] wrappedKey = kms.wrapKey(key.getEncoded());
+        if (wrappedKey.length > 0xFFFF) {
+            throw new IllegalStateException("Wrapped data key is too large: " + wrappedKey.length + " bytes");
+        }
+        unwrappedKeys.put(ByteBuffer.wrap(wrappedKey), key);
+
+        logger.info("Created new KMS wrapped data key");
+        return new DataKey(key, wrappedKey, System.nanoTime() + dataKeyTtlNanos, new AtomicLong());
+    }
+
+    /*
+     * A data key in use for encryption
+     * @param key the plaintext data key
+     * @param wrappedKey the data key wrapped by the KMS, stored with every payload
+     * @param expiresAtNanos when the key stops being used for encryption
+     * @param uses how many values the key has encrypted
+     */
+    private record DataKey(SecretKey key, byte[] wrappedKey, long expiresAtNanos, AtomicLong uses) {
+
+        boolean tryUse(long now, long maxUses) {
+            return now < expiresAtNanos && uses.incrementAndGet() <= maxUses;
+        }
+
+        boolean nearlyExhausted(long now, long maxUses, long ttlNanos) {
+            return uses.get() >= maxUses * ROTATE_AHEAD_RATIO
+                || expiresAtNanos - now <= ttlNanos * (1 - ROTATE_AHEAD_RATIO);
+        }
+    }
+}
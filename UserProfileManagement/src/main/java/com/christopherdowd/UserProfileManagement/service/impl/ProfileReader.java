@@ -0,0 +1,76 @@
+package com.christopherdowd.UserProfileManagement.service.impl;
+
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
+import com.christopherdowd.UserProfileManagement.existence.KnownUserIds;
+import com.christopherdowd.UserProfileManagement.hedging.HedgedReads;
+import com.christopherdowd.UserProfileManagement.mapper.UserProfileMapper;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+
+/*
+ * The single-profile read behind getById, shared by UserProfileServiceImpl and the refresh-ahead
+ * reloads of the "profiles" cache (see ProfileCacheLoader), so cached and uncached reads answer alike
+ * IDs the existence filter has never seen are answered without a read (see KnownUserIds), and the
+ * read is hedged when hedging is enabled (see HedgedReads).
+ */
+@Component
+public class ProfileReader {
+
+    private final UserProfileRepository userRepository;
+    private final UserProfileMapper mapper;
+    private final KnownUserIds knownIds;
+    private final HedgedReads hedgedReads;
+
+    @Value("${soft-delete.enabled:false}")
+    private boolean softDeletes;
+
+    /*
+     * Constructor for ProfileReader
+     * @param userRepository for reading profiles
+     * @param mapper for converting them into the response DTO
+     * @param knownIds for rejecting unknown IDs before they reach the repository
+     * @param hedgedReads for hedging the read
+     */
+    public ProfileReader(UserProfileRepository userRepository, UserProfileMapper mapper, KnownUserIds knownIds,
+            HedgedReads hedgedReads) {
+        this.userRepository = userRepository;
+        this.mapper = mapper;
+        this.knownIds = knownIds;
+        this.hedgedReads = hedgedReads;
+    }
+
+    /*
+     * Setter for the soft delete setting
+     * Used for testing purposes
+     * @param softDeletes whether tombstoned profiles exist and have to be filtered out
+     */
+    public void setSoftDeletes(boolean softDeletes) {
+        this.softDeletes = softDeletes;
+    }
+
+    /*
+     * Reads a profile by ID
+     * @param id the ID of the user profile
+     * @return the profile without its SSN, or empty if there is no live profile with the ID
+     */
+    public Optional<UserProfileResponseDto> read(String id) {
+        if (!knownIds.mightExist(id)) {
+            return Optional.empty();
+        }
+
+        if (softDeletes) {
+            // The projection can't tell tombstones apart, profiles stored before deletedAt existed lack the property
+            return hedgedReads.read(() -> userRepository.findById(id))
+                .filter(user -> user.getDeletedAt() == null)
+                .map(mapper::toUserResponseDto);
+        }
+
+        // Projection read, the SSN fields are never part of the response
+        return hedgedReads.read(() -> userRepository.findSummaryById(id))
+            .map(mapper::toUserResponseDto);
+    }
+}
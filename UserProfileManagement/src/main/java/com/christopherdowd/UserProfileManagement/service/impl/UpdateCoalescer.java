@@ -0,0 +1,175 @@
+package com.christopherdowd.UserProfileManagement.service.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.dto.UserProfileUpdateRequestDto;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Merges bursts of updates to the same profile into a single read-modify-write
+ * The first update for a user ID opens a batch that stays open for a short window; updates arriving
+ * in the meantime join it. When the window closes (or the batch is full) the updates are applied
+ * in arrival order with one findById and one save, and every caller gets the merged result.
+ * Callers still block until their update is persisted, so nothing is acknowledged before it's written.
+ * Batches of the same user ID are written one after another, never concurrently.
+ * Disabled by default (update.coalescing.enabled), in which case updates are written directly.
+ */
+@Component
+public class UpdateCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpdateCoalescer.class);
+
+    // Serializes the writes of batches for the same user ID
+    private static final int LOCK_STRIPES = 64;
+
+    /*
+     * Applies a batch of updates to one profile and persists it
+     */
+    @FunctionalInterface
+    public interface BatchWriter {
+        UserProfile write(String id, List<UserProfileUpdateRequestDto> updates);
+    }
+
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    private final ConcurrentHashMap<String, Batch> open = new ConcurrentHashMap<>();
+    private final Object[] writeLocks = new Object[LOCK_STRIPES];
+    private final ScheduledThreadPoolExecutor flusher;
+
+    /*
+     * Constructor for UpdateCoalescer
+     * @param enabled whether updates are coalesced at all
+     * @param window how long a batch collects updates after the first one arrived
+     * @param maxBatchSize number of updates after which a batch is written without waiting for the window
+     * @param threads number of threads writing batches
+     */
+    public UpdateCoalescer(
+            @Value("${update.coalescing.enabled:false}") boolean enabled,
+            @Value("${update.coalescing.window:25ms}") Duration window,
+            @Value("${update.coalescing.max-batch-size:32}") int maxBatchSize,
+            @Value("${update.coalescing.threads:4}") int threads) {
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            writeLocks[i] = new Object();
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.flusher = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "update-coalescer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.setRemoveOnCancelPolicy(true);
+    }
+
+    /*
+     * Adds an update to the open batch of its user ID and waits until that batch is written
+     * Exceptions thrown by the writer are rethrown to every caller of the batch.
+     * @param id the ID of the user profile to update
+     * @param dto the update
+     * @param writer persists the batch, only the writer passed with the first update of a batch is used
+     * @return the profile as saved, including all updates of the batch
+     */
+    public UserProfile submit(String id, UserProfileUpdateRequestDto dto, BatchWriter writer) {
+        if (!enabled) {
+            return writer.write(id, List.of(dto));
+        }
+
+        CompletableFuture<UserProfile> result;
+        while (true) {
+            Batch batch = open.computeIfAbsent(id, key -> {
+                Batch created = new Batch(writer);
+                created.scheduled = flusher.schedule(() -> flush(key, created), windowNanos, TimeUnit.NANOSECONDS);
+                return created;
+            });
+            boolean full;
+            synchronized (batch) {
+                if (batch.closed) {
+                    // The batch was taken for writing after we looked it up, start or join the next one
+                    continue;
+                }
+                batch.updates.add(dto);
+                full = batch.updates.size() >= maxBatchSize;
+            }
+            if (full && batch.scheduled.cancel(false)) {
+                flusher.execute(() -> flush(id, batch));
+            }
+            result = batch.result;
+            break;
+        }
+
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Write out whatever is still pending so no caller is left waiting
+        open.forEach(this::flush);
+        flusher.shutdown();
+    }
+
+    private void flush(String id, Batch batch) {
+        open.remove(id, batch);
+        List<UserProfileUpdateRequestDto> updates;
+        synchronized (batch) {
+            if (batch.closed) {
+                return;
+            }
+            batch.closed = true;
+            updates = new ArrayList<>(batch.updates);
+        }
+
+        synchronized (writeLocks[Math.floorMod(id.hashCode(), LOCK_STRIPES)]) {
+            try {
+                UserProfile saved = batch.writer.write(id, updates);
+                if (updates.size() > 1) {
+                    logger.debug("Coalesced {} updates of user ID {} into one write", updates.size(), id);
+                }
+                batch.result.complete(saved);
+            } catch (Throwable e) {
+                batch.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Updates collected for one user ID during one window
+    private static final class Batch {
+
+        final BatchWriter writer;
+        final List<UserProfileUpdateRequestDto> updates = new ArrayList<>();
+        final CompletableFuture<UserProfile> result = new CompletableFuture<>();
+        boolean closed;
+        volatile ScheduledFuture<?> scheduled;
+
+        Batch(BatchWriter writer) {
+            this.writer = writer;
+        }
+    }
+}
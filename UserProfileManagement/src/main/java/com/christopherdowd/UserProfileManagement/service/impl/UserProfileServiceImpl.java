@@ -1,8 +1,14 @@
 package com.christopherdowd.UserProfileManagement.service.impl;
 
-import java.util.ArrayList;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,59 +16,126 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+import com.google.pubsub.v1.PubsubMessage;
+
+import io.micrometer.observation.annotation.Observed;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.christopherdowd.UserProfileManagement.cache.SerializedProfileCache;
+import com.christopherdowd.UserProfileManagement.changefeed.ChangeFeed;
+import com.christopherdowd.UserProfileManagement.changefeed.ProfileChange.ChangeType;
 import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.domain.UserProfileSummary;
 import com.christopherdowd.UserProfileManagement.dto.UserCreationMessageDto;
+import com.christopherdowd.UserProfileManagement.existence.KnownUserIds;
+import com.christopherdowd.UserProfileManagement.hedging.HedgedReads;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileRequestDto;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileUpdateRequestDto;
 import com.christopherdowd.UserProfileManagement.mapper.UserProfileMapper;
+import com.christopherdowd.UserProfileManagement.pubsub.MessageTracing;
+import com.christopherdowd.UserProfileManagement.pubsub.UserCreationMessageCodecs;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileQuery;
 import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+import com.christopherdowd.UserProfileManagement.service.BlindIndexService;
 import com.christopherdowd.UserProfileManagement.service.EncryptionService;
 import com.christopherdowd.UserProfileManagement.service.UserProfileService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.christopherdowd.UserProfileManagement.stats.UserStatistics;
 
 /* 
  * Service implementation for managing user profiles
  * Handles business logic related to CRUD operations, data encryption,
  * caching, and publishing events to Google Cloud Pub/Sub
+ * Every public method is traced as a user.service observation
+ * With soft deletes enabled (soft-delete.enabled), delete only writes a tombstone (deletedAt) that
+ * can be restored within the grace period; job.TombstonePurgeJob removes expired tombstones later.
+ * Tombstoned profiles read as not found: entity reads check deletedAt, getById (see ProfileReader)
+ * reads the full entity instead of the projection and listings query for deletedAt = null.
+ * Profiles last written before deletedAt existed lack the property and are left out of listings
+ * until job.DeletedAtBackfillJob has saved them once with the current entity, so run it
+ * (soft-delete.backfill.enabled) before enabling soft deletes.
+ * Updates, tombstones and restores write the profile back only if it is unchanged since it was read,
+ * so a concurrent update can't undo a delete and a delete can't undo an update.
 */
 @Service
+@Observed(name = "user.service")
 public class UserProfileServiceImpl implements UserProfileService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserProfileServiceImpl.class);
+
+    // Reads of a profile that keeps changing before a conditional write gives up
+    private static final int CONDITIONAL_WRITE_ATTEMPTS = 5;
+
     private final UserProfileRepository userRepository;
     private final UserProfileMapper mapper;
     private final EncryptionService crypto; // Service for encrypting/decrypting sensitive data
+    private final BlindIndexService blindIndex; // Searchable SSN fingerprints for duplicate detection
     private final PubSubTemplate pubSubTemplate; // Publishing messages to Pub/Sub
-    private final ObjectMapper objectMapper; // Serializing objects to JSON for Pub/Sub messages
+    private final UserCreationMessageCodecs messageCodecs; // Encoding Pub/Sub messages in the configured format
+    private final ChangeFeed changeFeed; // Pushes updates and deletions to change feed subscribers
+    private final UpdateCoalescer updateCoalescer; // Merges bursts of updates to the same profile
+    private final MessageTracing messageTracing; // Carries the trace of create requests across Pub/Sub
+    private final UserStatistics statistics; // Incrementally maintained user counts
+    private final KnownUserIds knownIds; // Answers lookups of IDs that never existed without a read
+    private final HedgedReads hedgedReads; // Retries slow profile reads in parallel to cut tail latency
+    private final ProfileReader profileReader; // The read behind getById, shared with the profiles cache refreshes
 
     // Injects Pub/Sub topic name from application.yml
     @Value("${pubsub.topic.users-creation-topic}")
     private String userCreationTopic;
 
+    @Value("${soft-delete.enabled:false}")
+    private boolean softDeletes;
+
+    // How long a soft-deleted profile can be restored
+    @Value("${soft-delete.grace-period:7d}")
+    private Duration gracePeriod;
+
     /*
      * Constructor for UserProfileServiceImpl
      * @param userRepository for UserProfile data access
      * @param mapper for converting between DTOs and entities
      * @param crypto for encryption operations
+     * @param blindIndex for detecting duplicate SSNs without decryption
      * @param pubSubTemplate for interacting with Google Cloud Pub/Sub
-     * @param objectMapper for JSON processing
+     * @param messageCodecs for encoding user creation messages
+     * @param changeFeed for notifying change feed subscribers
+     * @param updateCoalescer for merging concurrent updates of the same profile into one write
+     * @param messageTracing for propagating the trace context to the subscriber
+     * @param statistics for keeping the user statistics in step with updates and deletions
+     * @param knownIds for rejecting unknown IDs before they reach the repository
+     * @param hedgedReads for hedging the profile reads of update
+     * @param profileReader for reading the profile of getById
      */
     public UserProfileServiceImpl(
             UserProfileRepository userRepository,
             UserProfileMapper mapper,
             EncryptionService crypto,
+            BlindIndexService blindIndex,
             PubSubTemplate pubSubTemplate,
-            ObjectMapper objectMapper) {
+            UserCreationMessageCodecs messageCodecs,
+            ChangeFeed changeFeed,
+            UpdateCoalescer updateCoalescer,
+            MessageTracing messageTracing,
+            UserStatistics statistics,
+            KnownUserIds knownIds,
+            HedgedReads hedgedReads,
+            ProfileReader profileReader) {
         this.userRepository = userRepository;
         this.mapper = mapper;
         this.crypto = crypto;
+        this.blindIndex = blindIndex;
         this.pubSubTemplate = pubSubTemplate;
-        this.objectMapper = objectMapper;
+        this.messageCodecs = messageCodecs;
+        this.changeFeed = changeFeed;
+        this.updateCoalescer = updateCoalescer;
+        this.messageTracing = messageTracing;
+        this.statistics = statistics;
+        this.knownIds = knownIds;
+        this.hedgedReads = hedgedReads;
+        this.profileReader = profileReader;
     }
 
     /* 
@@ -74,27 +147,39 @@ public class UserProfileServiceImpl implements UserProfileService {
         this.userCreationTopic = userCreationTopic;
     }
 
+    /*
+     * Setter for the soft delete settings
+     * Used for testing purposes
+     * @param softDeletes whether delete writes tombstones instead of removing profiles
+     * @param gracePeriod how long a tombstoned profile can be restored
+     */
+    public void setSoftDeletes(boolean softDeletes, Duration gracePeriod) {
+        this.softDeletes = softDeletes;
+        this.gracePeriod = gracePeriod;
+    }
+
     /*
      * Retrieves user profile by ID
-     * Results are cached in "profiles" cache
+     * Results are cached in "profiles" cache, which refreshes hot entries ahead of expiry (see CacheConfig)
+     * through the same ProfileReader
+     * The load runs inside the cache's atomic get, so an eviction by a concurrent update waits for it and
+     * then removes its result instead of being undone by it
      * If user is not found, ResponseStatusException with HTTP 404 is thrown
      * @param id is the ID of user profile to retrieve
      * @return UserProfileResponseDto containing users data (exluding ssn)
      */
     @Override
-    @Cacheable("profiles")
+    @Cacheable(value = "profiles", sync = true)
     public UserProfileResponseDto getById(String id) {
         logger.debug("Fetching user by ID: {} from datastore (cache miss or direct call)", id);
 
-        UserProfile user = userRepository.findById(id)
+        return profileReader.read(id)
                 .orElseThrow(() ->
                     new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
                         "User not found: " + id
                     )
                 );
-
-        return mapper.toUserResponseDto(user);
     }
 
     /*
@@ -104,27 +189,45 @@ public class UserProfileServiceImpl implements UserProfileService {
     @Override
     public List<UserProfileResponseDto> getAll() {
         logger.debug("Fetching all users from datastore");
-        //Retrieves all user profile entities from repository
-        Iterable<UserProfile> iterable = userRepository.findAll();
-        //Converts iterable to List
-        List<UserProfile> users = new ArrayList<>();
-        // Equivalent to: For each item in iterable add to users array
-        iterable.forEach(users::add);
-        // Maps list of entities to list of response DTOs
-        return mapper.toUserResponseDtoList(users);
+        // Retrieves id, username and email of all profiles with a projection query, only the live ones with soft deletes
+        List<UserProfileSummary> users = softDeletes
+            ? userRepository.search(new UserProfileQuery(null, null, null, null, null, null, 0, true))
+            : userRepository.findAllSummariesBy();
+        // Maps list of summaries to list of response DTOs
+        return mapper.summariesToUserResponseDtoList(users);
+    }
+
+    /*
+     * Retrieves the user profiles matching the query, filtered and sorted by the repository
+     * @param query filters, order and limit
+     * @return a list of UserProfileResponseDto in the requested order
+     */
+    @Override
+    public List<UserProfileResponseDto> search(UserProfileQuery query) {
+        logger.debug("Searching users with {}", query);
+        return mapper.summariesToUserResponseDtoList(userRepository.search(softDeletes ? query.withLiveOnly() : query));
     }
 
     /*
      * Creates new user profile
+     * If a user with the same SSN already exists, Response Status 409 is thrown
      */
     @Override
     public UserProfileResponseDto create(UserProfileRequestDto dto) {
+        // Duplicate SSNs are detected through the blind index, without decrypting stored SSNs
+        // The index is reserved before anything else, so a concurrent create with the same SSN gets the 409
+        String ssnIndex = blindIndex.computeSsnIndex(dto.getSocialSecurityNumber());
+        if (!blindIndex.reserveSsnIndex(ssnIndex)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A user with this Social Security Number already exists");
+        }
+
         String encryptedSsn;
 
         try {
             // Encrypts the SSN
             encryptedSsn = crypto.encrypt(dto.getSocialSecurityNumber());
         } catch (Exception e) {
+            blindIndex.releaseSsnIndex(ssnIndex);
             logger.error("SSN encryption failed for user identified by email: {}", dto.getEmail(), e);
             throw new RuntimeException("Failed to encrypt Social Security Number during user creation.", e);
         }
@@ -138,17 +241,22 @@ public class UserProfileServiceImpl implements UserProfileService {
             .username(dto.getUsername())
             .email(dto.getEmail())
             .encryptedSocialSecurityNumber(encryptedSsn) // uses encrypted ssn
+            .ssnBlindIndex(ssnIndex)
             .build();
 
         try {
-            // Serialize the message to JSON and publish to Pub/Sub
-            String message = objectMapper.writeValueAsString(pubSubMessage);
-            pubSubTemplate.publish(userCreationTopic, message);
+            // Encode the message and publish it to Pub/Sub along with the trace context
+            PubsubMessage message = messageCodecs.encode(pubSubMessage);
+            messageTracing.publish(pubSubTemplate, userCreationTopic, message);
             logger.info("Published user creation event for ID {} to Pub/Sub topic '{}'.", userId, userCreationTopic);
         } catch(Exception e) {
+            blindIndex.releaseSsnIndex(ssnIndex);
             logger.error("Failed to publish user creation event for email {}: {}", dto.getEmail(), e.getMessage(), e);
             throw new RuntimeException("Failed to publish user creation event.", e);
         }
+        // The reservation stays and blocks duplicates of this SSN until the subscriber has persisted the user
+        // Lets the client read its new user from this node once it's persisted
+        knownIds.add(userId);
 
         /*
          * Prepares and returns the immediate response to client
@@ -165,54 +273,159 @@ public class UserProfileServiceImpl implements UserProfileService {
 
     /*
      * Updates existing user profile by ID
-     * Corresponding entry in the 'profiles' cache is evicted upon successful update
+     * Corresponding entries in the 'profiles' and 'profileBytes' caches are evicted upon successful update
+     * When update coalescing is enabled, updates arriving for the same user within a short window
+     * are written together and the merged profile is returned to each caller
      * if user is not found, Response Status 404 is thrown
      * @param id the ID of the user profile to update
      * @param dto the UserProfileUpdateRequestDto containing the fields to update
      * @return UserProfileResponseDto of updated user
      */
     @Override
-    @CacheEvict(value = "profiles", key = "#id")
+    @CacheEvict(value = { "profiles", SerializedProfileCache.CACHE_NAME }, key = "#id")
     public UserProfileResponseDto update(String id, UserProfileUpdateRequestDto dto) {
         logger.debug("Updating user by ID: {}", id);
-        // Finds existing user
-        UserProfile user = userRepository.findById(id)
-                .orElseThrow(() ->
-                    new ResponseStatusException(
-                        HttpStatus.NOT_FOUND,
-                        "User not found: " + id
-                    )
-                );
 
-        // Apply updates from DTO to the entity (SSN cannot be updated)
-        mapper.updateUserFromDto(dto, user);
+        UserProfile updatedUser = updateCoalescer.submit(id, dto, this::applyUpdates);
 
-        // Save updated entity to repository
-        UserProfile updatedUser = userRepository.save(user);
+        // Maps updated entity to response DTO
+        UserProfileResponseDto updatedDto = mapper.toUserResponseDto(updatedUser);
+        changeFeed.publish(ChangeType.UPDATED, id, updatedDto);
+        return updatedDto;
+    }
+
+    /*
+     * Applies updates in order to the stored profile and saves it once, if it wasn't changed meanwhile
+     * @param id the ID of the user profile to update
+     * @param updates the updates to apply, oldest first
+     * @return the saved entity
+     */
+    private UserProfile applyUpdates(String id, List<UserProfileUpdateRequestDto> updates) {
+        // Finds existing user
+        rejectUnknownId(id);
+        // Apply updates from DTOs to the entity (SSN cannot be updated) and save it to the repository
+        Replacement replacement = replace(id,
+                () -> hedgedReads.read(() -> userRepository.findById(id)),
+                UserProfileServiceImpl::isLive,
+                () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found: " + id),
+                user -> updates.forEach(update -> mapper.updateUserFromDto(update, user)));
 
-        logger.info("User profile with ID {} updated in Datastore.", updatedUser.getId());
+        String previousEmail = replacement.previous().getEmail();
+        UserProfile updatedUser = replacement.written();
+        if (!Objects.equals(previousEmail, updatedUser.getEmail())) {
+            statistics.recordEmailChanged(previousEmail, updatedUser.getEmail());
+        }
 
-        // Maps updated entity to response DTO
-        return mapper.toUserResponseDto(updatedUser);
+        logger.info("User profile with ID {} updated in Datastore ({} update(s)).", updatedUser.getId(), updates.size());
+        return updatedUser;
     }
 
     /* 
      * Deletes user profile by ID
-     * Corresponding entry in 'profiles' cache is evicted upon successful deletion
+     * Corresponding entries in 'profiles' and 'profileBytes' caches are evicted upon successful deletion
+     * With soft deletes enabled the profile is tombstoned with a conditional write instead of removed
      * If user is not found, Response Status 404 is thrown
      * @param id the ID of user profile to delete
     */
     @Override
-    @CacheEvict(value = "profiles", key = "#id")
+    @CacheEvict(value = { "profiles", SerializedProfileCache.CACHE_NAME }, key = "#id")
     public void delete(String id) {
         logger.debug("Deleting user by ID: {}", id);
 
-        if(!userRepository.existsById(id)) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found for deletion: " + id);
+        rejectUnknownId(id);
+        if (softDeletes) {
+            UserProfile user = replace(id,
+                    () -> userRepository.findById(id),
+                    UserProfileServiceImpl::isLive,
+                    () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found for deletion: " + id),
+                    tombstone -> tombstone.setDeletedAt(Instant.now())).written();
+            statistics.recordDeleted(user.getEmail());
+            changeFeed.publish(ChangeType.DELETED, id, null);
+
+            logger.info("User profile with ID {} tombstoned in Datastore.", id);
+            return;
         }
 
+        // Loaded rather than checked for existence so the statistics know the user's email domain
+        UserProfileSummary user = userRepository.findSummaryById(id)
+                .orElseThrow(() ->
+                    new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found for deletion: " + id)
+                );
+
         userRepository.deleteById(id);
+        statistics.recordDeleted(user.getEmail());
+        changeFeed.publish(ChangeType.DELETED, id, null);
 
         logger.info("User profile with ID {} deleted from Datastore.", id);
     }
-}
\ No newline at end of file
+
+    /*
+     * Undoes a soft delete within the grace period
+     * If there is no tombstoned user with the ID, or its grace period is over, Response Status 404 is thrown
+     * @param id the ID of the user profile to restore
+     * @return UserProfileResponseDto of the restored user
+     */
+    @Override
+    @CacheEvict(value = { "profiles", SerializedProfileCache.CACHE_NAME }, key = "#id")
+    public UserProfileResponseDto restore(String id) {
+        logger.debug("Restoring user by ID: {}", id);
+
+        Instant restorableAfter = Instant.now().minus(gracePeriod);
+        UserProfile restoredUser = replace(id,
+                () -> userRepository.findById(id),
+                candidate -> !isLive(candidate) && candidate.getDeletedAt().isAfter(restorableAfter),
+                () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No deleted user to restore: " + id),
+                user -> user.setDeletedAt(null)).written();
+        statistics.recordRestored(restoredUser.getEmail());
+
+        UserProfileResponseDto restoredDto = mapper.toUserResponseDto(restoredUser);
+        changeFeed.publish(ChangeType.CREATED, id, restoredDto);
+
+        logger.info("User profile with ID {} restored.", id);
+        return restoredDto;
+    }
+
+    /*
+     * Changes a copy of the stored profile and writes it only if the stored profile is still the one read
+     * A concurrent write in between makes it read the profile and try again, so neither write undoes
+     * the other; a profile still changing after CONDITIONAL_WRITE_ATTEMPTS reads gets Response Status 409.
+     * @param id the ID of the user profile
+     * @param read reads the stored profile
+     * @param applies whether the change applies to the stored profile
+     * @param notFound thrown for a missing profile, or one the change doesn't apply to
+     * @param change applied to the copy that is written
+     * @return the profile as read and as written
+     */
+    private Replacement replace(String id, Supplier<Optional<UserProfile>> read, Predicate<UserProfile> applies,
+            Supplier<ResponseStatusException> notFound, Consumer<UserProfile> change) {
+        for (int attempt = 1; attempt <= CONDITIONAL_WRITE_ATTEMPTS; attempt++) {
+            UserProfile current = read.get().filter(applies).orElseThrow(notFound);
+            UserProfile replacement = current.toBuilder().build();
+            change.accept(replacement);
+            if (userRepository.replaceIfUnchanged(current, replacement)) {
+                return new Replacement(current, replacement);
+            }
+            logger.debug("User profile with ID {} was written concurrently (attempt {}), reading it again", id, attempt);
+        }
+        throw new ResponseStatusException(HttpStatus.CONFLICT, "User was modified concurrently: " + id);
+    }
+
+    // A profile as it was read and as it was written back
+    private record Replacement(UserProfile previous, UserProfile written) {
+    }
+
+    // Whether the profile isn't tombstoned
+    private static boolean isLive(UserProfile user) {
+        return user.getDeletedAt() == null;
+    }
+
+    /*
+     * Throws the same 404 as a failed lookup for IDs the existence filter has never seen
+     * @param id the requested user ID
+     */
+    private void rejectUnknownId(String id) {
+        if (!knownIds.mightExist(id)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found: " + id);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.christopherdowd.UserProfileManagement.snapshot;
+
+/*
+ * Layout of a users snapshot file, shared by SnapshotWriter and SnapshotReader
+ *
+ *   file   := header block* end trailer
+ *   header := magic "UPSNAP" (6 bytes) | version (short) | createdAt epoch millis (long)
+ *   block  := uncompressed length (int) | compressed length (int) | record count (int) | CRC32 of the uncompressed bytes (int) | deflated records
+ *   end    := a block header with uncompressed length 0
+ *   trailer:= total record count (long) | block count (int)
+ *
+ * Records are encoded with UserProfileBinaryCodec; version 1 files predate createdAt and hold
+ * UserProfileBinaryCodec.V1_FIELDS fields per record, version 2 files predate deletedAt and hold V2_FIELDS.
+ * All numbers are big-endian. Blocks are independent, so readers never hold more than one in memory.
+ */
+final class SnapshotFormat {
+
+    static final byte[] MAGIC = { 'U', 'P', 'S', 'N', 'A', 'P' };
+    static final short VERSION = 3;
+    static final int FILE_HEADER_SIZE = MAGIC.length + Short.BYTES + Long.BYTES;
+    static final int BLOCK_HEADER_SIZE = 4 * Integer.BYTES;
+    static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private SnapshotFormat() {
+    }
+}
@@ -0,0 +1,178 @@
+package com.christopherdowd.UserProfileManagement.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.mapper.UserProfileBinaryCodec;
+
+/*
+ * Iterates the profiles of a snapshot written by SnapshotWriter
+ * The file is memory-mapped in windows of up to 1 GiB and each block is inflated straight
+ * from the mapping into a reused direct buffer, so reading costs one block of memory
+ * regardless of the snapshot size. Every block is checked against its CRC32 and the
+ * trailer against the number of records read, so truncated or corrupted files are detected.
+ */
+public class SnapshotReader implements Closeable {
+
+    private static final long MAX_WINDOW_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final Instant createdAt;
+    private final int recordFields;
+    private final Inflater inflater = new Inflater();
+    private final CRC32 crc = new CRC32();
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    private ByteBuffer block = ByteBuffer.allocateDirect(0);
+    private int blockRecordsLeft;
+    private long recordCount;
+    private boolean finished;
+
+    /*
+     * Constructor for SnapshotReader
+     * @param file the snapshot to read
+     */
+    public SnapshotReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+
+        ByteBuffer header = slice(0, SnapshotFormat.FILE_HEADER_SIZE);
+        byte[] magic = new byte[SnapshotFormat.MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, SnapshotFormat.MAGIC)) {
+            channel.close();
+            throw new IOException(file + " is not a users snapshot");
+        }
+        short version = header.getShort();
+        if (version < 1 || version > SnapshotFormat.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        this.recordFields = switch (version) {
+            case 1 -> UserProfileBinaryCodec.V1_FIELDS;
+            case 2 -> UserProfileBinaryCodec.V2_FIELDS;
+            default -> UserProfileBinaryCodec.FIELDS;
+        };
+        this.createdAt = Instant.ofEpochMilli(header.getLong());
+        this.position = SnapshotFormat.FILE_HEADER_SIZE;
+    }
+
+    /*
+     * Reads the next profile
+     * @return the profile, or null once the whole snapshot has been read
+     */
+    public UserProfile next() throws IOException {
+        while (blockRecordsLeft == 0) {
+            if (finished) {
+                return null;
+            }
+            readBlock();
+        }
+        blockRecordsLeft--;
+        recordCount++;
+        return UserProfileBinaryCodec.read(block, recordFields);
+    }
+
+    /*
+     * When the snapshot was started
+     */
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    /*
+     * The number of profiles read so far
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    private void readBlock() throws IOException {
+        ByteBuffer header = slice(position, SnapshotFormat.BLOCK_HEADER_SIZE);
+        int uncompressedLength = header.getInt();
+        int compressedLength = header.getInt();
+        int records = header.getInt();
+        int expectedCrc = header.getInt();
+        position += SnapshotFormat.BLOCK_HEADER_SIZE;
+
+        if (uncompressedLength == 0) {
+            readTrailer();
+            return;
+        }
+
+        ByteBuffer input = slice(position, compressedLength);
+        position += compressedLength;
+
+        if (block.capacity() < uncompressedLength) {
+            block = ByteBuffer.allocateDirect(uncompressedLength);
+        }
+        block.clear().limit(uncompressedLength);
+
+        inflater.reset();
+        inflater.setInput(input);
+        try {
+            while (block.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(block) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt snapshot block at offset " + (position - compressedLength), e);
+        }
+        if (block.hasRemaining() || !inflater.finished()) {
+            throw new IOException("Snapshot block at offset " + (position - compressedLength) + " has the wrong length");
+        }
+        block.flip();
+
+        crc.reset();
+        crc.update(block.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Checksum mismatch in snapshot block at offset " + (position - compressedLength));
+        }
+        blockRecordsLeft = records;
+    }
+
+    private void readTrailer() throws IOException {
+        ByteBuffer trailer = slice(position, SnapshotFormat.TRAILER_SIZE);
+        long expectedRecords = trailer.getLong();
+        if (expectedRecords != recordCount) {
+            throw new IOException("Snapshot declares " + expectedRecords + " records but contains " + recordCount);
+        }
+        finished = true;
+    }
+
+    /*
+     * Returns a view of the given byte range, remapping the window when the range isn't inside it
+     */
+    private ByteBuffer slice(long offset, int length) throws IOException {
+        if (offset + length > fileSize) {
+            throw new IOException("Snapshot is truncated at offset " + offset);
+        }
+        if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+            windowStart = offset;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAX_WINDOW_SIZE, fileSize - offset));
+        }
+        return window.slice((int) (offset - windowStart), length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+}
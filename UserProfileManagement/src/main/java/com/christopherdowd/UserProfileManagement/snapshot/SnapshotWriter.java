@@ -0,0 +1,178 @@
+package com.christopherdowd.UserProfileManagement.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.mapper.UserProfileBinaryCodec;
+
+/*
+ * Writes user profiles to a compressed, block-framed snapshot file (see SnapshotFormat)
+ * Records are encoded into a direct buffer; a full buffer is deflated into a second direct
+ * buffer and written with a single gathering write, so nothing is copied through the heap
+ * and memory use is fixed by the block size.
+ * The snapshot is written to "<file>.partial" and only moved into place by close(),
+ * so an interrupted export never leaves a file that looks complete.
+ */
+public class SnapshotWriter implements Closeable {
+
+    private final Path file;
+    private final Path partialFile;
+    private final FileChannel channel;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+
+    private final ByteBuffer block;
+    private final ByteBuffer blockHeader = ByteBuffer.allocateDirect(SnapshotFormat.BLOCK_HEADER_SIZE);
+    private ByteBuffer compressed;
+
+    private int blockRecords;
+    private int blockCount;
+    private long recordCount;
+    private boolean closed;
+
+    /*
+     * Constructor for SnapshotWriter
+     * @param file where the finished snapshot is stored
+     * @param blockSize uncompressed bytes per block
+     * @param compressionLevel Deflater level from 1 (fastest) to 9 (smallest)
+     */
+    public SnapshotWriter(Path file, int blockSize, int compressionLevel) throws IOException {
+        this.file = file;
+        this.partialFile = file.resolveSibling(file.getFileName() + ".partial");
+        this.channel = FileChannel.open(partialFile,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.deflater = new Deflater(compressionLevel);
+        this.block = ByteBuffer.allocateDirect(blockSize);
+        // Deflate output can slightly exceed its input for incompressible data
+        this.compressed = ByteBuffer.allocateDirect(blockSize + blockSize / 100 + 64);
+
+        ByteBuffer header = ByteBuffer.allocate(SnapshotFormat.FILE_HEADER_SIZE);
+        header.put(SnapshotFormat.MAGIC).putShort(SnapshotFormat.VERSION).putLong(System.currentTimeMillis()).flip();
+        writeFully(header);
+    }
+
+    /*
+     * Appends a profile to the snapshot
+     * @param user the profile to write
+     */
+    public void write(UserProfile user) throws IOException {
+        if (!UserProfileBinaryCodec.write(block, user)) {
+            flushBlock();
+            if (!UserProfileBinaryCodec.write(block, user)) {
+                throw new IllegalArgumentException("User profile " + user.getId() + " is larger than the snapshot block size");
+            }
+        }
+        blockRecords++;
+        recordCount++;
+    }
+
+    /*
+     * The number of profiles written so far
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockRecords == 0) {
+            return;
+        }
+        block.flip();
+        int uncompressedLength = block.remaining();
+
+        crc.reset();
+        crc.update(block.duplicate());
+
+        deflater.reset();
+        deflater.setInput(block);
+        deflater.finish();
+        compressed.clear();
+        while (!deflater.finished()) {
+            if (!compressed.hasRemaining()) {
+                compressed = grow(compressed);
+            }
+            deflater.deflate(compressed);
+        }
+        compressed.flip();
+
+        blockHeader.clear();
+        blockHeader.putInt(uncompressedLength)
+            .putInt(compressed.remaining())
+            .putInt(blockRecords)
+            .putInt((int) crc.getValue())
+            .flip();
+        writeFully(blockHeader, compressed);
+
+        block.clear();
+        blockRecords = 0;
+        blockCount++;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    private void writeFully(ByteBuffer... buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    /*
+     * Writes the last block and the trailer, then moves the snapshot into place
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushBlock();
+
+            ByteBuffer end = ByteBuffer.allocate(SnapshotFormat.BLOCK_HEADER_SIZE + SnapshotFormat.TRAILER_SIZE);
+            end.putInt(0).putInt(0).putInt(0).putInt(0)
+                .putLong(recordCount)
+                .putInt(blockCount)
+                .flip();
+            writeFully(end);
+            channel.force(false);
+        } finally {
+            channel.close();
+            deflater.end();
+        }
+        Files.move(partialFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+     * Closes the writer without publishing the snapshot, deleting the partial file
+     */
+    public void abort() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            deflater.end();
+            Files.deleteIfExists(partialFile);
+        }
+    }
+}
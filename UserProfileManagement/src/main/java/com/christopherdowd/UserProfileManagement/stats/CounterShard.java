@@ -0,0 +1,29 @@
+package com.christopherdowd.UserProfileManagement.stats;
+
+import org.springframework.data.annotation.Id;
+
+import com.google.cloud.spring.data.datastore.core.mapping.Entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * One shard of a statistics counter
+ * A counter's value is the sum of its shards. Increments go to a random shard, so concurrent
+ * writers rarely contend for the same entity group.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity(name = "user_stats_counter_shards")
+public class CounterShard {
+
+    // "<counter>#<shard>"
+    @Id
+    private String id;
+
+    private String counter;
+
+    private long value;
+}
@@ -0,0 +1,111 @@
+package com.christopherdowd.UserProfileManagement.stats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import com.google.cloud.spring.data.datastore.core.DatastoreOperations;
+
+/*
+ * Keeps statistics counters in sharded Datastore entities
+ * Each delta is added to one randomly chosen shard of its counter; the shards of up to 500 deltas
+ * are read and written in a single transaction, so a flush costs one commit rather than one per
+ * counter and a failed commit leaves none of its deltas applied. Reading sums all shards.
+ */
+@Repository
+@Profile("!embedded")
+public class DatastoreStatsCounterStore implements StatsCounterStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatastoreStatsCounterStore.class);
+
+    // Datastore accepts at most 500 entities per commit
+    private static final int MAX_BATCH = 500;
+
+    private final DatastoreOperations datastore;
+    private final int shards;
+
+    /*
+     * Constructor for DatastoreStatsCounterStore
+     * @param datastore for reading and writing counter shards
+     * @param shards number of shards per counter
+     */
+    public DatastoreStatsCounterStore(DatastoreOperations datastore, @Value("${stats.shards:16}") int shards) {
+        this.datastore = datastore;
+        this.shards = shards;
+    }
+
+    @Override
+    public Map<String, Long> add(Map<String, Long> deltas) {
+        Map<String, Long> failed = new HashMap<>();
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(deltas.entrySet());
+        for (int from = 0; from < entries.size(); from += MAX_BATCH) {
+            List<Map.Entry<String, Long>> batch = entries.subList(from, Math.min(entries.size(), from + MAX_BATCH));
+            try {
+                addInTransaction(batch);
+            } catch (RuntimeException e) {
+                logger.warn("Adding {} statistics counters failed: {}", batch.size(), e.getMessage());
+                batch.forEach(entry -> failed.put(entry.getKey(), entry.getValue()));
+            }
+        }
+        return failed;
+    }
+
+    private void addInTransaction(List<Map.Entry<String, Long>> batch) {
+        Map<String, Map.Entry<String, Long>> byShardId = new HashMap<>();
+        for (Map.Entry<String, Long> entry : batch) {
+            byShardId.put(entry.getKey() + "#" + ThreadLocalRandom.current().nextInt(shards), entry);
+        }
+        datastore.performTransaction(transaction -> {
+            Map<String, CounterShard> existing = new HashMap<>();
+            for (CounterShard shard : transaction.findAllById(byShardId.keySet(), CounterShard.class)) {
+                existing.put(shard.getId(), shard);
+            }
+            List<CounterShard> updated = new ArrayList<>(byShardId.size());
+            byShardId.forEach((id, entry) -> {
+                CounterShard shard = existing.getOrDefault(id, new CounterShard(id, entry.getKey(), 0));
+                shard.setValue(shard.getValue() + entry.getValue());
+                updated.add(shard);
+            });
+            transaction.saveAll(updated);
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, Long> totals() {
+        Map<String, Long> totals = new HashMap<>();
+        for (CounterShard shard : datastore.findAll(CounterShard.class)) {
+            totals.merge(shard.getCounter(), shard.getValue(), Long::sum);
+        }
+        return totals;
+    }
+
+    @Override
+    public void replaceAll(Map<String, Long> totals) {
+        datastore.deleteAll(CounterShard.class);
+        List<CounterShard> batch = new ArrayList<>(MAX_BATCH);
+        for (Map.Entry<String, Long> total : totals.entrySet()) {
+            batch.add(new CounterShard(total.getKey() + "#0", total.getKey(), total.getValue()));
+            if (batch.size() == MAX_BATCH) {
+                datastore.saveAll(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            datastore.saveAll(batch);
+        }
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+}
@@ -0,0 +1,40 @@
+package com.christopherdowd.UserProfileManagement.stats;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+/*
+ * Statistics counters for the embedded backend, held in memory
+ * The embedded store is local, so the counters are simply rebuilt by a scan on startup.
+ */
+@Repository
+@Profile("embedded")
+public class InMemoryStatsCounterStore implements StatsCounterStore {
+
+    private final Map<String, Long> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public Map<String, Long> add(Map<String, Long> deltas) {
+        deltas.forEach((counter, delta) -> counters.merge(counter, delta, Long::sum));
+        return Map.of();
+    }
+
+    @Override
+    public Map<String, Long> totals() {
+        return Map.copyOf(counters);
+    }
+
+    @Override
+    public void replaceAll(Map<String, Long> totals) {
+        counters.clear();
+        counters.putAll(totals);
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+}
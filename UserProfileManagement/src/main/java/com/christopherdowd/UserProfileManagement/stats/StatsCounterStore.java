@@ -0,0 +1,34 @@
+package com.christopherdowd.UserProfileManagement.stats;
+
+import java.util.Map;
+
+/*
+ * Storage of the named counters behind UserStatistics
+ */
+public interface StatsCounterStore {
+
+    /*
+     * Adds the deltas to their counters
+     * A delta is either added completely or returned, so callers can retry exactly the ones that
+     * failed without counting the others twice.
+     * @param deltas change per counter name, counters that don't exist yet start at zero
+     * @return the deltas that could not be added, empty if all were
+     */
+    Map<String, Long> add(Map<String, Long> deltas);
+
+    /*
+     * Current value of every counter
+     */
+    Map<String, Long> totals();
+
+    /*
+     * Replaces all counters with the given values, used when the statistics are rebuilt from a scan
+     * @param totals value per counter name
+     */
+    void replaceAll(Map<String, Long> totals);
+
+    /*
+     * Whether counters survive a restart; if not they are rebuilt on every startup
+     */
+    boolean isPersistent();
+}
@@ -0,0 +1,341 @@
+package com.christopherdowd.UserProfileManagement.stats;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.dto.UserStatsResponseDto;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileScanner;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * User statistics maintained incrementally instead of by scanning all profiles
+ * Creates, deletes and email changes are counted into local adders; a background thread adds them
+ * to the shared counters of the StatsCounterStore every flush interval, and every refresh interval
+ * reads the totals back, so every instance sees the changes made by the others. Reading the totals
+ * reads every counter shard, which is why it runs less often than the cheap flush. The response is
+ * precomputed after each refresh, which makes current() O(1). Adders of email domains that saw no
+ * change over a whole flush interval are dropped, so the local map only holds recently active
+ * domains.
+ * Creates and deletes per minute are derived from how far the cumulative counters moved over the
+ * rate window. Counting is at-least-once: a redelivered creation message that is persisted again
+ * counts again. Bulk imports write to the repository directly and bypass the counters, rebuild
+ * afterwards (stats.rebuild-on-startup) to correct them.
+ */
+@Component
+public class UserStatistics {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserStatistics.class);
+
+    static final String TOTAL = "users.total";
+    static final String CREATED = "users.created";
+    static final String DELETED = "users.deleted";
+    static final String DOMAIN_PREFIX = "domain:";
+
+    private static final String UNKNOWN_DOMAIN = "unknown";
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    /*
+     * Cumulative counter values at one refresh
+     */
+    private record Sample(long nanos, long created, long deleted) {
+    }
+
+    private final StatsCounterStore store;
+    private final UserProfileScanner scanner;
+    private final Duration flushInterval;
+    private final long refreshIntervalNanos;
+    private final long rateWindowNanos;
+    private final boolean rebuildOnStartup;
+    private final LongSupplier nanoTime;
+
+    private final ConcurrentHashMap<String, LongAdder> pending = new ConcurrentHashMap<>();
+    private final Deque<Sample> samples = new ArrayDeque<>();
+    private volatile long lastRefreshNanos;
+    private volatile UserStatsResponseDto current = UserStatsResponseDto.builder()
+        .usersByEmailDomain(Map.of())
+        .build();
+    private ScheduledExecutorService scheduler;
+
+    /*
+     * Constructor for UserStatistics
+     * @param store holds the shared counters
+     * @param scanner for rebuilding the counters from all profiles
+     * @param flushInterval how often local changes are written to the store
+     * @param refreshInterval how often the totals are re-read from the store
+     * @param rateWindow the window over which creates and deletes per minute are averaged
+     * @param rebuildOnStartup whether to recount all profiles when the application is ready
+     */
+    @Autowired
+    public UserStatistics(
+            StatsCounterStore store,
+            UserProfileScanner scanner,
+            @Value("${stats.flush-interval:5s}") Duration flushInterval,
+            @Value("${stats.refresh-interval:30s}") Duration refreshInterval,
+            @Value("${stats.rate-window:5m}") Duration rateWindow,
+            @Value("${stats.rebuild-on-startup:false}") boolean rebuildOnStartup) {
+        this(store, scanner, flushInterval, refreshInterval, rateWindow, rebuildOnStartup, System::nanoTime);
+    }
+
+    UserStatistics(StatsCounterStore store, UserProfileScanner scanner, Duration flushInterval,
+            Duration refreshInterval, Duration rateWindow, boolean rebuildOnStartup, LongSupplier nanoTime) {
+        this.store = store;
+        this.scanner = scanner;
+        this.flushInterval = flushInterval;
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+        this.rateWindowNanos = rateWindow.toNanos();
+        this.rebuildOnStartup = rebuildOnStartup;
+        this.nanoTime = nanoTime;
+        this.lastRefreshNanos = nanoTime.getAsLong() - refreshIntervalNanos;
+    }
+
+    /*
+     * Counts a persisted user
+     * @param email the user's email
+     */
+    public void recordCreated(String email) {
+        increment(TOTAL, 1);
+        increment(CREATED, 1);
+        increment(DOMAIN_PREFIX + domainOf(email), 1);
+    }
+
+    /*
+     * Counts a deleted user
+     * @param email the email the user had when deleted
+     */
+    public void recordDeleted(String email) {
+        increment(TOTAL, -1);
+        increment(DELETED, 1);
+        increment(DOMAIN_PREFIX + domainOf(email), -1);
+    }
+
+    /*
+     * Counts a soft-deleted user back in; the deletion stays part of the delete rate
+     * @param email the user's email
+     */
+    public void recordRestored(String email) {
+        increment(TOTAL, 1);
+        increment(DOMAIN_PREFIX + domainOf(email), 1);
+    }
+
+    /*
+     * Moves a user between email domains
+     * @param previousEmail the email before the update
+     * @param newEmail the email after the update
+     */
+    public void recordEmailChanged(String previousEmail, String newEmail) {
+        String previousDomain = domainOf(previousEmail);
+        String newDomain = domainOf(newEmail);
+        if (!previousDomain.equals(newDomain)) {
+            increment(DOMAIN_PREFIX + previousDomain, -1);
+            increment(DOMAIN_PREFIX + newDomain, 1);
+        }
+    }
+
+    /*
+     * The statistics as of the last refresh
+     */
+    public UserStatsResponseDto current() {
+        return current;
+    }
+
+    /*
+     * Rebuilds the counters if required and starts the periodic flush
+     * A store that doesn't survive restarts is always rebuilt, otherwise only on request.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnApplicationReady() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(() -> {
+            try {
+                if (rebuildOnStartup || !store.isPersistent()) {
+                    rebuild();
+                }
+                refresh();
+            } catch (Exception e) {
+                logger.error("Initializing user statistics failed: {}", e.getMessage(), e);
+            }
+        });
+        long intervalMillis = flushInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::flushAndRefresh, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        // Don't lose the changes counted since the last flush
+        flush();
+    }
+
+    /*
+     * Recounts users and domains from all profiles and replaces the stored counters
+     * The cumulative create and delete counters are kept. Changes made by other instances while the
+     * scan runs can be counted twice or not at all, so rebuild when writes are quiet.
+     */
+    void rebuild() {
+        long startNanos = System.nanoTime();
+        Map<String, Long> totals = new HashMap<>();
+        AtomicLong live = new AtomicLong();
+        long scanned = scanner.forEachBatch(REBUILD_BATCH_SIZE, batch -> {
+            for (UserProfile user : batch) {
+                // Soft-deleted profiles were already counted as deleted
+                if (user.getDeletedAt() == null) {
+                    totals.merge(DOMAIN_PREFIX + domainOf(user.getEmail()), 1L, Long::sum);
+                    live.incrementAndGet();
+                }
+            }
+        });
+        totals.put(TOTAL, live.get());
+
+        Map<String, Long> previous = store.totals();
+        totals.put(CREATED, previous.getOrDefault(CREATED, 0L));
+        totals.put(DELETED, previous.getOrDefault(DELETED, 0L));
+        // Local changes up to now are part of the scan
+        pending.clear();
+        store.replaceAll(totals);
+
+        logger.info("Rebuilt user statistics from {} profiles ({} live) in {} ms", scanned, live.get(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    /*
+     * Adds the changes counted since the last flush to the store
+     * The store reports which deltas it couldn't add, and only those are kept and retried with the
+     * next flush. Adders of domains without changes are dropped.
+     */
+    void flush() {
+        Map<String, Long> deltas = new HashMap<>();
+        pending.forEach((counter, adder) -> {
+            long delta = adder.sumThenReset();
+            if (delta != 0) {
+                deltas.put(counter, delta);
+            } else if (counter.startsWith(DOMAIN_PREFIX)) {
+                // Racing increments of domains go through compute, so none can land on a removed adder
+                pending.computeIfPresent(counter, (key, idle) -> idle.sum() == 0 ? null : idle);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Map<String, Long> failed;
+        try {
+            failed = store.add(deltas);
+        } catch (RuntimeException e) {
+            // Stores report partial failures in the result, an exception means nothing was added
+            logger.warn("Writing {} user statistics counters failed, retrying with the next flush: {}",
+                deltas.size(), e.getMessage());
+            failed = deltas;
+        }
+        failed.forEach(this::increment);
+    }
+
+    /*
+     * Reads the totals from the store and precomputes the response
+     */
+    void refresh() {
+        Map<String, Long> totals = store.totals();
+        long now = nanoTime.getAsLong();
+        lastRefreshNanos = now;
+        Sample sample = new Sample(now, totals.getOrDefault(CREATED, 0L), totals.getOrDefault(DELETED, 0L));
+
+        double createsPerMinute;
+        double deletesPerMinute;
+        synchronized (samples) {
+            samples.addLast(sample);
+            while (samples.size() > 1 && now - samples.peekFirst().nanos() > rateWindowNanos) {
+                samples.removeFirst();
+            }
+            Sample oldest = samples.peekFirst();
+            double minutes = (now - oldest.nanos()) / (double) TimeUnit.MINUTES.toNanos(1);
+            createsPerMinute = minutes > 0 ? Math.max(0, sample.created() - oldest.created()) / minutes : 0;
+            deletesPerMinute = minutes > 0 ? Math.max(0, sample.deleted() - oldest.deleted()) / minutes : 0;
+        }
+
+        Map<String, Long> domains = new LinkedHashMap<>();
+        totals.entrySet().stream()
+            .filter(entry -> entry.getKey().startsWith(DOMAIN_PREFIX) && entry.getValue() > 0)
+            .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()))
+            .forEach(entry -> domains.put(entry.getKey().substring(DOMAIN_PREFIX.length()), entry.getValue()));
+
+        current = UserStatsResponseDto.builder()
+            .totalUsers(Math.max(0, totals.getOrDefault(TOTAL, 0L)))
+            .createsPerMinute(createsPerMinute)
+            .deletesPerMinute(deletesPerMinute)
+            .usersByEmailDomain(domains)
+            .asOf(Instant.now())
+            .build();
+    }
+
+    /*
+     * Flushes local changes, and refreshes the totals once the refresh interval has passed
+     */
+    void flushAndRefresh() {
+        try {
+            flush();
+            if (nanoTime.getAsLong() - lastRefreshNanos >= refreshIntervalNanos) {
+                refresh();
+            }
+        } catch (Exception e) {
+            logger.warn("Refreshing user statistics failed: {}", e.getMessage());
+        }
+    }
+
+    private void increment(String counter, long delta) {
+        if (counter.startsWith(DOMAIN_PREFIX)) {
+            // Adds under the map's lock, so flush can't drop the adder between the lookup and the add
+            pending.compute(counter, (key, adder) -> {
+                LongAdder target = adder != null ? adder : new LongAdder();
+                target.add(delta);
+                return target;
+            });
+        } else {
+            // The fixed counters are never dropped and keep the lock-free path
+            pending.computeIfAbsent(counter, key -> new LongAdder()).add(delta);
+        }
+    }
+
+    /*
+     * Number of counters with a local adder, for tests
+     */
+    int pendingCounters() {
+        return pending.size();
+    }
+
+    static String domainOf(String email) {
+        int at = email != null ? email.lastIndexOf('@') : -1;
+        if (at < 0 || at == email.length() - 1) {
+            return UNKNOWN_DOMAIN;
+        }
+        return email.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,284 @@
+package com.christopherdowd.UserProfileManagement.bulkimport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.existence.KnownUserIds;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+import com.christopherdowd.UserProfileManagement.service.BlindIndexService;
+import com.christopherdowd.UserProfileManagement.service.EncryptionService;
+import com.christopherdowd.UserProfileManagement.stats.UserStatistics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+
+@ExtendWith(MockitoExtension.class)
+public class BulkImportPipelineTest {
+
+    private static ValidatorFactory validatorFactory;
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private UserProfileRepository userRepository;
+
+    @Mock
+    private KnownUserIds knownIds;
+
+    @Mock
+    private UserStatistics statistics;
+
+    private final List<UserProfile> saved = Collections.synchronizedList(new ArrayList<>());
+    // SSN blind indexes of users that existed before the import
+    private final Set<String> existingSsnIndexes = new HashSet<>();
+    // SSNs the encryption fails for
+    private final Set<String> unencryptableSsns = ConcurrentHashMap.newKeySet();
+
+    @BeforeAll
+    static void createValidator() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+    }
+
+    @AfterAll
+    static void closeValidator() {
+        validatorFactory.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        saved.clear();
+        existingSsnIndexes.clear();
+        unencryptableSsns.clear();
+    }
+
+    private BulkImportPipeline pipeline(int chunkSize) {
+        EncryptionService crypto = new EncryptionService() {
+            @Override
+            public String encrypt(String data) throws Exception {
+                if (unencryptableSsns.contains(data)) {
+                    throw new Exception("KMS unavailable");
+                }
+                return "enc:" + data;
+            }
+
+            @Override
+            public String decrypt(String encryptedData) {
+                return encryptedData.substring(4);
+            }
+        };
+        BlindIndexService blindIndex = new BlindIndexService() {
+            @Override
+            public String computeSsnIndex(String ssn) {
+                return "idx:" + ssn.replace("-", "");
+            }
+
+            @Override
+            public boolean isSsnIndexTaken(String ssnIndex) {
+                return existingSsnIndexes.contains(ssnIndex) || anySaved(user -> user.getSsnBlindIndex().equals(ssnIndex));
+            }
+
+            @Override
+            public void recordSsnIndex(String ssnIndex) {
+            }
+
+            @Override
+            public boolean reserveSsnIndex(String ssnIndex) {
+                return !isSsnIndexTaken(ssnIndex);
+            }
+
+            @Override
+            public void releaseSsnIndex(String ssnIndex) {
+            }
+        };
+        return new BulkImportPipeline(userRepository, crypto, blindIndex, knownIds, statistics, validatorFactory.getValidator(),
+            new ObjectMapper(), 4, 8, chunkSize, Duration.ofMinutes(1), 2);
+    }
+
+    private Object recordSave(InvocationOnMock invocation) {
+        List<UserProfile> users = invocation.getArgument(0);
+        saved.addAll(users);
+        return users;
+    }
+
+    // The writer thread adds to saved while the workers look through it
+    private boolean anySaved(Predicate<UserProfile> condition) {
+        synchronized (saved) {
+            return saved.stream().anyMatch(condition);
+        }
+    }
+
+    private Path writeCsv(int rows) throws Exception {
+        StringBuilder csv = new StringBuilder("username,email,socialSecurityNumber\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append("user").append(i).append(",user").append(i).append("@example.com,")
+                .append(String.format("%09d", 100000000 + i)).append('\n');
+        }
+        Path file = tempDir.resolve("users.csv");
+        Files.writeString(file, csv);
+        return file;
+    }
+
+    @Test
+    void importsAllValidRecordsAndRejectsInvalidOnes() throws Exception {
+        Path file = tempDir.resolve("users.ndjson");
+        Files.writeString(file, String.join("\n",
+            "{\"username\":\"AliceWonder\",\"email\":\"alice.wonder@example.com\",\"socialSecurityNumber\":\"167984240\"}",
+            "{\"username\":\"x\",\"email\":\"not-an-email\",\"socialSecurityNumber\":\"167984240\"}",
+            "{not json",
+            "{\"username\":\"BobTheBuilder\",\"email\":\"bob.builder@example.com\",\"socialSecurityNumber\":\"119-07-5002\"}"));
+        doAnswer(this::recordSave).when(userRepository).saveAll(anyList());
+
+        ImportReport report = pipeline(500).run(file);
+
+        assertTrue(report.completed());
+        assertEquals(4, report.read());
+        assertEquals(2, report.persisted());
+        assertEquals(2, report.rejected());
+        assertEquals(2, saved.size());
+        UserProfile alice = saved.stream().filter(u -> u.getUsername().equals("AliceWonder")).findFirst().orElseThrow();
+        assertEquals("enc:167984240", alice.getEncryptedSocialSecurityNumber());
+        assertEquals("idx:167984240", alice.getSsnBlindIndex());
+        assertFalse(Files.exists(tempDir.resolve("users.ndjson.checkpoint")));
+        verify(statistics).recordCreated("alice.wonder@example.com");
+        verify(statistics).recordCreated("bob.builder@example.com");
+    }
+
+    @Test
+    void rejectsTakenSsnsAndSsnsRepeatedWithinTheFile() throws Exception {
+        Path file = tempDir.resolve("users.ndjson");
+        Files.writeString(file, String.join("\n",
+            "{\"username\":\"AliceWonder\",\"email\":\"alice.wonder@example.com\",\"socialSecurityNumber\":\"167984240\"}",
+            "{\"username\":\"AliceAgain\",\"email\":\"alice.again@example.com\",\"socialSecurityNumber\":\"167-98-4240\"}",
+            "{\"username\":\"BobTheBuilder\",\"email\":\"bob.builder@example.com\",\"socialSecurityNumber\":\"119-07-5002\"}"));
+        existingSsnIndexes.add("idx:119075002");
+        doAnswer(this::recordSave).when(userRepository).saveAll(anyList());
+
+        ImportReport report = pipeline(500).run(file);
+
+        assertTrue(report.completed());
+        assertEquals(1, report.persisted());
+        assertEquals(2, report.rejected());
+        assertEquals(1, saved.size());
+        assertEquals("idx:167984240", saved.get(0).getSsnBlindIndex());
+        verify(statistics, times(1)).recordCreated(anyString());
+    }
+
+    @Test
+    void resumesFromCheckpointWithStableIdsAfterWriteFailure() throws Exception {
+        Path file = writeCsv(1000);
+
+        // The third chunk fails on every attempt, so the first run stops with a checkpoint
+        int[] calls = { 0 };
+        doAnswer(invocation -> {
+            if (++calls[0] > 2 * 2) {
+                throw new IllegalStateException("Datastore unavailable");
+            }
+            return recordSave(invocation);
+        }).when(userRepository).saveAll(anyList());
+
+        assertThrows(IllegalStateException.class, () -> pipeline(100).run(file));
+        assertTrue(Files.exists(tempDir.resolve("users.csv.checkpoint")));
+
+        doAnswer(this::recordSave).when(userRepository).saveAll(anyList());
+        // Records saved past the checkpoint have a taken SSN now, but under their own ID
+        when(userRepository.existsById(anyString()))
+            .thenAnswer(invocation -> anySaved(user -> user.getId().equals(invocation.getArgument(0))));
+        ImportReport report = pipeline(100).run(file);
+
+        assertTrue(report.completed());
+        assertEquals(0, report.rejected());
+        Set<String> ids = new HashSet<>();
+        Set<String> usernames = new HashSet<>();
+        for (UserProfile user : saved) {
+            ids.add(user.getId());
+            usernames.add(user.getUsername());
+        }
+        // Records saved twice keep their ID, so replays overwrite instead of duplicating
+        assertEquals(1000, usernames.size());
+        assertEquals(1000, ids.size());
+        assertFalse(Files.exists(tempDir.resolve("users.csv.checkpoint")));
+        verify(statistics, times(1000)).recordCreated(anyString());
+    }
+
+    @Test
+    void recordsThatFailToEncryptAreRetriedByTheNextRun() throws Exception {
+        Path file = writeCsv(3);
+        unencryptableSsns.add("100000001");
+        doAnswer(this::recordSave).when(userRepository).saveAll(anyList());
+
+        ImportReport first = pipeline(500).run(file);
+
+        assertFalse(first.completed());
+        assertEquals(1, first.failed());
+        assertEquals(2, first.persisted());
+        // The checkpoint stops before the failed record
+        assertTrue(Files.exists(tempDir.resolve("users.csv.checkpoint")));
+        assertEquals(1, ImportCheckpoint.loadOrCreate(file).getWatermark());
+
+        unencryptableSsns.clear();
+        when(userRepository.existsById(anyString()))
+            .thenAnswer(invocation -> anySaved(user -> user.getId().equals(invocation.getArgument(0))));
+        ImportReport second = pipeline(500).run(file);
+
+        assertTrue(second.completed());
+        assertEquals(0, second.rejected());
+        assertTrue(anySaved(user -> user.getUsername().equals("user1")));
+        assertFalse(Files.exists(tempDir.resolve("users.csv.checkpoint")));
+        verify(statistics, times(3)).recordCreated(anyString());
+    }
+
+    @Test
+    void completionTrackerAdvancesOnlyOverContiguousRecords() {
+        BulkImportPipeline.CompletionTracker tracker = new BulkImportPipeline.CompletionTracker(10);
+
+        tracker.complete(12);
+        tracker.complete(11);
+        assertEquals(10, tracker.watermark());
+
+        tracker.complete(10);
+        assertEquals(13, tracker.watermark());
+    }
+
+    @Test
+    void failedSaveStopsImport() throws Exception {
+        Path file = writeCsv(10);
+        doThrow(new IllegalStateException("Datastore unavailable")).when(userRepository).saveAll(anyList());
+
+        assertThrows(IllegalStateException.class, () -> pipeline(500).run(file));
+        verify(statistics, never()).recordCreated(anyString());
+    }
+}
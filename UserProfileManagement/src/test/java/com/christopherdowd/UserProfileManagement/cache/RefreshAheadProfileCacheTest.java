@@ -0,0 +1,140 @@
+package com.christopherdowd.UserProfileManagement.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.domain.UserProfileSummary;
+import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
+import com.christopherdowd.UserProfileManagement.existence.KnownUserIds;
+import com.christopherdowd.UserProfileManagement.hedging.HedgedReads;
+import com.christopherdowd.UserProfileManagement.mapper.UserProfileMapper;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+import com.christopherdowd.UserProfileManagement.service.impl.ProfileReader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RefreshAheadProfileCacheTest {
+
+    private final UserProfileRepository userRepository = mock(UserProfileRepository.class);
+    private final KnownUserIds knownIds = mock(KnownUserIds.class);
+    private final HedgedReads hedgedReads = new HedgedReads(new SimpleMeterRegistry(), false, 0.95, Duration.ofMillis(2),
+        1024, 100, 0.05, 10, 64);
+    private final UserProfileMapper mapper = new UserProfileMapper();
+    private final AtomicLong nanos = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        when(knownIds.mightExist(anyString())).thenReturn(true);
+    }
+
+    @Test
+    void servesStaleValueWhileRefreshing() {
+        UserProfile renamed = TestDataUtil.createAliceEntity();
+        renamed.setUsername("AliceRenamed");
+        when(userRepository.findSummaryById(TestDataUtil.USER_1_ID)).thenReturn(Optional.of(UserProfileSummary.of(renamed)));
+        LoadingCache<Object, Object> cache = cache(Runnable::run);
+
+        // As cached by getById
+        cache.put(TestDataUtil.USER_1_ID, mapper.toUserResponseDto(TestDataUtil.createAliceEntity()));
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(6));
+
+        // The read past the refresh threshold still gets the cached value and triggers the reload
+        assertEquals(TestDataUtil.USER_1_USERNAME, username(cache.get(TestDataUtil.USER_1_ID)));
+        assertEquals("AliceRenamed", username(cache.get(TestDataUtil.USER_1_ID)));
+        verify(userRepository, times(1)).findSummaryById(TestDataUtil.USER_1_ID);
+    }
+
+    @Test
+    void keepsValueWhenRefreshExecutorIsSaturated() {
+        LoadingCache<Object, Object> cache = cache(task -> {
+            throw new RejectedExecutionException("full");
+        });
+
+        cache.put(TestDataUtil.USER_1_ID, mapper.toUserResponseDto(TestDataUtil.createAliceEntity()));
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(6));
+
+        assertEquals(TestDataUtil.USER_1_USERNAME, username(cache.get(TestDataUtil.USER_1_ID)));
+        assertEquals(TestDataUtil.USER_1_USERNAME, username(cache.getIfPresent(TestDataUtil.USER_1_ID)));
+    }
+
+    @Test
+    void leavesMissesToGetById() {
+        LoadingCache<Object, Object> cache = cache(Runnable::run);
+
+        // Spring asks the loading cache first, getById then does the only read
+        assertNull(cache.get(TestDataUtil.USER_2_ID));
+        assertNull(cache.getIfPresent(TestDataUtil.USER_2_ID));
+        verify(userRepository, never()).findSummaryById(anyString());
+    }
+
+    @Test
+    void refreshRemovesProfilesThatAreGone() {
+        when(userRepository.findSummaryById(TestDataUtil.USER_1_ID)).thenReturn(Optional.empty());
+        LoadingCache<Object, Object> cache = cache(Runnable::run);
+
+        cache.put(TestDataUtil.USER_1_ID, mapper.toUserResponseDto(TestDataUtil.createAliceEntity()));
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        cache.get(TestDataUtil.USER_1_ID);
+
+        assertNull(cache.getIfPresent(TestDataUtil.USER_1_ID));
+    }
+
+    @Test
+    void refreshOfAnIdTheExistenceFilterDoesNotKnowSkipsTheRead() {
+        LoadingCache<Object, Object> cache = cache(Runnable::run);
+        cache.put(TestDataUtil.USER_1_ID, mapper.toUserResponseDto(TestDataUtil.createAliceEntity()));
+        // Deleted elsewhere, and gone from the filter after its rebuild
+        when(knownIds.mightExist(TestDataUtil.USER_1_ID)).thenReturn(false);
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        cache.get(TestDataUtil.USER_1_ID);
+
+        assertNull(cache.getIfPresent(TestDataUtil.USER_1_ID));
+        verify(userRepository, never()).findSummaryById(anyString());
+    }
+
+    @Test
+    void jittersLifetimeWithinBounds() {
+        JitteredExpiry<Object, Object> expiry = new JitteredExpiry<>(Duration.ofMinutes(10), 0.2);
+        long ttl = TimeUnit.MINUTES.toNanos(10);
+
+        for (int i = 0; i < 1000; i++) {
+            long lifetime = expiry.expireAfterCreate("key", "value", 0);
+            assertTrue(lifetime <= ttl && lifetime >= ttl * 0.8, "lifetime " + lifetime);
+        }
+    }
+
+    private LoadingCache<Object, Object> cache(Executor refreshExecutor) {
+        return Caffeine.newBuilder()
+            .ticker(nanos::get)
+            .executor(Runnable::run)
+            .expireAfter(new JitteredExpiry<>(Duration.ofMinutes(10), 0.1))
+            .refreshAfterWrite(Duration.ofMinutes(5))
+            .build(new ProfileCacheLoader(new ProfileReader(userRepository, mapper, knownIds, hedgedReads), refreshExecutor));
+    }
+
+    private static String username(Object cached) {
+        return ((UserProfileResponseDto) cached).getUsername();
+    }
+}
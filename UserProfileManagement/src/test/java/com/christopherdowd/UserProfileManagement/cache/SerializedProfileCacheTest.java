@@ -0,0 +1,163 @@
+package com.christopherdowd.UserProfileManagement.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
+
+public class SerializedProfileCacheTest {
+
+    private SerializedProfileCache cache;
+    private Cache profiles;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
+        cache = new SerializedProfileCache(
+            cacheManager,
+            new HttpMessageConverters(false, List.of(new MappingJackson2HttpMessageConverter())));
+        profiles = cacheManager.getCache("profiles");
+        loads = new AtomicInteger();
+    }
+
+    private UserProfileResponseDto loadAlice() {
+        loads.incrementAndGet();
+        return TestDataUtil.createAliceResponseDto();
+    }
+
+    // As the @Cacheable getById loads it
+    private UserProfileResponseDto cachedAlice() {
+        return profiles.get(TestDataUtil.USER_1_ID, this::loadAlice);
+    }
+
+    // As an update evicts it
+    private void evictAlice() {
+        profiles.evict(TestDataUtil.USER_1_ID);
+        cache.evict(TestDataUtil.USER_1_ID);
+    }
+
+    @Test
+    void writeEncodesOnceAndServesBytesFromCacheAfterwards() throws Exception {
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        cache.write(TestDataUtil.USER_1_ID, new MockHttpServletRequest(), first, this::cachedAlice);
+
+        MockHttpServletResponse second = new MockHttpServletResponse();
+        cache.write(TestDataUtil.USER_1_ID, new MockHttpServletRequest(), second, this::cachedAlice);
+
+        assertEquals(1, loads.get());
+        assertEquals(HttpStatus.OK.value(), second.getStatus());
+        assertTrue(second.getContentType().startsWith("application/json"));
+        assertEquals(first.getContentAsString(), second.getContentAsString());
+        assertTrue(second.getContentAsString().contains("\"username\":\"" + TestDataUtil.USER_1_USERNAME + "\""));
+    }
+
+    @Test
+    void evictForcesTheProfileToBeEncodedAgain() throws Exception {
+        cache.write(TestDataUtil.USER_1_ID, new MockHttpServletRequest(), new MockHttpServletResponse(), this::cachedAlice);
+        evictAlice();
+        cache.write(TestDataUtil.USER_1_ID, new MockHttpServletRequest(), new MockHttpServletResponse(), this::cachedAlice);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void bytesFollowTheProfileARefreshPutsIntoProfiles() throws Exception {
+        cache.write(TestDataUtil.USER_1_ID, new MockHttpServletRequest(), new MockHttpServletResponse(), this::cachedAlice);
+
+        UserProfileResponseDto renamed = TestDataUtil.createAliceResponseDto();
+        renamed.setUsername("AliceRenamed");
+        profiles.put(TestDataUtil.USER_1_ID, renamed);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        cache.write(TestDataUtil.USER_1_ID, new MockHttpServletRequest(), response, this::cachedAlice);
+        assertTrue(response.getContentAsString().contains("\"username\":\"AliceRenamed\""));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void bytesOfAProfileGoneFromProfilesAreNotServed() throws Exception {
+        cache.write(TestDataUtil.USER_1_ID, new MockHttpServletRequest(), new MockHttpServletResponse(), this::cachedAlice);
+        // Expired or evicted from "profiles" only
+        profiles.evict(TestDataUtil.USER_1_ID);
+
+        cache.write(TestDataUtil.USER_1_ID, new MockHttpServletRequest(), new MockHttpServletResponse(), this::cachedAlice);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void evictionDuringALoadIsNotUndoneByIt() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            try {
+                cache.write(TestDataUtil.USER_1_ID, new MockHttpServletRequest(), new MockHttpServletResponse(),
+                    () -> profiles.get(TestDataUtil.USER_1_ID, () -> {
+                        loading.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return loadAlice();
+                    }));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        reader.start();
+        loading.await();
+
+        // An update evicts while the stale profile is being read
+        Thread evictor = new Thread(this::evictAlice);
+        evictor.start();
+        while (evictor.getState() != Thread.State.BLOCKED && evictor.getState() != Thread.State.WAITING
+                && evictor.getState() != Thread.State.TERMINATED) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        reader.join();
+        evictor.join();
+
+        cache.write(TestDataUtil.USER_1_ID, new MockHttpServletRequest(), new MockHttpServletResponse(), this::cachedAlice);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void unsupportedAcceptHeaderIsRejected() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Accept", "application/xml");
+
+        assertThrows(HttpMediaTypeNotAcceptableException.class, () ->
+            cache.write(TestDataUtil.USER_1_ID, request, new MockHttpServletResponse(), this::cachedAlice));
+    }
+
+    @Test
+    void loaderExceptionsPropagateWithoutCachingAnything() throws Exception {
+        assertThrows(ResponseStatusException.class, () ->
+            cache.write("missing", new MockHttpServletRequest(), new MockHttpServletResponse(), () -> {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found: missing");
+            }));
+
+        cache.write("missing", new MockHttpServletRequest(), new MockHttpServletResponse(), this::cachedAlice);
+        assertEquals(1, loads.get());
+    }
+}
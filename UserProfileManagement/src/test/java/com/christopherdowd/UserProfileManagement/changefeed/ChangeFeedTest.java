@@ -0,0 +1,66 @@
+package com.christopherdowd.UserProfileManagement.changefeed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+import com.christopherdowd.UserProfileManagement.changefeed.ProfileChange.ChangeType;
+
+public class ChangeFeedTest {
+
+    @Test
+    void readsChangesAfterPositionInOrder() {
+        ChangeFeed feed = new ChangeFeed(8);
+        feed.publish(ChangeType.CREATED, TestDataUtil.USER_1_ID, TestDataUtil.createAliceResponseDto());
+        feed.publish(ChangeType.UPDATED, TestDataUtil.USER_1_ID, TestDataUtil.createAliceResponseDto());
+        feed.publish(ChangeType.DELETED, TestDataUtil.USER_1_ID, null);
+
+        ChangeFeed.Batch batch = feed.readAfter(1, 10);
+
+        assertFalse(batch.overrun());
+        assertEquals(List.of(ChangeType.UPDATED, ChangeType.DELETED), batch.changes().stream().map(ProfileChange::type).toList());
+        assertEquals(3, feed.head());
+    }
+
+    @Test
+    void reportsOverrunOnceRingBufferWrapped() {
+        ChangeFeed feed = new ChangeFeed(4);
+        for (int i = 0; i < 10; i++) {
+            feed.publish(ChangeType.UPDATED, TestDataUtil.USER_1_ID, TestDataUtil.createAliceResponseDto());
+        }
+
+        assertTrue(feed.readAfter(2, 10).overrun());
+        // The four newest changes (7..10) are still available
+        assertEquals(4, feed.readAfter(6, 10).changes().size());
+    }
+
+    @Test
+    void resumesFromOwnEventIdsOnly() {
+        ChangeFeed feed = new ChangeFeed(8);
+        feed.publish(ChangeType.CREATED, TestDataUtil.USER_1_ID, TestDataUtil.createAliceResponseDto());
+        feed.publish(ChangeType.CREATED, TestDataUtil.USER_2_ID, TestDataUtil.createBobResponseDto());
+        String firstId = feed.readAfter(0, 1).changes().get(0).id();
+
+        assertEquals(1, feed.resumePoint(firstId));
+        assertEquals(2, feed.resumePoint(null));
+        assertEquals(ChangeFeed.UNKNOWN_POSITION, feed.resumePoint("12345-1"));
+        assertEquals(ChangeFeed.UNKNOWN_POSITION, feed.resumePoint("garbage"));
+    }
+
+    @Test
+    void notifiesListenersOnPublish() {
+        ChangeFeed feed = new ChangeFeed(8);
+        AtomicInteger notifications = new AtomicInteger();
+        feed.addListener(notifications::incrementAndGet);
+
+        feed.publish(ChangeType.DELETED, TestDataUtil.USER_1_ID, null);
+
+        assertEquals(1, notifications.get());
+    }
+}
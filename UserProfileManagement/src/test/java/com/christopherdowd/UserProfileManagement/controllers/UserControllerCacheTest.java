@@ -0,0 +1,137 @@
+package com.christopherdowd.UserProfileManagement.controllers;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+import com.christopherdowd.UserProfileManagement.cache.JitteredExpiry;
+import com.christopherdowd.UserProfileManagement.cache.ProfileCacheLoader;
+import com.christopherdowd.UserProfileManagement.cache.SerializedProfileCache;
+import com.christopherdowd.UserProfileManagement.controller.UserProfileController;
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.domain.UserProfileSummary;
+import com.christopherdowd.UserProfileManagement.existence.KnownUserIds;
+import com.christopherdowd.UserProfileManagement.hedging.HedgedReads;
+import com.christopherdowd.UserProfileManagement.hotkeys.HotKeyTracker;
+import com.christopherdowd.UserProfileManagement.mapper.UserProfileMapper;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+import com.christopherdowd.UserProfileManagement.service.UserProfileService;
+import com.christopherdowd.UserProfileManagement.service.impl.ProfileReader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/*
+ * GET /api/users/{id} through the serialized profile cache, in front of a refresh-ahead "profiles" cache
+ */
+class UserControllerCacheTest {
+
+    private final UserProfileRepository userRepository = mock(UserProfileRepository.class);
+    private final UserProfileService userService = mock(UserProfileService.class);
+    private final AtomicLong nanos = new AtomicLong();
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setup() {
+        KnownUserIds knownIds = mock(KnownUserIds.class);
+        when(knownIds.mightExist(anyString())).thenReturn(true);
+        HedgedReads hedgedReads = new HedgedReads(new SimpleMeterRegistry(), false, 0.95, Duration.ofMillis(2),
+            1024, 100, 0.05, 10, 64);
+        ProfileReader profileReader = new ProfileReader(userRepository, new UserProfileMapper(), knownIds, hedgedReads);
+
+        // Built as in CacheConfig, on a fake ticker and with refreshes run by the reading thread
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.registerCustomCache("profiles", Caffeine.newBuilder()
+            .ticker(nanos::get)
+            .executor(Runnable::run)
+            .expireAfter(new JitteredExpiry<>(Duration.ofMinutes(10), 0.1))
+            .refreshAfterWrite(Duration.ofMinutes(5))
+            .build(new ProfileCacheLoader(profileReader, Runnable::run)));
+        // Outlives "profiles", so only the read-through keeps its bytes current
+        cacheManager.registerCustomCache(SerializedProfileCache.CACHE_NAME, Caffeine.newBuilder()
+            .ticker(nanos::get)
+            .expireAfterWrite(Duration.ofHours(1))
+            .build());
+        Cache profiles = cacheManager.getCache("profiles");
+
+        // As the @Cacheable(sync = true) getById loads a miss
+        when(userService.getById(anyString())).thenAnswer(invocation -> {
+            String id = invocation.getArgument(0);
+            try {
+                return profiles.get(id, () -> profileReader.read(id)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found: " + id)));
+            } catch (Cache.ValueRetrievalException e) {
+                throw e.getCause();
+            }
+        });
+
+        SerializedProfileCache serializedProfiles = new SerializedProfileCache(cacheManager,
+            new HttpMessageConverters(false, List.of(new MappingJackson2HttpMessageConverter())));
+        mvc = MockMvcBuilders
+                .standaloneSetup(new UserProfileController(userService, serializedProfiles, mock(HotKeyTracker.class)))
+                .build();
+    }
+
+    @Test
+    void hotProfileIsRefreshedAheadWhileServedFromTheBytesTier() throws Exception {
+        UserProfile alice = TestDataUtil.createAliceEntity();
+        UserProfile renamed = TestDataUtil.createAliceEntity();
+        renamed.setUsername("AliceRenamed");
+        when(userRepository.findSummaryById(TestDataUtil.USER_1_ID))
+            .thenReturn(Optional.of(UserProfileSummary.of(alice)), Optional.of(UserProfileSummary.of(renamed)));
+
+        mvc.perform(get("/api/users/{id}", TestDataUtil.USER_1_ID))
+           .andExpect(status().isOk())
+           .andExpect(jsonPath("$.username").value(TestDataUtil.USER_1_USERNAME));
+
+        // Past the refresh threshold, the hit still answers with the cached bytes and triggers the refresh
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        mvc.perform(get("/api/users/{id}", TestDataUtil.USER_1_ID))
+           .andExpect(status().isOk())
+           .andExpect(jsonPath("$.username").value(TestDataUtil.USER_1_USERNAME));
+
+        mvc.perform(get("/api/users/{id}", TestDataUtil.USER_1_ID))
+           .andExpect(status().isOk())
+           .andExpect(jsonPath("$.username").value("AliceRenamed"));
+        verify(userRepository, times(2)).findSummaryById(TestDataUtil.USER_1_ID);
+        verify(userService, times(1)).getById(TestDataUtil.USER_1_ID);
+    }
+
+    @Test
+    void bytesAreNotServedPastTheProfilesExpiry() throws Exception {
+        when(userRepository.findSummaryById(TestDataUtil.USER_1_ID))
+            .thenReturn(Optional.of(UserProfileSummary.of(TestDataUtil.createAliceEntity())), Optional.empty());
+
+        mvc.perform(get("/api/users/{id}", TestDataUtil.USER_1_ID))
+           .andExpect(status().isOk());
+
+        // Past the jittered expiry of "profiles": the profile is read again instead of its bytes being served
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(10));
+        mvc.perform(get("/api/users/{id}", TestDataUtil.USER_1_ID))
+           .andExpect(status().isNotFound());
+    }
+}
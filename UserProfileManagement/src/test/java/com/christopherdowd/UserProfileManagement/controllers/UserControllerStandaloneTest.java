@@ -1,6 +1,8 @@
 package com.christopherdowd.UserProfileManagement.controllers;
 
+import com.christopherdowd.UserProfileManagement.cache.SerializedProfileCache;
 import com.christopherdowd.UserProfileManagement.controller.UserProfileController;
+import com.christopherdowd.UserProfileManagement.hotkeys.HotKeyTracker;
 import com.christopherdowd.UserProfileManagement.TestDataUtil;
 import com.christopherdowd.UserProfileManagement.service.UserProfileService;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -29,6 +31,12 @@ class UserControllerStandaloneTest {
     @Mock
     private UserProfileService userService;
 
+    @Mock
+    private SerializedProfileCache serializedProfiles;
+
+    @Mock
+    private HotKeyTracker hotKeys;
+
     @InjectMocks
     private UserProfileController controller;
 
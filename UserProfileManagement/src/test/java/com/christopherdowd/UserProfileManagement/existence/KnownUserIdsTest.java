@@ -0,0 +1,149 @@
+package com.christopherdowd.UserProfileManagement.existence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import com.christopherdowd.UserProfileManagement.repository.UserIdScanner;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class KnownUserIdsTest {
+
+    private final Set<String> stored = new CopyOnWriteArraySet<>(List.of("user-1", "user-2", "user-3"));
+    private final UserIdScanner scanner = mock(UserIdScanner.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final KnownUserIds knownIds =
+        new KnownUserIds(scanner, meterRegistry, true, 1000, 0.01, Duration.ofHours(1));
+
+    @Test
+    void bloomFilterHasNoFalseNegativesAndAboutTheConfiguredFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("present-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("present-" + i));
+            if (filter.mightContain("absent-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 250, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void passesEverythingUntilTheFirstBuild() {
+        assertTrue(knownIds.mightExist("never-created"));
+    }
+
+    @Test
+    void rejectsUnknownIdsAfterBuildAndCountsThem() {
+        scanStored();
+        knownIds.rebuild();
+
+        assertTrue(knownIds.mightExist("user-2"));
+        assertFalse(knownIds.mightExist("never-created"));
+        assertEquals(1.0, meterRegistry.counter("user.existence.filter.short_circuits").count());
+    }
+
+    @Test
+    void knowsAddedIdsAndForgetsDeletedOnesOnRebuild() {
+        scanStored();
+        knownIds.rebuild();
+
+        knownIds.add("user-4");
+        stored.add("user-4");
+        assertTrue(knownIds.mightExist("user-4"));
+
+        stored.remove("user-1");
+        knownIds.rebuild();
+        assertFalse(knownIds.mightExist("user-1"));
+        assertTrue(knownIds.mightExist("user-4"));
+    }
+
+    @Test
+    void keepsIdsAddedWhileARebuildIsScanning() {
+        scanStored();
+        knownIds.rebuild();
+
+        when(scanner.forEachId(any())).thenAnswer(invocation -> {
+            Consumer<String> action = invocation.getArgument(0);
+            // Created after the scan passed the position where it would have been listed
+            stored.forEach(action);
+            knownIds.add("created-during-scan");
+            return (long) stored.size();
+        });
+        knownIds.rebuild();
+
+        assertTrue(knownIds.mightExist("created-during-scan"));
+    }
+
+    @Test
+    void keepsIdsAddedWhileARebuildSwapsInTheNewFilter() throws Exception {
+        scanStored();
+        knownIds.rebuild();
+
+        for (int round = 0; round < 200; round++) {
+            CountDownLatch scanEnding = new CountDownLatch(1);
+            when(scanner.forEachId(any())).thenAnswer(invocation -> {
+                Consumer<String> action = invocation.getArgument(0);
+                stored.forEach(action);
+                scanEnding.countDown();
+                return (long) stored.size();
+            });
+
+            // Adds race the replacement of the current filter that follows the scan
+            String prefix = "round-" + round + "-";
+            List<Thread> adders = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                String threadPrefix = prefix + t + "-";
+                Thread adder = new Thread(() -> {
+                    try {
+                        scanEnding.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < 200; i++) {
+                        knownIds.add(threadPrefix + i);
+                    }
+                });
+                adder.start();
+                adders.add(adder);
+            }
+            knownIds.rebuild();
+            for (Thread adder : adders) {
+                adder.join();
+            }
+
+            for (int t = 0; t < 4; t++) {
+                for (int i = 0; i < 200; i++) {
+                    assertTrue(knownIds.mightExist(prefix + t + "-" + i), prefix + t + "-" + i);
+                }
+            }
+        }
+    }
+
+    private void scanStored() {
+        when(scanner.forEachId(any())).thenAnswer(invocation -> {
+            Consumer<String> action = invocation.getArgument(0);
+            stored.forEach(action);
+            return (long) stored.size();
+        });
+    }
+}
@@ -0,0 +1,89 @@
+package com.christopherdowd.UserProfileManagement.filter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+    @Test
+    void rejectsRequestsBeyondTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 10);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, limiter.getRejectedCount());
+
+        limiter.release(FAST, false);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void limitGrowsWhileSaturatedAndLatencyIsStable() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 10, 1, 100);
+
+        for (int i = 0; i < 200; i++) {
+            saturate(limiter);
+            drain(limiter, FAST);
+        }
+
+        assertTrue(limiter.getLimit() > 10, "limit should grow, was " + limiter.getLimit());
+    }
+
+    @Test
+    void limitShrinksWhenLatencyRisesAboveTheBaseline() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 50, 1, 100);
+
+        for (int i = 0; i < 50; i++) {
+            cycle(limiter, FAST, false);
+        }
+        for (int i = 0; i < 50; i++) {
+            cycle(limiter, SLOW, false);
+        }
+
+        assertTrue(limiter.getLimit() < 50, "limit should shrink, was " + limiter.getLimit());
+    }
+
+    @Test
+    void droppedRequestsBackOffButNeverBelowTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 20, 5, 100);
+
+        for (int i = 0; i < 100; i++) {
+            cycle(limiter, FAST, true);
+        }
+
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    void invalidLimitsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter("test", 1, 2, 10));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter("test", 5, 0, 10));
+    }
+
+    private void cycle(AdaptiveConcurrencyLimiter limiter, long rtt, boolean dropped) {
+        assertTrue(limiter.tryAcquire());
+        limiter.release(rtt, dropped);
+    }
+
+    private void saturate(AdaptiveConcurrencyLimiter limiter) {
+        while (limiter.tryAcquire()) {
+            // keep acquiring until the limit is reached
+        }
+    }
+
+    private void drain(AdaptiveConcurrencyLimiter limiter, long rtt) {
+        while (limiter.getInFlight() > 0) {
+            limiter.release(rtt, false);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.christopherdowd.UserProfileManagement.filter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.christopherdowd.UserProfileManagement.filter.RateLimitFilter.Endpoint;
+import com.christopherdowd.UserProfileManagement.filter.RateLimitFilter.Limit;
+
+public class RateLimitFilterTest {
+
+    private static final Map<Endpoint, Limit> LIMITS = Map.of(Endpoint.LIST, new Limit(1, 0.001));
+
+    private static MockHttpServletRequest list(String apiKey, String remoteAddr, String forwardedFor) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users");
+        request.setRemoteAddr(remoteAddr);
+        if (apiKey != null) {
+            request.addHeader(RateLimitFilter.API_KEY_HEADER, apiKey);
+        }
+        if (forwardedFor != null) {
+            request.addHeader(RateLimitFilter.FORWARDED_FOR_HEADER, forwardedFor);
+        }
+        return request;
+    }
+
+    private static int status(RateLimitFilter filter, MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+
+    @Test
+    void unknownApiKeysShareTheBucketOfTheirAddress() throws Exception {
+        RateLimitFilter filter = new RateLimitFilter(LIMITS, 1000, Duration.ofMinutes(1), Set.of("partner-key"), 0);
+
+        assertEquals(200, status(filter, list("made-up-1", "10.0.0.1", null)));
+        // A fresh made-up key doesn't get a fresh bucket
+        assertEquals(429, status(filter, list("made-up-2", "10.0.0.1", null)));
+        // A configured key has its own
+        assertEquals(200, status(filter, list("partner-key", "10.0.0.1", null)));
+    }
+
+    @Test
+    void clientAddressIsTakenFromTheTrustedEndOfForwardedFor() {
+        RateLimitFilter direct = new RateLimitFilter(LIMITS, 1000, Duration.ofMinutes(1), Set.of(), 0);
+        RateLimitFilter behindLoadBalancer = new RateLimitFilter(LIMITS, 1000, Duration.ofMinutes(1), Set.of(), 2);
+
+        // The client sent "1.2.3.4" itself, the load balancer appended the client's and its own address
+        MockHttpServletRequest request = list(null, "10.0.0.1", "1.2.3.4, 203.0.113.7, 130.211.0.1");
+        assertEquals("ip:10.0.0.1", direct.clientKey(request));
+        assertEquals("ip:203.0.113.7", behindLoadBalancer.clientKey(request));
+
+        // Not forwarded through all proxies
+        assertEquals("ip:10.0.0.1", behindLoadBalancer.clientKey(list(null, "10.0.0.1", "203.0.113.7")));
+    }
+}
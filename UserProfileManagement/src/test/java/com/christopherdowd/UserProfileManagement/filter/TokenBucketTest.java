@@ -0,0 +1,57 @@
+package com.christopherdowd.UserProfileManagement.filter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+
+    @Test
+    void allowsABurstUpToCapacityThenRejects() {
+        TokenBucket bucket = new TokenBucket(3, 1, now::get);
+
+        assertEquals(2, bucket.tryConsume().remaining());
+        assertEquals(1, bucket.tryConsume().remaining());
+        assertEquals(0, bucket.tryConsume().remaining());
+
+        TokenBucket.Probe rejected = bucket.tryConsume();
+        assertFalse(rejected.allowed());
+        assertEquals(1, rejected.secondsToWait());
+        assertEquals(3, rejected.secondsUntilFull());
+    }
+
+    @Test
+    void refillsOverTime() {
+        TokenBucket bucket = new TokenBucket(2, 2, now::get);
+        bucket.tryConsume();
+        bucket.tryConsume();
+        assertFalse(bucket.tryConsume().allowed());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(bucket.tryConsume().allowed());
+        assertFalse(bucket.tryConsume().allowed());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        TokenBucket.Probe probe = bucket.tryConsume();
+        assertTrue(probe.allowed());
+        assertEquals(1, probe.remaining(), "an idle bucket never holds more than its capacity");
+    }
+
+    @Test
+    void classifiesEndpointsByMethodAndPath() {
+        assertEquals(RateLimitFilter.Endpoint.LIST, RateLimitFilter.classify(new MockHttpServletRequest("GET", "/api/users")));
+        assertEquals(RateLimitFilter.Endpoint.GET_BY_ID, RateLimitFilter.classify(new MockHttpServletRequest("GET", "/api/users/abc")));
+        assertEquals(RateLimitFilter.Endpoint.CREATE, RateLimitFilter.classify(new MockHttpServletRequest("POST", "/api/users")));
+        assertEquals(RateLimitFilter.Endpoint.MODIFY, RateLimitFilter.classify(new MockHttpServletRequest("PUT", "/api/users/abc")));
+        assertEquals(RateLimitFilter.Endpoint.MODIFY, RateLimitFilter.classify(new MockHttpServletRequest("DELETE", "/api/users/abc")));
+        assertEquals(null, RateLimitFilter.classify(new MockHttpServletRequest("GET", "/actuator/health")));
+    }
+}
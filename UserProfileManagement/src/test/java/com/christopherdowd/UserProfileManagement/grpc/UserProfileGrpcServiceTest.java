@@ -0,0 +1,142 @@
+package com.christopherdowd.UserProfileManagement.grpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
+import com.christopherdowd.UserProfileManagement.grpc.v1.BatchGetUsersResponse;
+import com.christopherdowd.UserProfileManagement.grpc.v1.CreateUserRequest;
+import com.christopherdowd.UserProfileManagement.grpc.v1.GetUserRequest;
+import com.christopherdowd.UserProfileManagement.grpc.v1.User;
+import com.christopherdowd.UserProfileManagement.grpc.v1.UserProfilesGrpc;
+import com.christopherdowd.UserProfileManagement.hotkeys.HotKeyTracker;
+import com.christopherdowd.UserProfileManagement.hotkeys.HotKeyTracker.Operation;
+import com.christopherdowd.UserProfileManagement.service.UserProfileService;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import jakarta.validation.Validation;
+
+public class UserProfileGrpcServiceTest {
+
+    private final UserProfileService service = mock(UserProfileService.class);
+    private final HotKeyTracker hotKeys = mock(HotKeyTracker.class);
+
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+            .directExecutor()
+            .addService(new UserProfileGrpcService(service, hotKeys,
+                Validation.buildDefaultValidatorFactory().getValidator()))
+            .build()
+            .start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    void getUserReturnsProfileAndCountsLookup() {
+        when(service.getById("1")).thenReturn(new UserProfileResponseDto("1", "alice", "alice@example.com"));
+
+        User user = UserProfilesGrpc.newBlockingStub(channel).getUser(GetUserRequest.newBuilder().setId("1").build());
+
+        assertEquals("alice", user.getUsername());
+        assertEquals("alice@example.com", user.getEmail());
+        verify(hotKeys).record(Operation.GET, "1");
+    }
+
+    @Test
+    void getUserMapsNotFound() {
+        when(service.getById("missing")).thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found: missing"));
+
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class, () ->
+            UserProfilesGrpc.newBlockingStub(channel).getUser(GetUserRequest.newBuilder().setId("missing").build()));
+
+        assertEquals(Status.Code.NOT_FOUND, e.getStatus().getCode());
+        assertEquals("User not found: missing", e.getStatus().getDescription());
+    }
+
+    @Test
+    void createUserRejectsInvalidRequestWithoutCallingService() {
+        CreateUserRequest request = CreateUserRequest.newBuilder()
+            .setUsername("al")
+            .setEmail("not-an-email")
+            .setSocialSecurityNumber("123-45-6789")
+            .build();
+
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class, () ->
+            UserProfilesGrpc.newBlockingStub(channel).createUser(request));
+
+        assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+        assertTrue(e.getStatus().getDescription().contains("email"));
+        assertTrue(e.getStatus().getDescription().contains("username"));
+        verify(service, never()).create(any());
+    }
+
+    @Test
+    void batchLookupAnswersInOrderAndKeepsStreamOpenOnMisses() throws InterruptedException {
+        when(service.getById("1")).thenReturn(new UserProfileResponseDto("1", "alice", "alice@example.com"));
+        when(service.getById("2")).thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found: 2"));
+        when(service.getById("3")).thenReturn(new UserProfileResponseDto("3", "carol", "carol@example.com"));
+
+        List<BatchGetUsersResponse> responses = new CopyOnWriteArrayList<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        StreamObserver<GetUserRequest> requests = UserProfilesGrpc.newStub(channel).batchGetUsers(new StreamObserver<>() {
+            @Override
+            public void onNext(BatchGetUsersResponse response) {
+                responses.add(response);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                completed.countDown();
+            }
+
+            @Override
+            public void onCompleted() {
+                completed.countDown();
+            }
+        });
+        for (String id : List.of("1", "2", "3")) {
+            requests.onNext(GetUserRequest.newBuilder().setId(id).build());
+        }
+        requests.onCompleted();
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("1", "2", "3"), responses.stream().map(BatchGetUsersResponse::getId).toList());
+        assertEquals("alice", responses.get(0).getUser().getUsername());
+        assertEquals(Status.Code.NOT_FOUND.value(), responses.get(1).getError().getCode());
+        assertEquals("carol", responses.get(2).getUser().getUsername());
+    }
+}
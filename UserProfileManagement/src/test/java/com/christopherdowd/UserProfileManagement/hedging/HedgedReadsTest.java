@@ -0,0 +1,170 @@
+package com.christopherdowd.UserProfileManagement.hedging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+
+public class HedgedReadsTest {
+
+    /*
+     * Local stand-in for the repository that delays reads by queued latencies, 0 once the queue is empty
+     */
+    static class LatencyInjectingRepository {
+
+        private final Map<String, UserProfile> profiles = new ConcurrentHashMap<>();
+        private final ConcurrentLinkedQueue<Duration> latencies = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger reads = new AtomicInteger();
+
+        void save(UserProfile user) {
+            profiles.put(user.getId(), user);
+        }
+
+        void injectLatency(Duration... next) {
+            latencies.addAll(List.of(next));
+        }
+
+        Optional<UserProfile> findById(String id) {
+            reads.incrementAndGet();
+            Duration latency = latencies.poll();
+            if (latency != null) {
+                try {
+                    Thread.sleep(latency.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return Optional.ofNullable(profiles.get(id));
+        }
+    }
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LatencyInjectingRepository repository = new LatencyInjectingRepository();
+    private HedgedReads hedgedReads;
+
+    private HedgedReads hedgedReads(boolean enabled, double budgetRatio, int budgetBurst) {
+        hedgedReads = new HedgedReads(meterRegistry, enabled, 0.95, Duration.ofMillis(20), 64, 16, budgetRatio, budgetBurst, 8);
+        repository.save(TestDataUtil.createAliceEntity());
+        return hedgedReads;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (hedgedReads != null) {
+            hedgedReads.shutdown();
+        }
+    }
+
+    private double outcome(String outcome) {
+        return meterRegistry.get(HedgedReads.OUTCOME_METRIC).tag("outcome", outcome).counter().count();
+    }
+
+    // Fast reads until the hedge delay is known, which is then the minimum delay
+    private void warmUp(HedgedReads reads) {
+        for (int i = 0; i < 16; i++) {
+            reads.read(() -> repository.findById(TestDataUtil.USER_1_ID));
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), reads.hedgeDelayNanos());
+    }
+
+    @Test
+    void slowReadIsHedgedAndFastHedgeWins() {
+        HedgedReads reads = hedgedReads(true, 0.05, 10);
+        warmUp(reads);
+        repository.injectLatency(Duration.ofSeconds(5));
+
+        long startNanos = System.nanoTime();
+        Optional<UserProfile> user = reads.read(() -> repository.findById(TestDataUtil.USER_1_ID));
+
+        assertTrue(user.isPresent());
+        assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(2), "hedge should have answered first");
+        assertEquals(1, outcome("hedged"));
+        assertEquals(1, outcome("hedge_won"));
+        assertEquals(18, repository.reads.get());
+    }
+
+    @Test
+    void attemptsRunInTheCallersObservation() {
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(context -> true);
+        HedgedReads reads = hedgedReads(true, 0.05, 10);
+        warmUp(reads);
+        repository.injectLatency(Duration.ofSeconds(5));
+
+        List<Observation> seen = new CopyOnWriteArrayList<>();
+        Observation parent = Observation.start("user.read", observationRegistry);
+        try (Observation.Scope scope = parent.openScope()) {
+            reads.read(() -> {
+                seen.add(observationRegistry.getCurrentObservation());
+                return repository.findById(TestDataUtil.USER_1_ID);
+            });
+        } finally {
+            parent.stop();
+        }
+
+        // The slow primary and its hedge
+        assertEquals(List.of(parent, parent), seen);
+    }
+
+    @Test
+    void hedgesAreCappedByTheBudget() {
+        // A single saved hedge that is never earned back
+        HedgedReads reads = hedgedReads(true, 0, 1);
+        warmUp(reads);
+        repository.injectLatency(Duration.ofMillis(300), Duration.ZERO, Duration.ofMillis(100));
+
+        reads.read(() -> repository.findById(TestDataUtil.USER_1_ID));
+        reads.read(() -> repository.findById(TestDataUtil.USER_1_ID));
+
+        assertEquals(1, outcome("hedged"));
+        assertEquals(1, outcome("budget_exhausted"));
+    }
+
+    @Test
+    void hedgeDelayFollowsRecentLatencyPercentile() {
+        HedgedReads reads = hedgedReads(true, 0.05, 10);
+        for (int millis = 1; millis <= 64; millis++) {
+            reads.recordLatency(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        // 95th percentile of 1..64 ms
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(61), reads.hedgeDelayNanos());
+    }
+
+    @Test
+    void failuresOfEveryAttemptAreRethrown() {
+        HedgedReads reads = hedgedReads(true, 0.05, 10);
+        warmUp(reads);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+            () -> reads.read(() -> { throw new IllegalStateException("datastore unavailable"); }));
+        assertEquals("datastore unavailable", e.getMessage());
+    }
+
+    @Test
+    void disabledReadsRunOnCallerThread() {
+        HedgedReads reads = hedgedReads(false, 0.05, 10);
+        Thread caller = Thread.currentThread();
+
+        assertEquals(caller, reads.read(Thread::currentThread));
+        assertEquals(0, outcome("hedged"));
+    }
+}
@@ -0,0 +1,109 @@
+package com.christopherdowd.UserProfileManagement.hotkeys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.christopherdowd.UserProfileManagement.hotkeys.HotKeyTracker.HotKey;
+import com.christopherdowd.UserProfileManagement.hotkeys.HotKeyTracker.Operation;
+
+public class HotKeyTrackerTest {
+
+    // Long decay interval, the tests end intervals themselves
+    private final HotKeyTracker tracker = new HotKeyTracker(4, 1024, 3, Duration.ofHours(1), true, 50, 2);
+
+    @AfterEach
+    void tearDown() {
+        tracker.stop();
+    }
+
+    @Test
+    void sketchNeverUndercounts() {
+        CountMinSketch sketch = new CountMinSketch(4, 256);
+        for (int key = 0; key < 2000; key++) {
+            for (int i = 0; i <= key % 7; i++) {
+                sketch.increment("user-" + key);
+            }
+        }
+
+        for (int key = 0; key < 2000; key++) {
+            assertTrue(sketch.estimate("user-" + key) >= key % 7 + 1);
+        }
+    }
+
+    @Test
+    void keysWithEqualHashCodesAreCountedApart() {
+        // "Aa" and "BB" share a String.hashCode()
+        CountMinSketch sketch = new CountMinSketch(4, 1024);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("Aa");
+        }
+
+        assertEquals(100, sketch.estimate("Aa"));
+        assertEquals(0, sketch.estimate("BB"));
+    }
+
+    @Test
+    void murmur3MatchesReferenceVectors() {
+        assertEquals(0xCBD8A7B341BD9B02L, CountMinSketch.murmur3("hello".getBytes(StandardCharsets.UTF_8), 0));
+        assertEquals(0xE34BBC7BBC071B6CL,
+            CountMinSketch.murmur3("The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8), 0));
+    }
+
+    @Test
+    void findsHeavyHittersAmongBackgroundTraffic() {
+        for (int round = 0; round < 100; round++) {
+            tracker.record(Operation.GET, "celebrity");
+            tracker.record(Operation.GET, "celebrity");
+            tracker.record(Operation.GET, "service-account");
+            if (round % 2 == 0) {
+                tracker.record(Operation.GET, "popular");
+            }
+            for (int i = 0; i < 20; i++) {
+                tracker.record(Operation.GET, "user-" + round + "-" + i);
+            }
+        }
+
+        List<String> top = tracker.top(Operation.GET).stream().map(HotKey::key).toList();
+        assertEquals(List.of("celebrity", "service-account", "popular"), top.subList(0, 3));
+        assertTrue(tracker.top(Operation.UPDATE).isEmpty());
+    }
+
+    @Test
+    void pinsHottestKeysAtEndOfIntervalAndNotifiesListeners() {
+        List<String> changed = new ArrayList<>();
+        tracker.addPinListener(changed::add);
+        record("celebrity", 120);
+        record("service-account", 100);
+        record("popular", 80);
+        tracker.record(Operation.GET, "cold");
+
+        tracker.endInterval();
+
+        // Limited to two pins, the cold key is below the minimum count
+        assertEquals(2, tracker.pinnedKeys().size());
+        assertFalse(tracker.isPinned("cold"));
+        assertEquals(2, changed.size());
+
+        // Counts were halved to 60 and 50, still enough to stay pinned; then to 30 and 25, which is not
+        tracker.endInterval();
+        assertEquals(2, tracker.pinnedKeys().size());
+        tracker.endInterval();
+        assertTrue(tracker.pinnedKeys().isEmpty());
+        assertEquals(4, changed.size());
+    }
+
+    private void record(String key, int times) {
+        for (int i = 0; i < times; i++) {
+            tracker.record(Operation.GET, key);
+        }
+    }
+}
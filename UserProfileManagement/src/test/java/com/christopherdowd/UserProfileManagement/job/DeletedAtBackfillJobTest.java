@@ -0,0 +1,73 @@
+package com.christopherdowd.UserProfileManagement.job;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+
+public class DeletedAtBackfillJobTest {
+
+    private final UserProfileRepository userRepository = mock(UserProfileRepository.class);
+
+    private final DeletedAtBackfillJob job = new DeletedAtBackfillJob(userRepository, false, 2);
+
+    private void notListedAsLive(String... ids) {
+        when(userRepository.forEachIdNotListedAsLive(any())).thenAnswer(invocation -> {
+            Consumer<String> action = invocation.getArgument(0);
+            List.of(ids).forEach(action);
+            return (long) ids.length;
+        });
+    }
+
+    private static UserProfile user(String id, Instant deletedAt) {
+        return UserProfile.builder().id(id).username("user-" + id).email(id + "@example.com").deletedAt(deletedAt).build();
+    }
+
+    @Test
+    void writesBackTheLiveProfilesInBatches() {
+        notListedAsLive("a", "b", "c");
+        UserProfile a = user("a", null);
+        UserProfile b = user("b", null);
+        UserProfile c = user("c", null);
+        when(userRepository.findAllById(List.of("a", "b"))).thenReturn(List.of(a, b));
+        when(userRepository.findAllById(List.of("c"))).thenReturn(List.of(c));
+        when(userRepository.replaceAllIfUnchanged(anyList(), anyList()))
+            .thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).size());
+
+        assertEquals(3, job.run());
+        // Written back unchanged, so the store gets the null deletedAt the legacy entity lacked
+        verify(userRepository).replaceAllIfUnchanged(List.of(a, b), List.of(a, b));
+        verify(userRepository).replaceAllIfUnchanged(List.of(c), List.of(c));
+    }
+
+    @Test
+    void leavesTombstonesAndProfilesChangedMeanwhileAlone() {
+        notListedAsLive("a", "b");
+        UserProfile live = user("a", null);
+        when(userRepository.findAllById(List.of("a", "b"))).thenReturn(List.of(live, user("b", Instant.now())));
+        // Updated between the read and the write
+        when(userRepository.replaceAllIfUnchanged(List.of(live), List.of(live))).thenReturn(0);
+
+        assertEquals(0, job.run());
+    }
+
+    @Test
+    void nothingToBackfillWritesNothing() {
+        notListedAsLive();
+
+        assertEquals(0, job.run());
+        verify(userRepository, never()).replaceAllIfUnchanged(anyList(), anyList());
+    }
+}
@@ -0,0 +1,103 @@
+package com.christopherdowd.UserProfileManagement.job;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileScanner;
+import com.christopherdowd.UserProfileManagement.service.BlindIndexService;
+import com.christopherdowd.UserProfileManagement.service.EncryptionService;
+
+public class SsnReEncryptionJobTest {
+
+    private final UserProfileScanner scanner = mock(UserProfileScanner.class);
+    private final UserProfileRepository userRepository = mock(UserProfileRepository.class);
+    private final EncryptionService crypto = mock(EncryptionService.class);
+    private final BlindIndexService blindIndex = mock(BlindIndexService.class);
+    private final JobLeases leases = new InMemoryJobLeases();
+
+    private SsnReEncryptionJob job;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        job = new SsnReEncryptionJob(scanner, userRepository, crypto, blindIndex, leases, false, 100, 1_000_000,
+            Duration.ofMinutes(5));
+        when(crypto.needsReEncryption("v1:old")).thenReturn(true);
+        when(crypto.decrypt("v1:old")).thenReturn("123-45-6789");
+        when(crypto.encrypt("123-45-6789")).thenReturn("v2:new");
+    }
+
+    private static UserProfile stored(String id) {
+        return UserProfile.builder().id(id).username(id).encryptedSocialSecurityNumber("v1:old").ssnBlindIndex("index").build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void scanning(List<UserProfile> batch) {
+        when(scanner.forEachBatch(anyInt(), any())).thenAnswer(invocation -> {
+            invocation.getArgument(1, Consumer.class).accept(batch);
+            return (long) batch.size();
+        });
+    }
+
+    @Test
+    void writesEachBatchBackInOneConditionalWrite() {
+        UserProfile unchanged = stored("a");
+        UserProfile updatedSinceTheScan = stored("b");
+        scanning(List.of(unchanged, updatedSinceTheScan));
+        // One of the two was written since the scan and is skipped
+        when(userRepository.replaceAllIfUnchanged(any(), any())).thenReturn(1);
+
+        SsnReEncryptionJob.Result result = job.run();
+
+        assertEquals(new SsnReEncryptionJob.Result(2, 1, 1, 0), result);
+        UserProfile a = stored("a");
+        a.setEncryptedSocialSecurityNumber("v2:new");
+        UserProfile b = stored("b");
+        b.setEncryptedSocialSecurityNumber("v2:new");
+        verify(userRepository, times(1)).replaceAllIfUnchanged(List.of(stored("a"), stored("b")), List.of(a, b));
+        verify(userRepository, never()).replaceIfUnchanged(any(), any());
+        verify(userRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void countsTheBatchAsFailedWhenItsWriteFails() {
+        scanning(List.of(stored("a"), stored("b")));
+        when(userRepository.replaceAllIfUnchanged(any(), any())).thenThrow(new IllegalStateException("contention"));
+
+        assertEquals(new SsnReEncryptionJob.Result(2, 0, 0, 2), job.run());
+    }
+
+    @Test
+    void doesNotRunWhileAnotherInstanceHoldsTheLease() {
+        leases.tryAcquire(SsnReEncryptionJob.LEASE_NAME, "other-instance", Duration.ofMinutes(5));
+
+        SsnReEncryptionJob.Result result = job.run();
+
+        assertEquals(new SsnReEncryptionJob.Result(0, 0, 0, 0), result);
+        verify(scanner, never()).forEachBatch(anyInt(), any());
+    }
+
+    @Test
+    void releasesTheLeaseWhenDone() {
+        scanning(List.of());
+
+        job.run();
+
+        assertTrue(leases.tryAcquire(SsnReEncryptionJob.LEASE_NAME, "other-instance", Duration.ofMinutes(5)));
+    }
+}
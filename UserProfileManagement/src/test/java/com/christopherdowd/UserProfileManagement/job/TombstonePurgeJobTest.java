@@ -0,0 +1,75 @@
+package com.christopherdowd.UserProfileManagement.job;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+
+public class TombstonePurgeJobTest {
+
+    private static final Instant THREE_AM = Instant.parse("2025-01-01T03:00:00Z");
+
+    private final UserProfileRepository userRepository = mock(UserProfileRepository.class);
+
+    private TombstonePurgeJob job(LocalTime windowStart, LocalTime windowEnd, Instant now) {
+        return new TombstonePurgeJob(userRepository, true, Duration.ofDays(7), 2, windowStart, windowEnd,
+            Duration.ofMinutes(15), Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @Test
+    void purgesExpiredTombstonesInBatchesUntilNoneAreLeft() {
+        when(userRepository.findTombstonedIds(eq(THREE_AM.minus(Duration.ofDays(7))), eq(2)))
+            .thenReturn(List.of("a", "b"), List.of("c", "d"), List.of("e"));
+
+        long purged = job(LocalTime.of(2, 0), LocalTime.of(5, 0), THREE_AM).purge();
+
+        assertEquals(5, purged);
+        verify(userRepository).deleteAllById(List.of("a", "b"));
+        verify(userRepository).deleteAllById(List.of("c", "d"));
+        verify(userRepository).deleteAllById(List.of("e"));
+    }
+
+    @Test
+    void stopsWhenTheWindowHasClosed() {
+        when(userRepository.findTombstonedIds(any(), anyInt())).thenReturn(List.of("a", "b"));
+
+        // Called outside its window, e.g. by an operator, the purge does one batch
+        long purged = job(LocalTime.of(22, 0), LocalTime.of(23, 0), THREE_AM).purge();
+
+        assertEquals(2, purged);
+        verify(userRepository).deleteAllById(List.of("a", "b"));
+    }
+
+    @Test
+    void windowsCanSpanMidnight() {
+        assertTrue(job(LocalTime.of(23, 0), LocalTime.of(4, 0), THREE_AM).inWindow());
+        assertFalse(job(LocalTime.of(23, 0), LocalTime.of(2, 0), THREE_AM).inWindow());
+        assertTrue(job(LocalTime.of(3, 0), LocalTime.of(4, 0), THREE_AM).inWindow());
+        assertFalse(job(LocalTime.of(1, 0), LocalTime.of(3, 0), THREE_AM).inWindow());
+    }
+
+    @Test
+    void nothingToPurgeDeletesNothing() {
+        when(userRepository.findTombstonedIds(any(), anyInt())).thenReturn(List.of());
+
+        assertEquals(0, job(LocalTime.of(2, 0), LocalTime.of(5, 0), THREE_AM).purge());
+        verify(userRepository, never()).deleteAllById(any());
+    }
+}
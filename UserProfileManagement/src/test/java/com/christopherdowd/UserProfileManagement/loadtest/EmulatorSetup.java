@@ -0,0 +1,41 @@
+package com.christopherdowd.UserProfileManagement.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+/*
+ * Creates the Pub/Sub topic and subscription the "loadtest" profile expects on a local emulator
+ * The emulator starts empty and the application can't publish or subscribe until they exist.
+ * The names must match src/test/resources/application-loadtest.yml.
+ */
+final class EmulatorSetup {
+
+    static final String PROJECT = "loadtest";
+    static final String TOPIC = "users-creation";
+    static final String SUBSCRIPTION = "users-creation-loadtest";
+
+    private EmulatorSetup() {
+    }
+
+    static void createTopicAndSubscription(HttpClient client, URI emulator) throws IOException, InterruptedException {
+        String topicPath = "projects/" + PROJECT + "/topics/" + TOPIC;
+        put(client, emulator.resolve("/v1/" + topicPath), "{}");
+        put(client, emulator.resolve("/v1/projects/" + PROJECT + "/subscriptions/" + SUBSCRIPTION),
+            "{\"topic\":\"" + topicPath + "\"}");
+    }
+
+    // 409 means the resource is left over from an earlier run, which is fine
+    private static void put(HttpClient client, URI uri, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+            .header("Content-Type", "application/json")
+            .PUT(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200 && response.statusCode() != 409) {
+            throw new IOException("PUT " + uri + " failed with " + response.statusCode() + ": " + response.body());
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.christopherdowd.UserProfileManagement.loadtest;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import com.christopherdowd.UserProfileManagement.grpc.v1.BatchGetUsersResponse;
+import com.christopherdowd.UserProfileManagement.grpc.v1.GetUserRequest;
+import com.christopherdowd.UserProfileManagement.grpc.v1.UserProfilesGrpc;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+
+/*
+ * Closed-loop comparison of profile lookups over REST and gRPC on loopback
+ * Each mode runs the same number of lookups of existing profiles from the same number of threads:
+ *   REST: GET /api/users/{id} over HTTP/1.1 with keep-alive and JSON
+ *   GRPC_UNARY: GetUser calls multiplexed on one HTTP/2 connection
+ *   GRPC_STREAM: BatchGetUsers, each thread keeping up to stream-window lookups in flight on one stream
+ * Latency is measured per lookup. CPU per lookup is reported for this process and, if server-pid
+ * is given, for the service (read from /proc, so Linux only). Lookups are served from the
+ * "profiles" cache after the warmup, so the numbers isolate transport and serialization cost.
+ *
+ * Run against an instance started with grpc.server.enabled=true that already holds profiles,
+ * e.g. after a LoadGenerator run:
+ *   mvn -Ploadtest -Dloadtest.main=GrpcLookupBenchmark -Dgrpcbench.server-pid=$(pgrep -f UserProfileManagement)
+ * Options are given as --name=value or -Dgrpcbench.name=value, see DEFAULTS.
+ */
+public class GrpcLookupBenchmark {
+
+    private static final String USERS_PATH = "/api/users";
+    private static final String PROPERTY_PREFIX = "grpcbench.";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    // USER_HZ, the unit of utime and stime in /proc/<pid>/stat on practically every Linux build
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    private static final Map<String, String> DEFAULTS = Map.of(
+        "base-url", "http://localhost:8080",
+        "grpc-target", "localhost:9090",
+        "users", "1000",
+        "lookups", "20000",
+        "warmup", "5000",
+        "concurrency", "8",
+        "stream-window", "32",
+        "seed", "42");
+
+    enum Mode {
+        REST, GRPC_UNARY, GRPC_STREAM
+    }
+
+    /*
+     * Measurements of one mode
+     * @param latencies per-lookup latency in nanoseconds
+     * @param errors lookups that failed
+     * @param elapsedNanos wall clock time of the measured lookups
+     * @param clientCpuNanos CPU time this process spent
+     * @param serverCpuNanos CPU time the service spent, or -1 if unknown
+     */
+    record ModeResult(Histogram latencies, long errors, long elapsedNanos, long clientCpuNanos, long serverCpuNanos) {
+    }
+
+    private final Map<String, String> options;
+    private final HttpClient httpClient;
+    private final ManagedChannel channel;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    GrpcLookupBenchmark(Map<String, String> options) {
+        this.options = options;
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+        this.channel = ManagedChannelBuilder.forTarget(options.get("grpc-target")).usePlaintext().build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        GrpcLookupBenchmark benchmark = new GrpcLookupBenchmark(parse(args));
+        try {
+            List<String> ids = benchmark.loadIds();
+            System.out.printf("Benchmarking lookups of %d profiles%n", ids.size());
+
+            Map<Mode, ModeResult> results = new EnumMap<>(Mode.class);
+            for (Mode mode : Mode.values()) {
+                benchmark.run(mode, ids, Integer.parseInt(benchmark.options.get("warmup")));
+                results.put(mode, benchmark.run(mode, ids, Integer.parseInt(benchmark.options.get("lookups"))));
+            }
+            print(results);
+        } finally {
+            benchmark.channel.shutdownNow();
+        }
+        System.exit(0);
+    }
+
+    /*
+     * Picks the profiles to look up from the list endpoint
+     */
+    List<String> loadIds() throws IOException, InterruptedException {
+        HttpResponse<String> response = httpClient.send(
+            HttpRequest.newBuilder(uri(USERS_PATH)).timeout(REQUEST_TIMEOUT).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Listing users failed with " + response.statusCode());
+        }
+        int limit = Integer.parseInt(options.get("users"));
+        List<String> ids = new ArrayList<>();
+        for (JsonNode user : objectMapper.readTree(response.body())) {
+            if (ids.size() == limit) {
+                break;
+            }
+            ids.add(user.path("id").asText());
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("No profiles to look up, seed some first (e.g. with LoadGenerator)");
+        }
+        return ids;
+    }
+
+    /*
+     * Performs the lookups of one mode, spread evenly over the worker threads
+     */
+    ModeResult run(Mode mode, List<String> ids, int lookups) throws Exception {
+        int concurrency = Integer.parseInt(options.get("concurrency"));
+        Recorder latencies = new Recorder(3);
+        LongAdder errors = new LongAdder();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+
+        long serverCpuBefore = serverCpuNanos();
+        long clientCpuBefore = clientCpuNanos();
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int worker = 0; worker < concurrency; worker++) {
+                int share = lookups / concurrency + (worker < lookups % concurrency ? 1 : 0);
+                SplittableRandom random = new SplittableRandom(Long.parseLong(options.get("seed")) + worker);
+                running.add(workers.submit(() -> {
+                    switch (mode) {
+                        case REST -> restLookups(ids, share, random, latencies, errors);
+                        case GRPC_UNARY -> unaryLookups(ids, share, random, latencies, errors);
+                        case GRPC_STREAM -> streamLookups(ids, share, random, latencies, errors);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : running) {
+                worker.get();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+        long clientCpu = clientCpuNanos() - clientCpuBefore;
+        long serverCpuAfter = serverCpuNanos();
+
+        return new ModeResult(latencies.getIntervalHistogram(), errors.sum(), elapsed, clientCpu,
+            serverCpuBefore >= 0 && serverCpuAfter >= 0 ? serverCpuAfter - serverCpuBefore : -1);
+    }
+
+    private void restLookups(List<String> ids, int count, SplittableRandom random, Recorder latencies, LongAdder errors)
+            throws IOException, InterruptedException {
+        for (int i = 0; i < count; i++) {
+            HttpRequest request = HttpRequest.newBuilder(uri(USERS_PATH + "/" + ids.get(random.nextInt(ids.size()))))
+                .timeout(REQUEST_TIMEOUT)
+                .GET()
+                .build();
+            long sent = System.nanoTime();
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            // Decode like a real caller would
+            objectMapper.readTree(response.body());
+            latencies.recordValue(System.nanoTime() - sent);
+            if (response.statusCode() != 200) {
+                errors.increment();
+            }
+        }
+    }
+
+    private void unaryLookups(List<String> ids, int count, SplittableRandom random, Recorder latencies, LongAdder errors) {
+        UserProfilesGrpc.UserProfilesBlockingStub stub = UserProfilesGrpc.newBlockingStub(channel);
+        for (int i = 0; i < count; i++) {
+            GetUserRequest request = GetUserRequest.newBuilder().setId(ids.get(random.nextInt(ids.size()))).build();
+            long sent = System.nanoTime();
+            try {
+                stub.withDeadlineAfter(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS).getUser(request);
+            } catch (StatusRuntimeException e) {
+                errors.increment();
+            }
+            latencies.recordValue(System.nanoTime() - sent);
+        }
+    }
+
+    private void streamLookups(List<String> ids, int count, SplittableRandom random, Recorder latencies, LongAdder errors)
+            throws InterruptedException {
+        Semaphore window = new Semaphore(Integer.parseInt(options.get("stream-window")));
+        // Responses arrive in request order, so the head is always the send time of the next response
+        Queue<Long> sendTimes = new ConcurrentLinkedQueue<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        StreamObserver<GetUserRequest> requests = UserProfilesGrpc.newStub(channel).batchGetUsers(new StreamObserver<>() {
+            @Override
+            public void onNext(BatchGetUsersResponse response) {
+                latencies.recordValue(System.nanoTime() - sendTimes.remove());
+                if (response.hasError()) {
+                    errors.increment();
+                }
+                window.release();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                errors.add(sendTimes.size());
+                done.countDown();
+            }
+
+            @Override
+            public void onCompleted() {
+                done.countDown();
+            }
+        });
+
+        for (int i = 0; i < count && done.getCount() > 0; i++) {
+            window.acquire();
+            sendTimes.add(System.nanoTime());
+            requests.onNext(GetUserRequest.newBuilder().setId(ids.get(random.nextInt(ids.size()))).build());
+        }
+        requests.onCompleted();
+        if (!done.await(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Batch lookup stream did not complete in time");
+        }
+    }
+
+    private static long clientCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    // utime + stime of the service process, -1 if no PID was given or /proc isn't available
+    private long serverCpuNanos() {
+        String pid = options.get("server-pid");
+        if (pid == null || pid.isBlank()) {
+            return -1;
+        }
+        try {
+            String stat = Files.readString(Path.of("/proc", pid.trim(), "stat"));
+            // The command name may contain spaces, the numeric fields start after its closing parenthesis
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+            return TimeUnit.SECONDS.toNanos(ticks) / CLOCK_TICKS_PER_SECOND;
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    static void print(Map<Mode, ModeResult> results) {
+        System.out.printf("%-12s %9s %10s %10s %10s %10s %8s %14s %14s%n",
+            "mode", "lookups", "ops/s", "p50 us", "p99 us", "p99.9 us", "errors", "client cpu us", "server cpu us");
+        results.forEach((mode, result) -> {
+            Histogram latencies = result.latencies();
+            long count = latencies.getTotalCount();
+            System.out.printf("%-12s %9d %10.0f %10.1f %10.1f %10.1f %8d %14.1f %14s%n",
+                mode,
+                count,
+                count / (result.elapsedNanos() / 1e9),
+                latencies.getValueAtPercentile(50) / 1e3,
+                latencies.getValueAtPercentile(99) / 1e3,
+                latencies.getValueAtPercentile(99.9) / 1e3,
+                result.errors(),
+                perLookupMicros(result.clientCpuNanos(), count),
+                result.serverCpuNanos() >= 0 ? String.format("%.1f", perLookupMicros(result.serverCpuNanos(), count)) : "n/a");
+        });
+    }
+
+    private static double perLookupMicros(long nanos, long lookups) {
+        return lookups > 0 ? nanos / 1e3 / lookups : 0;
+    }
+
+    private URI uri(String path) {
+        return URI.create(options.get("base-url")).resolve(path);
+    }
+
+    // --name=value arguments over -Dgrpcbench.name=value properties over DEFAULTS
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> values = new HashMap<>(DEFAULTS);
+        System.getProperties().stringPropertyNames().stream()
+            .filter(key -> key.startsWith(PROPERTY_PREFIX))
+            .forEach(key -> values.put(key.substring(PROPERTY_PREFIX.length()), System.getProperty(key)));
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,87 @@
+package com.christopherdowd.UserProfileManagement.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import com.christopherdowd.UserProfileManagement.loadtest.LoadTestOptions.Operation;
+
+/*
+ * Thread-safe latency and outcome recording per operation
+ * Two latencies are kept for every response:
+ *   response time: from the moment the request was scheduled to be sent to its completion.
+ *     When the service stalls, requests pile up behind it and their wait counts, so this is
+ *     the latency a user would see (corrected for coordinated omission)
+ *   service time: from the moment the request was actually sent, what a closed-loop tool would report
+ * A large gap between the two means the client or the service was saturated.
+ */
+public class LatencyRecorder {
+
+    private final Map<Operation, Recorder> responseTimes = new EnumMap<>(Operation.class);
+    private final Map<Operation, Recorder> serviceTimes = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> dropped = new EnumMap<>(Operation.class);
+
+    public LatencyRecorder() {
+        for (Operation operation : Operation.values()) {
+            // Auto-resizing histograms with 3 significant digits, values in nanoseconds
+            responseTimes.put(operation, new Recorder(3));
+            serviceTimes.put(operation, new Recorder(3));
+            errors.put(operation, new LongAdder());
+            dropped.put(operation, new LongAdder());
+        }
+    }
+
+    /*
+     * Records a completed request
+     * @param operation the request type
+     * @param responseNanos time since the request was scheduled
+     * @param serviceNanos time since the request was sent
+     * @param failed whether the service answered with an error status
+     */
+    public void record(Operation operation, long responseNanos, long serviceNanos, boolean failed) {
+        responseTimes.get(operation).recordValue(responseNanos);
+        serviceTimes.get(operation).recordValue(serviceNanos);
+        if (failed) {
+            errors.get(operation).increment();
+        }
+    }
+
+    /*
+     * Records a request that never got a response (connection error, timeout)
+     */
+    public void recordFailure(Operation operation) {
+        errors.get(operation).increment();
+    }
+
+    /*
+     * Records a request the client didn't send because too many were in flight
+     */
+    public void recordDropped(Operation operation) {
+        dropped.get(operation).increment();
+    }
+
+    /*
+     * Everything recorded so far for one operation
+     */
+    public OperationResult result(Operation operation) {
+        return new OperationResult(
+            responseTimes.get(operation).getIntervalHistogram(),
+            serviceTimes.get(operation).getIntervalHistogram(),
+            errors.get(operation).sum(),
+            dropped.get(operation).sum());
+    }
+
+    /*
+     * Recorded data of one operation
+     * @param responseTimes coordinated-omission-corrected latencies in nanoseconds
+     * @param serviceTimes uncorrected latencies in nanoseconds
+     * @param errors responses with a 4xx/5xx status and requests that failed without a response
+     * @param dropped requests not sent because of the client's in-flight limit
+     */
+    public record OperationResult(Histogram responseTimes, Histogram serviceTimes, long errors, long dropped) {
+    }
+}
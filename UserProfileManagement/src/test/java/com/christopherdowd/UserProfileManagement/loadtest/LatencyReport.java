@@ -0,0 +1,152 @@
+package com.christopherdowd.UserProfileManagement.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.HdrHistogram.Histogram;
+
+import com.christopherdowd.UserProfileManagement.loadtest.LatencyRecorder.OperationResult;
+import com.christopherdowd.UserProfileManagement.loadtest.LoadTestOptions.Operation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/*
+ * Turns recorded latencies into a summary that can be compared between runs
+ * Each run writes to <report-dir>/<name>/:
+ *   summary.json  options and percentiles per operation, the input for later comparisons
+ *   <operation>.hgrm  the full percentile distribution, loadable into HdrHistogram's plotter
+ */
+public final class LatencyReport {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private LatencyReport() {
+    }
+
+    /*
+     * Summary of a whole run, serialized as summary.json
+     */
+    public record RunSummary(String name, String startedAt, Map<String, String> options, double achievedRate,
+            Map<Operation, OperationSummary> operations) {
+    }
+
+    /*
+     * Summary of one operation, latencies in milliseconds
+     */
+    public record OperationSummary(long count, long errors, long dropped, double throughput,
+            double p50, double p90, double p99, double p999, double max, double serviceP99) {
+    }
+
+    /*
+     * Summarizes the recorded results of a run
+     * @param measuredSeconds length of the measured part of the run
+     */
+    public static RunSummary summarize(LoadTestOptions options, String startedAt, double measuredSeconds,
+            Map<Operation, OperationResult> results) {
+        Map<Operation, OperationSummary> operations = new LinkedHashMap<>();
+        long total = 0;
+        for (Map.Entry<Operation, OperationResult> entry : results.entrySet()) {
+            OperationResult result = entry.getValue();
+            Histogram responseTimes = result.responseTimes();
+            long count = responseTimes.getTotalCount();
+            if (count == 0 && result.errors() == 0 && result.dropped() == 0) {
+                continue;
+            }
+            total += count;
+            operations.put(entry.getKey(), new OperationSummary(
+                count,
+                result.errors(),
+                result.dropped(),
+                count / measuredSeconds,
+                millis(responseTimes.getValueAtPercentile(50)),
+                millis(responseTimes.getValueAtPercentile(90)),
+                millis(responseTimes.getValueAtPercentile(99)),
+                millis(responseTimes.getValueAtPercentile(99.9)),
+                millis(responseTimes.getMaxValue()),
+                millis(result.serviceTimes().getValueAtPercentile(99))));
+        }
+        return new RunSummary(options.name(), startedAt, options.describe(), total / measuredSeconds, operations);
+    }
+
+    /*
+     * Writes summary.json and one .hgrm file per operation
+     * @return the run's report directory
+     */
+    public static Path write(Path reportDir, RunSummary summary, Map<Operation, OperationResult> results) throws IOException {
+        Path runDir = reportDir.resolve(summary.name());
+        Files.createDirectories(runDir);
+        objectMapper.writeValue(runDir.resolve("summary.json").toFile(), summary);
+
+        for (Map.Entry<Operation, OperationResult> entry : results.entrySet()) {
+            Histogram responseTimes = entry.getValue().responseTimes();
+            if (responseTimes.getTotalCount() == 0) {
+                continue;
+            }
+            Path file = runDir.resolve(entry.getKey().name().toLowerCase() + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, StandardCharsets.UTF_8)) {
+                responseTimes.outputPercentileDistribution(out, NANOS_PER_MILLI);
+            }
+        }
+        return runDir;
+    }
+
+    public static RunSummary read(Path summaryFile) throws IOException {
+        return objectMapper.readValue(summaryFile.toFile(), RunSummary.class);
+    }
+
+    /*
+     * Prints the percentiles of a run
+     */
+    public static void print(RunSummary summary, PrintStream out) {
+        out.printf("%nRun %s, %.1f req/s achieved (response times include queueing, in ms)%n", summary.name(), summary.achievedRate());
+        out.printf("%-8s %9s %7s %7s %9s %9s %9s %9s %9s %9s %11s%n",
+            "op", "count", "errors", "dropped", "req/s", "p50", "p90", "p99", "p99.9", "max", "service p99");
+        summary.operations().forEach((operation, s) -> out.printf(
+            "%-8s %9d %7d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %11.2f%n",
+            operation, s.count(), s.errors(), s.dropped(), s.throughput(), s.p50(), s.p90(), s.p99(), s.p999(), s.max(), s.serviceP99()));
+    }
+
+    /*
+     * Prints the p99 change of every operation against a baseline run
+     * @param maxRegression relative p99 increase that counts as a regression
+     * @return true if no operation regressed by more than maxRegression
+     */
+    public static boolean compare(RunSummary current, RunSummary baseline, double maxRegression, PrintStream out) {
+        Map<String, String> currentOptions = new LinkedHashMap<>(current.options());
+        Map<String, String> baselineOptions = new LinkedHashMap<>(baseline.options());
+        currentOptions.remove("base-url");
+        baselineOptions.remove("base-url");
+        if (!Objects.equals(currentOptions, baselineOptions)) {
+            out.printf("%nWarning: options differ from baseline %s, results may not be comparable%n  baseline: %s%n  current:  %s%n",
+                baseline.name(), baselineOptions, currentOptions);
+        }
+
+        out.printf("%nComparison with baseline %s (p99 in ms)%n", baseline.name());
+        out.printf("%-8s %10s %10s %9s%n", "op", "baseline", "current", "change");
+        boolean passed = true;
+        for (Map.Entry<Operation, OperationSummary> entry : current.operations().entrySet()) {
+            OperationSummary before = baseline.operations().get(entry.getKey());
+            if (before == null || before.p99() <= 0) {
+                continue;
+            }
+            double change = (entry.getValue().p99() - before.p99()) / before.p99();
+            boolean regressed = change > maxRegression;
+            passed &= !regressed;
+            out.printf("%-8s %10.2f %10.2f %+8.1f%%%s%n", entry.getKey(), before.p99(), entry.getValue().p99(),
+                change * 100, regressed ? "  REGRESSION" : "");
+        }
+        return passed;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+}
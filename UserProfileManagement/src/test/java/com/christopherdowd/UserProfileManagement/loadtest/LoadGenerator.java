@@ -0,0 +1,282 @@
+package com.christopherdowd.UserProfileManagement.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.christopherdowd.UserProfileManagement.loadtest.LatencyRecorder.OperationResult;
+import com.christopherdowd.UserProfileManagement.loadtest.LatencyReport.RunSummary;
+import com.christopherdowd.UserProfileManagement.loadtest.LoadTestOptions.Operation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Open-loop load generator for /api/users
+ * Requests are scheduled at a fixed average arrival rate whether or not earlier requests have
+ * completed, and every latency is measured from the scheduled start, so a stalled service shows
+ * up in the percentiles instead of silently slowing the generator down.
+ *
+ * Typical run against local emulators (see src/test/resources/application-loadtest.yml):
+ *   gcloud beta emulators datastore start --host-port=localhost:8081 --no-store-on-disk
+ *   gcloud beta emulators pubsub start --host-port=localhost:8085 --project=loadtest
+ *   mvn spring-boot:run -Dspring-boot.run.profiles=loadtest -Dspring-boot.run.useTestClasspath=true
+ *   mvn -Ploadtest -Dloadtest.setup-emulator=true -Dloadtest.name=baseline
+ *   mvn -Ploadtest -Dloadtest.name=candidate -Dloadtest.baseline=target/loadtest/baseline/summary.json
+ * The second run exits with status 1 if any operation's p99 regressed by more than max-regression.
+ */
+public class LoadGenerator {
+
+    private static final String USERS_PATH = "/api/users";
+    private static final int SEED_CONCURRENCY = 64;
+    private static final Duration SEED_TIMEOUT = Duration.ofMinutes(2);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final LoadTestOptions options;
+    private final HttpClient client;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LatencyRecorder recorder = new LatencyRecorder();
+
+    // Profiles created during the run, the only ones deleted so reads keep hitting existing keys
+    private final Queue<String> deletable = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong userCounter = new AtomicLong();
+
+    // SSNs must be unique across runs against the same Datastore, so they start at a random offset
+    private final long ssnBase = 100_000_000L + new Random().nextInt(800_000_000);
+
+    public LoadGenerator(LoadTestOptions options) {
+        this.options = options;
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()))
+            .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        LoadGenerator generator = new LoadGenerator(options);
+
+        if (options.setupEmulator()) {
+            EmulatorSetup.createTopicAndSubscription(generator.client, options.pubsubEmulator());
+        }
+
+        List<String> ids = generator.seed();
+        Map<Operation, OperationResult> results = generator.run(ids);
+
+        RunSummary summary = LatencyReport.summarize(options, Instant.now().toString(), options.duration().toMillis() / 1000.0, results);
+        Path runDir = LatencyReport.write(options.reportDir(), summary, results);
+        LatencyReport.print(summary, System.out);
+        System.out.println("Report written to " + runDir.toAbsolutePath());
+
+        boolean passed = true;
+        if (options.baseline() != null) {
+            passed = LatencyReport.compare(summary, LatencyReport.read(options.baseline()), options.maxRegression(), System.out);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    /*
+     * Creates the profiles reads and updates are spread over, then waits until all of them are persisted
+     * Creation goes through Pub/Sub, so a profile is only readable once the subscriber has saved it.
+     * @return the IDs, most popular first
+     */
+    List<String> seed() throws Exception {
+        System.out.printf("Seeding %d profiles%n", options.users());
+        Semaphore permits = new Semaphore(SEED_CONCURRENCY);
+        List<String> ids = Collections.synchronizedList(new ArrayList<>(options.users()));
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+
+        for (int i = 0; i < options.users(); i++) {
+            permits.acquire();
+            pending.add(client.sendAsync(createRequest(), HttpResponse.BodyHandlers.ofString())
+                .thenAccept(response -> {
+                    if (response.statusCode() != 201) {
+                        throw new IllegalStateException("Seeding failed with " + response.statusCode() + ": " + response.body());
+                    }
+                    ids.add(idOf(response.body()));
+                })
+                .whenComplete((ignored, error) -> permits.release()));
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).get(SEED_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+
+        long deadline = System.nanoTime() + SEED_TIMEOUT.toNanos();
+        for (String id : ids) {
+            while (client.send(get(id), HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Seeded profile " + id + " was not persisted in time, is the subscriber running?");
+                }
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+        }
+
+        // Sort for a reproducible popularity order, then shuffle with the run's seed
+        List<String> ordered = new ArrayList<>(ids);
+        Collections.sort(ordered);
+        Collections.shuffle(ordered, new Random(options.seed()));
+        return ordered;
+    }
+
+    /*
+     * Issues requests for the warmup and the measured duration
+     * @param ids the seeded profile IDs, most popular first
+     * @return what was recorded for requests scheduled after the warmup
+     */
+    Map<Operation, OperationResult> run(List<String> ids) throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(options.seed());
+        ZipfDistribution popularity = new ZipfDistribution(ids.size(), options.skew());
+        Operation[] operations = weightedOperations();
+
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.rate();
+        long start = System.nanoTime();
+        long measureFrom = start + options.warmup().toNanos();
+        long end = measureFrom + options.duration().toNanos();
+        System.out.printf("Running %s of warmup and %s measured at %.0f req/s%n", options.warmup(), options.duration(), options.rate());
+
+        double offset = 0;
+        while (true) {
+            long scheduled = start + (long) offset;
+            if (scheduled >= end) {
+                break;
+            }
+            // Never skip a slot when running late: sending immediately keeps the arrival rate and the
+            // delay is charged to the request's latency
+            long wait;
+            while ((wait = scheduled - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Operation operation = operations[random.nextInt(operations.length)];
+            String id = ids.get(popularity.sample(random));
+            issue(operation, id, scheduled, scheduled >= measureFrom);
+
+            offset += options.poisson() ? -Math.log(1 - random.nextDouble()) * intervalNanos : intervalNanos;
+        }
+
+        // Let in-flight requests complete before reading the histograms
+        long drainDeadline = System.nanoTime() + REQUEST_TIMEOUT.toNanos();
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        Map<Operation, OperationResult> results = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            results.put(operation, recorder.result(operation));
+        }
+        return results;
+    }
+
+    private void issue(Operation operation, String id, long scheduled, boolean measured) {
+        if (operation == Operation.DELETE) {
+            id = deletable.poll();
+            if (id == null) {
+                // Nothing created during the run yet, create instead so the write rate stays the same
+                operation = Operation.CREATE;
+            }
+        }
+
+        if (outstanding.get() >= options.maxOutstanding()) {
+            if (measured) {
+                recorder.recordDropped(operation);
+            }
+            return;
+        }
+
+        HttpRequest request = switch (operation) {
+            case LIST -> HttpRequest.newBuilder(uri(USERS_PATH)).timeout(REQUEST_TIMEOUT).GET().build();
+            case GET -> get(id);
+            case CREATE -> createRequest();
+            case UPDATE -> updateRequest(id);
+            case DELETE -> HttpRequest.newBuilder(uri(USERS_PATH + "/" + id)).timeout(REQUEST_TIMEOUT).DELETE().build();
+        };
+
+        Operation recorded = operation;
+        long sent = System.nanoTime();
+        outstanding.incrementAndGet();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            long completed = System.nanoTime();
+            outstanding.decrementAndGet();
+            if (error != null) {
+                if (measured) {
+                    recorder.recordFailure(recorded);
+                }
+                return;
+            }
+            if (measured) {
+                recorder.record(recorded, completed - scheduled, completed - sent, response.statusCode() >= 400);
+            }
+            if (recorded == Operation.CREATE && response.statusCode() == 201) {
+                deletable.add(idOf(response.body()));
+            }
+        });
+    }
+
+    // Expands the mix weights into a lookup table, e.g. get:3,update:1 -> [GET, GET, GET, UPDATE]
+    private Operation[] weightedOperations() {
+        List<Operation> table = new ArrayList<>();
+        options.mix().forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                table.add(operation);
+            }
+        });
+        return table.toArray(Operation[]::new);
+    }
+
+    private HttpRequest get(String id) {
+        return HttpRequest.newBuilder(uri(USERS_PATH + "/" + id)).timeout(REQUEST_TIMEOUT).GET().build();
+    }
+
+    private HttpRequest createRequest() {
+        long n = userCounter.incrementAndGet();
+        String body = String.format(
+            "{\"username\":\"load%d\",\"email\":\"load%d@example.com\",\"socialSecurityNumber\":\"%09d\"}",
+            n, n, ssnBase + n);
+        return HttpRequest.newBuilder(uri(USERS_PATH))
+            .timeout(REQUEST_TIMEOUT)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    }
+
+    private HttpRequest updateRequest(String id) {
+        long n = userCounter.incrementAndGet();
+        String body = String.format("{\"username\":\"updated%d\",\"email\":\"updated%d@example.com\"}", n, n);
+        return HttpRequest.newBuilder(uri(USERS_PATH + "/" + id))
+            .timeout(REQUEST_TIMEOUT)
+            .header("Content-Type", "application/json")
+            .PUT(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    }
+
+    private URI uri(String path) {
+        return options.baseUrl().resolve(path);
+    }
+
+    private String idOf(String responseBody) {
+        try {
+            return objectMapper.readTree(responseBody).path("id").asText();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected create response: " + responseBody, e);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.christopherdowd.UserProfileManagement.loadtest;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.convert.DurationStyle;
+
+/*
+ * Settings of a load test run
+ * Every option is given as --name=value on the command line or as -Dloadtest.name=value,
+ * the command line wins. Unset options fall back to the defaults below.
+ *
+ * @param baseUrl where the service under test listens
+ * @param rate target arrival rate in requests per second, independent of response times
+ * @param duration how long requests are measured
+ * @param warmup how long requests are sent before measuring starts
+ * @param poisson exponential inter-arrival times instead of a fixed interval
+ * @param mix relative weight of each operation
+ * @param users number of profiles created before the run, the key space of reads and updates
+ * @param skew Zipf exponent of the key popularity, 0 for uniform
+ * @param maxOutstanding in-flight requests above which the client drops requests instead of queueing them
+ * @param seed random seed, so runs with equal options issue the same request sequence
+ * @param reportDir where summaries and histograms are written
+ * @param name name of this run's report directory
+ * @param baseline summary.json of an earlier run to compare against, or null
+ * @param maxRegression relative p99 increase over the baseline that fails the run
+ * @param setupEmulator create the Pub/Sub topic and subscription on the emulator before seeding
+ * @param pubsubEmulator Pub/Sub emulator address used by setupEmulator
+ */
+public record LoadTestOptions(
+        URI baseUrl,
+        double rate,
+        Duration duration,
+        Duration warmup,
+        boolean poisson,
+        Map<Operation, Integer> mix,
+        int users,
+        double skew,
+        int maxOutstanding,
+        long seed,
+        Path reportDir,
+        String name,
+        Path baseline,
+        double maxRegression,
+        boolean setupEmulator,
+        URI pubsubEmulator) {
+
+    /*
+     * The requests the generator issues
+     */
+    public enum Operation {
+        LIST, GET, CREATE, UPDATE, DELETE
+    }
+
+    private static final String PROPERTY_PREFIX = "loadtest.";
+
+    private static final Map<String, String> DEFAULTS = Map.ofEntries(
+        Map.entry("base-url", "http://localhost:8080"),
+        Map.entry("rate", "200"),
+        Map.entry("duration", "60s"),
+        Map.entry("warmup", "15s"),
+        Map.entry("arrival", "poisson"),
+        Map.entry("mix", "get:80,list:1,create:7,update:10,delete:2"),
+        Map.entry("users", "1000"),
+        Map.entry("skew", "0.99"),
+        Map.entry("max-outstanding", "2000"),
+        Map.entry("seed", "42"),
+        Map.entry("report-dir", "target/loadtest"),
+        Map.entry("max-regression", "0.10"),
+        Map.entry("setup-emulator", "false"),
+        Map.entry("pubsub-emulator", "http://localhost:8085"));
+
+    /*
+     * Reads the options from the command line and system properties
+     * @param args arguments of the form --name=value
+     */
+    public static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>(DEFAULTS);
+        System.getProperties().stringPropertyNames().stream()
+            .filter(key -> key.startsWith(PROPERTY_PREFIX))
+            .forEach(key -> values.put(key.substring(PROPERTY_PREFIX.length()), System.getProperty(key)));
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        String name = values.getOrDefault("name", "run-" + System.currentTimeMillis());
+        String baseline = values.get("baseline");
+        return new LoadTestOptions(
+            URI.create(values.get("base-url")),
+            Double.parseDouble(values.get("rate")),
+            DurationStyle.detectAndParse(values.get("duration")),
+            DurationStyle.detectAndParse(values.get("warmup")),
+            parseArrival(values.get("arrival")),
+            parseMix(values.get("mix")),
+            Integer.parseInt(values.get("users")),
+            Double.parseDouble(values.get("skew")),
+            Integer.parseInt(values.get("max-outstanding")),
+            Long.parseLong(values.get("seed")),
+            Path.of(values.get("report-dir")),
+            name,
+            baseline != null ? Path.of(baseline) : null,
+            Double.parseDouble(values.get("max-regression")),
+            Boolean.parseBoolean(values.get("setup-emulator")),
+            URI.create(values.get("pubsub-emulator")));
+    }
+
+    private static boolean parseArrival(String arrival) {
+        return switch (arrival) {
+            case "poisson" -> true;
+            case "constant" -> false;
+            default -> throw new IllegalArgumentException("arrival must be poisson or constant, not " + arrival);
+        };
+    }
+
+    // Parses "get:80,update:20" into weights per operation
+    static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("mix needs at least one positive weight");
+        }
+        return weights;
+    }
+
+    /*
+     * The options as flat strings, stored in the summary so runs can be checked for comparability
+     */
+    public Map<String, String> describe() {
+        Map<String, String> description = new LinkedHashMap<>();
+        description.put("base-url", baseUrl.toString());
+        description.put("rate", Double.toString(rate));
+        description.put("duration", duration.toString());
+        description.put("warmup", warmup.toString());
+        description.put("arrival", poisson ? "poisson" : "constant");
+        description.put("mix", mix.toString());
+        description.put("users", Integer.toString(users));
+        description.put("skew", Double.toString(skew));
+        description.put("max-outstanding", Integer.toString(maxOutstanding));
+        description.put("seed", Long.toString(seed));
+        return description;
+    }
+}
@@ -0,0 +1,44 @@
+package com.christopherdowd.UserProfileManagement.loadtest;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/*
+ * Samples ranks 0..n-1 where rank k is drawn with probability proportional to 1/(k+1)^exponent
+ * The cumulative distribution is precomputed once, a sample is a binary search over it.
+ * An exponent of 0 gives a uniform distribution, around 1 matches typical web key popularity.
+ */
+public class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    /*
+     * Constructor for ZipfDistribution
+     * @param n number of ranks
+     * @param exponent skew of the distribution
+     */
+    public ZipfDistribution(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    /*
+     * Draws a rank, 0 being the most popular
+     * @param random the random source, not shared between threads
+     */
+    public int sample(SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
@@ -0,0 +1,46 @@
+package com.christopherdowd.UserProfileManagement.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+public class ZipfDistributionTest {
+
+    private static int[] histogram(ZipfDistribution distribution, int n, int samples) {
+        SplittableRandom random = new SplittableRandom(7);
+        int[] counts = new int[n];
+        for (int i = 0; i < samples; i++) {
+            counts[distribution.sample(random)]++;
+        }
+        return counts;
+    }
+
+    @Test
+    void skewedDistributionFavoursLowRanks() {
+        int[] counts = histogram(new ZipfDistribution(1000, 1.0), 1000, 100_000);
+
+        // With exponent 1 and n = 1000, rank 0 has probability 1/H(1000), about 13%
+        assertEquals(0.134, counts[0] / 100_000.0, 0.01);
+        assertTrue(counts[0] > counts[1] && counts[1] > counts[10] && counts[10] > counts[500]);
+    }
+
+    @Test
+    void zeroExponentIsUniform() {
+        int[] counts = histogram(new ZipfDistribution(10, 0), 10, 100_000);
+
+        for (int count : counts) {
+            assertEquals(10_000, count, 500);
+        }
+    }
+
+    @Test
+    void mixWeightsAreParsedCaseInsensitively() {
+        assertEquals(
+            Map.of(LoadTestOptions.Operation.GET, 9, LoadTestOptions.Operation.UPDATE, 1),
+            LoadTestOptions.parseMix("GET:9, update:1"));
+    }
+}
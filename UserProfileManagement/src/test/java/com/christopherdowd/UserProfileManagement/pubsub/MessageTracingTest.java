@@ -0,0 +1,97 @@
+package com.christopherdowd.UserProfileManagement.pubsub;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+
+public class MessageTracingTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MessageTracing tracing = new MessageTracing(ObservationRegistry.NOOP, meterRegistry);
+
+    @Test
+    void publishStampsAcceptanceTimeAndKeepsAttributes() {
+        PubSubTemplate pubSubTemplate = mock(PubSubTemplate.class);
+        when(pubSubTemplate.publish(eq("users-creation"), any(PubsubMessage.class)))
+            .thenReturn(CompletableFuture.completedFuture("message-1"));
+        PubsubMessage message = PubsubMessage.newBuilder()
+            .setData(ByteString.copyFromUtf8("{}"))
+            .putAttributes(UserCreationMessageCodecs.CONTENT_TYPE_ATTRIBUTE, "application/json")
+            .build();
+
+        tracing.publish(pubSubTemplate, "users-creation", message);
+
+        ArgumentCaptor<PubsubMessage> published = ArgumentCaptor.forClass(PubsubMessage.class);
+        verify(pubSubTemplate).publish(eq("users-creation"), published.capture());
+        assertEquals("application/json", published.getValue().getAttributesOrThrow(UserCreationMessageCodecs.CONTENT_TYPE_ATTRIBUTE));
+        assertTrue(published.getValue().containsAttributes(MessageTracing.REQUESTED_AT_ATTRIBUTE));
+    }
+
+    @Test
+    void publishObservationLastsUntilThePublishCompletes() {
+        List<String> events = new CopyOnWriteArrayList<>();
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new ObservationHandler<Observation.Context>() {
+            @Override
+            public void onError(Observation.Context context) {
+                events.add("error: " + context.getError().getMessage());
+            }
+
+            @Override
+            public void onStop(Observation.Context context) {
+                events.add("stop");
+            }
+
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return true;
+            }
+        });
+        MessageTracing observed = new MessageTracing(observationRegistry, meterRegistry);
+        PubSubTemplate pubSubTemplate = mock(PubSubTemplate.class);
+        CompletableFuture<String> publish = new CompletableFuture<>();
+        when(pubSubTemplate.publish(eq("users-creation"), any(PubsubMessage.class))).thenReturn(publish);
+
+        CompletableFuture<String> result = observed.publish(pubSubTemplate, "users-creation", PubsubMessage.getDefaultInstance());
+
+        // The RPC is still in flight
+        assertTrue(events.isEmpty());
+        publish.completeExceptionally(new IllegalStateException("topic not found"));
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(List.of("error: topic not found", "stop"), events);
+    }
+
+    @Test
+    void recordsLagOnlyForStampedMessages() {
+        PubsubMessage stamped = PubsubMessage.newBuilder()
+            .putAttributes(MessageTracing.REQUESTED_AT_ATTRIBUTE, Long.toString(System.currentTimeMillis() - 250))
+            .build();
+
+        tracing.recordPersisted(stamped);
+        tracing.recordPersisted(PubsubMessage.getDefaultInstance());
+
+        assertEquals(1, meterRegistry.get("user.creation.persist.lag").timer().count());
+        assertTrue(meterRegistry.get("user.creation.persist.lag").timer().totalTime(TimeUnit.MILLISECONDS) >= 250);
+    }
+}
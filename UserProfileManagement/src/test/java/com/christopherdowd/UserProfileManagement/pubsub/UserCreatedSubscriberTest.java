@@ -0,0 +1,160 @@
+package com.christopherdowd.UserProfileManagement.pubsub;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+import com.christopherdowd.UserProfileManagement.changefeed.ChangeFeed;
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.existence.KnownUserIds;
+import com.christopherdowd.UserProfileManagement.mapper.UserProfileMapper;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+import com.christopherdowd.UserProfileManagement.stats.UserStatistics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+import com.google.cloud.spring.pubsub.support.BasicAcknowledgeablePubsubMessage;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+
+public class UserCreatedSubscriberTest {
+
+    private static final String DEAD_LETTER_TOPIC = "users-creation-dead-letter";
+    private static final String VALID_PAYLOAD = "{\"id\":\"" + TestDataUtil.USER_1_ID + "\",\"username\":\""
+        + TestDataUtil.USER_1_USERNAME + "\",\"email\":\"" + TestDataUtil.USER_1_EMAIL + "\"}";
+
+    private final PubSubTemplate pubSubTemplate = mock(PubSubTemplate.class);
+    private final UserProfileRepository userRepository = mock(UserProfileRepository.class);
+    private final UserStatistics statistics = mock(UserStatistics.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final UserCreatedSubscriber subscriber = new UserCreatedSubscriber(
+        pubSubTemplate, "test-subscription", userRepository, new UserCreationMessageCodecs(new ObjectMapper(), "json"), new UserProfileMapper(),
+        new ChangeFeed(16), new MessageTracing(ObservationRegistry.NOOP, meterRegistry), statistics, mock(KnownUserIds.class), meterRegistry, DEAD_LETTER_TOPIC, 3, Duration.ZERO, Duration.ZERO);
+
+    @AfterEach
+    void tearDown() {
+        subscriber.stop();
+    }
+
+    @Test
+    void acksProcessedMessage() {
+        when(userRepository.insertIfAbsent(any(UserProfile.class))).thenReturn(true);
+        BasicAcknowledgeablePubsubMessage msg = message("m-1", VALID_PAYLOAD);
+
+        subscriber.handleMessage(msg);
+
+        verify(msg).ack();
+        verify(msg, never()).nack();
+        assertEquals(1.0, outcome("processed"));
+    }
+
+    @Test
+    void redeliveryOfASavedMessageIsAckedWithoutCountingTheUserAgain() {
+        when(userRepository.insertIfAbsent(any(UserProfile.class))).thenReturn(true, false);
+
+        subscriber.handleMessage(message("m-6", VALID_PAYLOAD));
+        // Redelivered after the first delivery saved the profile but before its ack arrived
+        BasicAcknowledgeablePubsubMessage redelivery = message("m-6", VALID_PAYLOAD);
+        subscriber.handleMessage(redelivery);
+
+        verify(redelivery).ack();
+        verify(statistics, times(1)).recordCreated(TestDataUtil.USER_1_EMAIL);
+        verify(userRepository, never()).save(any(UserProfile.class));
+        assertEquals(2.0, outcome("processed"));
+    }
+
+    @Test
+    void nacksTransientFailureAfterBackoff() {
+        when(userRepository.insertIfAbsent(any(UserProfile.class))).thenThrow(new DataAccessResourceFailureException("unavailable"));
+        BasicAcknowledgeablePubsubMessage msg = message("m-2", VALID_PAYLOAD);
+
+        subscriber.handleMessage(msg);
+
+        verify(msg, timeout(1000)).nack();
+        verify(msg, never()).ack();
+        verify(pubSubTemplate, never()).publish(any(String.class), any(PubsubMessage.class));
+        assertEquals(1.0, outcome("retried"));
+    }
+
+    @Test
+    void deadLettersMalformedPayloadWithoutRetrying() {
+        when(pubSubTemplate.publish(eq(DEAD_LETTER_TOPIC), any(PubsubMessage.class)))
+            .thenReturn(CompletableFuture.completedFuture("dlq-1"));
+        BasicAcknowledgeablePubsubMessage msg = message("m-3", "{not json");
+
+        subscriber.handleMessage(msg);
+
+        ArgumentCaptor<PubsubMessage> deadLetter = ArgumentCaptor.forClass(PubsubMessage.class);
+        verify(pubSubTemplate).publish(eq(DEAD_LETTER_TOPIC), deadLetter.capture());
+        assertEquals("{not json", deadLetter.getValue().getData().toStringUtf8());
+        assertEquals("PERMANENT", deadLetter.getValue().getAttributesOrThrow("dlq-failure"));
+        assertEquals("m-3", deadLetter.getValue().getAttributesOrThrow("dlq-original-message-id"));
+        verify(msg).ack();
+        verify(userRepository, never()).insertIfAbsent(any(UserProfile.class));
+        assertEquals(1.0, outcome("dead_lettered"));
+    }
+
+    @Test
+    void deadLettersTransientFailureOnceAttemptsAreExhausted() {
+        when(userRepository.insertIfAbsent(any(UserProfile.class))).thenThrow(new DataAccessResourceFailureException("unavailable"));
+        when(pubSubTemplate.publish(eq(DEAD_LETTER_TOPIC), any(PubsubMessage.class)))
+            .thenReturn(CompletableFuture.completedFuture("dlq-2"));
+
+        // Redeliveries carry the same message ID
+        subscriber.handleMessage(message("m-4", VALID_PAYLOAD));
+        subscriber.handleMessage(message("m-4", VALID_PAYLOAD));
+        BasicAcknowledgeablePubsubMessage last = message("m-4", VALID_PAYLOAD);
+        subscriber.handleMessage(last);
+
+        ArgumentCaptor<PubsubMessage> deadLetter = ArgumentCaptor.forClass(PubsubMessage.class);
+        verify(pubSubTemplate).publish(eq(DEAD_LETTER_TOPIC), deadLetter.capture());
+        assertEquals("TRANSIENT", deadLetter.getValue().getAttributesOrThrow("dlq-failure"));
+        assertEquals("3", deadLetter.getValue().getAttributesOrThrow("dlq-attempts"));
+        verify(last).ack();
+        assertEquals(2.0, outcome("retried"));
+    }
+
+    @Test
+    void keepsMessageWhenDeadLetterPublishFails() {
+        when(pubSubTemplate.publish(eq(DEAD_LETTER_TOPIC), any(PubsubMessage.class)))
+            .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("publish failed")));
+        BasicAcknowledgeablePubsubMessage msg = message("m-5", "{\"username\":\"no-id\"}");
+
+        subscriber.handleMessage(msg);
+
+        verify(msg, timeout(1000)).nack();
+        verify(msg, never()).ack();
+        assertEquals(0.0, outcome("dead_lettered"));
+    }
+
+    private static BasicAcknowledgeablePubsubMessage message(String messageId, String payload) {
+        BasicAcknowledgeablePubsubMessage msg = mock(BasicAcknowledgeablePubsubMessage.class);
+        when(msg.getPubsubMessage()).thenReturn(PubsubMessage.newBuilder()
+            .setMessageId(messageId)
+            .setData(ByteString.copyFromUtf8(payload))
+            .build());
+        return msg;
+    }
+
+    private double outcome(String outcome) {
+        return meterRegistry.get("pubsub.user.creation.messages").tag("outcome", outcome).counter().count();
+    }
+}
@@ -0,0 +1,84 @@
+package com.christopherdowd.UserProfileManagement.pubsub;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+import com.christopherdowd.UserProfileManagement.dto.UserCreationMessageDto;
+import com.christopherdowd.UserProfileManagement.pubsub.MessageFailure.InvalidMessageException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+
+public class UserCreationMessageCodecsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void binaryRoundTripIsSmallerThanJson() throws Exception {
+        UserCreationMessageCodecs binary = new UserCreationMessageCodecs(objectMapper, "binary");
+        UserCreationMessageCodecs json = new UserCreationMessageCodecs(objectMapper, "json");
+
+        PubsubMessage binaryMessage = binary.encode(aliceMessage());
+        PubsubMessage jsonMessage = json.encode(aliceMessage());
+
+        assertEquals(aliceMessage(), binary.decode(binaryMessage));
+        assertEquals(aliceMessage(), json.decode(jsonMessage));
+        assertTrue(binaryMessage.getData().size() < jsonMessage.getData().size());
+    }
+
+    @Test
+    void readsBothFormatsWhateverItPublishes() throws Exception {
+        UserCreationMessageCodecs binary = new UserCreationMessageCodecs(objectMapper, "binary");
+        UserCreationMessageCodecs json = new UserCreationMessageCodecs(objectMapper, "json");
+
+        assertEquals(aliceMessage(), json.decode(binary.encode(aliceMessage())));
+        assertEquals(aliceMessage(), binary.decode(json.encode(aliceMessage())));
+    }
+
+    @Test
+    void detectsFormatOfUntaggedMessages() throws Exception {
+        UserCreationMessageCodecs codecs = new UserCreationMessageCodecs(objectMapper, "binary");
+        // Published before messages carried a content-type attribute
+        PubsubMessage legacyJson = PubsubMessage.newBuilder()
+            .setData(ByteString.copyFrom(objectMapper.writeValueAsBytes(aliceMessage())))
+            .build();
+        PubsubMessage untaggedBinary = codecs.encode(aliceMessage()).toBuilder().clearAttributes().build();
+
+        assertEquals(aliceMessage(), codecs.decode(legacyJson));
+        assertEquals(aliceMessage(), codecs.decode(untaggedBinary));
+    }
+
+    @Test
+    void keepsAbsentFieldsNull() throws Exception {
+        UserCreationMessageCodecs codecs = new UserCreationMessageCodecs(objectMapper, "binary");
+        UserCreationMessageDto partial = UserCreationMessageDto.builder().id(TestDataUtil.USER_2_ID).build();
+
+        assertEquals(partial, codecs.decode(codecs.encode(partial)));
+    }
+
+    @Test
+    void rejectsUnsupportedSchemaVersion() throws Exception {
+        UserCreationMessageCodecs codecs = new UserCreationMessageCodecs(objectMapper, "binary");
+        PubsubMessage message = codecs.encode(aliceMessage());
+        byte[] data = message.getData().toByteArray();
+        data[1] = 99;
+        PubsubMessage future = message.toBuilder().setData(ByteString.copyFrom(data)).build();
+
+        InvalidMessageException e = assertThrows(InvalidMessageException.class, () -> codecs.decode(future));
+        assertEquals(MessageFailure.PERMANENT, MessageFailure.classify(e));
+    }
+
+    private static UserCreationMessageDto aliceMessage() {
+        return UserCreationMessageDto.builder()
+            .id(TestDataUtil.USER_1_ID)
+            .username(TestDataUtil.USER_1_USERNAME)
+            .email(TestDataUtil.USER_1_EMAIL)
+            .encryptedSocialSecurityNumber(TestDataUtil.USER_1_SSN_ENCRYPTED)
+            .ssnBlindIndex("blindIndexForAlice")
+            .build();
+    }
+}
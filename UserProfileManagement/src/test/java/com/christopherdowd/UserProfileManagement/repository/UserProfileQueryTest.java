@@ -0,0 +1,55 @@
+package com.christopherdowd.UserProfileManagement.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+public class UserProfileQueryTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    @Test
+    void acceptsEqualityFiltersWithRangeAndSortOnAnotherProperty() {
+        UserProfileQuery query = new UserProfileQuery("alice", null, null, null, NOW,
+            Sort.by(Sort.Direction.DESC, UserProfileQuery.CREATED_AT), 10);
+
+        assertEquals(UserProfileQuery.CREATED_AT, query.rangeProperty());
+        assertNull(new UserProfileQuery(null, null, null, null, null, null, 0).rangeProperty());
+    }
+
+    @Test
+    void liveOnlyKeepsTheOtherFilters() {
+        UserProfileQuery query = new UserProfileQuery(null, null, "al", null, null,
+            Sort.by(UserProfileQuery.USERNAME), 10);
+
+        assertFalse(query.liveOnly());
+        assertEquals(new UserProfileQuery(null, null, "al", null, null, Sort.by(UserProfileQuery.USERNAME), 10, true),
+            query.withLiveOnly());
+    }
+
+    @Test
+    void rejectsCombinationsDatastoreCannotServe() {
+        // Two range filters
+        assertThrows(IllegalArgumentException.class,
+            () -> new UserProfileQuery(null, null, "al", null, NOW, null, 0));
+        // Sort on another property than the range filter
+        assertThrows(IllegalArgumentException.class,
+            () -> new UserProfileQuery(null, null, "al", null, null, Sort.by(UserProfileQuery.EMAIL), 0));
+        // Equality and prefix on the same property
+        assertThrows(IllegalArgumentException.class,
+            () -> new UserProfileQuery("alice", null, "al", null, null, null, 0));
+        // Unsortable property and several sort properties
+        assertThrows(IllegalArgumentException.class,
+            () -> new UserProfileQuery(null, null, null, null, null, Sort.by("encryptedSocialSecurityNumber"), 0));
+        assertThrows(IllegalArgumentException.class,
+            () -> new UserProfileQuery(null, null, null, null, null, Sort.by(UserProfileQuery.USERNAME, UserProfileQuery.EMAIL), 0));
+        assertThrows(IllegalArgumentException.class,
+            () -> new UserProfileQuery(null, null, null, null, null, null, -1));
+    }
+}
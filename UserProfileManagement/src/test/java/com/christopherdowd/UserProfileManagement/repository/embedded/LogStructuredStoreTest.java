@@ -0,0 +1,145 @@
+package com.christopherdowd.UserProfileManagement.repository.embedded;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LogStructuredStoreTest {
+
+    private static final long SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private static byte[] value(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    @Test
+    void putGetAndDelete() throws IOException {
+        try (LogStructuredStore store = LogStructuredStore.open(directory, SEGMENT_SIZE, false)) {
+            store.put("a", value("one"));
+            store.put("b", value("two"));
+            store.put("a", value("three"));
+            assertTrue(store.delete("b"));
+            assertFalse(store.delete("missing"));
+
+            assertArrayEquals(value("three"), store.get("a"));
+            assertNull(store.get("b"));
+            assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    void recoversIndexAcrossSegmentsOnReopen() throws IOException {
+        try (LogStructuredStore store = LogStructuredStore.open(directory, SEGMENT_SIZE, false)) {
+            for (int i = 0; i < 500; i++) {
+                store.put("key-" + i, value("value-" + i));
+            }
+            for (int i = 0; i < 500; i += 2) {
+                store.delete("key-" + i);
+            }
+            store.put("key-1", value("updated"));
+        }
+        assertTrue(segmentFiles().size() > 1);
+
+        try (LogStructuredStore store = LogStructuredStore.open(directory, SEGMENT_SIZE, false)) {
+            assertEquals(250, store.size());
+            assertNull(store.get("key-0"));
+            assertArrayEquals(value("updated"), store.get("key-1"));
+            assertArrayEquals(value("value-499"), store.get("key-499"));
+            assertEquals("key-1", store.keysAfter(null).first());
+        }
+    }
+
+    @Test
+    void truncatesTornWriteAtEndOfSegment() throws IOException {
+        try (LogStructuredStore store = LogStructuredStore.open(directory, SEGMENT_SIZE, false)) {
+            store.put("a", value("complete"));
+            store.put("b", value("torn"));
+        }
+        // Simulate a crash in the middle of writing the last record
+        Path segment = segmentFiles().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+
+        try (LogStructuredStore store = LogStructuredStore.open(directory, SEGMENT_SIZE, false)) {
+            assertArrayEquals(value("complete"), store.get("a"));
+            assertNull(store.get("b"));
+            // Appends continue after the valid records
+            store.put("c", value("after recovery"));
+        }
+        try (LogStructuredStore store = LogStructuredStore.open(directory, SEGMENT_SIZE, false)) {
+            assertArrayEquals(value("after recovery"), store.get("c"));
+        }
+    }
+
+    @Test
+    void compactionReclaimsSpaceAndKeepsLiveValues() throws IOException {
+        long sizeBefore;
+        try (LogStructuredStore store = LogStructuredStore.open(directory, SEGMENT_SIZE, false)) {
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < 50; i++) {
+                    store.put("key-" + i, value("round-" + round));
+                }
+            }
+            store.delete("key-0");
+            sizeBefore = directorySize();
+
+            assertTrue(store.garbageRatio() > 0.5);
+            assertTrue(store.compact(0.5));
+            assertTrue(directorySize() < sizeBefore / 2);
+
+            assertNull(store.get("key-0"));
+            assertArrayEquals(value("round-9"), store.get("key-49"));
+            store.put("key-49", value("after compaction"));
+        }
+
+        // Deleted keys must not come back after restarting from compacted segments
+        try (LogStructuredStore store = LogStructuredStore.open(directory, SEGMENT_SIZE, false)) {
+            assertEquals(49, store.size());
+            assertNull(store.get("key-0"));
+            assertArrayEquals(value("round-9"), store.get("key-1"));
+            assertArrayEquals(value("after compaction"), store.get("key-49"));
+        }
+    }
+
+    @Test
+    void compactionSkippedBelowGarbageThreshold() throws IOException {
+        try (LogStructuredStore store = LogStructuredStore.open(directory, SEGMENT_SIZE, false)) {
+            for (int i = 0; i < 200; i++) {
+                store.put("key-" + i, value("value-" + i));
+            }
+            assertFalse(store.compact(0.5));
+        }
+    }
+
+    private long directorySize() throws IOException {
+        long size = 0;
+        for (Path file : segmentFiles()) {
+            size += Files.size(file);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,66 @@
+package com.christopherdowd.UserProfileManagement.service.impl;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import com.christopherdowd.UserProfileManagement.service.KeyManagementClient;
+
+/**
+ * Local stand-in for Cloud KMS that wraps keys with an in-memory AES key
+ * and counts calls, so tests can assert how often the KMS would be hit.
+ */
+public class FakeKeyManagementClient implements KeyManagementClient {
+
+    private static final int IV_LENGTH = 12;
+
+    private final SecretKey keyEncryptionKey;
+    private final SecureRandom random = new SecureRandom();
+
+    public final AtomicInteger wrapCalls = new AtomicInteger();
+    public final AtomicInteger unwrapCalls = new AtomicInteger();
+
+    public FakeKeyManagementClient() {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256);
+            keyEncryptionKey = generator.generateKey();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public byte[] wrapKey(byte[] plaintextKey) {
+        wrapCalls.incrementAndGet();
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, keyEncryptionKey, new GCMParameterSpec(128, iv));
+            byte[] ciphertext = cipher.doFinal(plaintextKey);
+            byte[] wrapped = new byte[IV_LENGTH + ciphertext.length];
+            System.arraycopy(iv, 0, wrapped, 0, IV_LENGTH);
+            System.arraycopy(ciphertext, 0, wrapped, IV_LENGTH, ciphertext.length);
+            return wrapped;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public byte[] unwrapKey(byte[] wrappedKey) {
+        unwrapCalls.incrementAndGet();
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, keyEncryptionKey, new GCMParameterSpec(128, wrappedKey, 0, IV_LENGTH));
+            return cipher.doFinal(wrappedKey, IV_LENGTH, wrappedKey.length - IV_LENGTH);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
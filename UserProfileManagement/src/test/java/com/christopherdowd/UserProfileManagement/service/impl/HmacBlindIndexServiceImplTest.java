@@ -0,0 +1,89 @@
+package com.christopherdowd.UserProfileManagement.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Base64;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+
+@ExtendWith(MockitoExtension.class)
+public class HmacBlindIndexServiceImplTest {
+
+    private static final String HMAC_KEY = Base64.getEncoder().encodeToString("blind-index-test-key-0123456789ab".getBytes());
+
+    @Mock
+    private UserProfileRepository userRepository;
+
+    private HmacBlindIndexServiceImpl blindIndex;
+
+    @BeforeEach
+    void setUp() {
+        blindIndex = new HmacBlindIndexServiceImpl(userRepository, HMAC_KEY, 100, Duration.ofMinutes(10));
+    }
+
+    @Test
+    void computeSsnIndexIsDeterministicAndIgnoresDashes() {
+        String index = blindIndex.computeSsnIndex("123-45-6789");
+
+        assertEquals(index, blindIndex.computeSsnIndex("123456789"));
+        assertNotEquals(index, blindIndex.computeSsnIndex("123456780"));
+        assertFalse(index.contains("123456789"));
+    }
+
+    @Test
+    void takenIndexesFoundInDatastoreAreCached() {
+        String index = blindIndex.computeSsnIndex("123456789");
+        when(userRepository.existsBySsnBlindIndex(index)).thenReturn(true);
+
+        assertTrue(blindIndex.isSsnIndexTaken(index));
+        assertTrue(blindIndex.isSsnIndexTaken(index));
+
+        verify(userRepository, times(1)).existsBySsnBlindIndex(index);
+    }
+
+    @Test
+    void recordedIndexesAreTakenWithoutQueryingDatastore() {
+        String index = blindIndex.computeSsnIndex("987654321");
+
+        blindIndex.recordSsnIndex(index);
+
+        assertTrue(blindIndex.isSsnIndexTaken(index));
+        verify(userRepository, never()).existsBySsnBlindIndex(index);
+    }
+
+    @Test
+    void anIndexIsReservedOnceUntilReleased() {
+        String index = blindIndex.computeSsnIndex("111223333");
+        when(userRepository.existsBySsnBlindIndex(index)).thenReturn(false);
+
+        assertTrue(blindIndex.reserveSsnIndex(index));
+        assertFalse(blindIndex.reserveSsnIndex(index));
+
+        blindIndex.releaseSsnIndex(index);
+        assertTrue(blindIndex.reserveSsnIndex(index));
+    }
+
+    @Test
+    void indexesFoundInDatastoreCannotBeReserved() {
+        String index = blindIndex.computeSsnIndex("444556666");
+        when(userRepository.existsBySsnBlindIndex(index)).thenReturn(true);
+
+        assertFalse(blindIndex.reserveSsnIndex(index));
+        assertFalse(blindIndex.reserveSsnIndex(index));
+        verify(userRepository, times(1)).existsBySsnBlindIndex(index);
+    }
+}
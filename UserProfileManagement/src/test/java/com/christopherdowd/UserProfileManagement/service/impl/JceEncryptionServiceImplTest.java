@@ -0,0 +1,91 @@
+package com.christopherdowd.UserProfileManagement.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.Test;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+
+public class JceEncryptionServiceImplTest {
+
+    private static final String KEY_0 = randomKey();
+    private static final String KEY_1 = randomKey();
+    private static final String KEY_2 = randomKey();
+
+    private static String randomKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return Base64.getEncoder().encodeToString(key);
+    }
+
+    @Test
+    void encryptTagsPayloadWithActiveKeyVersionAndRoundTrips() throws Exception {
+        JceEncryptionServiceImpl crypto = new JceEncryptionServiceImpl(KEY_0, "1:" + KEY_1 + ",2:" + KEY_2, -1);
+
+        String encrypted = crypto.encrypt(TestDataUtil.USER_1_SSN_RAW);
+
+        assertTrue(encrypted.startsWith("v2:"));
+        assertEquals(TestDataUtil.USER_1_SSN_RAW, crypto.decrypt(encrypted));
+        assertNotEquals(encrypted, crypto.encrypt(TestDataUtil.USER_1_SSN_RAW), "a fresh IV is used per encryption");
+    }
+
+    @Test
+    void olderKeyVersionsCanStillBeDecryptedAndNeedReEncryption() throws Exception {
+        String encryptedWithV1 = new JceEncryptionServiceImpl("", "1:" + KEY_1, -1).encrypt(TestDataUtil.USER_1_SSN_RAW);
+        JceEncryptionServiceImpl rotated = new JceEncryptionServiceImpl("", "1:" + KEY_1 + ",2:" + KEY_2, -1);
+
+        assertEquals(TestDataUtil.USER_1_SSN_RAW, rotated.decrypt(encryptedWithV1));
+        assertTrue(rotated.needsReEncryption(encryptedWithV1));
+        assertFalse(rotated.needsReEncryption(rotated.encrypt(TestDataUtil.USER_1_SSN_RAW)));
+    }
+
+    @Test
+    void untaggedPayloadsFromBeforeVersioningUseTheLegacyKey() throws Exception {
+        // Format written by the original single-key implementation: Base64(IV + ciphertext)
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(Base64.getDecoder().decode(KEY_0), "AES"), new GCMParameterSpec(128, iv));
+        byte[] ciphertext = cipher.doFinal(TestDataUtil.USER_2_SSN_RAW.getBytes());
+        byte[] payload = new byte[iv.length + ciphertext.length];
+        System.arraycopy(iv, 0, payload, 0, iv.length);
+        System.arraycopy(ciphertext, 0, payload, iv.length, ciphertext.length);
+        String legacy = Base64.getEncoder().encodeToString(payload);
+
+        JceEncryptionServiceImpl crypto = new JceEncryptionServiceImpl(KEY_0, "1:" + KEY_1, -1);
+
+        assertEquals(TestDataUtil.USER_2_SSN_RAW, crypto.decrypt(legacy));
+        assertTrue(crypto.needsReEncryption(legacy));
+    }
+
+    @Test
+    void singleKeyConstructorKeepsWorkingAsVersionZero() throws Exception {
+        JceEncryptionServiceImpl crypto = new JceEncryptionServiceImpl(KEY_0);
+
+        String encrypted = crypto.encrypt(TestDataUtil.USER_3_SSN_RAW);
+
+        assertTrue(encrypted.startsWith("v0:"));
+        assertEquals(TestDataUtil.USER_3_SSN_RAW, crypto.decrypt(encrypted));
+        assertFalse(crypto.needsReEncryption(encrypted));
+    }
+
+    @Test
+    void unknownKeyVersionsAndMissingKeysAreRejected() throws Exception {
+        String encryptedWithV2 = new JceEncryptionServiceImpl("", "2:" + KEY_2, -1).encrypt(TestDataUtil.USER_1_SSN_RAW);
+
+        assertThrows(IllegalArgumentException.class, () -> new JceEncryptionServiceImpl(KEY_0).decrypt(encryptedWithV2));
+        assertThrows(IllegalStateException.class, () -> new JceEncryptionServiceImpl("", "", -1));
+        assertThrows(IllegalStateException.class, () -> new JceEncryptionServiceImpl(KEY_0, "", 3));
+    }
+}
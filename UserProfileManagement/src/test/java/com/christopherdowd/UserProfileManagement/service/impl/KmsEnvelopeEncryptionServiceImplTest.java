@@ -0,0 +1,108 @@
+package com.christopherdowd.UserProfileManagement.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+
+public class KmsEnvelopeEncryptionServiceImplTest {
+
+    private final FakeKeyManagementClient kms = new FakeKeyManagementClient();
+    private final List<KmsEnvelopeEncryptionServiceImpl> services = new ArrayList<>();
+
+    private KmsEnvelopeEncryptionServiceImpl newService(long maxUses) {
+        return newService(maxUses, null);
+    }
+
+    private KmsEnvelopeEncryptionServiceImpl newService(long maxUses, JceEncryptionServiceImpl legacyCrypto) {
+        KmsEnvelopeEncryptionServiceImpl service =
+            new KmsEnvelopeEncryptionServiceImpl(kms, Duration.ofHours(1), maxUses, 100, Duration.ofHours(1), legacyCrypto);
+        services.add(service);
+        return service;
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(KmsEnvelopeEncryptionServiceImpl::shutdown);
+    }
+
+    @Test
+    void encryptionReusesTheCachedDataKeyInsteadOfCallingKms() throws Exception {
+        KmsEnvelopeEncryptionServiceImpl crypto = newService(1_000);
+
+        for (int i = 0; i < 100; i++) {
+            String encrypted = crypto.encrypt(TestDataUtil.USER_1_SSN_RAW);
+            assertEquals(TestDataUtil.USER_1_SSN_RAW, crypto.decrypt(encrypted));
+        }
+
+        assertEquals(1, kms.wrapCalls.get());
+        assertEquals(0, kms.unwrapCalls.get(), "keys created by this instance never need unwrapping");
+    }
+
+    @Test
+    void coldInstanceUnwrapsEachDataKeyOnlyOnce() throws Exception {
+        String encrypted = newService(1_000).encrypt(TestDataUtil.USER_2_SSN_RAW);
+        KmsEnvelopeEncryptionServiceImpl otherNode = newService(1_000);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(TestDataUtil.USER_2_SSN_RAW, otherNode.decrypt(encrypted));
+        }
+
+        assertEquals(1, kms.unwrapCalls.get());
+    }
+
+    @Test
+    void dataKeyIsReplacedOnceItsUsageLimitIsReached() throws Exception {
+        KmsEnvelopeEncryptionServiceImpl crypto = newService(5);
+        List<String> payloads = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            payloads.add(crypto.encrypt(TestDataUtil.USER_3_SSN_RAW));
+        }
+
+        assertTrue(kms.wrapCalls.get() >= 4, "expected a new data key every 5 uses, got " + kms.wrapCalls.get());
+        for (String payload : payloads) {
+            assertEquals(TestDataUtil.USER_3_SSN_RAW, crypto.decrypt(payload));
+        }
+    }
+
+    @Test
+    void tamperedPayloadsAreRejected() throws Exception {
+        KmsEnvelopeEncryptionServiceImpl crypto = newService(1_000);
+        String encrypted = crypto.encrypt(TestDataUtil.USER_4_SSN_RAW);
+
+        byte[] payload = Base64.getDecoder().decode(encrypted.substring("k1:".length()));
+        payload[payload.length - 1] ^= 1;
+        String tampered = "k1:" + Base64.getEncoder().encodeToString(payload);
+
+        assertThrows(Exception.class, () -> crypto.decrypt(tampered));
+        assertThrows(IllegalArgumentException.class, () -> crypto.decrypt("v1:abc"));
+    }
+
+    @Test
+    void jcePayloadsAreDecryptedWithTheLegacyKeysAndFlaggedForReEncryption() throws Exception {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        JceEncryptionServiceImpl jce = new JceEncryptionServiceImpl("", "1:" + Base64.getEncoder().encodeToString(key), -1);
+        KmsEnvelopeEncryptionServiceImpl crypto = newService(1_000, jce);
+        String legacy = jce.encrypt(TestDataUtil.USER_1_SSN_RAW);
+
+        assertEquals(TestDataUtil.USER_1_SSN_RAW, crypto.decrypt(legacy));
+        assertTrue(crypto.needsReEncryption(legacy));
+
+        String rewrapped = crypto.encrypt(crypto.decrypt(legacy));
+        assertFalse(crypto.needsReEncryption(rewrapped));
+        assertEquals(TestDataUtil.USER_1_SSN_RAW, crypto.decrypt(rewrapped));
+    }
+}
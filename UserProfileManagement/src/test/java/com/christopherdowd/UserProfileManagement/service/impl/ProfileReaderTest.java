@@ -0,0 +1,95 @@
+package com.christopherdowd.UserProfileManagement.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.domain.UserProfileSummary;
+import com.christopherdowd.UserProfileManagement.existence.KnownUserIds;
+import com.christopherdowd.UserProfileManagement.hedging.HedgedReads;
+import com.christopherdowd.UserProfileManagement.mapper.UserProfileMapper;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ProfileReaderTest {
+
+    private final UserProfileRepository userRepository = mock(UserProfileRepository.class);
+    private final KnownUserIds knownIds = mock(KnownUserIds.class);
+    private final HedgedReads hedgedReads = new HedgedReads(new SimpleMeterRegistry(), false, 0.95, Duration.ofMillis(2),
+        1024, 100, 0.05, 10, 64);
+    private final ProfileReader profileReader = new ProfileReader(userRepository, new UserProfileMapper(), knownIds, hedgedReads);
+
+    @Test
+    void unknownIdsNeverReachTheRepository() {
+        when(knownIds.mightExist(TestDataUtil.USER_1_ID)).thenReturn(false);
+
+        assertTrue(profileReader.read(TestDataUtil.USER_1_ID).isEmpty());
+        profileReader.setSoftDeletes(true);
+        assertTrue(profileReader.read(TestDataUtil.USER_1_ID).isEmpty());
+
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void readsTheProjectionWithoutSoftDeletes() {
+        when(knownIds.mightExist(TestDataUtil.USER_1_ID)).thenReturn(true);
+        when(userRepository.findSummaryById(TestDataUtil.USER_1_ID))
+            .thenReturn(Optional.of(UserProfileSummary.of(TestDataUtil.createAliceEntity())));
+
+        assertEquals(TestDataUtil.USER_1_USERNAME, profileReader.read(TestDataUtil.USER_1_ID).orElseThrow().getUsername());
+    }
+
+    @Test
+    void tombstonedProfilesReadAsMissingWithSoftDeletes() {
+        UserProfile tombstoned = TestDataUtil.createAliceEntity();
+        tombstoned.setDeletedAt(Instant.now());
+        when(knownIds.mightExist(TestDataUtil.USER_1_ID)).thenReturn(true);
+        when(userRepository.findById(TestDataUtil.USER_1_ID)).thenReturn(Optional.of(tombstoned));
+        profileReader.setSoftDeletes(true);
+
+        assertTrue(profileReader.read(TestDataUtil.USER_1_ID).isEmpty());
+    }
+
+    @Test
+    void slowReadsAreHedged() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        HedgedReads enabled = new HedgedReads(meterRegistry, true, 0.95, Duration.ofMillis(20), 64, 16, 0.05, 10, 8);
+        ProfileReader hedgingReader = new ProfileReader(userRepository, new UserProfileMapper(), knownIds, enabled);
+        when(knownIds.mightExist(anyString())).thenReturn(true);
+        // Reads are fast except for the 17th, which is the primary of the read after the warm-up
+        AtomicInteger reads = new AtomicInteger();
+        when(userRepository.findSummaryById(TestDataUtil.USER_1_ID)).thenAnswer(invocation -> {
+            if (reads.incrementAndGet() == 17) {
+                Thread.sleep(5_000);
+            }
+            return Optional.of(UserProfileSummary.of(TestDataUtil.createAliceEntity()));
+        });
+
+        try {
+            for (int i = 0; i < 16; i++) {
+                hedgingReader.read(TestDataUtil.USER_1_ID);
+            }
+            long startNanos = System.nanoTime();
+            assertTrue(hedgingReader.read(TestDataUtil.USER_1_ID).isPresent());
+
+            assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(2), "hedge should have answered first");
+            assertEquals(1, meterRegistry.get("user.repository.hedged_reads").tag("outcome", "hedge_won").counter().count());
+        } finally {
+            enabled.shutdown();
+        }
+    }
+}
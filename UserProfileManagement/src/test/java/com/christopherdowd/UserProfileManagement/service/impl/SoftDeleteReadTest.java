@@ -0,0 +1,95 @@
+package com.christopherdowd.UserProfileManagement.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+import com.christopherdowd.UserProfileManagement.changefeed.ChangeFeed;
+import com.christopherdowd.UserProfileManagement.existence.KnownUserIds;
+import com.christopherdowd.UserProfileManagement.hedging.HedgedReads;
+import com.christopherdowd.UserProfileManagement.mapper.UserProfileMapper;
+import com.christopherdowd.UserProfileManagement.pubsub.MessageTracing;
+import com.christopherdowd.UserProfileManagement.pubsub.UserCreationMessageCodecs;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileQuery;
+import com.christopherdowd.UserProfileManagement.repository.embedded.EmbeddedUserProfileRepository;
+import com.christopherdowd.UserProfileManagement.service.BlindIndexService;
+import com.christopherdowd.UserProfileManagement.service.EncryptionService;
+import com.christopherdowd.UserProfileManagement.stats.UserStatistics;
+import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/*
+ * Reads after a soft delete and a restore, against the embedded repository
+ */
+public class SoftDeleteReadTest {
+
+    @TempDir
+    Path directory;
+
+    private EmbeddedUserProfileRepository userRepository;
+    private UserProfileServiceImpl userProfileService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        userRepository = new EmbeddedUserProfileRepository(directory.toString(), 1 << 20, false, Duration.ofMinutes(1), 0.5);
+        UserProfileMapper mapper = new UserProfileMapper();
+        KnownUserIds knownIds = mock(KnownUserIds.class);
+        when(knownIds.mightExist(anyString())).thenReturn(true);
+        HedgedReads hedgedReads = new HedgedReads(new SimpleMeterRegistry(), false, 0.95, Duration.ofMillis(2),
+            1024, 100, 0.05, 10, 64);
+        ProfileReader profileReader = new ProfileReader(userRepository, mapper, knownIds, hedgedReads);
+        profileReader.setSoftDeletes(true);
+
+        userProfileService = new UserProfileServiceImpl(userRepository, mapper, mock(EncryptionService.class),
+            mock(BlindIndexService.class), mock(PubSubTemplate.class), mock(UserCreationMessageCodecs.class),
+            new ChangeFeed(16), mock(UpdateCoalescer.class), mock(MessageTracing.class), mock(UserStatistics.class),
+            knownIds, hedgedReads, profileReader);
+        userProfileService.setSoftDeletes(true, Duration.ofDays(7));
+
+        userRepository.save(TestDataUtil.createAliceEntity());
+        userRepository.save(TestDataUtil.createBobEntity());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        userRepository.close();
+    }
+
+    @Test
+    void getAfterDeleteIsNotFoundAndGetAfterRestoreFindsTheProfile() {
+        assertEquals(TestDataUtil.USER_1_USERNAME, userProfileService.getById(TestDataUtil.USER_1_ID).getUsername());
+
+        userProfileService.delete(TestDataUtil.USER_1_ID);
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+            () -> userProfileService.getById(TestDataUtil.USER_1_ID));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+
+        userProfileService.restore(TestDataUtil.USER_1_ID);
+        assertEquals(TestDataUtil.USER_1_USERNAME, userProfileService.getById(TestDataUtil.USER_1_ID).getUsername());
+    }
+
+    @Test
+    void listingsLeaveOutDeletedProfiles() {
+        userProfileService.delete(TestDataUtil.USER_1_ID);
+
+        assertEquals(1, userProfileService.getAll().size());
+        assertTrue(userProfileService.search(new UserProfileQuery(TestDataUtil.USER_1_USERNAME, null, null, null, null, null, 0))
+            .isEmpty());
+        assertEquals(1, userProfileService.search(new UserProfileQuery(null, null, null, null, null, null, 1)).size());
+    }
+}
@@ -0,0 +1,128 @@
+package com.christopherdowd.UserProfileManagement.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+import com.christopherdowd.UserProfileManagement.changefeed.ChangeFeed;
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.dto.UserProfileUpdateRequestDto;
+import com.christopherdowd.UserProfileManagement.existence.KnownUserIds;
+import com.christopherdowd.UserProfileManagement.hedging.HedgedReads;
+import com.christopherdowd.UserProfileManagement.mapper.UserProfileMapper;
+import com.christopherdowd.UserProfileManagement.pubsub.MessageTracing;
+import com.christopherdowd.UserProfileManagement.pubsub.UserCreationMessageCodecs;
+import com.christopherdowd.UserProfileManagement.repository.embedded.EmbeddedUserProfileRepository;
+import com.christopherdowd.UserProfileManagement.service.BlindIndexService;
+import com.christopherdowd.UserProfileManagement.service.EncryptionService;
+import com.christopherdowd.UserProfileManagement.stats.UserStatistics;
+import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/*
+ * Soft deletes, restores and updates of the same profile landing between each other's read and write,
+ * against the embedded repository
+ */
+public class SoftDeleteWriteTest {
+
+    @TempDir
+    Path directory;
+
+    // Runs once right after the next profile read, before the reader writes
+    private final AtomicReference<Runnable> afterNextRead = new AtomicReference<>();
+
+    private EmbeddedUserProfileRepository userRepository;
+    private UserProfileServiceImpl userProfileService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        userRepository = new EmbeddedUserProfileRepository(directory.toString(), 1 << 20, false, Duration.ofMinutes(1), 0.5) {
+            @Override
+            public Optional<UserProfile> findById(String id) {
+                Optional<UserProfile> user = super.findById(id);
+                Runnable interleaved = afterNextRead.getAndSet(null);
+                if (interleaved != null) {
+                    interleaved.run();
+                }
+                return user;
+            }
+        };
+        UserProfileMapper mapper = new UserProfileMapper();
+        KnownUserIds knownIds = mock(KnownUserIds.class);
+        when(knownIds.mightExist(anyString())).thenReturn(true);
+        HedgedReads hedgedReads = new HedgedReads(new SimpleMeterRegistry(), false, 0.95, Duration.ofMillis(2),
+            1024, 100, 0.05, 10, 64);
+        ProfileReader profileReader = new ProfileReader(userRepository, mapper, knownIds, hedgedReads);
+        profileReader.setSoftDeletes(true);
+
+        userProfileService = new UserProfileServiceImpl(userRepository, mapper, mock(EncryptionService.class),
+            mock(BlindIndexService.class), mock(PubSubTemplate.class), mock(UserCreationMessageCodecs.class),
+            new ChangeFeed(16), new UpdateCoalescer(false, Duration.ofMillis(25), 32, 1), mock(MessageTracing.class),
+            mock(UserStatistics.class), knownIds, hedgedReads, profileReader);
+        userProfileService.setSoftDeletes(true, Duration.ofDays(7));
+
+        userRepository.save(TestDataUtil.createAliceEntity());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        userRepository.close();
+    }
+
+    private static UserProfileUpdateRequestDto rename(String username) {
+        return new UserProfileUpdateRequestDto(username, TestDataUtil.USER_1_EMAIL);
+    }
+
+    @Test
+    void updateThatReadTheProfileBeforeADeleteDoesNotUndoIt() {
+        afterNextRead.set(() -> userProfileService.delete(TestDataUtil.USER_1_ID));
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+            () -> userProfileService.update(TestDataUtil.USER_1_ID, rename("AliceRenamed")));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+
+        UserProfile stored = userRepository.findById(TestDataUtil.USER_1_ID).orElseThrow();
+        assertNotNull(stored.getDeletedAt());
+        assertEquals(TestDataUtil.USER_1_USERNAME, stored.getUsername());
+    }
+
+    @Test
+    void deleteThatReadTheProfileBeforeAnUpdateKeepsTheUpdate() {
+        afterNextRead.set(() -> userProfileService.update(TestDataUtil.USER_1_ID, rename("AliceRenamed")));
+
+        userProfileService.delete(TestDataUtil.USER_1_ID);
+
+        UserProfile stored = userRepository.findById(TestDataUtil.USER_1_ID).orElseThrow();
+        assertNotNull(stored.getDeletedAt());
+        assertEquals("AliceRenamed", stored.getUsername());
+        assertEquals("AliceRenamed", userProfileService.restore(TestDataUtil.USER_1_ID).getUsername());
+    }
+
+    @Test
+    void restoreThatReadTheTombstoneBeforeASecondRestoreFindsNothingToRestore() {
+        userProfileService.delete(TestDataUtil.USER_1_ID);
+        afterNextRead.set(() -> userProfileService.restore(TestDataUtil.USER_1_ID));
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+            () -> userProfileService.restore(TestDataUtil.USER_1_ID));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+        assertEquals(TestDataUtil.USER_1_USERNAME, userProfileService.getById(TestDataUtil.USER_1_ID).getUsername());
+    }
+}
@@ -0,0 +1,106 @@
+package com.christopherdowd.UserProfileManagement.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.dto.UserProfileUpdateRequestDto;
+
+public class UpdateCoalescerTest {
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void writesDirectlyWhenDisabled() {
+        UpdateCoalescer coalescer = new UpdateCoalescer(false, Duration.ofSeconds(10), 32, 1);
+        AtomicInteger writes = new AtomicInteger();
+
+        coalescer.submit(TestDataUtil.USER_1_ID, update("first"), countingWriter(writes));
+        coalescer.submit(TestDataUtil.USER_1_ID, update("second"), countingWriter(writes));
+
+        assertEquals(2, writes.get());
+    }
+
+    @Test
+    void mergesConcurrentUpdatesIntoOneWrite() throws Exception {
+        UpdateCoalescer coalescer = new UpdateCoalescer(true, Duration.ofMillis(200), 32, 2);
+        AtomicInteger writes = new AtomicInteger();
+        UpdateCoalescer.BatchWriter writer = countingWriter(writes);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<UserProfile>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            String username = "user" + i;
+            results.add(callers.submit(() -> {
+                start.await();
+                return coalescer.submit(TestDataUtil.USER_1_ID, update(username), writer);
+            }));
+        }
+        start.countDown();
+
+        UserProfile first = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<UserProfile> result : results) {
+            assertSame(first, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    void writesFullBatchWithoutWaitingForWindow() {
+        UpdateCoalescer coalescer = new UpdateCoalescer(true, Duration.ofMinutes(1), 1, 1);
+        AtomicInteger writes = new AtomicInteger();
+
+        UserProfile saved = coalescer.submit(TestDataUtil.USER_1_ID, update("solo"), countingWriter(writes));
+
+        assertEquals("solo", saved.getUsername());
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    void rethrowsWriterFailureToCaller() {
+        UpdateCoalescer coalescer = new UpdateCoalescer(true, Duration.ofMillis(10), 32, 1);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+            () -> coalescer.submit(TestDataUtil.USER_1_ID, update("missing"), (id, updates) -> {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found: " + id);
+            }));
+
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+    }
+
+    // Applies the updates in order to a fresh entity, like the service does to the stored one
+    private static UpdateCoalescer.BatchWriter countingWriter(AtomicInteger writes) {
+        return (id, updates) -> {
+            writes.incrementAndGet();
+            UserProfile user = TestDataUtil.createAliceEntity();
+            updates.forEach(update -> user.setUsername(update.getUsername()));
+            return user;
+        };
+    }
+
+    private static UserProfileUpdateRequestDto update(String username) {
+        return UserProfileUpdateRequestDto.builder().username(username).email(TestDataUtil.USER_1_EMAIL).build();
+    }
+}
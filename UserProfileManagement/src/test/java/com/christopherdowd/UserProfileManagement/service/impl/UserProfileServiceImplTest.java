@@ -4,10 +4,31 @@ import com.christopherdowd.UserProfileManagement.domain.UserProfile;
 import com.christopherdowd.UserProfileManagement.dto.UserCreationMessageDto;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileRequestDto;
 import com.christopherdowd.UserProfileManagement.dto.UserProfileResponseDto;
+import com.christopherdowd.UserProfileManagement.existence.KnownUserIds;
+import com.christopherdowd.UserProfileManagement.changefeed.ChangeFeed;
+import com.christopherdowd.UserProfileManagement.hedging.HedgedReads;
+import com.christopherdowd.UserProfileManagement.mapper.UserProfileMapper;
 import com.christopherdowd.UserProfileManagement.repository.UserProfileRepository;
+import com.christopherdowd.UserProfileManagement.service.BlindIndexService;
 import com.christopherdowd.UserProfileManagement.service.EncryptionService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.christopherdowd.UserProfileManagement.pubsub.MessageTracing;
+import com.christopherdowd.UserProfileManagement.pubsub.UserCreationMessageCodecs;
+import com.christopherdowd.UserProfileManagement.stats.UserStatistics;
 import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,13 +36,17 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -41,11 +66,20 @@ public class UserProfileServiceImplTest {
     @Mock
     private EncryptionService crypto;
 
+    @Mock
+    private BlindIndexService blindIndex;
+
     @Mock
     private PubSubTemplate pubSubTemplate;
 
     @Mock
-    private ObjectMapper objectMapper;
+    private UserCreationMessageCodecs messageCodecs;
+
+    @Mock
+    private KnownUserIds knownIds;
+
+    @Spy
+    private MessageTracing messageTracing = new MessageTracing(ObservationRegistry.NOOP, new SimpleMeterRegistry());
 
     @InjectMocks
     private UserProfileServiceImpl userProfileService;
@@ -71,23 +105,29 @@ public class UserProfileServiceImplTest {
         String rawSsn = requestDto.getSocialSecurityNumber();
         String expectedEncryptedSsn = "encryptedSsn123";
         
-        // Mock encryption
+        // Mock the SSN reservation and encryption
+        when(blindIndex.reserveSsnIndex(any())).thenReturn(true);
         when(crypto.encrypt(rawSsn)).thenReturn(expectedEncryptedSsn);
 
-        // Mock ObjectMapper to return a predictable JSON string and allow capturing the DTO
-        when(objectMapper.writeValueAsString(any(UserCreationMessageDto.class)))
+        // Mock the codec to return a predictable payload and allow capturing the DTO
+        when(messageCodecs.encode(any(UserCreationMessageDto.class)))
             .thenAnswer(invocation -> {
                 UserCreationMessageDto msgDto = invocation.getArgument(0);
-                // Construct a JSON string based on the captured DTO for verification
-                return String.format(
-                    "{\"id\":\"%s\",\"username\":\"%s\",\"email\":\"%s\",\"encryptedSocialSecurityNumber\":\"%s\"}",
-                    msgDto.getId(), 
-                    msgDto.getUsername(), 
-                    msgDto.getEmail(), 
-                    msgDto.getEncryptedSocialSecurityNumber()
-                );
+                // Construct a payload based on the captured DTO for verification
+                return PubsubMessage.newBuilder()
+                    .setData(ByteString.copyFromUtf8(String.format(
+                        "{\"id\":\"%s\",\"username\":\"%s\",\"email\":\"%s\",\"encryptedSocialSecurityNumber\":\"%s\"}",
+                        msgDto.getId(), 
+                        msgDto.getUsername(), 
+                        msgDto.getEmail(), 
+                        msgDto.getEncryptedSocialSecurityNumber()
+                    )))
+                    .build();
             });
 
+        when(pubSubTemplate.publish(eq(TEST_TOPIC_NAME), any(PubsubMessage.class)))
+            .thenReturn(CompletableFuture.completedFuture("message-1"));
+
         // Act
         UserProfileResponseDto responseDto = userProfileService.create(requestDto);
 
@@ -97,7 +137,7 @@ public class UserProfileServiceImplTest {
 
         // 2. Capture and Verify Pub/Sub Message Content (UserCreationMessageDto)
         ArgumentCaptor<UserCreationMessageDto> messageDtoCaptor = ArgumentCaptor.forClass(UserCreationMessageDto.class);
-        verify(objectMapper, times(1)).writeValueAsString(messageDtoCaptor.capture());
+        verify(messageCodecs, times(1)).encode(messageDtoCaptor.capture());
         UserCreationMessageDto capturedMessageDto = messageDtoCaptor.getValue();
 
         assertNotNull(capturedMessageDto.getId(), "Generated User ID should not be null in Pub/Sub message");
@@ -107,18 +147,19 @@ public class UserProfileServiceImplTest {
 
         // 3. Verify Pub/Sub Publishing Action
         ArgumentCaptor<String> topicCaptor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<String> payloadCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<PubsubMessage> payloadCaptor = ArgumentCaptor.forClass(PubsubMessage.class);
         verify(pubSubTemplate, times(1)).publish(topicCaptor.capture(), payloadCaptor.capture());
         
         assertEquals(TEST_TOPIC_NAME, topicCaptor.getValue());
-        String actualPublishedPayload = payloadCaptor.getValue();
+        String actualPublishedPayload = payloadCaptor.getValue().getData().toStringUtf8();
         assertTrue(actualPublishedPayload.contains("\"id\":\"" + capturedMessageDto.getId() + "\""));
         assertTrue(actualPublishedPayload.contains("\"username\":\"" + requestDto.getUsername() + "\""));
         assertTrue(actualPublishedPayload.contains("\"email\":\"" + requestDto.getEmail() + "\""));
         assertTrue(actualPublishedPayload.contains("\"encryptedSocialSecurityNumber\":\"" + expectedEncryptedSsn + "\""));
 
-        // 4. Verify No Direct Save to Repository in this method
+        // 4. Verify No Direct Save to Repository in this method, and the SSN stays reserved
         verify(userRepository, never()).save(any(UserProfile.class));
+        verify(blindIndex, never()).releaseSsnIndex(any());
 
         // 5. Verify Returned DTO
         assertNotNull(responseDto);
@@ -136,6 +177,7 @@ public class UserProfileServiceImplTest {
                 .socialSecurityNumber("123-45-6789")
                 .build();
         
+        when(blindIndex.reserveSsnIndex(any())).thenReturn(true);
         when(crypto.encrypt(requestDto.getSocialSecurityNumber())).thenThrow(new Exception("Encryption error"));
 
         // Act & Assert
@@ -146,8 +188,9 @@ public class UserProfileServiceImplTest {
         assertEquals("Failed to encrypt Social Security Number during user creation.", exception.getMessage());
         verify(crypto, times(1)).encrypt(requestDto.getSocialSecurityNumber());
         // Ensure further operations like serialization or publishing are not attempted
-        verify(objectMapper, never()).writeValueAsString(any());
-        verify(pubSubTemplate, never()).publish(anyString(), anyString());
+        verify(messageCodecs, never()).encode(any());
+        verify(pubSubTemplate, never()).publish(anyString(), any(PubsubMessage.class));
+        verify(blindIndex, times(1)).releaseSsnIndex(any());
     }
 
     @Test
@@ -160,11 +203,14 @@ public class UserProfileServiceImplTest {
                 .build();
 
         String expectedEncryptedSsn = "encryptedSsn123";
-        String jsonPayload = "{\"id\":\"some-uuid\",\"username\":\"testuser\",\"email\":\"test@example.com\",\"encryptedSocialSecurityNumber\":\"encryptedSsn123\"}";
+        PubsubMessage message = PubsubMessage.newBuilder()
+            .setData(ByteString.copyFromUtf8("{\"id\":\"some-uuid\",\"username\":\"testuser\",\"email\":\"test@example.com\",\"encryptedSocialSecurityNumber\":\"encryptedSsn123\"}"))
+            .build();
 
+        when(blindIndex.reserveSsnIndex(any())).thenReturn(true);
         when(crypto.encrypt(requestDto.getSocialSecurityNumber())).thenReturn(expectedEncryptedSsn);
-        when(objectMapper.writeValueAsString(any(UserCreationMessageDto.class))).thenReturn(jsonPayload);
-        doThrow(new RuntimeException("Pub/Sub publish error")).when(pubSubTemplate).publish(eq(TEST_TOPIC_NAME), eq(jsonPayload));
+        when(messageCodecs.encode(any(UserCreationMessageDto.class))).thenReturn(message);
+        doThrow(new RuntimeException("Pub/Sub publish error")).when(pubSubTemplate).publish(eq(TEST_TOPIC_NAME), any(PubsubMessage.class));
 
         // Act & Assert
         RuntimeException exception = assertThrows(RuntimeException.class, () -> {
@@ -173,7 +219,86 @@ public class UserProfileServiceImplTest {
 
         assertEquals("Failed to publish user creation event.", exception.getMessage());
         verify(crypto, times(1)).encrypt(requestDto.getSocialSecurityNumber());
-        verify(objectMapper, times(1)).writeValueAsString(any(UserCreationMessageDto.class));
-        verify(pubSubTemplate, times(1)).publish(eq(TEST_TOPIC_NAME), eq(jsonPayload));
+        verify(messageCodecs, times(1)).encode(any(UserCreationMessageDto.class));
+        verify(pubSubTemplate, times(1)).publish(eq(TEST_TOPIC_NAME), any(PubsubMessage.class));
+        verify(blindIndex, times(1)).releaseSsnIndex(any());
+    }
+
+    @Test
+    void create_shouldRejectDuplicateSsnWithConflict_withoutEncryptingOrPublishing() throws Exception {
+        // Arrange
+        UserProfileRequestDto requestDto = UserProfileRequestDto.builder()
+                .username("testuser")
+                .email("test@example.com")
+                .socialSecurityNumber("123-45-6789")
+                .build();
+
+        when(blindIndex.computeSsnIndex(requestDto.getSocialSecurityNumber())).thenReturn("ssnIndex123");
+        when(blindIndex.reserveSsnIndex("ssnIndex123")).thenReturn(false);
+
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> {
+            userProfileService.create(requestDto);
+        });
+
+        assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
+        verify(crypto, never()).encrypt(anyString());
+        verify(pubSubTemplate, never()).publish(anyString(), any(PubsubMessage.class));
+        verify(blindIndex, never()).releaseSsnIndex(anyString());
+    }
+
+    @Test
+    void create_shouldAcceptOnlyOneOfConcurrentCreatesWithTheSameSsn() throws Exception {
+        // The real blind index, so the reservation is what's under test
+        HmacBlindIndexServiceImpl realBlindIndex = new HmacBlindIndexServiceImpl(userRepository,
+            Base64.getEncoder().encodeToString("blind-index-test-key-0123456789ab".getBytes()), 100, Duration.ofMinutes(10));
+        UserProfileServiceImpl service = new UserProfileServiceImpl(userRepository, new UserProfileMapper(), crypto,
+            realBlindIndex, pubSubTemplate, messageCodecs, new ChangeFeed(16), mock(UpdateCoalescer.class), messageTracing,
+            mock(UserStatistics.class), knownIds, mock(HedgedReads.class), mock(ProfileReader.class));
+        service.setUserCreationTopic(TEST_TOPIC_NAME);
+
+        when(userRepository.existsBySsnBlindIndex(anyString())).thenReturn(false);
+        // A slow encryption keeps every create in flight at once
+        when(crypto.encrypt("123-45-6789")).thenAnswer(invocation -> {
+            Thread.sleep(50);
+            return "encryptedSsn123";
+        });
+        when(messageCodecs.encode(any(UserCreationMessageDto.class))).thenReturn(PubsubMessage.getDefaultInstance());
+        when(pubSubTemplate.publish(eq(TEST_TOPIC_NAME), any(PubsubMessage.class)))
+            .thenReturn(CompletableFuture.completedFuture("message-1"));
+
+        int creates = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(creates);
+        try {
+            for (int i = 0; i < creates; i++) {
+                String username = "user" + i;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        service.create(UserProfileRequestDto.builder()
+                            .username(username)
+                            .email(username + "@example.com")
+                            .socialSecurityNumber("123-45-6789")
+                            .build());
+                        accepted.incrementAndGet();
+                    } catch (ResponseStatusException e) {
+                        conflicts.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, accepted.get());
+        assertEquals(creates - 1, conflicts.get());
+        verify(pubSubTemplate, times(1)).publish(eq(TEST_TOPIC_NAME), any(PubsubMessage.class));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,101 @@
+package com.christopherdowd.UserProfileManagement.snapshot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.christopherdowd.UserProfileManagement.TestDataUtil;
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+
+public class SnapshotRoundTripTest {
+
+    private static final int PROFILES = 20_000;
+
+    @TempDir
+    Path tempDir;
+
+    private static UserProfile profile(int i) {
+        return UserProfile.builder()
+            .id("user-" + i)
+            .username(i % 7 == 0 ? "Zoë-" + i : "user" + i)
+            .email("user" + i + "@example.com")
+            .encryptedSocialSecurityNumber(TestDataUtil.USER_1_SSN_ENCRYPTED + i)
+            // Some entities predate blind indexes
+            .ssnBlindIndex(i % 3 == 0 ? null : "index-" + i)
+            .build();
+    }
+
+    private Path writeSnapshot(int blockSize) throws IOException {
+        Path file = tempDir.resolve("users.snapshot");
+        try (SnapshotWriter writer = new SnapshotWriter(file, blockSize, 6)) {
+            for (int i = 0; i < PROFILES; i++) {
+                writer.write(profile(i));
+            }
+        }
+        return file;
+    }
+
+    @Test
+    void readsBackEveryProfileAcrossManyBlocks() throws IOException {
+        // Small blocks so the snapshot spans hundreds of them
+        Path file = writeSnapshot(8 * 1024);
+
+        assertFalse(Files.exists(tempDir.resolve("users.snapshot.partial")));
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            for (int i = 0; i < PROFILES; i++) {
+                assertEquals(profile(i), reader.next());
+            }
+            assertNull(reader.next());
+            assertEquals(PROFILES, reader.getRecordCount());
+        }
+    }
+
+    @Test
+    void emptySnapshotHasNoProfiles() throws IOException {
+        Path file = tempDir.resolve("empty.snapshot");
+        new SnapshotWriter(file, 1024, 1).close();
+
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void truncatedSnapshotIsDetected() throws IOException {
+        Path file = writeSnapshot(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            assertThrows(IOException.class, () -> {
+                while (reader.next() != null) {
+                    // drain
+                }
+            });
+        }
+    }
+
+    @Test
+    void corruptedBlockIsDetected() throws IOException {
+        Path file = writeSnapshot(64 * 1024);
+        byte[] bytes = Files.readAllBytes(file);
+        int offset = SnapshotFormat.FILE_HEADER_SIZE + SnapshotFormat.BLOCK_HEADER_SIZE + 100;
+        bytes[offset] ^= 0x5A;
+        Files.write(file, bytes);
+
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+}
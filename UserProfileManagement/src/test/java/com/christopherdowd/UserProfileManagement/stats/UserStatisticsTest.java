@@ -0,0 +1,196 @@
+package com.christopherdowd.UserProfileManagement.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import com.christopherdowd.UserProfileManagement.domain.UserProfile;
+import com.christopherdowd.UserProfileManagement.dto.UserStatsResponseDto;
+import com.christopherdowd.UserProfileManagement.repository.UserProfileScanner;
+
+public class UserStatisticsTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final InMemoryStatsCounterStore store = spy(new InMemoryStatsCounterStore());
+    private final UserProfileScanner scanner = mock(UserProfileScanner.class);
+    private final UserStatistics statistics =
+        new UserStatistics(store, scanner, Duration.ofHours(1), Duration.ofSeconds(30), Duration.ofMinutes(5), false,
+            nanos::get);
+
+    @Test
+    void countsCreatesDeletesAndDomainChanges() {
+        statistics.recordCreated("a@example.com");
+        statistics.recordCreated("b@Example.com");
+        statistics.recordCreated("c@test.org");
+        statistics.recordDeleted("c@test.org");
+        statistics.recordEmailChanged("b@example.com", "b@test.org");
+        statistics.recordEmailChanged("a@example.com", "alice@example.com");
+        statistics.flush();
+        statistics.refresh();
+
+        UserStatsResponseDto stats = statistics.current();
+        assertEquals(2, stats.getTotalUsers());
+        assertEquals(Map.of("example.com", 1L, "test.org", 1L), stats.getUsersByEmailDomain());
+    }
+
+    @Test
+    void ordersDomainsBySizeAndSkipsEmptyOnes() {
+        statistics.recordCreated("a@small.io");
+        statistics.recordCreated("a@big.io");
+        statistics.recordCreated("b@big.io");
+        statistics.recordCreated("a@gone.io");
+        statistics.recordDeleted("a@gone.io");
+        statistics.recordCreated("no-domain");
+        statistics.flush();
+        statistics.refresh();
+
+        assertEquals(List.of("big.io", "small.io", "unknown"),
+            List.copyOf(statistics.current().getUsersByEmailDomain().keySet()));
+    }
+
+    @Test
+    void derivesRatesFromCounterMovementOverTheWindow() {
+        statistics.refresh();
+
+        for (int i = 0; i < 10; i++) {
+            statistics.recordCreated("user" + i + "@example.com");
+        }
+        statistics.recordDeleted("user0@example.com");
+        statistics.flush();
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        statistics.refresh();
+
+        assertEquals(5.0, statistics.current().getCreatesPerMinute(), 1e-9);
+        assertEquals(0.5, statistics.current().getDeletesPerMinute(), 1e-9);
+
+        // Nothing happens for longer than the window, so the rates drop back to zero
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        statistics.refresh();
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        statistics.refresh();
+
+        assertEquals(0.0, statistics.current().getCreatesPerMinute(), 1e-9);
+        assertEquals(9, statistics.current().getTotalUsers());
+    }
+
+    @Test
+    void keepsChangesWhenTheStoreFails() {
+        statistics.recordCreated("a@example.com");
+        doThrow(new IllegalStateException("unavailable")).when(store).add(any());
+        statistics.flush();
+
+        statistics.recordCreated("b@example.com");
+        doCallRealMethod().when(store).add(any());
+        statistics.flush();
+        statistics.refresh();
+
+        assertEquals(2, statistics.current().getTotalUsers());
+    }
+
+    @Test
+    void retriesOnlyTheCountersThatFailed() {
+        statistics.recordCreated("a@example.com");
+        // The domain counter fails once, the others are added
+        AtomicBoolean failDomain = new AtomicBoolean(true);
+        doAnswer(invocation -> {
+            if (!failDomain.getAndSet(false)) {
+                return invocation.callRealMethod();
+            }
+            Map<String, Long> deltas = new HashMap<>(invocation.getArgument(0));
+            Long domainDelta = deltas.remove(UserStatistics.DOMAIN_PREFIX + "example.com");
+            store.add(deltas);
+            return Map.of(UserStatistics.DOMAIN_PREFIX + "example.com", domainDelta);
+        }).when(store).add(any());
+        statistics.flush();
+
+        statistics.flush();
+        statistics.refresh();
+
+        assertEquals(1, statistics.current().getTotalUsers());
+        assertEquals(1L, store.totals().get(UserStatistics.CREATED));
+        assertEquals(Map.of("example.com", 1L), statistics.current().getUsersByEmailDomain());
+    }
+
+    @Test
+    void readsTotalsOnlyEveryRefreshInterval() {
+        statistics.flushAndRefresh();
+        statistics.recordCreated("a@example.com");
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        statistics.flushAndRefresh();
+
+        verify(store, times(1)).totals();
+        assertEquals(0, statistics.current().getTotalUsers());
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(20));
+        statistics.flushAndRefresh();
+
+        verify(store, times(2)).totals();
+        assertEquals(1, statistics.current().getTotalUsers());
+    }
+
+    @Test
+    void dropsDomainsWithoutChanges() {
+        for (int i = 0; i < 100; i++) {
+            statistics.recordCreated("user@domain" + i + ".io");
+        }
+        statistics.flush();
+        assertEquals(103, statistics.pendingCounters());
+
+        // A whole flush interval without changes
+        statistics.recordCreated("user@domain0.io");
+        statistics.flush();
+
+        assertEquals(4, statistics.pendingCounters());
+    }
+
+    @Test
+    void rebuildRecountsProfilesAndKeepsCumulativeCounters() {
+        statistics.recordCreated("a@example.com");
+        statistics.recordDeleted("a@example.com");
+        statistics.flush();
+        // Drifted counters, e.g. after a bulk import that bypassed them
+        statistics.recordCreated("stale@drift.io");
+
+        when(scanner.forEachBatch(anyInt(), any())).thenAnswer(invocation -> {
+            Consumer<List<UserProfile>> action = invocation.getArgument(1);
+            action.accept(List.of(profile("x@example.com"), profile("y@example.com"), profile("z@test.org")));
+            return 3L;
+        });
+        statistics.rebuild();
+        statistics.flush();
+        statistics.refresh();
+
+        UserStatsResponseDto stats = statistics.current();
+        assertEquals(3, stats.getTotalUsers());
+        assertEquals(Map.of("example.com", 2L, "test.org", 1L), stats.getUsersByEmailDomain());
+        assertEquals(1L, store.totals().get(UserStatistics.CREATED));
+        assertEquals(1L, store.totals().get(UserStatistics.DELETED));
+        assertNotNull(stats.getAsOf());
+    }
+
+    private static UserProfile profile(String email) {
+        UserProfile user = new UserProfile();
+        user.setEmail(email);
+        return user;
+    }
+}